@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.benchmark;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.index.IndexManager;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.utils.FileUtils;
+import com.qwazr.utils.concurrent.ExecutorUtils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local IndexManager working in a temporary directory, removed when closed.
+ */
+final class BenchmarkEnvironment implements Closeable {
+
+    final static long SEED = 1234567890L;
+    final static int BATCH_SIZE = 1000;
+
+    private final Path rootDirectory;
+    private final ExecutorService executorService;
+    final IndexManager indexManager;
+
+    BenchmarkEnvironment() throws IOException {
+        rootDirectory = Files.createTempDirectory("qwazr_benchmark");
+        executorService = Executors.newCachedThreadPool();
+        indexManager = new IndexManager(rootDirectory, executorService);
+    }
+
+    static IndexSettingsDefinition.Builder settings() throws URISyntaxException {
+        return IndexSettingsDefinition.of(BenchmarkRecord.class.getAnnotation(Index.class));
+    }
+
+    AnnotatedIndexService<BenchmarkRecord> createIndex(final String indexName,
+                                                       final IndexSettingsDefinition settings)
+        throws URISyntaxException {
+        final AnnotatedIndexService<BenchmarkRecord> service =
+            indexManager.getService(BenchmarkRecord.class, indexName, settings);
+        service.createUpdateIndex();
+        service.createUpdateFields();
+        return service;
+    }
+
+    /**
+     * Fill the index with generated documents, by batches
+     */
+    static void fill(final AnnotatedIndexService<BenchmarkRecord> service, final int docs) throws IOException {
+        for (int start = 0; start < docs; start += BATCH_SIZE)
+            service.postDocuments(BenchmarkRecord.generate(SEED, start, Math.min(BATCH_SIZE, docs - start)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexManager.close();
+        try {
+            ExecutorUtils.close(executorService, 1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        FileUtils.deleteDirectory(rootDirectory);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.benchmark;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.utils.ObjectMappers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexOptions;
+
+/**
+ * The documents of the benchmark indexes. They are generated from a seed, so two runs work on the same data.
+ */
+@Index(name = "benchmark")
+public class BenchmarkRecord {
+
+    public final static String TITLE = "title";
+    public final static String CONTENT = "content";
+    public final static String CATEGORY = "category";
+    public final static String GROUP = "group";
+    public final static String PRICE = "price";
+
+    final static int CATEGORIES = 50;
+
+    private final static String[] WORDS = {"search", "engine", "index", "query", "lucene", "document", "field",
+        "facet", "score", "sort", "collapse", "replication", "segment", "merge", "commit", "analyzer", "token",
+        "highlight", "cache", "shard", "cluster", "latency", "throughput", "benchmark", "memory", "disk", "network",
+        "server", "client", "result"};
+
+    @IndexField(name = FieldDefinition.ID_FIELD, template = FieldDefinition.Template.StringField, stored = true)
+    public String id;
+
+    @IndexField(name = TITLE,
+        template = FieldDefinition.Template.TextField,
+        analyzerClass = StandardAnalyzer.class,
+        stored = true,
+        indexOptions = IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS)
+    public String title;
+
+    @IndexField(name = CONTENT,
+        template = FieldDefinition.Template.TextField,
+        analyzerClass = StandardAnalyzer.class,
+        stored = true)
+    public String content;
+
+    @IndexField(name = CATEGORY, template = FieldDefinition.Template.SortedSetDocValuesFacetField)
+    public String category;
+
+    @IndexField(name = GROUP, template = FieldDefinition.Template.SortedDocValuesField)
+    public String group;
+
+    @IndexField(name = PRICE, template = FieldDefinition.Template.LongDocValuesField)
+    public Long price;
+
+    public BenchmarkRecord() {
+    }
+
+    BenchmarkRecord(final Random random, final int id) {
+        this.id = Integer.toString(id);
+        this.title = words(random, 4);
+        this.content = words(random, 60);
+        this.category = "category" + random.nextInt(CATEGORIES);
+        this.group = "group" + random.nextInt(Math.max(1, id / 10 + 1));
+        this.price = (long) random.nextInt(100000);
+    }
+
+    static String word(final Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String words(final Random random, final int count) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(' ');
+            sb.append(word(random));
+        }
+        return sb.toString();
+    }
+
+    static List<BenchmarkRecord> generate(final long seed, final int start, final int count) {
+        final Random random = new Random(seed + start);
+        final List<BenchmarkRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            records.add(new BenchmarkRecord(random, start + i));
+        return records;
+    }
+
+    static ArrayNode generateJson(final long seed, final int start, final int count) {
+        final ArrayNode array = ObjectMappers.JSON.createArrayNode();
+        for (final BenchmarkRecord record : generate(seed, start, count)) {
+            final ObjectNode node = array.addObject();
+            node.put(FieldDefinition.ID_FIELD, record.id);
+            node.put(TITLE, record.title);
+            node.put(CONTENT, record.content);
+            node.put(CATEGORY, record.category);
+            node.put(GROUP, record.group);
+            node.put(PRICE, record.price);
+        }
+        return array;
+    }
+}
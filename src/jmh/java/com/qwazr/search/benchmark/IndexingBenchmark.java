@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.benchmark;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.qwazr.search.index.IndexJsonResult;
+import com.qwazr.search.index.IndexServiceInterface;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The indexing throughput of JSON documents (WriteContextImpl.postJsonNodes), in documents per second.
+ * The batches are rotated over a fixed set of primary keys, so the index size stays stable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class IndexingBenchmark {
+
+    private final static String INDEX = "indexing";
+    private final static int BATCHES = 20;
+
+    @Param({"1", "4"})
+    public int indexingThreads;
+
+    private BenchmarkEnvironment environment;
+    private IndexServiceInterface service;
+    private ArrayNode[] batches;
+    private int pos;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, URISyntaxException {
+        environment = new BenchmarkEnvironment();
+        environment.createIndex(INDEX, BenchmarkEnvironment.settings().indexingThreads(indexingThreads).build());
+        service = environment.indexManager.getService();
+        batches = new ArrayNode[BATCHES];
+        for (int i = 0; i < BATCHES; i++)
+            batches[i] = BenchmarkRecord.generateJson(BenchmarkEnvironment.SEED, i * BenchmarkEnvironment.BATCH_SIZE,
+                BenchmarkEnvironment.BATCH_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkEnvironment.BATCH_SIZE)
+    public IndexJsonResult postJson() {
+        return service.postJson(INDEX, false, batches[pos++ % BATCHES]);
+    }
+}
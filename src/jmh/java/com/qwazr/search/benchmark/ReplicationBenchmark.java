@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.benchmark;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.index.ReplicationStatus;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The full replication of a generated master index to a new slave index (the file transfer path).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReplicationBenchmark {
+
+    private final static String MASTER = "master";
+
+    @Param({"100000"})
+    public int docs;
+
+    private BenchmarkEnvironment environment;
+    private AnnotatedIndexService<BenchmarkRecord> slave;
+    private int slaveCount;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, URISyntaxException {
+        environment = new BenchmarkEnvironment();
+        BenchmarkEnvironment.fill(environment.createIndex(MASTER, BenchmarkEnvironment.settings().build()), docs);
+    }
+
+    @Setup(Level.Iteration)
+    public void createSlave() throws URISyntaxException {
+        // The fields of a slave are replicated from the master
+        slave = environment.indexManager.getService(BenchmarkRecord.class, "slave" + slaveCount++,
+            BenchmarkEnvironment.settings().master(MASTER).build());
+        slave.createUpdateIndex();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteSlave() {
+        slave.deleteIndex();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Benchmark
+    public ReplicationStatus fullReplication() {
+        return slave.replicationCheck();
+    }
+}
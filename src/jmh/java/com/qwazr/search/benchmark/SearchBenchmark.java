@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.benchmark;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.collector.CollapseCollector;
+import com.qwazr.search.index.FacetDefinition;
+import com.qwazr.search.index.HighlighterDefinition;
+import com.qwazr.search.index.QueryBuilder;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.HasTerm;
+import com.qwazr.search.query.MultiFieldQuery;
+import com.qwazr.search.query.QueryParserOperator;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The search path (QueryExecution, the collectors, the facets, the highlighters and the ReturnedFieldStrategy),
+ * measured through the index service against a generated local index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    private final static int QUERIES = 64;
+
+    @Param({"100000"})
+    public int docs;
+
+    private BenchmarkEnvironment environment;
+    private AnnotatedIndexService<BenchmarkRecord> service;
+
+    private QueryDefinition[] termQueries;
+    private QueryDefinition[] returnedFieldsQueries;
+    private QueryDefinition[] returnedWildcardQueries;
+    private QueryDefinition[] sortedQueries;
+    private QueryDefinition[] facetQueries;
+    private QueryDefinition[] highlightQueries;
+    private QueryDefinition[] multiFieldQueries;
+    private QueryDefinition[] collapseQueries;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, URISyntaxException {
+        environment = new BenchmarkEnvironment();
+        service = environment.createIndex("search", BenchmarkEnvironment.settings().build());
+        BenchmarkEnvironment.fill(service, docs);
+
+        termQueries = queries(term -> QueryDefinition.of(term).rows(10));
+        returnedFieldsQueries = queries(term -> QueryDefinition.of(term)
+            .rows(100)
+            .returnedField(BenchmarkRecord.TITLE, BenchmarkRecord.CONTENT));
+        returnedWildcardQueries = queries(term -> QueryDefinition.of(term).rows(100).returnedField("*"));
+        sortedQueries = queries(term -> QueryDefinition.of(term)
+            .rows(10)
+            .sort(BenchmarkRecord.PRICE, QueryDefinition.SortEnum.descending));
+        facetQueries = queries(term -> QueryDefinition.of(term)
+            .rows(10)
+            .facet(BenchmarkRecord.CATEGORY, FacetDefinition.of(10).build()));
+        highlightQueries = queries(term -> QueryDefinition.of(term)
+            .rows(10)
+            .highlighter(BenchmarkRecord.TITLE, HighlighterDefinition.of(BenchmarkRecord.TITLE).build()));
+        final Random random = new Random(BenchmarkEnvironment.SEED);
+        multiFieldQueries = new QueryDefinition[QUERIES];
+        for (int i = 0; i < QUERIES; i++)
+            multiFieldQueries[i] = QueryDefinition.of(MultiFieldQuery.of()
+                .fieldBoost(BenchmarkRecord.TITLE, 10.0F)
+                .fieldBoost(BenchmarkRecord.CONTENT, 1.0F)
+                .defaultOperator(QueryParserOperator.AND)
+                .queryString(BenchmarkRecord.word(random) + ' ' + BenchmarkRecord.word(random))
+                .build()).rows(10).build();
+        collapseQueries = queries(term -> QueryDefinition.of(term)
+            .rows(10)
+            .collector("collapse", CollapseCollector.class, BenchmarkRecord.GROUP, 10));
+    }
+
+    private static QueryDefinition[] queries(final Function<HasTerm, QueryBuilder> builder) {
+        final Random random = new Random(BenchmarkEnvironment.SEED);
+        final QueryDefinition[] queries = new QueryDefinition[QUERIES];
+        for (int i = 0; i < QUERIES; i++)
+            queries[i] = builder.apply(new HasTerm(BenchmarkRecord.CONTENT, BenchmarkRecord.word(random))).build();
+        return queries;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    /**
+     * Each thread rotates over the pre-built queries
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int pos;
+
+        QueryDefinition next(final QueryDefinition[] queries) {
+            return queries[pos++ % queries.length];
+        }
+    }
+
+    @Benchmark
+    public ResultDefinition<?> term(final Cursor cursor) {
+        return service.searchQuery(cursor.next(termQueries));
+    }
+
+    @Benchmark
+    public ResultDefinition<?> returnedFields(final Cursor cursor) {
+        return service.searchQuery(cursor.next(returnedFieldsQueries));
+    }
+
+    @Benchmark
+    public ResultDefinition<?> returnedWildcard(final Cursor cursor) {
+        return service.searchQuery(cursor.next(returnedWildcardQueries));
+    }
+
+    @Benchmark
+    public ResultDefinition<?> sorted(final Cursor cursor) {
+        return service.searchQuery(cursor.next(sortedQueries));
+    }
+
+    @Benchmark
+    public ResultDefinition<?> facets(final Cursor cursor) {
+        return service.searchQuery(cursor.next(facetQueries));
+    }
+
+    @Benchmark
+    public ResultDefinition<?> highlight(final Cursor cursor) {
+        return service.searchQuery(cursor.next(highlightQueries));
+    }
+
+    @Benchmark
+    public ResultDefinition<?> multiField(final Cursor cursor) {
+        return service.searchQuery(cursor.next(multiFieldQueries));
+    }
+
+    @Benchmark
+    public ResultDefinition<?> collapse(final Cursor cursor) {
+        return service.searchQuery(cursor.next(collapseQueries));
+    }
+}
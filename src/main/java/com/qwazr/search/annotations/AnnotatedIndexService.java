@@ -25,6 +25,7 @@ import com.qwazr.search.index.BackupStatus;
 import com.qwazr.search.index.ExplainDefinition;
 import com.qwazr.search.index.FieldStats;
 import com.qwazr.search.index.IndexCheckStatus;
+import com.qwazr.search.index.IndexMetrics;
 import com.qwazr.search.index.IndexServiceInterface;
 import com.qwazr.search.index.IndexSettingsDefinition;
 import com.qwazr.search.index.IndexStatus;
@@ -44,6 +45,7 @@ import com.qwazr.utils.IOUtils;
 import com.qwazr.utils.StringUtils;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -495,6 +497,14 @@ public class AnnotatedIndexService<T> {
         return indexService.getIndex(indexName);
     }
 
+    public IndexStatus commit() {
+        return indexService.commitIndex(indexName);
+    }
+
+    public IndexMetrics getIndexMetrics() {
+        return indexService.getIndexMetrics(indexName);
+    }
+
     public Map<String, FieldDefinition> getFields() {
         return indexService.getFields(indexName);
     }
@@ -611,6 +621,21 @@ public class AnnotatedIndexService<T> {
             throw new NotImplementedException("Method not available");
     }
 
+    /**
+     * Write every document matching the query as NDJSON, in index order and without scoring
+     *
+     * @param query    the query to execute
+     * @param parallel true to export the segments concurrently (the order is then not preserved)
+     * @param output   the stream receiving the documents
+     * @throws IOException if any I/O error occurs
+     */
+    public void exportQuery(final QueryDefinition query,
+                            final boolean parallel,
+                            final OutputStream output) throws IOException {
+        indexService.exportQuery(indexName, IndexServiceInterface.MEDIATYPE_APPLICATION_NDJSON, parallel, query)
+            .write(output);
+    }
+
     /**
      * Explain a query applied to a given DocId
      *
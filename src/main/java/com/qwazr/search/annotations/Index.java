@@ -17,6 +17,7 @@ package com.qwazr.search.annotations;
 
 import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.replication.Compression;
 import com.qwazr.utils.StringUtils;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.search.similarities.BM25Similarity;
@@ -76,4 +77,50 @@ public @interface Index {
     int maxConcurrentWrite() default -1; // Infinite
 
     int maxConcurrentRead() default -1; // Infinite
+
+    int indexingThreads() default 1; // Serial
+
+    double searchCacheMaxRamMB() default 0; // Disabled
+
+    IndexSettingsDefinition.CommitPolicy commitPolicy() default IndexSettingsDefinition.CommitPolicy.PER_REQUEST;
+
+    int commitMaxLatencyMs() default 0; // Default of the commit policy
+
+    int commitMaxDocs() default 0; // No limit
+
+    int mmapMaxChunkSizeMB() default 0; // Lucene's default
+
+    boolean mmapUseUnmap() default true; // Lucene's default, unmap only if supported
+
+    String[] mmapPreloadExtensions() default {};
+
+    boolean byteBuffersOffHeap() default false;
+
+    int replicationChunkSizeMB() default IndexSettingsDefinition.DEFAULT_REPLICATION_CHUNK_SIZE_MB;
+
+    int replicationThreads() default IndexSettingsDefinition.DEFAULT_REPLICATION_THREADS;
+
+    double replicationMaxBandwidthMB() default 0; // No limit
+
+    int replicationLongPollMs() default 0; // Disabled
+
+    Compression replicationCompression() default Compression.NONE;
+
+    int replicationCompressionLevel() default 0; // Default level
+
+    IndexSettingsDefinition.QueryCachePolicy queryCachePolicy() default IndexSettingsDefinition.QueryCachePolicy.GLOBAL;
+
+    int queryCacheMaxEntries() default IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MAX_ENTRIES;
+
+    double queryCacheMaxRamMB() default 0; // 5% of the heap up to 32MB
+
+    int queryCacheMinSegmentDocs() default IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MIN_SEGMENT_DOCS;
+
+    float queryCacheMinSegmentRatio() default IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MIN_SEGMENT_RATIO;
+
+    boolean concurrentFacets() default false;
+
+    int totalHitsThreshold() default -1; // Exact count
+
+    double joinCacheMaxRamMB() default 0; // Disabled
 }
@@ -17,34 +17,42 @@
 package com.qwazr.search.collector;
 
 import com.qwazr.search.query.lucene.FilteredQuery;
-import com.qwazr.utils.Equalizer;
 import it.unimi.dsi.fastutil.floats.Float2ReferenceRBTreeMap;
 import it.unimi.dsi.fastutil.floats.Float2ReferenceSortedMap;
-import it.unimi.dsi.fastutil.ints.Int2FloatMap;
-import it.unimi.dsi.fastutil.ints.Int2FloatOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2IntLinkedOpenHashMap;
-import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
-import it.unimi.dsi.fastutil.ints.IntSortedSet;
-import it.unimi.dsi.fastutil.objects.Object2BooleanLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.function.IntConsumer;
-import org.apache.commons.lang3.tuple.Pair;
-import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.ScoreMode;
-import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.PriorityQueue;
 import org.apache.lucene.util.RoaringDocIdSet;
 
+/**
+ * Keeps the best scored document (the group leader) of the maxRows best groups sharing the same sorted doc value.
+ * <p>
+ * Each segment collects its groups by ordinal, in primitive arrays. The groups of the segments are merged using
+ * the global ordinals of the field (an OrdinalMap cached per reader), without comparing the terms.
+ */
 public class CollapseCollector extends BaseCollector.Parallel<CollapseCollector.Query, CollapseCollector.Leaf, CollapseCollector> {
 
     private final String fieldName;
@@ -58,127 +66,215 @@ public class CollapseCollector extends BaseCollector.Parallel<CollapseCollector.
 
     @Override
     public Leaf newLeafCollector(final LeafReaderContext context) throws IOException {
-        return new Leaf(fieldName, context);
+        final SortedDocValues sdv = context.reader().getSortedDocValues(fieldName);
+        return sdv == null ? null : new Leaf(context, sdv);
     }
 
-    private synchronized void reduce(final GroupQueue groupQueue,
-                                     final Map<Integer, RoaringDocIdSet> docIdMaps,
-                                     final Int2IntLinkedOpenHashMap collapsedMap) {
+    @Override
+    final public synchronized Query reduce(final List<CollapseCollector> leafCollectors) {
+        final List<Leaf> leaves = new ArrayList<>();
+        leafCollectors.forEach(collector -> leaves.addAll(collector.getLeaves()));
+
+        final Map<Integer, RoaringDocIdSet> docIdMaps = new HashMap<>();
+        // Stores for each doc the number of collapsed documents
+        final Int2IntLinkedOpenHashMap collapsedMap = new Int2IntLinkedOpenHashMap();
+        if (leaves.isEmpty())
+            return new Query(new FilteredQuery(docIdMaps), collapsedMap, 0);
 
-        // Fill the priority queue which the results of each segments
-        getLeaves().forEach(leaf -> leaf.reduce(groupQueue));
+        // Fill the priority queue with the best groups of each segment, and count the documents of every group
+        final IndexReaderContext topContext = ReaderUtil.getTopLevelContext(leaves.get(0).context);
+        final GroupQueue groupQueue = new GroupQueue(maxRows);
+        final Long2IntOpenHashMap groupCounts = new Long2IntOpenHashMap();
+        try {
+            final OrdinalMap ordinalMap = OrdinalMapCache.get(topContext, fieldName);
+            for (final Leaf leaf : leaves)
+                leaf.reduce(ordinalMap == null ? null : ordinalMap.getGlobalOrds(leaf.context.ord), maxRows,
+                    groupQueue, groupCounts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
         // The DocID must be sorted and grouped by segment
-        final Map<Integer, Pair<Integer, IntSortedSet>> sortedInts = new HashMap<>();
-        synchronized (groupQueue) {
-            for (final GroupLeader groupLeader : groupQueue.groupLeaders.values()) {
-                sortedInts.computeIfAbsent(groupLeader.docBase,
-                    leaf -> Pair.of(groupLeader.maxDoc, new IntAVLTreeSet())).getValue().add(groupLeader.doc);
-                collapsedMap.addTo(groupLeader.docBase + groupLeader.doc, groupLeader.collapsedCount);
+        final GroupLeader[] groupLeaders = groupQueue.groupLeaders.values().toArray(new GroupLeader[0]);
+        Arrays.sort(groupLeaders, Comparator.comparingInt(groupLeader -> groupLeader.doc));
+        long collapsedCount = 0;
+        RoaringDocIdSet.Builder builder = null;
+        int docBase = -1;
+        for (final GroupLeader groupLeader : groupLeaders) {
+            groupLeader.collapsedCount = groupCounts.get(groupLeader.ord) - 1;
+            collapsedCount += groupLeader.collapsedCount;
+            collapsedMap.put(groupLeader.doc, groupLeader.collapsedCount);
+            if (groupLeader.docBase != docBase) {
+                if (builder != null)
+                    docIdMaps.put(docBase, builder.build());
+                docBase = groupLeader.docBase;
+                builder = new RoaringDocIdSet.Builder(groupLeader.maxDoc);
             }
+            builder.add(groupLeader.doc - docBase);
         }
-
-        // Now we can build the bitsets
-        sortedInts.forEach((docBase, sortedInt) -> {
-            final RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(sortedInt.getKey());
-            sortedInt.getValue().forEach((IntConsumer) builder::add);
+        if (builder != null)
             docIdMaps.put(docBase, builder.build());
-        });
 
         // Add empty bitset for unassigned leaf
-        getLeaves().forEach(leaf -> docIdMaps.computeIfAbsent(leaf.docBase,
-            ctx -> new RoaringDocIdSet.Builder(leaf.maxDoc).build()));
+        for (final LeafReaderContext context : topContext.leaves())
+            docIdMaps.computeIfAbsent(context.docBase,
+                ctx -> new RoaringDocIdSet.Builder(context.reader().maxDoc()).build());
 
+        return new Query(new FilteredQuery(docIdMaps), collapsedMap, collapsedCount);
     }
 
-    @Override
-    final public synchronized Query reduce(final List<CollapseCollector> leafCollectors) {
-        final Map<Integer, RoaringDocIdSet> docIdMaps = new HashMap<>();
-        final GroupQueue groupQueue = new GroupQueue(maxRows);
-        // Stores for each doc the number of collapsed documents
-        final Int2IntLinkedOpenHashMap collapsedMap = new Int2IntLinkedOpenHashMap(groupQueue.groupLeaders.size());
-
-        leafCollectors.forEach(collector -> collector.reduce(groupQueue, docIdMaps, collapsedMap));
-
-        long collapsedCount = 0;
-        for (final GroupLeader groupLeader : groupQueue.groupLeaders.values())
-            collapsedCount += groupLeader.collapsedCount;
-
-        synchronized (docIdMaps) {
-            return new Query(new FilteredQuery(docIdMaps), collapsedMap, collapsedCount);
-        }
-    }
+    /**
+     * The groups of a segment are indexed by ordinal. The arrays are sized to the value count of the segment (dense),
+     * unless the value count is high: they are then sized to the number of hit groups (sparse), until the groups
+     * are numerous enough to make the dense arrays cheaper.
+     */
+    final static class Leaf implements LeafCollector {
 
-    final static class Leaf extends Equalizer.Immutable<Leaf> implements LeafCollector {
+        private final static int DENSE_MAX_VALUE_COUNT = 4096;
+        private final static int SPARSE_INITIAL_SIZE = 64;
 
+        private final LeafReaderContext context;
         private final SortedDocValues sdv;
-        private final Int2IntMap docIds;
-        private final Int2FloatMap scores;
-        private final Int2IntMap count;
-        private final int docBase;
-        private final int maxDoc;
+        private final int valueCount;
+
+        // The slot of each ordinal, null when the arrays are dense (the slot is then the ordinal)
+        private Int2IntOpenHashMap ordSlots;
+        private int[] ords;
+        private int[] docs;
+        private float[] scores;
+        private int[] counts;
+        private int groupCount;
 
         private Scorable scorer;
 
-        private Leaf(final String fieldName, final LeafReaderContext context) throws IOException {
-            super(Leaf.class);
-            final LeafReader reader = context.reader();
-            sdv = reader.getSortedDocValues(fieldName);
-            final int numDocs = reader.numDocs();
-            docIds = new Int2IntOpenHashMap(numDocs);
-            scores = new Int2FloatOpenHashMap(numDocs);
-            scores.defaultReturnValue(-1);
-            count = new Int2IntOpenHashMap(numDocs);
-            count.defaultReturnValue(0);
-            docBase = context.docBase;
-            maxDoc = reader.maxDoc();
+        private Leaf(final LeafReaderContext context, final SortedDocValues sdv) {
+            this.context = context;
+            this.sdv = sdv;
+            valueCount = sdv.getValueCount();
+            if (valueCount <= DENSE_MAX_VALUE_COUNT)
+                allocate(valueCount);
+            else {
+                ordSlots = new Int2IntOpenHashMap();
+                ordSlots.defaultReturnValue(-1);
+                allocate(SPARSE_INITIAL_SIZE);
+                ords = new int[SPARSE_INITIAL_SIZE];
+            }
         }
 
-        @Override
-        protected boolean isEqual(Leaf leaf) {
-            return leaf == this;
+        private void allocate(final int size) {
+            docs = new int[size];
+            scores = new float[size];
+            counts = new int[size];
         }
 
         @Override
-        protected int computeHashCode() {
-            return docBase;
+        final public void setScorer(final Scorable scorer) {
+            this.scorer = scorer;
         }
 
         @Override
-        final public void setScorer(final Scorable scorer) {
-            this.scorer = scorer;
+        final public void collect(final int doc) throws IOException {
+            if (doc < sdv.docID() || !sdv.advanceExact(doc))
+                return;
+            final int slot = slot(sdv.ordValue());
+            final float score = scorer.score();
+            if (counts[slot]++ == 0) {
+                groupCount++;
+                scores[slot] = score;
+                docs[slot] = doc;
+            } else if (score > scores[slot]) {
+                scores[slot] = score;
+                docs[slot] = doc;
+            }
         }
 
-        synchronized void reduce(final GroupQueue groupQueue) {
-            synchronized (docIds) {
-                docIds.keySet().forEach((IntConsumer) ord -> {
-                    try {
-                        groupQueue.offer(sdv.lookupOrd(ord), scores.get(ord), count.get(ord),
-                            (bytesRef, score, collapsedCount) -> new GroupLeader(docBase, maxDoc, bytesRef, docIds.get(ord) + docBase,
-                                score, collapsedCount));
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+        private int slot(final int ord) {
+            if (ordSlots == null)
+                return ord;
+            final int slot = ordSlots.get(ord);
+            if (slot != -1)
+                return slot;
+            // A sparse slot costs about three times a dense one
+            if (groupCount >= valueCount / 3) {
+                toDense();
+                return ord;
+            }
+            if (groupCount == ords.length) {
+                ords = ArrayUtil.grow(ords, groupCount + 1);
+                docs = ArrayUtil.growExact(docs, ords.length);
+                scores = ArrayUtil.growExact(scores, ords.length);
+                counts = ArrayUtil.growExact(counts, ords.length);
             }
+            ords[groupCount] = ord;
+            ordSlots.put(ord, groupCount);
+            return groupCount;
         }
 
-        @Override
-        final public void collect(final int doc) throws IOException {
-            if (doc < sdv.docID())
-                return;
-            if (sdv.advance(doc) != doc)
-                return;
-            final int ord = sdv.ordValue();
-            if (ord == -1)
+        private void toDense() {
+            final int[] sparseDocs = docs;
+            final float[] sparseScores = scores;
+            final int[] sparseCounts = counts;
+            allocate(valueCount);
+            for (int slot = 0; slot < groupCount; slot++) {
+                final int ord = ords[slot];
+                docs[ord] = sparseDocs[slot];
+                scores[ord] = sparseScores[slot];
+                counts[ord] = sparseCounts[slot];
+            }
+            ordSlots = null;
+            ords = null;
+        }
+
+        /**
+         * Only the maxRows best groups of the segment can be in the maxRows best groups of the index,
+         * the counts of all the groups are collected.
+         *
+         * @param globalOrds  the global ordinals of the segment, or null if the ordinals are already global
+         * @param maxRows     the number of groups to keep
+         * @param groupQueue  the best groups of the index
+         * @param groupCounts the number of documents of each group, by global ordinal
+         */
+        void reduce(final LongValues globalOrds, final int maxRows, final GroupQueue groupQueue,
+                    final Long2IntOpenHashMap groupCounts) {
+            if (groupCount == 0 || maxRows <= 0)
                 return;
-            final float score = scorer.score();
-            final float oldScore = scores.get(ord);
-            if (score > oldScore) {
-                scores.put(ord, score);
-                docIds.put(ord, doc);
+            final int end = ordSlots == null ? valueCount : groupCount;
+            final PriorityQueue<ScoreDoc> bestSlots = groupCount <= maxRows ? null : new PriorityQueue<>(maxRows,
+                () -> new ScoreDoc(Integer.MAX_VALUE, Float.NEGATIVE_INFINITY)) {
+                @Override
+                protected boolean lessThan(final ScoreDoc a, final ScoreDoc b) {
+                    return a.score == b.score ? a.doc > b.doc : a.score < b.score;
+                }
+            };
+            for (int slot = 0; slot < end; slot++) {
+                final int count = counts[slot];
+                if (count == 0)
+                    continue;
+                groupCounts.addTo(globalOrd(globalOrds, slot), count);
+                if (bestSlots == null)
+                    offer(globalOrds, slot, groupQueue);
+                else if (scores[slot] > bestSlots.top().score) {
+                    final ScoreDoc top = bestSlots.top();
+                    top.doc = slot;
+                    top.score = scores[slot];
+                    bestSlots.updateTop();
+                }
             }
-            count.put(ord, count.get(ord) + 1);
+            if (bestSlots == null)
+                return;
+            for (final ScoreDoc scoreDoc : bestSlots)
+                if (scoreDoc.doc != Integer.MAX_VALUE)
+                    offer(globalOrds, scoreDoc.doc, groupQueue);
+        }
+
+        private long globalOrd(final LongValues globalOrds, final int slot) {
+            final int ord = ordSlots == null ? slot : ords[slot];
+            return globalOrds == null ? ord : globalOrds.get(ord);
+        }
+
+        private void offer(final LongValues globalOrds, final int slot, final GroupQueue groupQueue) {
+            groupQueue.offer(new GroupLeader(context.docBase, context.reader().maxDoc(), globalOrd(globalOrds, slot),
+                context.docBase + docs[slot], scores[slot]));
         }
     }
 
@@ -186,87 +282,78 @@ public class CollapseCollector extends BaseCollector.Parallel<CollapseCollector.
 
         final int docBase;
         final int maxDoc;
-        final BytesRef bytesRef;
+        final long ord;
         int collapsedCount;
 
+        /**
+         * @param docBase the first document of the segment
+         * @param maxDoc  the number of documents of the segment
+         * @param ord     the global ordinal of the group
+         * @param doc     the document of the group leader (including the docBase)
+         * @param score   the score of the group leader
+         */
         GroupLeader(final int docBase,
                     final int maxDoc,
-                    final BytesRef bytesRef,
+                    final long ord,
                     final int doc,
-                    final float score,
-                    final int collapsedCount) {
+                    final float score) {
             super(doc, score);
             this.maxDoc = maxDoc;
             this.docBase = docBase;
-            this.bytesRef = bytesRef;
-            this.collapsedCount = collapsedCount;
+            this.ord = ord;
         }
     }
 
-    @FunctionalInterface
-    interface GroupLeaderProvider {
-        GroupLeader get(BytesRef bytesRef, float score, int collapsedCount);
-    }
-
     final static class GroupQueue {
 
         private final int maxSize;
-        private final Map<BytesRef, GroupLeader> groupLeaders;
-        private final Float2ReferenceSortedMap<Object2BooleanLinkedOpenHashMap<BytesRef>> scoreGroups;
+        private final Long2ReferenceOpenHashMap<GroupLeader> groupLeaders;
+        private final Float2ReferenceSortedMap<LongLinkedOpenHashSet> scoreGroups;
 
         GroupQueue(final int maxSize) {
             this.maxSize = maxSize;
-            groupLeaders = new HashMap<>();
+            groupLeaders = new Long2ReferenceOpenHashMap<>();
             scoreGroups = new Float2ReferenceRBTreeMap<>();
         }
 
         /**
          * Exposed for test
          *
-         * @return
+         * @return the group leaders by global ordinal
          */
-        Map<BytesRef, GroupLeader> getGroupLeaders() {
+        Map<Long, GroupLeader> getGroupLeaders() {
             return groupLeaders;
         }
 
-        synchronized void offer(final BytesRef bytesRef,
-                                final float score,
-                                final int count,
-                                final GroupLeaderProvider groupLeaderProvider) {
+        void offer(final GroupLeader groupLeader) {
 
             // Do we already have a leader ? If the score is greater we can ignore the offered one
-            final GroupLeader previousGroupLeader = groupLeaders.get(bytesRef);
-            if (previousGroupLeader != null && score <= previousGroupLeader.score) {
-                previousGroupLeader.collapsedCount += count;
+            final long ord = groupLeader.ord;
+            final GroupLeader previousGroupLeader = groupLeaders.get(ord);
+            if (previousGroupLeader != null && groupLeader.score <= previousGroupLeader.score)
                 return;
-            }
 
-            final BytesRef newBytesRef =
-                previousGroupLeader == null ? BytesRef.deepCopyOf(bytesRef) : previousGroupLeader.bytesRef;
-            groupLeaders.put(newBytesRef, groupLeaderProvider.get(newBytesRef, score,
-                previousGroupLeader == null ? count - 1 : previousGroupLeader.collapsedCount + count));
+            groupLeaders.put(ord, groupLeader);
 
-            Object2BooleanLinkedOpenHashMap<BytesRef> bytesRefs = scoreGroups.get(score);
-            if (bytesRefs == null) {
-                bytesRefs = new Object2BooleanLinkedOpenHashMap<>();
-                scoreGroups.put(score, bytesRefs);
+            LongLinkedOpenHashSet ords = scoreGroups.get(groupLeader.score);
+            if (ords == null) {
+                ords = new LongLinkedOpenHashSet();
+                scoreGroups.put(groupLeader.score, ords);
             }
-            bytesRefs.put(newBytesRef, true);
+            ords.add(ord);
 
             if (previousGroupLeader != null) {
-                bytesRefs = scoreGroups.get(previousGroupLeader.score);
-                bytesRefs.remove(newBytesRef, true);
-                if (bytesRefs.isEmpty())
+                ords = scoreGroups.get(previousGroupLeader.score);
+                ords.remove(ord);
+                if (ords.isEmpty())
                     scoreGroups.remove(previousGroupLeader.score);
             }
 
             if (groupLeaders.size() > maxSize) {
                 final float firstScoreKey = scoreGroups.firstFloatKey();
-                bytesRefs = scoreGroups.get(firstScoreKey);
-                final BytesRef lastKey = bytesRefs.lastKey();
-                bytesRefs.removeLastBoolean();
-                groupLeaders.remove(lastKey);
-                if (bytesRefs.size() == 0)
+                ords = scoreGroups.get(firstScoreKey);
+                groupLeaders.remove(ords.removeLastLong());
+                if (ords.isEmpty())
                     scoreGroups.remove(firstScoreKey);
             }
         }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.collector;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.packed.PackedInts;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The global ordinals of the sorted doc values fields, per top-level reader.
+ * Building an OrdinalMap merges the terms of every segment: it is built once per reader and per field,
+ * then purged as soon as the reader is closed.
+ */
+final class OrdinalMapCache {
+
+    private final static Map<IndexReader.CacheKey, Map<String, OrdinalMap>> ORDINAL_MAPS = new HashMap<>();
+
+    /**
+     * @param topContext the top-level context of the searcher
+     * @param fieldName  the name of the sorted doc values field
+     * @return the ordinal map, or null if the reader has only one segment (the ordinals are already global)
+     * @throws IOException if any I/O error occurs
+     */
+    static OrdinalMap get(final IndexReaderContext topContext, final String fieldName) throws IOException {
+        final List<LeafReaderContext> leaves = topContext.leaves();
+        if (leaves.size() <= 1)
+            return null;
+        final IndexReader.CacheHelper cacheHelper = topContext.reader().getReaderCacheHelper();
+        if (cacheHelper == null)
+            return build(leaves, fieldName, null);
+        final IndexReader.CacheKey readerKey = cacheHelper.getKey();
+        synchronized (ORDINAL_MAPS) {
+            final Map<String, OrdinalMap> ordinalMaps = ORDINAL_MAPS.get(readerKey);
+            if (ordinalMaps != null) {
+                final OrdinalMap ordinalMap = ordinalMaps.get(fieldName);
+                if (ordinalMap != null)
+                    return ordinalMap;
+            }
+        }
+        // Concurrent builds of the same map are possible, the last one wins
+        final OrdinalMap ordinalMap = build(leaves, fieldName, readerKey);
+        final boolean newReader;
+        synchronized (ORDINAL_MAPS) {
+            newReader = !ORDINAL_MAPS.containsKey(readerKey);
+            ORDINAL_MAPS.computeIfAbsent(readerKey, key -> new HashMap<>()).put(fieldName, ordinalMap);
+        }
+        if (newReader)
+            cacheHelper.addClosedListener(OrdinalMapCache::purge);
+        return ordinalMap;
+    }
+
+    private static OrdinalMap build(final List<LeafReaderContext> leaves, final String fieldName,
+                                    final IndexReader.CacheKey readerKey) throws IOException {
+        final SortedDocValues[] values = new SortedDocValues[leaves.size()];
+        for (final LeafReaderContext leaf : leaves)
+            values[leaf.ord] = DocValues.getSorted(leaf.reader(), fieldName);
+        return OrdinalMap.build(readerKey, values, PackedInts.DEFAULT);
+    }
+
+    private static void purge(final IndexReader.CacheKey readerKey) {
+        synchronized (ORDINAL_MAPS) {
+            ORDINAL_MAPS.remove(readerKey);
+        }
+    }
+}
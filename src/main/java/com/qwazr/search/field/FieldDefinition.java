@@ -96,6 +96,10 @@ public interface FieldDefinition {
 
     String DOC_FIELD = "$doc";
 
+    String NESTED_FIELD = "$nested$";
+
+    String ROOT_FIELD = "$root$";
+
     @JsonIgnore
     FieldTypeInterface newFieldType(final String genericFieldName,
                                     final WildcardMatcher wildcardMatcher,
@@ -140,7 +144,8 @@ public interface FieldDefinition {
         FacetField(FacetType::of),
         IntAssociatedField(IntAssociationFacetType::of),
         FloatAssociatedField(FloatAssociationFacetType::of),
-        SortedSetDocValuesFacetField(SortedSetDocValuesFacetType::of);
+        SortedSetDocValuesFacetField(SortedSetDocValuesFacetType::of),
+        NestedField(NestedFieldType::of);
 
         @NotNull
         private final FieldTypeInterface.Supplier<CustomFieldDefinition> fieldTypeSupplier;
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.field;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.qwazr.search.index.DocumentBuilder;
+import com.qwazr.utils.ObjectMappers;
+import com.qwazr.utils.WildcardMatcher;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Each value (a map, or an object converted to a map) is a child document.
+ * The children are indexed with their parent as a single block: the fields of a child are the fields of the index.
+ */
+final class NestedFieldType extends CustomFieldTypeAbstract {
+
+    private final static TypeReference<Map<String, Object>> MAP_TYPE_REF = new TypeReference<>() {
+    };
+
+    private NestedFieldType(final Builder<CustomFieldDefinition> builder) {
+        super(builder);
+    }
+
+    static NestedFieldType of(final String genericFieldName,
+                              final WildcardMatcher wildcardMatcher,
+                              final CustomFieldDefinition definition) {
+        return new NestedFieldType(CustomFieldTypeAbstract
+            .of(genericFieldName, wildcardMatcher, definition)
+            .fieldSupplier(NestedFieldType::acceptChild));
+    }
+
+    private static void acceptChild(final String fieldName,
+                                    final Object value,
+                                    final DocumentBuilder<?> documentBuilder) {
+        documentBuilder.acceptChild(fieldName, ObjectMappers.JSON.convertValue(value, MAP_TYPE_REF));
+    }
+
+    @Override
+    protected void fillMap(final String fieldName,
+                           final Map<Object, Object> values,
+                           final DocumentBuilder<?> documentBuilder) {
+        final Map<String, Object> child = new LinkedHashMap<>();
+        values.forEach((key, value) -> child.put(key.toString(), value));
+        documentBuilder.acceptChild(fieldName, child);
+    }
+}
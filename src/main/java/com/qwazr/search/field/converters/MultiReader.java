@@ -22,21 +22,31 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MultiReader {
 
     final int[] docBases;
     final LeafReader[] leafReaders;
 
+    /**
+     * Doc values iterators shared by the lookups of the current leaf while the forward-only mode is active
+     */
+    private Map<String, DocIdSetIterator> forwardOnlyIterators;
+    private int forwardOnlyLeaf;
+
     public MultiReader(final IndexReader reader) {
         docBases = new int[reader.leaves().size()];
         leafReaders = new LeafReader[docBases.length];
@@ -50,101 +60,132 @@ public class MultiReader {
     final static int NOT_FOUND = -1;
 
     int getLeafReader(final int docId) {
-        int i = NOT_FOUND;
-        for (final int docBase : docBases) {
-            if (docBase > docId)
-                break;
-            i++;
+        if (docBases.length == 0 || docId < 0)
+            return NOT_FOUND;
+        return ReaderUtil.subIndex(docId, docBases);
+    }
+
+    /**
+     * Switch to the forward-only mode. Until the returned handle is closed, each doc values iterator is opened
+     * once per leaf and reused by the following lookups, without any locking.
+     * The documents must then be read by a single thread, in increasing docId order.
+     *
+     * @return a handle which restores the default mode when closed
+     */
+    public ForwardOnly forwardOnly() {
+        return new ForwardOnly();
+    }
+
+    public final class ForwardOnly implements AutoCloseable {
+
+        private ForwardOnly() {
+            forwardOnlyIterators = new HashMap<>();
+            forwardOnlyLeaf = NOT_FOUND;
+        }
+
+        @Override
+        public void close() {
+            forwardOnlyIterators = null;
         }
-        return i <= docBases.length ? i : NOT_FOUND;
     }
 
-    long getNumericDocValues(final int docId, final String field) throws IOException {
+    @FunctionalInterface
+    private interface DocValuesOpener<T extends DocIdSetIterator> {
+        T open(final LeafReader leafReader, final String field) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface DocValuesAdvancer<T extends DocIdSetIterator> {
+        boolean advanceExact(final T docValues, final int target) throws IOException;
+    }
+
+    /**
+     * Locate the leaf of the document and position the doc values iterator of the given field on it.
+     *
+     * @return the positioned iterator, or null if the document has no value for this field
+     */
+    private <T extends DocIdSetIterator> T advanceExact(final int docId,
+                                                        final String field,
+                                                        final DocValuesOpener<T> opener,
+                                                        final DocValuesAdvancer<T> advancer) throws IOException {
         final int pos = getLeafReader(docId);
         if (pos == NOT_FOUND)
-            return 0;
-        final NumericDocValues docValues = leafReaders[pos].getNumericDocValues(field);
+            return null;
+        final int target = docId - docBases[pos];
+        final T docValues;
+        if (forwardOnlyIterators == null)
+            docValues = opener.open(leafReaders[pos], field);
+        else
+            docValues = getForwardOnly(pos, target, field, opener);
         if (docValues == null)
-            return 0;
-        synchronized (docValues) {
-            final int target = docId - docBases[pos];
-            if (docValues.advance(target) != target)
-                return 0;
-            return docValues.longValue();
+            return null;
+        return advancer.advanceExact(docValues, target) ? docValues : null;
+    }
+
+    private <T extends DocIdSetIterator> T getForwardOnly(final int pos,
+                                                          final int target,
+                                                          final String field,
+                                                          final DocValuesOpener<T> opener) throws IOException {
+        if (pos != forwardOnlyLeaf) {
+            forwardOnlyIterators.clear();
+            forwardOnlyLeaf = pos;
         }
+        @SuppressWarnings("unchecked") final T current = (T) forwardOnlyIterators.get(field);
+        if (current != null && current.docID() < target)
+            return current;
+        if (current == null && forwardOnlyIterators.containsKey(field))
+            return null; // This leaf has no doc values for this field
+        // First lookup on this leaf, or the iterator can't go backward: we need a new one
+        final T docValues = opener.open(leafReaders[pos], field);
+        forwardOnlyIterators.put(field, docValues);
+        return docValues;
+    }
+
+    long getNumericDocValues(final int docId, final String field) throws IOException {
+        final NumericDocValues docValues =
+            advanceExact(docId, field, LeafReader::getNumericDocValues, NumericDocValues::advanceExact);
+        return docValues == null ? 0 : docValues.longValue();
     }
 
     BytesRef getSortedDocValues(final int docId, final String field) throws IOException {
-        final int pos = getLeafReader(docId);
-        if (pos == NOT_FOUND)
-            return BytesRefUtils.EMPTY;
-        final SortedDocValues docValues = leafReaders[pos].getSortedDocValues(field);
-        if (docValues == null)
-            return BytesRefUtils.EMPTY;
-        synchronized (docValues) {
-            final int target = docId - docBases[pos];
-            if (docValues.advance(target) != target)
-                return BytesRefUtils.EMPTY;
-            return BytesRef.deepCopyOf(docValues.binaryValue());
-        }
+        final SortedDocValues docValues =
+            advanceExact(docId, field, LeafReader::getSortedDocValues, SortedDocValues::advanceExact);
+        return docValues == null ? BytesRefUtils.EMPTY : BytesRef.deepCopyOf(docValues.binaryValue());
     }
 
     BytesRef getBinaryDocValues(final int docId, final String field) throws IOException {
-        final int pos = getLeafReader(docId);
-        if (pos == NOT_FOUND)
-            return BytesRefUtils.EMPTY;
-        final BinaryDocValues docValues = leafReaders[pos].getBinaryDocValues(field);
-        if (docValues == null)
-            return BytesRefUtils.EMPTY;
-        synchronized (docValues) {
-            final int target = docId - docBases[pos];
-            if (docValues.advance(target) != target)
-                return BytesRefUtils.EMPTY;
-            return docValues.binaryValue();
-        }
+        final BinaryDocValues docValues =
+            advanceExact(docId, field, LeafReader::getBinaryDocValues, BinaryDocValues::advanceExact);
+        return docValues == null ? BytesRefUtils.EMPTY : docValues.binaryValue();
     }
 
     final static long[] empty = new long[0];
 
     long[] getSortedNumericDocValues(final int docId, final String field) throws IOException {
-        final int pos = getLeafReader(docId);
-        if (pos == NOT_FOUND)
-            return empty;
-        final SortedNumericDocValues docValues = leafReaders[pos].getSortedNumericDocValues(field);
+        final SortedNumericDocValues docValues =
+            advanceExact(docId, field, LeafReader::getSortedNumericDocValues, SortedNumericDocValues::advanceExact);
         if (docValues == null)
             return empty;
-        synchronized (docValues) {
-            final int target = docId - docBases[pos];
-            if (docValues.advance(target) != target)
-                return empty;
-            final int count = docValues.docValueCount();
-            if (count == 0)
-                return empty;
-            final long[] values = new long[count];
-            for (int i = 0; i < count; i++)
-                values[i] = docValues.nextValue();
-            return values;
-        }
+        final int count = docValues.docValueCount();
+        if (count == 0)
+            return empty;
+        final long[] values = new long[count];
+        for (int i = 0; i < count; i++)
+            values[i] = docValues.nextValue();
+        return values;
     }
 
     List<String> getSortedSetDocValues(final int docId, final String field) throws IOException {
-        final int pos = getLeafReader(docId);
-        if (pos == NOT_FOUND)
-            return Collections.emptyList();
-        final SortedSetDocValues docValues = leafReaders[pos].getSortedSetDocValues(field);
+        final SortedSetDocValues docValues =
+            advanceExact(docId, field, LeafReader::getSortedSetDocValues, SortedSetDocValues::advanceExact);
         if (docValues == null)
             return Collections.emptyList();
-        synchronized (docValues) {
-            final int target = docId - docBases[pos];
-            if (docValues.advance(target) != target)
-                return Collections.emptyList();
-            final List<String> values = new ArrayList<>();
-            long ord;
-            while ((ord = docValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
-                values.add(docValues.lookupOrd(ord).utf8ToString());
-            }
-            return values;
+        final List<String> values = new ArrayList<>();
+        long ord;
+        while ((ord = docValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+            values.add(docValues.lookupOrd(ord).utf8ToString());
         }
+        return values;
     }
 
 }
@@ -56,13 +56,28 @@ public class BackupStatus {
     @JsonProperty("files_count")
     final public Integer filesCount;
 
+    /**
+     * The bytes copied by the backup which produced this status.
+     * Not part of the identity of the backup: null when the backups are listed.
+     */
+    @JsonProperty("copied_bytes")
+    final public Long copiedBytes;
+
+    /**
+     * The size of the unchanged files hard-linked from the previous backups, by the backup which produced this status.
+     * Not part of the identity of the backup: null when the backups are listed.
+     */
+    @JsonProperty("linked_bytes")
+    final public Long linkedBytes;
+
     private final int hashCode;
 
     @JsonCreator
     BackupStatus(@JsonProperty("index_version") Long indexVersion,
                  @JsonProperty("taxonomy_version") Long taxonomyVersion, @JsonProperty("date") Long date,
                  @JsonProperty("human_date") String humanDate, @JsonProperty("bytes_size") Long bytesSize,
-                 @JsonProperty("files_count") Integer filesCount) {
+                 @JsonProperty("files_count") Integer filesCount, @JsonProperty("copied_bytes") Long copiedBytes,
+                 @JsonProperty("linked_bytes") Long linkedBytes) {
 
         this.indexVersion = indexVersion;
         this.taxonomyVersion = taxonomyVersion;
@@ -70,6 +85,8 @@ public class BackupStatus {
         this.date = date;
         this.bytesSize = bytesSize;
         this.filesCount = filesCount;
+        this.copiedBytes = copiedBytes;
+        this.linkedBytes = linkedBytes;
 
         this.hashCode = new HashCodeBuilder().append(date)
             .append(bytesSize)
@@ -79,6 +96,14 @@ public class BackupStatus {
     }
 
     static BackupStatus newBackupStatus(final Path backupDir, final boolean extractVersion) throws IOException {
+        return newBackupStatus(backupDir, extractVersion, null);
+    }
+
+    /**
+     * @param transferStatus the status of the backup which has just been done, or null
+     */
+    static BackupStatus newBackupStatus(final Path backupDir, final boolean extractVersion,
+                                        final ReplicationStatus transferStatus) throws IOException {
         if (backupDir == null)
             return null;
 
@@ -134,7 +159,9 @@ public class BackupStatus {
             date = null;
             humanDate = null;
         }
-        return new BackupStatus(indexVersion, taxonomyVersion, date, humanDate, size.get(), count.get());
+        return new BackupStatus(indexVersion, taxonomyVersion, date, humanDate, size.get(), count.get(),
+            transferStatus == null ? null : transferStatus.bytes,
+            transferStatus == null ? null : transferStatus.linkedBytes);
     }
 
     private static Long getIndexVersion(final Path indexPath) throws IOException {
@@ -34,15 +34,22 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
 
     final public Integer start;
     final public Integer rows;
+    final public String cursor;
 
     final public LinkedHashSet<String> returnedFields;
 
     final public Boolean queryDebug;
 
+    final public Boolean concurrentFacets;
+
+    final public Integer totalHitsThreshold;
+
     final public LinkedHashMap<String, FacetDefinition> facets;
 
     final public LinkedHashMap<String, HighlighterDefinition> highlighters;
 
+    final public LinkedHashMap<String, InnerHitsDefinition> innerHits;
+
     final public Map<String, String> commitUserData;
 
     final public Query luceneQuery;
@@ -50,23 +57,31 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
     @JsonCreator
     public BaseQueryDefinition(@JsonProperty("start") Integer start,
                                @JsonProperty("rows") Integer rows,
+                               @JsonProperty("cursor") String cursor,
                                @JsonProperty("returned_fields") LinkedHashSet<String> returnedFields,
                                @JsonProperty("query_debug") Boolean queryDebug,
+                               @JsonProperty("concurrent_facets") Boolean concurrentFacets,
+                               @JsonProperty("total_hits_threshold") Integer totalHitsThreshold,
                                @JsonProperty("sorts") LinkedHashMap<String, SortEnum> sorts,
                                @JsonProperty("collectors") LinkedHashMap<String, CollectorDefinition> collectors,
                                @JsonProperty("facets") LinkedHashMap<String, FacetDefinition> facets,
                                @JsonProperty("highlighters") LinkedHashMap<String, HighlighterDefinition> highlighters,
+                               @JsonProperty("inner_hits") LinkedHashMap<String, InnerHitsDefinition> innerHits,
                                @JsonProperty("query") QueryInterface query,
                                @JsonProperty("commit_user_data") Map<String, String> commitUserData) {
         super(BaseQueryDefinition.class);
         this.start = start;
         this.rows = rows;
+        this.cursor = cursor;
         this.returnedFields = returnedFields == null || returnedFields.isEmpty() ? null : returnedFields;
         this.queryDebug = queryDebug;
+        this.concurrentFacets = concurrentFacets;
+        this.totalHitsThreshold = totalHitsThreshold;
         this.sorts = sorts;
         this.collectors = collectors == null || collectors.isEmpty() ? null : collectors;
         this.facets = facets == null ? null : facets.isEmpty() ? null : facets;
         this.highlighters = highlighters == null || highlighters.isEmpty() ? null : highlighters;
+        this.innerHits = innerHits == null || innerHits.isEmpty() ? null : innerHits;
         this.query = query;
         this.commitUserData = commitUserData == null || commitUserData.isEmpty() ? null : commitUserData;
         this.luceneQuery = null;
@@ -76,12 +91,16 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
         super(BaseQueryDefinition.class);
         start = builder.start;
         rows = builder.rows;
+        cursor = builder.cursor;
         returnedFields = builder.returnedFields == null || builder.returnedFields.isEmpty() ? null : builder.returnedFields;
         queryDebug = builder.queryDebug;
+        concurrentFacets = builder.concurrentFacets;
+        totalHitsThreshold = builder.totalHitsThreshold;
         facets = builder.facets == null || builder.facets.isEmpty() ? null : builder.facets;
         sorts = builder.sorts;
         collectors = builder.collectors == null || builder.collectors.isEmpty() ? null : builder.collectors;
         highlighters = builder.highlighters == null || builder.highlighters.isEmpty() ? null : builder.highlighters;
+        innerHits = builder.innerHits == null || builder.innerHits.isEmpty() ? null : builder.innerHits;
         query = builder.query;
         luceneQuery = builder.luceneQuery;
         commitUserData = builder.commitUserData == null || builder.commitUserData.isEmpty() ? null : builder.commitUserData;
@@ -115,10 +134,14 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
             && Objects.equals(collectors, q.collectors)
             && Objects.equals(start, q.start)
             && Objects.equals(rows, q.rows)
+            && Objects.equals(cursor, q.cursor)
             && Objects.equals(returnedFields, q.returnedFields)
             && Objects.equals(queryDebug, q.queryDebug)
+            && Objects.equals(concurrentFacets, q.concurrentFacets)
+            && Objects.equals(totalHitsThreshold, q.totalHitsThreshold)
             && Objects.equals(facets, q.facets)
             && Objects.equals(highlighters, q.highlighters)
+            && Objects.equals(innerHits, q.innerHits)
             && Objects.equals(commitUserData, q.commitUserData)
             && Objects.equals(luceneQuery, q.luceneQuery);
     }
@@ -139,6 +162,11 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
         return rows;
     }
 
+    @Override
+    public String getCursor() {
+        return cursor;
+    }
+
     @Override
     public LinkedHashSet<String> getReturnedFields() {
         return returnedFields;
@@ -149,6 +177,16 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
         return queryDebug;
     }
 
+    @Override
+    public Boolean getConcurrentFacets() {
+        return concurrentFacets;
+    }
+
+    @Override
+    public Integer getTotalHitsThreshold() {
+        return totalHitsThreshold;
+    }
+
     @Override
     public LinkedHashMap<String, SortEnum> getSorts() {
         return sorts;
@@ -169,6 +207,11 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
         return highlighters;
     }
 
+    @Override
+    public LinkedHashMap<String, InnerHitsDefinition> getInnerHits() {
+        return innerHits;
+    }
+
     @Override
     public Map<String, String> getCommitUserData() {
         return commitUserData;
@@ -184,12 +227,16 @@ public class BaseQueryDefinition extends Equalizer.Immutable<BaseQueryDefinition
         return new QueryBuilder()
             .start(start)
             .rows(rows)
+            .cursor(cursor)
             .returnedField(returnedFields)
             .queryDebug(queryDebug)
+            .concurrentFacets(concurrentFacets)
+            .totalHitsThreshold(totalHitsThreshold)
             .sorts(sorts)
             .collectors(collectors)
             .facets(facets)
             .highlighters(highlighters)
+            .innerHits(innerHits)
             .query(query)
             .commitUserData(commitUserData)
             .query(luceneQuery);
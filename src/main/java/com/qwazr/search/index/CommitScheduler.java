@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.server.ServerException;
+import com.qwazr.utils.LoggerUtils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides when the changes made by the write requests are committed,
+ * depending on the commit policy of the index.
+ */
+abstract class CommitScheduler implements Closeable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(CommitScheduler.class);
+
+    @FunctionalInterface
+    interface IndexAction {
+        void apply() throws IOException;
+    }
+
+    protected final String indexName;
+    protected final IndexAction commitAction;
+
+    private CommitScheduler(final String indexName, final IndexAction commitAction) {
+        this.indexName = indexName;
+        this.commitAction = commitAction;
+    }
+
+    static CommitScheduler of(final String indexName,
+                              final IndexSettingsDefinition settings,
+                              final IndexAction commitAction,
+                              final IndexAction refreshAction) {
+        final IndexSettingsDefinition.CommitPolicy commitPolicy = settings == null || settings.commitPolicy == null ?
+            IndexSettingsDefinition.CommitPolicy.PER_REQUEST : settings.commitPolicy;
+        final Integer maxLatencyMs = settings == null ? null : settings.commitMaxLatencyMs;
+        switch (commitPolicy) {
+            case GROUP_COMMIT:
+                return new GroupCommit(indexName, commitAction,
+                    maxLatencyMs == null || maxLatencyMs <= 0 ?
+                        IndexSettingsDefinition.DEFAULT_GROUP_COMMIT_MAX_LATENCY_MS : maxLatencyMs,
+                    settings.commitMaxDocs == null ? 0 : settings.commitMaxDocs);
+            case NRT_REFRESH:
+                return new NrtRefresh(indexName, commitAction, refreshAction,
+                    maxLatencyMs == null || maxLatencyMs <= 0 ?
+                        IndexSettingsDefinition.DEFAULT_NRT_COMMIT_MAX_LATENCY_MS : maxLatencyMs);
+            default:
+                return new PerRequest(indexName, commitAction);
+        }
+    }
+
+    /**
+     * Called once the changes of a write request have been passed to the IndexWriter,
+     * after the write semaphore of the index has been released.
+     *
+     * @param changes the number of changed documents
+     * @throws IOException if the commit failed
+     */
+    abstract void afterWrite(int changes) throws IOException;
+
+    /**
+     * Commit now, whatever the policy is. Returns once the pending changes are durable.
+     *
+     * @throws IOException if the commit failed
+     */
+    void commit() throws IOException {
+        commitAction.apply();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static ScheduledExecutorService newScheduler(final String indexName) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Commit scheduler - Index: " + indexName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * One commit (with its fsync) per write request. This is the default.
+     */
+    final static class PerRequest extends CommitScheduler {
+
+        private PerRequest(final String indexName, final IndexAction commitAction) {
+            super(indexName, commitAction);
+        }
+
+        @Override
+        void afterWrite(final int changes) throws IOException {
+            commitAction.apply();
+        }
+    }
+
+    /**
+     * The concurrent write requests are grouped and committed together, either when the oldest one
+     * has waited for the max latency, or when the group reaches the max number of documents.
+     * The callers still wait for their group to be committed.
+     */
+    final static class GroupCommit extends CommitScheduler {
+
+        private final ScheduledExecutorService scheduler;
+        private final long maxLatencyMs;
+        private final int maxDocs;
+        private Group currentGroup;
+
+        private GroupCommit(final String indexName, final IndexAction commitAction,
+                            final long maxLatencyMs, final int maxDocs) {
+            super(indexName, commitAction);
+            this.scheduler = newScheduler(indexName);
+            this.maxLatencyMs = maxLatencyMs;
+            this.maxDocs = maxDocs;
+        }
+
+        private final static class Group {
+
+            private final CompletableFuture<Void> committed = new CompletableFuture<>();
+            private ScheduledFuture<?> timer;
+            private long docs;
+        }
+
+        @Override
+        void afterWrite(final int changes) throws IOException {
+            final Group group;
+            final boolean full;
+            synchronized (this) {
+                if (currentGroup == null) {
+                    currentGroup = new Group();
+                    currentGroup.timer = scheduler.schedule(() -> {
+                        flush();
+                    }, maxLatencyMs, TimeUnit.MILLISECONDS);
+                }
+                group = currentGroup;
+                group.docs += changes;
+                full = maxDocs > 0 && group.docs >= maxDocs;
+            }
+            if (full)
+                flush();
+            await(group);
+        }
+
+        private void await(final Group group) throws IOException {
+            try {
+                group.committed.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ServerException.of("Interrupted while waiting for the commit - Index: " + indexName, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw ServerException.of(e.getCause());
+            }
+        }
+
+        private synchronized Group takeGroup() {
+            final Group group = currentGroup;
+            currentGroup = null;
+            return group;
+        }
+
+        private Group flush() {
+            final Group group = takeGroup();
+            if (group == null)
+                return null;
+            group.timer.cancel(false);
+            try {
+                commitAction.apply();
+                group.committed.complete(null);
+            } catch (IOException | RuntimeException e) {
+                group.committed.completeExceptionally(e);
+            }
+            return group;
+        }
+
+        @Override
+        void commit() throws IOException {
+            final Group group = flush();
+            if (group == null)
+                commitAction.apply();
+            else
+                await(group);
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+            flush();
+        }
+    }
+
+    /**
+     * The searcher is refreshed after each write request, so the changes are visible,
+     * but the commit (and the fsync) only happens in background, at most every max latency.
+     * The callers do not wait for durability, unless they explicitly ask for a commit.
+     */
+    final static class NrtRefresh extends CommitScheduler {
+
+        private final IndexAction refreshAction;
+        private final ScheduledExecutorService scheduler;
+        private final AtomicBoolean pendingChanges;
+
+        private NrtRefresh(final String indexName, final IndexAction commitAction, final IndexAction refreshAction,
+                           final long maxLatencyMs) {
+            super(indexName, commitAction);
+            this.refreshAction = refreshAction;
+            this.pendingChanges = new AtomicBoolean();
+            this.scheduler = newScheduler(indexName);
+            this.scheduler.scheduleWithFixedDelay(this::periodicCommit, maxLatencyMs, maxLatencyMs,
+                TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        void afterWrite(final int changes) throws IOException {
+            pendingChanges.set(true);
+            refreshAction.apply();
+        }
+
+        private void periodicCommit() {
+            if (!pendingChanges.getAndSet(false))
+                return;
+            try {
+                commitAction.apply();
+            } catch (IOException | RuntimeException e) {
+                pendingChanges.set(true);
+                LOGGER.log(Level.WARNING, e, () -> "Periodic commit failure - Index: " + indexName);
+            }
+        }
+
+        @Override
+        void commit() throws IOException {
+            pendingChanges.set(false);
+            try {
+                commitAction.apply();
+            } catch (IOException | RuntimeException e) {
+                pendingChanges.set(true);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+            periodicCommit();
+        }
+    }
+}
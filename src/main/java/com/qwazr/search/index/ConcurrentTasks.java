@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.server.ServerException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs tasks concurrently on an executor. The first task runs in the current thread.
+ * Every task is awaited, even on failure, as the tasks usually share a resource of the caller
+ * (the searcher of the current request, a writer, a download queue).
+ */
+public final class ConcurrentTasks {
+
+    @FunctionalInterface
+    public interface Task<R> {
+        R call() throws IOException;
+    }
+
+    /**
+     * @param tasks           the tasks
+     * @param executorService the executor, or null to run the tasks sequentially in the current thread
+     * @param <R>             the type of the results
+     * @return the results, in the order of the tasks
+     * @throws IOException if any task failed with an I/O error
+     */
+    public static <R> List<R> run(final List<Task<R>> tasks, final ExecutorService executorService) throws IOException {
+        final List<R> results = new ArrayList<>(tasks.size());
+        if (executorService == null || tasks.size() <= 1) {
+            for (final Task<R> task : tasks)
+                results.add(task.call());
+            return results;
+        }
+        final List<CompletableFuture<R>> futures = new ArrayList<>(tasks.size() - 1);
+        for (final Task<R> task : tasks.subList(1, tasks.size()))
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.call();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executorService));
+        Throwable error = null;
+        try {
+            results.add(tasks.get(0).call());
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        for (final CompletableFuture<R> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (error == null)
+                    error = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            }
+        }
+        if (error instanceof IOException)
+            throw (IOException) error;
+        if (error instanceof RuntimeException)
+            throw (RuntimeException) error;
+        if (error != null)
+            throw ServerException.of(error);
+        return results;
+    }
+}
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import javax.ws.rs.NotAcceptableException;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.facet.FacetsConfig;
@@ -36,6 +37,12 @@ public interface DocumentBuilder<RESULT> {
                           final String dimensionName,
                           final FieldTypeInterface.FacetsConfigSupplier facetsConfigSupplier);
 
+    /**
+     * @param fieldName the name of the nested field
+     * @param child     the fields of the child document
+     */
+    void acceptChild(final String fieldName, final Map<String, ?> child);
+
     RESULT build() throws IOException;
 
     static DocumentBuilder.ForLuceneDocument of(final FieldMap fieldMap, final TaxonomyWriter taxonomyWriter) {
@@ -50,17 +57,20 @@ public interface DocumentBuilder<RESULT> {
         protected final FacetsConfig facetsConfig;
         private final Map<String, FacetsConfig.DimConfig> dimConfigs;
         protected final Document document;
+        private final List<Pair<String, Map<String, ?>>> children;
 
         private ForLuceneDocument(final FieldsContext fieldsContext) {
             this.fieldsContext = fieldsContext;
             this.facetsConfig = new FacetsConfig();
             this.dimConfigs = facetsConfig.getDimConfigs();
             this.document = new Document();
+            this.children = new ArrayList<>();
         }
 
         @Override
         final public void reset() {
             document.clear();
+            children.clear();
         }
 
         @Override
@@ -77,6 +87,18 @@ public interface DocumentBuilder<RESULT> {
                 facetsConfigSupplier.setConfig(dimensionName, fieldsContext, facetsConfig);
         }
 
+        @Override
+        final public void acceptChild(final String fieldName, final Map<String, ?> child) {
+            children.add(Pair.of(fieldName, child));
+        }
+
+        /**
+         * @return the nested field name and the fields of each child document, in the order of the record
+         */
+        final List<Pair<String, Map<String, ?>>> children() {
+            return children;
+        }
+
         public Document build() throws IOException {
             return facetsConfig.build(document);
         }
@@ -128,6 +150,11 @@ public interface DocumentBuilder<RESULT> {
             throw new NotAcceptableException("Facet field can't be used for a DocValues update: " + field.name());
         }
 
+        @Override
+        final public void acceptChild(final String fieldName, final Map<String, ?> child) {
+            throw new NotAcceptableException("Nested field can't be used for a DocValues update: " + fieldName);
+        }
+
         private final static Field[] EMPTY_FIELDS = new Field[0];
 
         @Override
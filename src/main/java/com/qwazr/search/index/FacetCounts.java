@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.server.ServerException;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.ConcurrentSortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
+import org.apache.lucene.facet.taxonomy.FloatTaxonomyFacets;
+import org.apache.lucene.facet.taxonomy.IntTaxonomyFacets;
+import org.apache.lucene.facet.taxonomy.TaxonomyFacetSumFloatAssociations;
+import org.apache.lucene.facet.taxonomy.TaxonomyFacetSumIntAssociations;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.search.ConjunctionDISI;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Builds the facet counts of the matching documents.
+ * <p>
+ * The concurrent mode splits the segments between tasks running on the executor of the index.
+ * Each task counts its segments in its own array, then the arrays are merged. The sorted set facets use
+ * ConcurrentSortedSetDocValuesFacetCounts, the taxonomy facets (counts and associations) are counted the same way
+ * than the single-threaded Lucene implementations.
+ */
+final class FacetCounts {
+
+    private final static int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private final static FacetCounts SINGLE_THREADED = new FacetCounts(null);
+
+    private final ExecutorService executorService;
+
+    private FacetCounts(final ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * @param concurrent      true to count the segments concurrently
+     * @param executorService the executor of the index
+     * @return the single-threaded counts if concurrent is false or if there is no executor
+     */
+    static FacetCounts of(final boolean concurrent, final ExecutorService executorService) {
+        return concurrent && executorService != null ? new FacetCounts(executorService) : SINGLE_THREADED;
+    }
+
+    Facets sortedSet(final SortedSetDocValuesReaderState state, final FacetsCollector facetsCollector)
+        throws IOException {
+        if (executorService == null)
+            return new SortedSetDocValuesFacetCounts(state, facetsCollector);
+        try {
+            return new ConcurrentSortedSetDocValuesFacetCounts(state, facetsCollector, executorService);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ServerException.of("Interrupted while counting the facets", e);
+        }
+    }
+
+    Facets taxonomy(final TaxonomyReader taxonomyReader, final FacetsConfig facetsConfig,
+                    final FacetsCollector facetsCollector) throws IOException {
+        if (executorService == null)
+            return new FastTaxonomyFacetCounts(taxonomyReader, facetsConfig, facetsCollector);
+        final String indexFieldName = FacetsConfig.DEFAULT_INDEX_FIELD_NAME;
+        final int size = taxonomyReader.getSize();
+        return new ConcurrentIntTaxonomyFacets(indexFieldName, taxonomyReader, facetsConfig, facetsCollector,
+            countSegments(facetsCollector, () -> new int[size],
+                (matchingDocs, values) -> countOrdinals(matchingDocs, indexFieldName, values)), true);
+    }
+
+    Facets intAssociations(final String indexFieldName, final TaxonomyReader taxonomyReader,
+                           final FacetsConfig facetsConfig, final FacetsCollector facetsCollector)
+        throws IOException {
+        if (executorService == null)
+            return new TaxonomyFacetSumIntAssociations(indexFieldName, taxonomyReader, facetsConfig, facetsCollector);
+        final int size = taxonomyReader.getSize();
+        return new ConcurrentIntTaxonomyFacets(indexFieldName, taxonomyReader, facetsConfig, facetsCollector,
+            countSegments(facetsCollector, () -> new int[size],
+                (matchingDocs, values) -> sumIntAssociations(matchingDocs, indexFieldName, values)), false);
+    }
+
+    Facets floatAssociations(final String indexFieldName, final TaxonomyReader taxonomyReader,
+                             final FacetsConfig facetsConfig, final FacetsCollector facetsCollector)
+        throws IOException {
+        if (executorService == null)
+            return new TaxonomyFacetSumFloatAssociations(indexFieldName, taxonomyReader, facetsConfig,
+                facetsCollector);
+        final int size = taxonomyReader.getSize();
+        return new ConcurrentFloatTaxonomyFacets(indexFieldName, taxonomyReader, facetsConfig,
+            countSegments(facetsCollector, () -> new float[size],
+                (matchingDocs, values) -> sumFloatAssociations(matchingDocs, indexFieldName, values)));
+    }
+
+    @FunctionalInterface
+    private interface SegmentCounter<A> {
+        void count(FacetsCollector.MatchingDocs matchingDocs, A values) throws IOException;
+    }
+
+    /**
+     * The segments are spread between the tasks, the biggest first, each one to the least loaded task.
+     *
+     * @return the values counted by each task
+     */
+    private <A> List<A> countSegments(final FacetsCollector facetsCollector, final Supplier<A> valuesSupplier,
+                                      final SegmentCounter<A> segmentCounter) throws IOException {
+        final List<FacetsCollector.MatchingDocs> segments = new ArrayList<>();
+        for (final FacetsCollector.MatchingDocs matchingDocs : facetsCollector.getMatchingDocs())
+            if (matchingDocs.totalHits > 0)
+                segments.add(matchingDocs);
+        segments.sort(Comparator.comparingInt((FacetsCollector.MatchingDocs m) -> m.totalHits).reversed());
+        final int taskCount = Math.max(1, Math.min(segments.size(), PARALLELISM));
+        final List<List<FacetsCollector.MatchingDocs>> partitions = new ArrayList<>(taskCount);
+        final long[] loads = new long[taskCount];
+        for (int i = 0; i < taskCount; i++)
+            partitions.add(new ArrayList<>());
+        for (final FacetsCollector.MatchingDocs matchingDocs : segments) {
+            int lowest = 0;
+            for (int i = 1; i < taskCount; i++)
+                if (loads[i] < loads[lowest])
+                    lowest = i;
+            partitions.get(lowest).add(matchingDocs);
+            loads[lowest] += matchingDocs.totalHits;
+        }
+        final List<ConcurrentTasks.Task<A>> tasks = new ArrayList<>(taskCount);
+        for (final List<FacetsCollector.MatchingDocs> partition : partitions)
+            tasks.add(() -> {
+                final A values = valuesSupplier.get();
+                for (final FacetsCollector.MatchingDocs matchingDocs : partition)
+                    segmentCounter.count(matchingDocs, values);
+                return values;
+            });
+        return ConcurrentTasks.run(tasks, executorService);
+    }
+
+    /**
+     * Same decoding than FastTaxonomyFacetCounts: vInt deltas of the ordinals.
+     */
+    private static void countOrdinals(final FacetsCollector.MatchingDocs matchingDocs, final String indexFieldName,
+                                      final int[] values) throws IOException {
+        final BinaryDocValues docValues = matchingDocs.context.reader().getBinaryDocValues(indexFieldName);
+        if (docValues == null)
+            return;
+        final DocIdSetIterator docs =
+            ConjunctionDISI.intersectIterators(Arrays.asList(matchingDocs.bits.iterator(), docValues));
+        for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+            final BytesRef bytesRef = docValues.binaryValue();
+            final byte[] bytes = bytesRef.bytes;
+            final int end = bytesRef.offset + bytesRef.length;
+            int ord = 0;
+            int offset = bytesRef.offset;
+            int prev = 0;
+            while (offset < end) {
+                final byte b = bytes[offset++];
+                if (b >= 0) {
+                    prev = ord = ((ord << 7) | b) + prev;
+                    values[ord]++;
+                    ord = 0;
+                } else
+                    ord = (ord << 7) | (b & 0x7F);
+            }
+        }
+    }
+
+    private interface AssociationConsumer {
+        void accept(int ord, int value);
+    }
+
+    /**
+     * Same decoding than the Lucene associations: pairs of ordinal and value, both 4 bytes big endian.
+     */
+    private static void readAssociations(final FacetsCollector.MatchingDocs matchingDocs, final String indexFieldName,
+                                         final AssociationConsumer consumer) throws IOException {
+        final BinaryDocValues docValues = matchingDocs.context.reader().getBinaryDocValues(indexFieldName);
+        if (docValues == null)
+            return;
+        final DocIdSetIterator docs = matchingDocs.bits.iterator();
+        int doc;
+        while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            if (docValues.docID() < doc)
+                docValues.advance(doc);
+            if (docValues.docID() != doc)
+                continue;
+            final BytesRef bytesRef = docValues.binaryValue();
+            final byte[] bytes = bytesRef.bytes;
+            final int end = bytesRef.offset + bytesRef.length;
+            int offset = bytesRef.offset;
+            while (offset < end) {
+                final int ord = readInt(bytes, offset);
+                consumer.accept(ord, readInt(bytes, offset + 4));
+                offset += 8;
+            }
+        }
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) |
+            ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void sumIntAssociations(final FacetsCollector.MatchingDocs matchingDocs,
+                                           final String indexFieldName, final int[] values) throws IOException {
+        readAssociations(matchingDocs, indexFieldName, (ord, value) -> values[ord] += value);
+    }
+
+    private static void sumFloatAssociations(final FacetsCollector.MatchingDocs matchingDocs,
+                                             final String indexFieldName, final float[] values) throws IOException {
+        readAssociations(matchingDocs, indexFieldName, (ord, value) -> values[ord] += Float.intBitsToFloat(value));
+    }
+
+    private static final class ConcurrentIntTaxonomyFacets extends IntTaxonomyFacets {
+
+        private ConcurrentIntTaxonomyFacets(final String indexFieldName, final TaxonomyReader taxonomyReader,
+                                            final FacetsConfig facetsConfig, final FacetsCollector facetsCollector,
+                                            final List<int[]> valuesList, final boolean rollup) throws IOException {
+            super(indexFieldName, taxonomyReader, facetsConfig, facetsCollector);
+            for (final int[] values : valuesList)
+                for (int ord = 0; ord < values.length; ord++)
+                    if (values[ord] != 0)
+                        increment(ord, values[ord]);
+            if (rollup)
+                rollup();
+        }
+    }
+
+    private static final class ConcurrentFloatTaxonomyFacets extends FloatTaxonomyFacets {
+
+        private ConcurrentFloatTaxonomyFacets(final String indexFieldName, final TaxonomyReader taxonomyReader,
+                                              final FacetsConfig facetsConfig, final List<float[]> valuesList)
+            throws IOException {
+            super(indexFieldName, taxonomyReader, facetsConfig);
+            for (final float[] partialValues : valuesList)
+                for (int ord = 0; ord < partialValues.length; ord++)
+                    values[ord] += partialValues[ord];
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Counts the facet queries in one pass over the documents collected by the FacetsCollector:
+ * the search query is not executed again for each facet query.
+ * On each segment, the matching documents are intersected with the iterators of the facet queries.
+ * The segments are counted in parallel.
+ */
+final class FacetQueriesCounter {
+
+    private final List<FacetsCollector.MatchingDocs> matchingDocsList;
+    private final List<Weight> weights;
+
+    /**
+     * @param indexSearcher    the searcher which collected the matching documents
+     * @param matchingDocsList the documents matched by the search query, per segment
+     * @param facetQueries     the facet queries
+     * @throws IOException if the facet queries can't be rewritten
+     */
+    FacetQueriesCounter(final IndexSearcher indexSearcher,
+                        final List<FacetsCollector.MatchingDocs> matchingDocsList,
+                        final List<Query> facetQueries) throws IOException {
+        this.matchingDocsList = matchingDocsList;
+        this.weights = new ArrayList<>(facetQueries.size());
+        for (final Query facetQuery : facetQueries)
+            weights.add(indexSearcher.createWeight(indexSearcher.rewrite(facetQuery), ScoreMode.COMPLETE_NO_SCORES, 1f));
+    }
+
+    /**
+     * @param executorService the executor used to count the segments in parallel, or null
+     * @return the count of each facet query, in the order of the facet queries
+     * @throws IOException if any I/O error occurs
+     */
+    int[] count(final ExecutorService executorService) throws IOException {
+        final List<ConcurrentTasks.Task<int[]>> tasks = new ArrayList<>(matchingDocsList.size());
+        for (final FacetsCollector.MatchingDocs matchingDocs : matchingDocsList)
+            if (matchingDocs.totalHits > 0)
+                tasks.add(() -> countSegment(matchingDocs));
+        final int[] counts = new int[weights.size()];
+        for (final int[] segmentCounts : ConcurrentTasks.run(tasks, executorService))
+            add(counts, segmentCounts);
+        return counts;
+    }
+
+    private static void add(final int[] counts, final int[] segmentCounts) {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += segmentCounts[i];
+    }
+
+    private int[] countSegment(final FacetsCollector.MatchingDocs matchingDocs) throws IOException {
+        final int[] counts = new int[weights.size()];
+        int i = 0;
+        for (final Weight weight : weights) {
+            final DocIdSetIterator docs = matchingDocs.bits.iterator();
+            final Scorer scorer = docs == null ? null : weight.scorer(matchingDocs.context);
+            if (scorer != null)
+                counts[i] = intersect(docs, scorer);
+            i++;
+        }
+        return counts;
+    }
+
+    /**
+     * Leapfrog between the matching documents and the facet query.
+     * The costly match of a two-phase query is only checked on the documents of the search query.
+     */
+    private static int intersect(final DocIdSetIterator docs, final Scorer scorer) throws IOException {
+        final TwoPhaseIterator twoPhase = scorer.twoPhaseIterator();
+        final DocIdSetIterator facetDocs = twoPhase == null ? scorer.iterator() : twoPhase.approximation();
+        int count = 0;
+        int doc = docs.nextDoc();
+        while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+            final int facetDoc = facetDocs.docID() < doc ? facetDocs.advance(doc) : facetDocs.docID();
+            if (facetDoc == DocIdSetIterator.NO_MORE_DOCS)
+                break;
+            if (facetDoc == doc) {
+                if (twoPhase == null || twoPhase.matches())
+                    count++;
+                doc = docs.nextDoc();
+            } else
+                doc = docs.advance(facetDoc);
+        }
+        return count;
+    }
+}
@@ -19,12 +19,13 @@ import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.field.FieldTypeInterface;
 import com.qwazr.search.query.QueryInterface;
 import com.qwazr.utils.StringUtils;
-import com.qwazr.utils.TimeTracker;
 import com.qwazr.utils.concurrent.BiConsumerEx;
 import com.qwazr.utils.concurrent.ConcurrentUtils;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.apache.lucene.facet.DrillSideways;
@@ -33,10 +34,7 @@ import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
-import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
-import org.apache.lucene.facet.taxonomy.TaxonomyFacetSumFloatAssociations;
-import org.apache.lucene.facet.taxonomy.TaxonomyFacetSumIntAssociations;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
@@ -48,23 +46,25 @@ abstract class FacetsBuilder {
     private final LinkedHashMap<String, FacetDefinition> facetsDef;
     protected final HashMap<String, String> resolvedDimensions;
     private final Query searchQuery;
-    private final TimeTracker timeTracker;
+    private final QueryTimer timer;
+    private final FacetsCollector facetsCollector;
 
     final LinkedHashMap<String, Map<String, Number>> results = new LinkedHashMap<>();
 
     private FacetsBuilder(final QueryContextImpl queryContext,
                           final LinkedHashMap<String, FacetDefinition> facetsDef,
                           final Query searchQuery,
-                          final TimeTracker timeTracker) {
+                          final QueryTimer timer,
+                          final FacetsCollector facetsCollector) {
         this.facetsDef = facetsDef;
         this.queryContext = queryContext;
         this.sortedSetFacetField = queryContext.fieldMap.fieldsContext.sortedSetFacetField;
         this.resolvedDimensions = new HashMap<>();
         getFields(facetsDef).forEach((concrete, generic) -> resolvedDimensions.put(concrete,
-            queryContext.fieldMap.getFieldType(generic, concrete)
-                .resolveFieldName(concrete, FieldTypeInterface.FieldType.facetField, FieldTypeInterface.ValueType.textType)));
+            resolveDimension(queryContext.fieldMap, concrete, generic)));
         this.searchQuery = searchQuery;
-        this.timeTracker = timeTracker;
+        this.timer = timer;
+        this.facetsCollector = facetsCollector;
     }
 
     final FacetsBuilder build() throws Exception {
@@ -84,8 +84,8 @@ abstract class FacetsBuilder {
             results.put(dimension, facetBuilder.build());
         }
 
-        if (timeTracker != null)
-            timeTracker.next("facet_count");
+        if (timer != null)
+            timer.next(QueryMetrics.FACET_COUNT);
         return this;
     }
 
@@ -113,6 +113,18 @@ abstract class FacetsBuilder {
 
     private void buildFacetQueries(final Map<String, QueryInterface> queries, final FacetBuilder facetBuilder)
         throws Exception {
+        if (facetsCollector != null) {
+            // One pass over the documents already matched by the search query
+            final List<Query> facetQueries = new ArrayList<>(queries.size());
+            for (final QueryInterface facetQuery : queries.values())
+                facetQueries.add(facetQuery.getQuery(queryContext));
+            final int[] counts = new FacetQueriesCounter(queryContext.indexSearcher,
+                facetsCollector.getMatchingDocs(), facetQueries).count(queryContext.executorService);
+            int i = 0;
+            for (final String name : queries.keySet())
+                facetBuilder.put(new LabelAndValue(name, counts[i++]));
+            return;
+        }
         final BiConsumerEx<String, QueryInterface, Exception> consumer = (name, facetQuery) -> {
             final BooleanQuery.Builder builder = new BooleanQuery.Builder();
             builder.add(searchQuery, BooleanClause.Occur.FILTER);
@@ -122,6 +134,31 @@ abstract class FacetsBuilder {
         ConcurrentUtils.forEachEx(queries, consumer);
     }
 
+    private static String resolveDimension(final FieldMap fieldMap, final String concrete, final String generic) {
+        return fieldMap.getFieldType(generic, concrete)
+            .resolveFieldName(concrete, FieldTypeInterface.FieldType.facetField, FieldTypeInterface.ValueType.textType);
+    }
+
+    /**
+     * @param fieldMap     the fields of the index
+     * @param facetsConfig the facets configuration of the query
+     * @param dimensions   the dimensions of the query, as returned by getFields
+     * @return true if one of the dimensions is indexed in the sorted set facet field (the facets state is needed)
+     */
+    static boolean hasSortedSetDimension(final FieldMap fieldMap, final FacetsConfig facetsConfig,
+                                         final Map<String, String> dimensions) {
+        if (dimensions == null || facetsConfig == null)
+            return false;
+        final String sortedSetFacetField = fieldMap.fieldsContext.sortedSetFacetField;
+        for (final Map.Entry<String, String> dimension : dimensions.entrySet()) {
+            final String resolvedDimension = resolveDimension(fieldMap, dimension.getKey(), dimension.getValue());
+            if (resolvedDimension != null &&
+                sortedSetFacetField.equals(facetsConfig.getDimConfig(resolvedDimension).indexFieldName))
+                return true;
+        }
+        return false;
+    }
+
     static Map<String, String> getFields(LinkedHashMap<String, FacetDefinition> facets) {
         if (facets == null || facets.isEmpty())
             return null;
@@ -137,33 +174,33 @@ abstract class FacetsBuilder {
 
     static class WithCollectors extends FacetsBuilder {
 
-        private final SortedSetDocValuesFacetCounts sortedSetCounts;
-        private final FastTaxonomyFacetCounts taxonomyCounts;
-        private final TaxonomyFacetSumFloatAssociations floatTaxonomyCounts;
-        private final TaxonomyFacetSumIntAssociations intTaxonomyCounts;
+        private final Facets sortedSetCounts;
+        private final Facets taxonomyCounts;
+        private final Facets floatTaxonomyCounts;
+        private final Facets intTaxonomyCounts;
         private final FacetsConfig facetsConfig;
 
         WithCollectors(final QueryContextImpl queryContext, final FacetsConfig facetsConfig,
                        final LinkedHashMap<String, FacetDefinition> facetsDef, final Query searchQuery,
-                       final TimeTracker timeTracker, final FacetsCollector facetsCollector)
+                       final QueryTimer timer, final FacetsCollector facetsCollector,
+                       final FacetCounts facetCounts)
             throws IOException {
-            super(queryContext, facetsDef, searchQuery, timeTracker);
+            super(queryContext, facetsDef, searchQuery, timer, facetsCollector);
             this.facetsConfig = facetsConfig;
             int facetFlag = checkFacetTypeFlags(facetsConfig, facetsDef);
-            this.sortedSetCounts = queryContext.docValueReaderState == null ?
-                null :
-                (facetFlag & FACET_IS_SORTED) == FACET_IS_SORTED ?
-                    new SortedSetDocValuesFacetCounts(queryContext.docValueReaderState, facetsCollector) :
-                    null;
+            final SortedSetDocValuesReaderState state = (facetFlag & FACET_IS_SORTED) == FACET_IS_SORTED ?
+                queryContext.getDocValueReaderState() :
+                null;
+            this.sortedSetCounts = state == null ? null : facetCounts.sortedSet(state, facetsCollector);
             this.taxonomyCounts = (facetFlag & FACET_IS_TAXO) == FACET_IS_TAXO ?
-                new FastTaxonomyFacetCounts(queryContext.taxonomyReader, facetsConfig, facetsCollector) :
+                facetCounts.taxonomy(queryContext.taxonomyReader, facetsConfig, facetsCollector) :
                 null;
             this.floatTaxonomyCounts = (facetFlag & FACET_IS_TAXO_FLOAT) == FACET_IS_TAXO_FLOAT ?
-                new TaxonomyFacetSumFloatAssociations(FieldDefinition.TAXONOMY_FLOAT_ASSOC_FACET_FIELD,
+                facetCounts.floatAssociations(FieldDefinition.TAXONOMY_FLOAT_ASSOC_FACET_FIELD,
                     queryContext.taxonomyReader, facetsConfig, facetsCollector) :
                 null;
             this.intTaxonomyCounts = (facetFlag & FACET_IS_TAXO_INT) == FACET_IS_TAXO_INT ?
-                new TaxonomyFacetSumIntAssociations(FieldDefinition.TAXONOMY_INT_ASSOC_FACET_FIELD,
+                facetCounts.intAssociations(FieldDefinition.TAXONOMY_INT_ASSOC_FACET_FIELD,
                     queryContext.taxonomyReader, facetsConfig, facetsCollector) :
                 null;
         }
@@ -210,8 +247,9 @@ abstract class FacetsBuilder {
             if (indexFieldName == null)
                 return null;
             if (indexFieldName.equals(sortedSetFacetField)) {
-                if (queryContext.docValueReaderState != null)
-                    if (queryContext.docValueReaderState.getOrdRange(dimension) != null)
+                final SortedSetDocValuesReaderState state = queryContext.getDocValueReaderState();
+                if (state != null)
+                    if (state.getOrdRange(dimension) != null)
                         return sortedSetCounts;
             } else {
                 switch (indexFieldName) {
@@ -236,8 +274,8 @@ abstract class FacetsBuilder {
 
         WithSideways(final QueryContextImpl queryContext, final FacetsConfig facetsConfig,
                      final LinkedHashMap<String, FacetDefinition> facetsDef, final Query searchQuery,
-                     final TimeTracker timeTracker, final DrillSideways.DrillSidewaysResult results) {
-            super(queryContext, facetsDef, searchQuery, timeTracker);
+                     final QueryTimer timer, final DrillSideways.DrillSidewaysResult results) {
+            super(queryContext, facetsDef, searchQuery, timer, null);
             this.facetsConfig = facetsConfig;
             this.results = results;
         }
@@ -245,9 +283,10 @@ abstract class FacetsBuilder {
         @Override
         final protected Facets getFacets(final String dimension) {
             if (sortedSetFacetField.equals(facetsConfig.getDimConfig(dimension).indexFieldName)) {
-                if (queryContext.docValueReaderState == null)
+                final SortedSetDocValuesReaderState state = queryContext.getDocValueReaderState();
+                if (state == null)
                     return null;
-                if (queryContext.docValueReaderState.getOrdRange(dimension) == null)
+                if (state.getOrdRange(dimension) == null)
                     return null;
             }
             return results.facets;
@@ -25,6 +25,7 @@ import com.qwazr.utils.WildcardMatcher;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -43,6 +44,7 @@ public class FieldMap {
     private final Object facetsConfigLock;
     private final FacetsConfig facetsConfig;
     private final Map<String, FacetsConfig.DimConfig> facetsDimConfig;
+    private final Set<String> nestedFields;
 
     public FieldMap(@NotNull final FieldsContext fieldsContext) {
 
@@ -78,6 +80,12 @@ public class FieldMap {
             }
         });
         nameDefMap.putAll(newFields);
+        nestedFields = new HashSet<>();
+        fieldsContext.fields.forEach((name, definition) -> {
+            if (definition instanceof CustomFieldDefinition
+                && ((CustomFieldDefinition) definition).template == FieldDefinition.Template.NestedField)
+                nestedFields.add(name);
+        });
         facetsConfig = new FacetsConfig();
         facetsDimConfig = facetsConfig.getDimConfigs();
         facetsConfigLock = new Object();
@@ -87,6 +95,17 @@ public class FieldMap {
         return fieldsContext.fields.isEmpty();
     }
 
+    /**
+     * @return true if the documents are indexed as blocks with their nested children
+     */
+    public final boolean hasNestedFields() {
+        return !nestedFields.isEmpty();
+    }
+
+    public final boolean isNestedField(final String fieldName) {
+        return nestedFields.contains(fieldName);
+    }
+
     public final void forEach(final BiConsumer<String, FieldTypeInterface> consumer) {
         nameDefMap.forEach(consumer);
     }
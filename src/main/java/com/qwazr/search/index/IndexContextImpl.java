@@ -30,6 +30,8 @@ class IndexContextImpl implements IndexContext, Closeable {
     final ResourceLoader resourceLoader;
     final IndexInstance.Provider indexProvider;
 
+    private volatile boolean otherIndexesUsed;
+
     IndexContextImpl(final IndexInstance.Provider indexProvider,
                      final ResourceLoader resourceLoader,
                      final ExecutorService executorService,
@@ -44,9 +46,17 @@ class IndexContextImpl implements IndexContext, Closeable {
 
     @Override
     final public IndexInstance getIndex(final String indexName) {
+        otherIndexesUsed = true;
         return indexProvider.get(indexName);
     }
 
+    /**
+     * @return true if another index has been requested through this context, by a join query for instance
+     */
+    final boolean isOtherIndexesUsed() {
+        return otherIndexesUsed;
+    }
+
     @Override
     final public FacetsConfig getFacetsConfig(final String genericFieldName, final String concreteFieldName) {
         return fieldMap.getFacetsConfig(genericFieldName, concreteFieldName);
@@ -19,6 +19,7 @@ package com.qwazr.search.index;
 import com.qwazr.search.analysis.AnalyzerDefinition;
 import com.qwazr.search.analysis.CustomAnalyzer;
 import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.utils.FileUtils;
 import com.qwazr.utils.HashUtils;
 import com.qwazr.utils.IOUtils;
 
@@ -26,6 +27,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -35,11 +37,15 @@ class IndexFileSet {
 
     final static String INDEX_DATA = "data";
     final static String INDEX_TAXONOMY = "taxonomy";
+    final static String INDEX_REBUILD = "rebuild";
+    final static String INDEX_DATA_PREVIOUS = "data.previous";
     final static String REPL_WORK = "repl_work";
     final static String UUID_FILE = "uuid";
     final static String UUID_MASTER_FILE = "uuid.master";
     final static String SETTINGS_FILE = "settings.json";
     final static String FIELDS_FILE = "fields.json";
+    final static String FIELDS_REBUILD_FILE = "fields.rebuild.json";
+    final static String FIELDS_PREVIOUS_FILE = "fields.previous.json";
     final static String ANALYZERS_FILE = "analyzers.json";
     final static String RESOURCES_DIR = "resources";
 
@@ -49,9 +55,13 @@ class IndexFileSet {
     final Path mainDirectory;
     final Path dataDirectory;
     final Path taxonomyDirectory;
+    final Path rebuildDirectory;
+    final Path previousDataDirectory;
     final private File analyzerMapFile;
     final Path resourcesDirectoryPath;
     final private File fieldMapFile;
+    final private Path rebuildFieldMapPath;
+    final private Path previousFieldMapPath;
     final Path replWorkPath;
 
     IndexFileSet(final Path mainDirectory) {
@@ -60,9 +70,13 @@ class IndexFileSet {
         this.mainDirectory = mainDirectory;
         this.dataDirectory = mainDirectory.resolve(INDEX_DATA);
         this.taxonomyDirectory = mainDirectory.resolve(INDEX_TAXONOMY);
+        this.rebuildDirectory = mainDirectory.resolve(INDEX_REBUILD);
+        this.previousDataDirectory = mainDirectory.resolve(INDEX_DATA_PREVIOUS);
         this.analyzerMapFile = mainDirectory.resolve(ANALYZERS_FILE).toFile();
         this.resourcesDirectoryPath = mainDirectory.resolve(RESOURCES_DIR);
         this.fieldMapFile = mainDirectory.resolve(FIELDS_FILE).toFile();
+        this.rebuildFieldMapPath = mainDirectory.resolve(FIELDS_REBUILD_FILE);
+        this.previousFieldMapPath = mainDirectory.resolve(FIELDS_PREVIOUS_FILE);
         this.settingsFile = mainDirectory.resolve(SETTINGS_FILE).toFile();
         this.replWorkPath = mainDirectory.resolve(REPL_WORK);
     }
@@ -96,6 +110,80 @@ class IndexFileSet {
         return indexUuid;
     }
 
+    /**
+     * The rebuilt index takes the place of the data directory, which is kept aside until the new index is open.
+     * The field map of the rebuilt index is written first, then swapped with the data directory:
+     * the recovery can always pair a data directory with its own field map.
+     *
+     * @param fields the field map of the rebuilt index
+     * @throws IOException if any I/O error occurred, the data directory and the field map are then unchanged
+     */
+    void swapRebuildDirectory(final Map<String, FieldDefinition> fields) throws IOException {
+        FieldDefinition.saveMap(fields, rebuildFieldMapPath.toFile());
+        try {
+            Files.move(dataDirectory, previousDataDirectory, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                Files.move(rebuildDirectory, dataDirectory, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                Files.move(previousDataDirectory, dataDirectory, StandardCopyOption.ATOMIC_MOVE);
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(rebuildFieldMapPath);
+            throw e;
+        }
+        // From now on, an interrupted swap is completed by the recovery
+        swapFieldMap(fieldMapFile.toPath(), previousFieldMapPath);
+        swapFieldMap(rebuildFieldMapPath, fieldMapFile.toPath());
+    }
+
+    private static void swapFieldMap(final Path source, final Path target) throws IOException {
+        if (Files.exists(source))
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Put back the data directory and the field map kept aside by {@link #swapRebuildDirectory(Map)}
+     *
+     * @throws IOException if any I/O error occurred
+     */
+    void restorePreviousDataDirectory() throws IOException {
+        Files.move(dataDirectory, rebuildDirectory, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(previousDataDirectory, dataDirectory, StandardCopyOption.ATOMIC_MOVE);
+        swapFieldMap(previousFieldMapPath, fieldMapFile.toPath());
+        Files.deleteIfExists(rebuildFieldMapPath);
+    }
+
+    void deletePreviousDataDirectory() throws IOException {
+        Files.deleteIfExists(previousFieldMapPath);
+        if (Files.exists(previousDataDirectory))
+            FileUtils.deleteDirectory(previousDataDirectory);
+    }
+
+    /**
+     * Complete a swap of the data directory interrupted by a stop of the process: the previous data directory and
+     * its field map are put back if the rebuilt one was not moved yet, otherwise the rebuilt index gets its field map
+     * and the previous data directory is deleted. The field map of an interrupted restore is put back too.
+     *
+     * @throws IOException if any I/O error occurred
+     */
+    void recoverDataDirectory() throws IOException {
+        if (Files.notExists(previousDataDirectory)) {
+            // A restore of the previous data directory may have been interrupted before its field map was put back
+            swapFieldMap(previousFieldMapPath, fieldMapFile.toPath());
+            Files.deleteIfExists(rebuildFieldMapPath);
+            return;
+        }
+        if (Files.notExists(dataDirectory)) {
+            Files.move(previousDataDirectory, dataDirectory, StandardCopyOption.ATOMIC_MOVE);
+            swapFieldMap(previousFieldMapPath, fieldMapFile.toPath());
+            Files.deleteIfExists(rebuildFieldMapPath);
+        } else {
+            swapFieldMap(rebuildFieldMapPath, fieldMapFile.toPath());
+            deletePreviousDataDirectory();
+        }
+    }
+
     IndexSettingsDefinition loadSettings() throws IOException {
         return IndexSettingsDefinition.load(settingsFile, () -> IndexSettingsDefinition.EMPTY);
     }
@@ -30,6 +30,7 @@ import com.qwazr.search.query.Join;
 import com.qwazr.search.query.QueryInterface;
 import com.qwazr.search.query.QuerySampler;
 import com.qwazr.search.query.TermQuery;
+import com.qwazr.search.replication.Compression;
 import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.server.ServerException;
@@ -46,6 +47,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -65,6 +67,7 @@ import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -86,12 +89,19 @@ import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.join.JoinUtil;
 import org.apache.lucene.search.join.ScoreMode;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
 
 final public class IndexInstance implements Closeable {
 
     private final static Logger LOGGER = LoggerUtils.getLogger(IndexInstance.class);
 
+    /**
+     * The maximum duration of a long polling request on the replication version
+     */
+    final static long MAX_REPLICATION_WAIT_MS = 60_000;
+
     @FunctionalInterface
     public interface Provider {
         IndexInstance get(String name);
@@ -103,9 +113,13 @@ final public class IndexInstance implements Closeable {
 
     private final AutoLockSemaphore writeSemaphore;
     private final AutoLockSemaphore readSemaphore;
-    private final Directory dataDirectory;
+    private final int indexingThreads;
+    private final SearchResultCache searchResultCache;
+    private final JoinQueryCache joinQueryCache;
+    private volatile Directory dataDirectory;
     private final Directory taxonomyDirectory;
-    private final WriterAndSearcher writerAndSearcher;
+    private volatile WriterAndSearcher writerAndSearcher;
+    private final IndexInstanceBuilder.MasterIndex.Factory masterIndexFactory;
 
     private final ExecutorService executorService;
     private final IndexSettingsDefinition settings;
@@ -115,20 +129,24 @@ final public class IndexInstance implements Closeable {
 
     private final ReentrantLock replicationLock;
     private final ReentrantLock commitLock;
+    private final CommitScheduler commitScheduler;
     private final ReentrantLock backupLock;
+    private final QueryMetrics queryMetrics;
 
     private final UpdatableAnalyzers updatableIndexAnalyzers;
     private volatile AnalyzerContext analyzerContext;
 
     private final ReentrantLock fieldMapLock;
     private volatile FieldMap fieldMap;
+    private final ReentrantReadWriteLock swapLock;
 
     private volatile LinkedHashMap<String, AnalyzerDefinition> analyzerDefinitionMap;
     private final LinkedHashMap<String, CustomAnalyzer.Factory> localAnalyzerFactoryMap;
     private final Map<String, AnalyzerFactory> globalAnalyzerFactoryMap;
 
-    private final ReplicationMaster replicationMaster;
+    private volatile ReplicationMaster replicationMaster;
     private final ReplicationSlave replicationSlave;
+    private final ReplicationListener replicationListener;
 
     private final Set<AnalyzerContext> activeAnalyzerContexts;
     private final ReindexThread reindexThread;
@@ -136,6 +154,9 @@ final public class IndexInstance implements Closeable {
     IndexInstance(final IndexInstanceBuilder builder) {
         this.writeSemaphore = builder.writeSemaphore;
         this.readSemaphore = builder.readSemaphore;
+        this.indexingThreads = builder.indexingThreads;
+        this.searchResultCache = builder.searchResultCache;
+        this.joinQueryCache = builder.joinQueryCache;
         this.indexProvider = builder.indexProvider;
         this.fileSet = builder.fileSet;
         this.indexName = builder.indexName;
@@ -147,7 +168,9 @@ final public class IndexInstance implements Closeable {
         this.globalAnalyzerFactoryMap = builder.globalAnalyzerFactoryMap;
         this.fieldMapLock = new ReentrantLock(true);
         this.fieldMap = builder.fieldMap;
+        this.swapLock = new ReentrantReadWriteLock(true);
         this.writerAndSearcher = builder.writerAndSearcher;
+        this.masterIndexFactory = builder.replicationMaster == null ? null : builder::openMasterIndex;
         this.analyzerContext = builder.analyzerContext;
         this.settings = builder.settings;
         this.executorService = builder.executorService;
@@ -155,7 +178,9 @@ final public class IndexInstance implements Closeable {
         this.fileResourceLoader = builder.fileResourceLoader;
         this.replicationLock = new ReentrantLock(true);
         this.commitLock = new ReentrantLock(true);
+        this.commitScheduler = CommitScheduler.of(indexName, settings, this::nrtCommit, this::refresh);
         this.backupLock = new ReentrantLock(true);
+        this.queryMetrics = new QueryMetrics();
         this.replicationMaster = builder.replicationMaster;
         this.replicationSlave = builder.replicationSlave;
         this.activeAnalyzerContexts = builder.activeAnalyzerContexts;
@@ -163,6 +188,11 @@ final public class IndexInstance implements Closeable {
         this.reindexThread =
             builder.replicationMaster != null && !StringUtils.isBlank(settings.recordField)
                 ? new ReindexThread(executorService, this) : null;
+        this.queryMetrics.registerMBean(indexName, indexUuid.toString());
+        // Started last, the listener replicates using the fully built instance
+        this.replicationListener = replicationSlave != null && settings.replicationLongPollMs != null &&
+            settings.replicationLongPollMs > 0 ?
+            new ReplicationListener(indexName, this, replicationSlave, settings.replicationLongPollMs) : null;
     }
 
     public IndexSettingsDefinition getSettings() {
@@ -171,7 +201,8 @@ final public class IndexInstance implements Closeable {
 
     @Override
     public void close() {
-        IOUtils.closeQuietly(writerAndSearcher, replicationMaster, analyzerContext);
+        queryMetrics.unregisterMBean();
+        IOUtils.closeQuietly(replicationListener, commitScheduler, writerAndSearcher, replicationMaster, analyzerContext);
 
         if (taxonomyDirectory != null)
             IOUtils.closeQuietly(taxonomyDirectory);
@@ -180,11 +211,44 @@ final public class IndexInstance implements Closeable {
             IOUtils.closeQuietly(dataDirectory);
     }
 
+    /**
+     * The searchers of the previous index are closed once an index has been swapped:
+     * a search which picked them just before the swap is run again on the new ones.
+     */
+    private <T> T search(final WriterAndSearcher.SearchAction<T> action) throws IOException {
+        final WriterAndSearcher current = writerAndSearcher;
+        try {
+            return current.search(action);
+        } catch (AlreadyClosedException e) {
+            if (current == writerAndSearcher)
+                throw e;
+            return writerAndSearcher.search(action);
+        }
+    }
+
+    /**
+     * A refresh which picked the searchers of the previous index is not needed:
+     * the searchers of the swapped index are opened on its last commit.
+     */
+    private void refresh() throws IOException {
+        final WriterAndSearcher current = writerAndSearcher;
+        try {
+            current.refresh();
+        } catch (AlreadyClosedException e) {
+            if (current == writerAndSearcher)
+                throw e;
+        }
+    }
+
     private IndexStatus getIndexStatus() throws IOException {
-        return writerAndSearcher.search((indexSearcher, taxonomyReader) -> new IndexStatus(indexUuid,
+        return search((indexSearcher, taxonomyReader) -> new IndexStatus(indexUuid,
             replicationSlave == null ? null : replicationSlave.getClientMasterUuid(), dataDirectory, indexSearcher,
             writerAndSearcher.getIndexWriter(), settings, localAnalyzerFactoryMap.keySet(),
-            fieldMap.getFields().keySet(), activeAnalyzerContexts.size()));
+            fieldMap, activeAnalyzerContexts.size(),
+            searchResultCache == null ? null : searchResultCache.getStats(),
+            joinQueryCache == null ? null : joinQueryCache.getStats(),
+            IndexStatus.ReplicationCompressionStats.of(
+                replicationMaster == null ? null : replicationMaster.getCompressionStats())));
     }
 
     Map<String, FieldDefinition> getFields() {
@@ -193,7 +257,7 @@ final public class IndexInstance implements Closeable {
 
     FieldStats getFieldStats(final String fieldName) throws IOException {
         try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+            return search((indexSearcher, taxonomyReader) -> {
                 final Terms terms = MultiTerms.getTerms(indexSearcher.getIndexReader(), fieldName);
                 return terms == null ? new FieldStats() : new FieldStats(terms, fieldMap.getFieldType(null, fieldName));
             });
@@ -206,6 +270,10 @@ final public class IndexInstance implements Closeable {
         }
     }
 
+    IndexMetrics getMetrics() {
+        return queryMetrics.getMetrics();
+    }
+
     private Collection<String> reloadAnalyzersAndFields() throws IOException {
         fieldMapLock.lock();
         try {
@@ -232,26 +300,29 @@ final public class IndexInstance implements Closeable {
             localAnalyzerFactoryMap,
             errors);
         oldAnalyzerContext.close();
+        if (searchResultCache != null)
+            searchResultCache.clear();
+        if (joinQueryCache != null)
+            joinQueryCache.clear();
         return errors;
     }
 
     Collection<String> setFields(final Map<String, FieldDefinition> fields) throws ServerException, IOException {
-        final Collection<String> errors;
-        final boolean fieldChanged;
         fieldMapLock.lock();
         try {
             final FieldsContext newFieldsContext = new FieldsContext(settings, fields);
+            if (!Objects.equals(newFieldsContext, fieldMap.fieldsContext)) {
+                final FieldMap newFieldMap = new FieldMap(newFieldsContext);
+                if (isRebuildRequired(newFieldMap))
+                    return rebuild(newFieldMap, fields);
+                fieldMap = newFieldMap;
+            }
             fileSet.writeFieldMap(fields);
-            fieldChanged = !Objects.equals(newFieldsContext, fieldMap.fieldsContext);
-            if (fieldChanged)
-                fieldMap = new FieldMap(newFieldsContext);
-            errors = refreshFieldsAnalyzers();
+            advanceReplicationVersion();
+            return refreshFieldsAnalyzers();
         } finally {
             fieldMapLock.unlock();
         }
-        if (fieldChanged)
-            reindex();
-        return errors;
     }
 
     void setField(final String field_name, final FieldDefinition field) throws IOException, ServerException {
@@ -272,15 +343,142 @@ final public class IndexInstance implements Closeable {
         return analyzerDefinitionMap;
     }
 
-    void reindex() {
-        //TODO;
+    /**
+     * The documents are rebuilt from their records when the index is a master with a record field and a primary key,
+     * and when the records are JSON objects.
+     */
+    private boolean isRebuildRequired(final FieldMap newFieldMap) throws IOException {
+        if (replicationMaster == null)
+            return false;
+        if (StringUtils.isBlank(newFieldMap.fieldsContext.recordField) ||
+            StringUtils.isBlank(newFieldMap.fieldsContext.primaryKey))
+            return false;
+        if (writerAndSearcher.getIndexWriter().getDocStats().numDocs == 0)
+            return false;
+        writerAndSearcher.refresh();
+        final boolean jsonRecords = writerAndSearcher.search((indexSearcher, taxonomyReader) ->
+            IndexRebuild.hasJsonRecords(indexSearcher.getIndexReader(), newFieldMap.fieldsContext.recordField));
+        if (!jsonRecords)
+            LOGGER.warning(() -> "The records are not JSON objects, the documents are not rebuilt - Index: " + indexName);
+        return jsonRecords;
+    }
+
+    /**
+     * Rebuild the documents in a shadow index using the new field map, while the live index keeps serving
+     * the searches and the writes with the current field map. The writes are only blocked during the last catch up
+     * and the swap of the directories. The searches switch directly from the previous content to the new one.
+     */
+    private Collection<String> rebuild(final FieldMap newFieldMap,
+                                       final Map<String, FieldDefinition> fields) throws IOException {
+        final Collection<String> errors = new ArrayList<>();
+        final long startTime = System.currentTimeMillis();
+        final UpdatableAnalyzers rebuildIndexAnalyzers = new UpdatableAnalyzers();
+        try (final AnalyzerContext rebuildAnalyzerContext = new AnalyzerContext(activeAnalyzerContexts,
+            instanceFactory, fileResourceLoader, rebuildIndexAnalyzers, newFieldMap, globalAnalyzerFactoryMap,
+            localAnalyzerFactoryMap, errors);
+             final IndexRebuild rebuild = new IndexRebuild(settings, fileSet.rebuildDirectory, writerAndSearcher,
+                 newFieldMap, rebuildAnalyzerContext, rebuildIndexAnalyzers, executorService)) {
+            final long count = rebuild.build();
+            LOGGER.info(() -> "Rebuild: " + count + " documents indexed - Index: " + indexName);
+            // The passes get shorter as long as the writes are slower than the catch up
+            for (int pass = 0; pass < IndexRebuild.MAX_CATCH_UP_PASSES; pass++)
+                if (rebuild.catchUp() <= IndexRebuild.CATCH_UP_THRESHOLD)
+                    break;
+            // A backup reads the files of the data directory, it completes before the swap
+            backupLock.lock();
+            try {
+                swapLock.writeLock().lock();
+                try {
+                    rebuild.catchUp();
+                    final Directory rebuildDirectory = rebuild.commit();
+                    commitLock.lock();
+                    try {
+                        swapDataIndex(rebuildDirectory, fields);
+                    } finally {
+                        commitLock.unlock();
+                    }
+                    fieldMap = newFieldMap;
+                    advanceReplicationVersion();
+                    errors.clear();
+                    errors.addAll(refreshFieldsAnalyzers());
+                } finally {
+                    swapLock.writeLock().unlock();
+                }
+            } finally {
+                backupLock.unlock();
+            }
+        }
+        try {
+            fileSet.deletePreviousDataDirectory();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Cannot delete the previous data directory - Index: " + indexName);
+        }
+        LOGGER.info(() -> "Rebuild done in " + (System.currentTimeMillis() - startTime) + " ms - Index: " + indexName);
+        return errors;
+    }
+
+    /**
+     * Switch the index to the rebuilt data directory. The writer of the current index is closed, the rebuilt files
+     * take the place of the current ones, then a new writer, new searchers and a new replication master are opened
+     * on them. On failure, the current index is reopened.
+     *
+     * @param rebuildDirectory the committed rebuilt index, no writer must be open on it
+     * @param fields           the field map of the rebuilt index, persisted with the swap
+     * @throws IOException if any I/O error occurs
+     */
+    private void swapDataIndex(final Directory rebuildDirectory,
+                               final Map<String, FieldDefinition> fields) throws IOException {
+        final Directory previousDataDirectory = dataDirectory;
+        final boolean inMemory = rebuildDirectory instanceof ByteBuffersDirectory;
+        writerAndSearcher.commit();
+        // The replication sessions hold snapshots of the current writers, they are released first
+        IOUtils.closeQuietly(replicationMaster);
+        Directory newDataDirectory = null;
+        boolean swapped = false;
+        try {
+            writerAndSearcher.closeIndexWriter();
+            if (inMemory) {
+                newDataDirectory = rebuildDirectory;
+                fileSet.writeFieldMap(fields);
+            } else {
+                rebuildDirectory.close();
+                fileSet.swapRebuildDirectory(fields);
+                swapped = true;
+                newDataDirectory = IndexInstanceBuilder.getDirectory(settings, fileSet.dataDirectory);
+            }
+            switchMasterIndex(masterIndexFactory.open(newDataDirectory), newDataDirectory);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(newDataDirectory == null ? rebuildDirectory : newDataDirectory);
+            try {
+                if (swapped)
+                    fileSet.restorePreviousDataDirectory();
+                switchMasterIndex(masterIndexFactory.open(previousDataDirectory), previousDataDirectory);
+            } catch (IOException | RuntimeException reopenError) {
+                e.addSuppressed(reopenError);
+            }
+            throw e;
+        }
+        IOUtils.closeQuietly(previousDataDirectory);
+    }
+
+    /**
+     * The searches switch to the new searchers before the previous ones are closed
+     */
+    private void switchMasterIndex(final IndexInstanceBuilder.MasterIndex masterIndex, final Directory directory) {
+        final WriterAndSearcher previousWriterAndSearcher = writerAndSearcher;
+        writerAndSearcher = masterIndex.writerAndSearcher;
+        replicationMaster = masterIndex.replicationMaster;
+        dataDirectory = directory;
+        previousWriterAndSearcher.closeSearchers();
     }
 
     private void updateLocalAnalyzers(boolean writeConfigFile) throws IOException {
         refreshFieldsAnalyzers();
         analyzerDefinitionMap = CustomAnalyzer.createDefinitionMap(localAnalyzerFactoryMap);
-        if (writeConfigFile)
+        if (writeConfigFile) {
             fileSet.writeAnalyzerDefinitionMap(analyzerDefinitionMap);
+            advanceReplicationVersion();
+        }
     }
 
     void refreshAnalyzers() throws IOException {
@@ -341,32 +539,56 @@ final public class IndexInstance implements Closeable {
 
     public Query createJoinQuery(final Join joinQuery) throws IOException {
         try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
-                try (final QueryContext queryContext = buildQueryContext(indexSearcher, taxonomyReader)) {
-                    final Query fromQuery = joinQuery.fromQuery == null ?
-                        new MatchAllDocsQuery() :
-                        joinQuery.fromQuery.getQuery(queryContext);
-                    return JoinUtil.createJoinQuery(joinQuery.fromField, joinQuery.multipleValuesPerDocument,
-                        joinQuery.toField, fromQuery, indexSearcher,
-                        joinQuery.scoreMode == null ? ScoreMode.None : joinQuery.scoreMode);
-                } catch (ParseException | QueryNodeException | ReflectiveOperationException e) {
-                    throw ServerException.of(e);
-                }
+            return search((indexSearcher, taxonomyReader) -> joinQueryCache == null ?
+                buildJoinQuery(joinQuery, indexSearcher, taxonomyReader) :
+                joinQueryCache.get(joinQuery, indexSearcher.getIndexReader(),
+                    () -> buildJoinQuery(joinQuery, indexSearcher, taxonomyReader)));
+        }
+    }
 
-            });
+    private Query buildJoinQuery(final Join joinQuery, final IndexSearcher indexSearcher,
+                                 final TaxonomyReader taxonomyReader) throws IOException {
+        try (final QueryContext queryContext = buildQueryContext(indexSearcher, taxonomyReader)) {
+            final Query fromQuery = joinQuery.fromQuery == null ?
+                new MatchAllDocsQuery() :
+                joinQuery.fromQuery.getQuery(queryContext);
+            return JoinUtil.createJoinQuery(joinQuery.fromField, joinQuery.multipleValuesPerDocument,
+                joinQuery.toField, fromQuery, indexSearcher,
+                joinQuery.scoreMode == null ? ScoreMode.None : joinQuery.scoreMode);
+        } catch (ParseException | QueryNodeException | ReflectiveOperationException e) {
+            throw ServerException.of(e);
         }
     }
 
     private void nrtCommit() throws IOException {
         commitLock.lock();
         try {
+            final IndexWriter indexWriter = writerAndSearcher.getIndexWriter();
+            // The periodic commits of an idle index must not wake up the slaves
+            final boolean changed = indexWriter != null && indexWriter.hasUncommittedChanges();
             writerAndSearcher.commit();
+            if (changed)
+                advanceReplicationVersion();
         } finally {
             commitLock.unlock();
         }
     }
 
-    final BackupStatus backup(final Path backupIndexDirectory) throws IOException {
+    /**
+     * Notify the slaves waiting for a change (long polling) that a new version is available.
+     */
+    private void advanceReplicationVersion() {
+        if (replicationMaster != null)
+            replicationMaster.advanceVersion();
+    }
+
+    /**
+     * @param backupIndexDirectory the directory of the backup
+     * @param previousBackups      the directories of the previous backups of the index, the most recent first:
+     *                             their unchanged files are hard-linked instead of being copied
+     */
+    final BackupStatus backup(final Path backupIndexDirectory, final List<Path> previousBackups)
+        throws IOException {
         backupLock.lock();
         try {
             // check the backup directory existence
@@ -377,7 +599,8 @@ final public class IndexInstance implements Closeable {
                     "The backup path is not a directory: " + backupIndexDirectory.toAbsolutePath() + " " +
                         Thread.currentThread().getId());
             try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
-                return new ReplicationBackup(this, backupIndexDirectory, taxonomyDirectory != null).backup();
+                return new ReplicationBackup(this, backupIndexDirectory, taxonomyDirectory != null,
+                    previousBackups).backup();
             } catch (IOException e) {
                 // If any error occurred, we delete the backup directory
                 if (Files.exists(backupIndexDirectory)) {
@@ -424,13 +647,32 @@ final public class IndexInstance implements Closeable {
         return replicationMaster;
     }
 
+    /**
+     * @param currentVersion the version of the last replication of the slave, or null
+     * @return a new session, or null if the master did not change since the given version
+     */
     ReplicationSession replicationUpdate(String currentVersion) throws IOException {
-        //TODO check current version to avoid non useful replication
         final ReplicationMaster master = checkIsMaster();
         master.expireInactiveSessions(TimeUnit.MINUTES, 30);
+        if (currentVersion != null && currentVersion.equals(master.getVersion()))
+            return null;
         return master.newReplicationSession();
     }
 
+    /**
+     * Wait (at most one minute) for a version different from the given one.
+     */
+    String replicationVersion(final String currentVersion, final long timeoutMs) {
+        final ReplicationMaster master = checkIsMaster();
+        try {
+            return master.awaitVersion(currentVersion, Math.min(Math.max(timeoutMs, 0), MAX_REPLICATION_WAIT_MS),
+                TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return master.getVersion();
+        }
+    }
+
     void replicationRelease(String sessionID) throws IOException {
         final ReplicationMaster master = checkIsMaster();
         master.releaseSession(sessionID);
@@ -442,6 +684,21 @@ final public class IndexInstance implements Closeable {
         return checkIsMaster().getItem(sessionID, source, fileName);
     }
 
+    InputStream replicationObtain(final String sessionID, final ReplicationProcess.Source source,
+                                  final String fileName, final long offset, final long length,
+                                  final Compression compression, final Integer level) throws IOException {
+        return checkIsMaster().getItem(sessionID, source, fileName, offset, length, compression, level, true);
+    }
+
+    /**
+     * The local backups read the files of the master without the bandwidth limit of the replication.
+     */
+    InputStream backupObtain(final String sessionID, final ReplicationProcess.Source source,
+                             final String fileName, final long offset, final long length,
+                             final Compression compression, final Integer level) throws IOException {
+        return checkIsMaster().getItem(sessionID, source, fileName, offset, length, compression, level, false);
+    }
+
     ReplicationStatus replicationCheck() throws IOException {
         if (replicationSlave == null)
             throw new ServerException(Response.Status.NOT_ACCEPTABLE,
@@ -468,61 +725,95 @@ final public class IndexInstance implements Closeable {
 
     final void deleteAll(Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
+        final int deleted;
         try (final AutoLockSemaphore.Lock lock = writeSemaphore.acquire()) {
-            writerAndSearcher.write((indexWriter, taxonomyWriter) -> {
-                indexWriter.deleteAll();
-                if (commitUserData != null)
-                    indexWriter.setLiveCommitData(commitUserData.entrySet());
-                return null;
-            });
-            nrtCommit();
+            swapLock.readLock().lock();
+            try {
+                deleted = writerAndSearcher.write((indexWriter, taxonomyWriter) -> {
+                    final int numDocs = indexWriter.getDocStats().numDocs;
+                    indexWriter.deleteAll();
+                    if (commitUserData != null)
+                        indexWriter.setLiveCommitData(commitUserData.entrySet());
+                    return numDocs;
+                });
+            } finally {
+                swapLock.readLock().unlock();
+            }
         }
+        checkCommit(deleted, commitUserData);
     }
 
     final IndexStatus merge(final IndexInstance mergedIndex, final Map<String, String> commitUserData)
         throws IOException {
         checkIsMaster();
+        final int added;
         try (final AutoLockSemaphore.Lock writeLock = writeSemaphore.acquire()) {
-            writerAndSearcher.write((indexWriter, taxonomyWriter) -> {
-                try (final AutoLockSemaphore.Lock readLock = mergedIndex.readSemaphore.acquire()) {
-                    indexWriter.addIndexes(mergedIndex.dataDirectory);
-                    if (commitUserData != null)
-                        indexWriter.setLiveCommitData(commitUserData.entrySet());
-                }
-                return null;
-            });
-            nrtCommit();
-            return getIndexStatus();
+            swapLock.readLock().lock();
+            try {
+                added = writerAndSearcher.write((indexWriter, taxonomyWriter) -> {
+                    try (final AutoLockSemaphore.Lock readLock = mergedIndex.readSemaphore.acquire()) {
+                        final int numDocs = indexWriter.getDocStats().numDocs;
+                        mergedIndex.swapLock.readLock().lock();
+                        try {
+                            indexWriter.addIndexes(mergedIndex.dataDirectory);
+                        } finally {
+                            mergedIndex.swapLock.readLock().unlock();
+                        }
+                        if (commitUserData != null)
+                            indexWriter.setLiveCommitData(commitUserData.entrySet());
+                        return indexWriter.getDocStats().numDocs - numDocs;
+                    }
+                });
+            } finally {
+                swapLock.readLock().unlock();
+            }
         }
+        checkCommit(added, commitUserData);
+        return getIndexStatus();
     }
 
     private WriteContextImpl buildWriteContext(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) {
         return new WriteContextImpl(indexProvider, fileResourceLoader, executorService, analyzerContext,
-            fieldMap, indexWriter, taxonomyWriter);
+            fieldMap, indexWriter, taxonomyWriter, indexingThreads);
     }
 
     final <T> T write(final IndexServiceInterface.WriteActions<T> writeActions) throws IOException {
         try (final AutoLockSemaphore.Lock lock = writeSemaphore.acquire()) {
-            return writerAndSearcher.write(((indexWriter, taxonomyWriter) -> {
-                try (final WriteContext context = buildWriteContext(indexWriter, taxonomyWriter)) {
-                    return writeActions.apply(context);
-                }
-            }));
+            swapLock.readLock().lock();
+            try {
+                return writerAndSearcher.write(((indexWriter, taxonomyWriter) -> {
+                    try (final WriteContext context = buildWriteContext(indexWriter, taxonomyWriter)) {
+                        return writeActions.apply(context);
+                    }
+                }));
+            } finally {
+                swapLock.readLock().unlock();
+            }
         }
     }
 
+    /**
+     * Called once the write is done and the write semaphore released: a write waiting for its group commit
+     * does not prevent the next writes from joining the group.
+     */
     private int checkCommit(final int results) throws IOException {
         if (results > 0)
-            nrtCommit();
+            commitScheduler.afterWrite(results);
         return results;
     }
 
     private int checkCommit(final int results, final Map<String, String> commitUserData) throws IOException {
         if (results > 0 || (commitUserData != null && !commitUserData.isEmpty()))
-            nrtCommit();
+            commitScheduler.afterWrite(results);
         return results;
     }
 
+    final IndexStatus commit() throws IOException {
+        checkIsMaster();
+        commitScheduler.commit();
+        return getIndexStatus();
+    }
+
     private int checkCommit(final int results, final PostDefinition post) throws IOException {
         return checkCommit(results, post == null ? null : post.commitUserData);
     }
@@ -530,93 +821,146 @@ final public class IndexInstance implements Closeable {
     final <T> int postDocument(final Map<String, Field> fields, final T document,
                                final Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
-        return write(
-            context -> checkCommit(context.postDocument(fields, document, commitUserData), commitUserData));
+        return checkCommit(write(context -> context.postDocument(fields, document, commitUserData)), commitUserData);
     }
 
     final <T> int postDocuments(final Map<String, Field> fields, final Collection<T> documents,
                                 final Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.postDocuments(fields, documents, commitUserData),
-            commitUserData));
+        return checkCommit(write(context -> context.postDocuments(fields, documents, commitUserData)),
+            commitUserData);
     }
 
     final int postMappedDocument(final PostDefinition.Document post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.postMappedDocument(post), post));
+        return checkCommit(write(context -> context.postMappedDocument(post)), post);
     }
 
     final int postMappedDocuments(final PostDefinition.Documents post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.postMappedDocuments(post), post));
+        return checkCommit(write(context -> context.postMappedDocuments(post)), post);
     }
 
     final IndexJsonResult postJsonNodes(final Collection<JsonNode> jsonNodes) throws IOException {
         checkIsMaster();
         final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes = new TreeMap<>();
-        final Integer count = write(context -> checkCommit(context.postJsonNodes(jsonNodes, fieldTypes)));
+        final int count = checkCommit(write(context -> context.postJsonNodes(jsonNodes, fieldTypes)));
         return new IndexJsonResult(count, fieldTypes);
     }
 
+    /**
+     * Index a stream of JSON or SMILE documents. The documents are read and indexed by batches.
+     * Each batch is committed before the next one is read, and the write lock is only held while a batch is indexed.
+     * The first failing batch stops the process, the previous batches stay committed.
+     */
+    final IndexJsonStreamResult postJsonStream(final InputStream inputStream,
+                                               final boolean withFieldTypes,
+                                               final Integer batchDocs,
+                                               final Long batchBytes) throws IOException {
+        checkIsMaster();
+        final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes = withFieldTypes ? new TreeMap<>() : null;
+        final List<IndexJsonStreamResult.Batch> batches = new ArrayList<>();
+        long count = 0;
+        try (final JsonNodeStreamReader reader = new JsonNodeStreamReader(inputStream, batchDocs, batchBytes)) {
+            for (; ; ) {
+                final long startTime = System.currentTimeMillis();
+                final long startOffset = reader.getByteOffset();
+                try {
+                    final List<JsonNode> jsonNodes = reader.nextBatch();
+                    if (jsonNodes.isEmpty())
+                        break;
+                    final int batchCount = checkCommit(write(context -> context.postJsonNodes(jsonNodes, fieldTypes)));
+                    batches.add(new IndexJsonStreamResult.Batch(count, batchCount, reader.getByteOffset() - startOffset,
+                        System.currentTimeMillis() - startTime, null));
+                    count += batchCount;
+                    LOGGER.fine(() -> "Stream batch committed - Index: " + indexName + " - Position: " + batches.size());
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, e, () -> "Stream batch failure - Index: " + indexName);
+                    batches.add(new IndexJsonStreamResult.Batch(count, 0, reader.getByteOffset() - startOffset,
+                        System.currentTimeMillis() - startTime, e.getMessage() == null ? e.toString() : e.getMessage()));
+                    break;
+                }
+            }
+            return new IndexJsonStreamResult(count, reader.getByteOffset(), batches, fieldTypes);
+        }
+    }
+
     final IndexJsonResult postJsonNode(final JsonNode jsonNode, final boolean withFieldTypes) throws IOException {
         checkIsMaster();
         final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes = withFieldTypes ? new TreeMap<>() : null;
-        final Integer count = write(context -> checkCommit(context.postJsonNode(jsonNode, fieldTypes)));
+        final int count = checkCommit(write(context -> context.postJsonNode(jsonNode, fieldTypes)));
         return new IndexJsonResult(count, fieldTypes);
     }
 
     final <T> int updateDocValues(final Map<String, Field> fields, final T document,
                                   final Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.updateDocValues(fields, document, commitUserData), commitUserData));
+        return checkCommit(write(context -> context.updateDocValues(fields, document, commitUserData)), commitUserData);
     }
 
     final <T> int updateDocsValues(final Map<String, Field> fields, final Collection<T> documents,
                                    final Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
-        return write(
-            context -> checkCommit(context.updateDocsValues(fields, documents, commitUserData), commitUserData));
+        return checkCommit(write(context -> context.updateDocsValues(fields, documents, commitUserData)),
+            commitUserData);
     }
 
     final int updateMappedDocValues(final PostDefinition.Document post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.updateMappedDocValues(post), post));
+        return checkCommit(write(context -> context.updateMappedDocValues(post)), post);
     }
 
     final int updateMappedDocsValues(final PostDefinition.Documents post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.updateMappedDocsValues(post), post));
+        return checkCommit(write(context -> context.updateMappedDocsValues(post)), post);
     }
 
     final ResultDefinition.WithMap deleteByQuery(final QueryDefinition queryDefinition) throws IOException {
         checkIsMaster();
         Objects.requireNonNull(queryDefinition, "The queryDefinition is missing - Index: " + indexName);
         final QueryInterface queryInterface = Objects.requireNonNull(queryDefinition.getQuery(), "The query is missing - Index: " + indexName);
+        final Map<String, String> commitUserData = queryDefinition.getCommitUserData();
+        final int deleted;
         try (final AutoLockSemaphore.Lock lock = writeSemaphore.acquire()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
-                try (final QueryContext queryContext = buildQueryContext(indexSearcher, taxonomyReader)) {
-                    final Query query = queryInterface.getQuery(queryContext);
-                    final IndexWriter indexWriter = writerAndSearcher.getIndexWriter();
-                    int docs = indexWriter.getDocStats().numDocs;
-                    indexWriter.deleteDocuments(query);
-                    final Map<String, String> commitUserData = queryDefinition.getCommitUserData();
-                    if (commitUserData != null && !commitUserData.isEmpty())
-                        indexWriter.setLiveCommitData(commitUserData.entrySet());
-                    nrtCommit();
-                    docs -= indexWriter.getDocStats().numDocs;
-                    return new ResultDefinition.WithMap(docs);
-                } catch (ParseException | ReflectiveOperationException | QueryNodeException e) {
-                    throw ServerException.of(e);
-                }
-            });
+            swapLock.readLock().lock();
+            try {
+                // The deleted parents are counted on an up to date searcher, the deleted children are not counted
+                final boolean nested = fieldMap.hasNestedFields();
+                if (nested)
+                    writerAndSearcher.refresh();
+                deleted = writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+                    try (final QueryContext queryContext = buildQueryContext(indexSearcher, taxonomyReader)) {
+                        final Query query = queryInterface.getQuery(queryContext);
+                        final IndexWriter indexWriter = writerAndSearcher.getIndexWriter();
+                        int docs = nested ?
+                            indexSearcher.count(NestedDocuments.filterParents(queryContext.getFieldMap(), query)) :
+                            indexWriter.getDocStats().numDocs;
+                        indexWriter.deleteDocuments(NestedDocuments.withChildren(queryContext.getFieldMap(), query));
+                        if (commitUserData != null && !commitUserData.isEmpty())
+                            indexWriter.setLiveCommitData(commitUserData.entrySet());
+                        if (!nested) {
+                            // The buffered deletions are applied (without fsync) to be counted
+                            indexWriter.flush();
+                            docs -= indexWriter.getDocStats().numDocs;
+                        }
+                        return docs;
+                    } catch (ParseException | ReflectiveOperationException | QueryNodeException e) {
+                        throw ServerException.of(e);
+                    }
+                });
+            } finally {
+                swapLock.readLock().unlock();
+            }
         }
+        checkCommit(deleted, commitUserData);
+        return new ResultDefinition.WithMap(deleted);
     }
 
     final List<TermEnumDefinition> getTermsEnum(final String fieldName, final String prefix, final Integer start,
                                                 final Integer rows) throws IOException {
         Objects.requireNonNull(fieldName, "The field name is missing - Index: " + indexName);
         try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+            return search((indexSearcher, taxonomyReader) -> {
                 final FieldTypeInterface fieldType = fieldMap.getFieldType(null, fieldName);
                 final Terms terms = MultiTerms.getTerms(indexSearcher.getIndexReader(), fieldName);
                 if (terms == null)
@@ -630,12 +974,13 @@ final public class IndexInstance implements Closeable {
     private QueryContextImpl buildQueryContext(final IndexSearcher indexSearcher,
                                                final TaxonomyReader taxonomyReader) {
         return new QueryContextImpl(indexProvider, fileResourceLoader, executorService, analyzerContext, fieldMap,
-            indexSearcher, taxonomyReader);
+            indexSearcher, taxonomyReader, queryMetrics, Boolean.TRUE.equals(settings.concurrentFacets),
+            settings.totalHitsThreshold);
     }
 
     final <T> T query(final IndexServiceInterface.QueryActions<T> queryActions) throws IOException {
         try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+            return search((indexSearcher, taxonomyReader) -> {
                 try (final QueryContextImpl context = buildQueryContext(indexSearcher, taxonomyReader)) {
                     return queryActions.apply(context);
                 }
@@ -643,6 +988,31 @@ final public class IndexInstance implements Closeable {
         }
     }
 
+    final long export(final QueryDefinition queryDefinition,
+                      final boolean smile,
+                      final boolean parallel,
+                      final OutputStream output) throws IOException {
+        try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
+            return search((indexSearcher, taxonomyReader) -> {
+                try (final QueryContextImpl context = buildQueryContext(indexSearcher, taxonomyReader)) {
+                    return new QueryExport(context, queryDefinition).export(output, smile, parallel);
+                } catch (ParseException | QueryNodeException | ReflectiveOperationException e) {
+                    throw ServerException.of(e);
+                }
+            });
+        }
+    }
+
+    final ResultDefinition.WithMap searchMap(final QueryDefinition queryDefinition) throws IOException {
+        if (searchResultCache == null)
+            return query(context -> context.searchMap(queryDefinition));
+        try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
+            return search((indexSearcher, taxonomyReader) ->
+                searchResultCache.get(queryDefinition, indexSearcher.getIndexReader(), queryMetrics,
+                    () -> buildQueryContext(indexSearcher, taxonomyReader)));
+        }
+    }
+
     private String checkPrimaryKey() {
         final String primaryKey = fieldMap.fieldsContext.primaryKey;
         if (StringUtils.isEmpty(primaryKey))
@@ -668,7 +1038,7 @@ final public class IndexInstance implements Closeable {
 
     final Explanation explain(final QueryDefinition queryDefinition, final String id) throws IOException {
         try (final AutoLockSemaphore.Lock lock = readSemaphore.acquire()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+            return search((indexSearcher, taxonomyReader) -> {
                 try (final QueryContextImpl context = buildQueryContext(indexSearcher, taxonomyReader)) {
                     final ResultDocumentsInterface.ForScoreDoc resultDocs = new ResultDocumentsInterface.ForScoreDoc();
                     final ResultDefinition.Empty result = context.searchInterface(getDocumentQuery(id), resultDocs);
@@ -741,6 +1111,7 @@ final public class IndexInstance implements Closeable {
         IOUtils.copy(inputStream, resourceFile);
         if (lastModified != null)
             Files.setLastModifiedTime(resourceFile, FileTime.fromMillis(lastModified));
+        advanceReplicationVersion();
         refreshFieldsAnalyzers();
     }
 
@@ -771,6 +1142,7 @@ final public class IndexInstance implements Closeable {
             throw new ServerException(Response.Status.NOT_FOUND,
                 "Resource not found : " + resourceName + " - Index: " + indexName);
         Files.delete(resourceFile);
+        advanceReplicationVersion();
     }
 
     final FileResourceLoader newResourceLoader(final FileResourceLoader resourceLoader) {
@@ -20,20 +20,25 @@ import com.qwazr.search.analysis.AnalyzerFactory;
 import com.qwazr.search.analysis.CustomAnalyzer;
 import com.qwazr.search.analysis.UpdatableAnalyzers;
 import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.replication.BandwidthLimiter;
 import com.qwazr.server.ServerException;
 import com.qwazr.utils.ClassLoaderUtils;
 import com.qwazr.utils.IOUtils;
+import com.qwazr.utils.StringUtils;
 import com.qwazr.utils.concurrent.AutoLockSemaphore;
 import com.qwazr.utils.reflection.ConstructorParametersImpl;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import javax.ws.rs.core.Response;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.codecs.simpletext.SimpleTextCodec;
 import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager;
@@ -50,10 +55,16 @@ import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FSLockFactory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NRTCachingDirectory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.SingleInstanceLockFactory;
 import org.apache.lucene.util.InfoStream;
 
 class IndexInstanceBuilder {
@@ -65,6 +76,9 @@ class IndexInstanceBuilder {
     final ExecutorService executorService;
     final AutoLockSemaphore writeSemaphore;
     final AutoLockSemaphore readSemaphore;
+    final int indexingThreads;
+    final SearchResultCache searchResultCache;
+    final JoinQueryCache joinQueryCache;
     final IndexInstance.Provider indexProvider;
 
     private final IndexServiceInterface indexService;
@@ -128,16 +142,22 @@ class IndexInstanceBuilder {
         this.updatableIndexAnalyzers = new UpdatableAnalyzers();
         this.writeSemaphore = AutoLockSemaphore.of(settings == null ? -1 : settings.maxConcurrentWrite == null ? -1 : settings.maxConcurrentWrite);
         this.readSemaphore = AutoLockSemaphore.of(settings == null ? -1 : settings.maxConcurrentRead == null ? -1 : settings.maxConcurrentRead);
+        this.indexingThreads = settings == null ? 1 : settings.indexingThreads == null ? 1 : settings.indexingThreads;
+        this.searchResultCache = SearchResultCache.of(settings);
+        this.joinQueryCache = JoinQueryCache.of(settings);
     }
 
     private void buildCommon() throws IOException, ReflectiveOperationException {
 
+        // An interrupted swap of a rebuilt index is completed before its field map is read
+        fileSet.recoverDataDirectory();
+
         similarity = findSimilarity(settings.similarity, settings.similarityClass, fileResourceLoader);
         sort = findSort(settings.sort, settings.sortClass);
 
         searcherFactory = MultiThreadSearcherFactory.of(executorService,
             settings.indexReaderWarmer == null ? true : settings.indexReaderWarmer, similarity,
-            settings.sortedSetFacetField);
+            settings.sortedSetFacetField, IndexQueryCache.of(settings));
 
         localAnalyzerFactoryMap = fileSet.loadAnalyzerDefinitionMap();
         final Map<String, FieldDefinition> fieldMapDefinition = fileSet.loadFieldMap();
@@ -189,10 +209,10 @@ class IndexInstanceBuilder {
     }
 
     static Directory getDirectory(IndexSettingsDefinition settings, Path dataDirectory) throws IOException {
-        final Directory directory = settings == null || settings.directoryType == null ||
-            settings.directoryType == IndexSettingsDefinition.Type.FSDirectory ?
-            FSDirectory.open(dataDirectory) :
-            new RAMDirectory();
+        final Directory directory = openDirectory(settings, dataDirectory);
+        // Caching the small segments of an in memory directory would only duplicate them on the heap
+        if (directory instanceof ByteBuffersDirectory)
+            return directory;
         final double maxMergeSizeMB = settings == null || settings.nrtCachingDirectoryMaxMergeSizeMB == null ?
             IndexSettingsDefinition.DEFAULT_NRT_CACHING_DIRECTORY_MERGE_SIZE_MB :
             settings.nrtCachingDirectoryMaxMergeSizeMB;
@@ -204,10 +224,104 @@ class IndexInstanceBuilder {
         return new NRTCachingDirectory(directory, maxMergeSizeMB, maxCacheMB);
     }
 
+    private static Directory openDirectory(final IndexSettingsDefinition settings,
+                                           final Path dataDirectory) throws IOException {
+        final IndexSettingsDefinition.Type type = settings == null || settings.directoryType == null ?
+            IndexSettingsDefinition.Type.FSDirectory : settings.directoryType;
+        switch (type) {
+            case RAMDirectory:
+            case ByteBuffersDirectory:
+                return newByteBuffersDirectory(settings.byteBuffersOffHeap != null && settings.byteBuffersOffHeap);
+            case MMapDirectory:
+                return openMMapDirectory(settings, dataDirectory);
+            case NIOFSDirectory:
+                return new NIOFSDirectory(dataDirectory);
+            default:
+                return FSDirectory.open(dataDirectory);
+        }
+    }
+
+    private final static int OFF_HEAP_MIN_BITS_PER_BLOCK = 12; // 4KB, direct allocations are costly
+
+    /**
+     * Off heap, the blocks are direct buffers: the content of the index is not scanned by the garbage collector.
+     * Their total size is bounded by -XX:MaxDirectMemorySize.
+     */
+    private static ByteBuffersDirectory newByteBuffersDirectory(final boolean offHeap) {
+        if (!offHeap)
+            return new ByteBuffersDirectory();
+        return new ByteBuffersDirectory(new SingleInstanceLockFactory(),
+            () -> new ByteBuffersDataOutput(OFF_HEAP_MIN_BITS_PER_BLOCK, ByteBuffersDataOutput.DEFAULT_MAX_BITS_PER_BLOCK,
+                ByteBuffer::allocateDirect, ByteBuffersDataOutput.NO_REUSE),
+            ByteBuffersDirectory.OUTPUT_AS_MANY_BUFFERS);
+    }
+
+    /**
+     * The files having one of the preload extensions are mapped by a dedicated MMapDirectory
+     * which loads them in the page cache when they are opened. The wildcard "*" preloads every file.
+     */
+    private static Directory openMMapDirectory(final IndexSettingsDefinition settings,
+                                               final Path dataDirectory) throws IOException {
+        final int maxChunkSize = getMMapMaxChunkSize(settings.mmapMaxChunkSizeMB);
+        final Set<String> preloadExtensions = new LinkedHashSet<>();
+        if (settings.mmapPreloadExtensions != null)
+            for (final String extension : settings.mmapPreloadExtensions)
+                if (!StringUtils.isBlank(extension))
+                    preloadExtensions.add(StringUtils.removeStart(extension.trim(), "."));
+        if (preloadExtensions.isEmpty())
+            return newMMapDirectory(dataDirectory, maxChunkSize, settings.mmapUseUnmap, false);
+        if (preloadExtensions.contains("*"))
+            return newMMapDirectory(dataDirectory, maxChunkSize, settings.mmapUseUnmap, true);
+        final MMapDirectory preloadDirectory =
+            newMMapDirectory(dataDirectory, maxChunkSize, settings.mmapUseUnmap, true);
+        try {
+            return new FileSwitchDirectory(preloadExtensions, preloadDirectory,
+                newMMapDirectory(dataDirectory, maxChunkSize, settings.mmapUseUnmap, false), true);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(preloadDirectory);
+            throw e;
+        }
+    }
+
+    private static int getMMapMaxChunkSize(final Integer maxChunkSizeMB) {
+        if (maxChunkSizeMB == null || maxChunkSizeMB <= 0)
+            return MMapDirectory.DEFAULT_MAX_CHUNK_SIZE;
+        final long maxChunkSize = maxChunkSizeMB * 1024L * 1024L;
+        if (maxChunkSize > MMapDirectory.DEFAULT_MAX_CHUNK_SIZE)
+            throw new ServerException(Response.Status.NOT_ACCEPTABLE,
+                "The mmap chunk size cannot exceed " + (MMapDirectory.DEFAULT_MAX_CHUNK_SIZE >> 20) + " MB");
+        return (int) maxChunkSize;
+    }
+
+    private static MMapDirectory newMMapDirectory(final Path dataDirectory,
+                                                  final int maxChunkSize,
+                                                  final Boolean useUnmap,
+                                                  final boolean preload) throws IOException {
+        final MMapDirectory directory = new MMapDirectory(dataDirectory, FSLockFactory.getDefault(), maxChunkSize);
+        if (useUnmap != null && useUnmap != directory.getUseUnmap()) {
+            try {
+                directory.setUseUnmap(useUnmap);
+            } catch (IllegalArgumentException e) {
+                IOUtils.closeQuietly(directory);
+                throw new ServerException(Response.Status.NOT_ACCEPTABLE, e.getMessage());
+            }
+        }
+        directory.setPreload(preload);
+        return directory;
+    }
+
     private final static int MERGE_SCHEDULER_SSD_THREADS =
         Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
 
     private void openOrCreateDataIndex(boolean closeAfter) throws IOException {
+        indexWriter = openIndexWriter(dataDirectory);
+        if (closeAfter) {
+            IOUtils.closeQuietly(indexWriter);
+            indexWriter = null;
+        }
+    }
+
+    private IndexWriter openIndexWriter(final Directory directory) throws IOException {
 
         final IndexWriterConfig indexWriterConfig = new IndexWriterConfig(updatableIndexAnalyzers);
         indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
@@ -259,11 +373,7 @@ class IndexInstanceBuilder {
             new SnapshotDeletionPolicy(indexWriterConfig.getIndexDeletionPolicy());
         indexWriterConfig.setIndexDeletionPolicy(snapshotDeletionPolicy);
 
-        indexWriter = checkCommit(new IndexWriter(dataDirectory, indexWriterConfig));
-        if (closeAfter) {
-            IOUtils.closeQuietly(indexWriter);
-            indexWriter = null;
-        }
+        return checkCommit(new IndexWriter(directory, indexWriterConfig));
     }
 
     private IndexWriter checkCommit(final IndexWriter indexWriter) throws IOException {
@@ -287,12 +397,12 @@ class IndexInstanceBuilder {
 
         if (IndexSettingsDefinition.useTaxonomyIndex(settings)) {
             openOrCreateTaxonomyIndex(true);
-            replicationSlave = ReplicationSlave.withIndexAndTaxo(fileSet, indexService, settings.master, dataDirectory,
+            replicationSlave = ReplicationSlave.withIndexAndTaxo(fileSet, indexService, settings, dataDirectory,
                 taxonomyDirectory);
             writerAndSearcher = new WriterAndSearcher.WithIndexAndTaxo(null, null,
                 () -> new SearcherTaxonomyManager(dataDirectory, taxonomyDirectory, searcherFactory));
         } else {
-            replicationSlave = ReplicationSlave.withIndex(fileSet, indexService, settings.master, dataDirectory);
+            replicationSlave = ReplicationSlave.withIndex(fileSet, indexService, settings, dataDirectory);
             writerAndSearcher =
                 new WriterAndSearcher.WithIndex(null, () -> new SearcherManager(dataDirectory, searcherFactory));
         }
@@ -303,18 +413,68 @@ class IndexInstanceBuilder {
 
         openOrCreateDataIndex(false);
 
-        if (IndexSettingsDefinition.useTaxonomyIndex(settings)) {
+        if (IndexSettingsDefinition.useTaxonomyIndex(settings))
             openOrCreateTaxonomyIndex(false);
-            replicationMaster = new ReplicationMaster.WithIndexAndTaxo(
-                indexUuid.toString(), fileSet, indexWriter, taxonomyWriter);
-            writerAndSearcher = new WriterAndSearcher.WithIndexAndTaxo(indexWriter, taxonomyWriter,
-                () -> new SearcherTaxonomyManager(indexWriter, true, searcherFactory, taxonomyWriter));
-        } else {
-            replicationMaster = new ReplicationMaster.WithIndex(indexUuid.toString(), fileSet, indexWriter);
-            writerAndSearcher = new WriterAndSearcher.WithIndex(indexWriter,
-                () -> new SearcherManager(indexWriter, searcherFactory));
+
+        final MasterIndex masterIndex = newMasterIndex(indexWriter);
+        replicationMaster = masterIndex.replicationMaster;
+        writerAndSearcher = masterIndex.writerAndSearcher;
+    }
+
+    private MasterIndex newMasterIndex(final IndexWriter indexWriter) throws IOException {
+        final BandwidthLimiter bandwidthLimiter = BandwidthLimiter.of(settings.replicationMaxBandwidthMB);
+        final ReplicationMaster master = taxonomyWriter != null ?
+            new ReplicationMaster.WithIndexAndTaxo(indexUuid.toString(), fileSet, indexWriter, taxonomyWriter,
+                bandwidthLimiter) :
+            new ReplicationMaster.WithIndex(indexUuid.toString(), fileSet, indexWriter, bandwidthLimiter);
+        try {
+            return new MasterIndex(master, taxonomyWriter != null ?
+                new WriterAndSearcher.WithIndexAndTaxo(indexWriter, taxonomyWriter,
+                    () -> new SearcherTaxonomyManager(indexWriter, true, searcherFactory, taxonomyWriter)) :
+                new WriterAndSearcher.WithIndex(indexWriter,
+                    () -> new SearcherManager(indexWriter, searcherFactory)));
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(master);
+            throw e;
         }
+    }
+
+    /**
+     * Open a new writer, new searchers and a new replication master on the given data directory,
+     * with the settings of this index. The taxonomy writer of the index is shared.
+     * Used to switch the index to a rebuilt data directory.
+     *
+     * @param directory the data directory, it is not closed on failure
+     * @return the new master index
+     * @throws IOException if any I/O error occurs
+     */
+    MasterIndex openMasterIndex(final Directory directory) throws IOException {
+        final IndexWriter newIndexWriter = openIndexWriter(directory);
+        try {
+            return newMasterIndex(newIndexWriter);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(newIndexWriter);
+            throw e;
+        }
+    }
 
+    /**
+     * The writer and the searchers of a master data index, with its replication master
+     */
+    final static class MasterIndex {
+
+        final ReplicationMaster replicationMaster;
+        final WriterAndSearcher writerAndSearcher;
+
+        private MasterIndex(final ReplicationMaster replicationMaster, final WriterAndSearcher writerAndSearcher) {
+            this.replicationMaster = replicationMaster;
+            this.writerAndSearcher = writerAndSearcher;
+        }
+
+        @FunctionalInterface
+        interface Factory {
+            MasterIndex open(Directory directory) throws IOException;
+        }
     }
 
     private void abort() {
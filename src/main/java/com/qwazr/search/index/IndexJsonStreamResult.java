@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.qwazr.utils.Equalizer;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonAutoDetect(
+    creatorVisibility = JsonAutoDetect.Visibility.NONE,
+    getterVisibility = JsonAutoDetect.Visibility.NONE,
+    setterVisibility = JsonAutoDetect.Visibility.NONE,
+    isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+    fieldVisibility = JsonAutoDetect.Visibility.NONE)
+public class IndexJsonStreamResult extends Equalizer.Immutable<IndexJsonStreamResult> {
+
+    /**
+     * The total number of indexed documents
+     */
+    @JsonProperty("count")
+    public final Long count;
+
+    /**
+     * The number of bytes read from the stream
+     */
+    @JsonProperty("bytes")
+    public final Long bytes;
+
+    /**
+     * The batches in the order they have been committed. Only the last one may have failed.
+     */
+    @JsonProperty("batches")
+    public final List<Batch> batches;
+
+    @JsonProperty("field_types")
+    public final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes;
+
+    @JsonCreator
+    public IndexJsonStreamResult(final @JsonProperty("count") Long count,
+                                 final @JsonProperty("bytes") Long bytes,
+                                 final @JsonProperty("batches") List<Batch> batches,
+                                 final @JsonProperty("field_types") SortedMap<String, SortedSet<JsonNodeType>> fieldTypes) {
+        super(IndexJsonStreamResult.class);
+        this.count = count;
+        this.bytes = bytes;
+        this.batches = batches;
+        this.fieldTypes = fieldTypes;
+    }
+
+    /**
+     * @return true if every batch has been indexed and committed
+     */
+    public boolean isSuccess() {
+        return batches == null || batches.stream().allMatch(batch -> batch.error == null);
+    }
+
+    @Override
+    protected int computeHashCode() {
+        return Objects.hash(count, bytes, batches, fieldTypes);
+    }
+
+    @Override
+    protected boolean isEqual(final IndexJsonStreamResult o) {
+        return Objects.equals(count, o.count)
+            && Objects.equals(bytes, o.bytes)
+            && Objects.equals(batches, o.batches)
+            && Objects.equals(fieldTypes, o.fieldTypes);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonAutoDetect(
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        setterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class Batch extends Equalizer.Immutable<Batch> {
+
+        /**
+         * The position of the first document of the batch in the stream
+         */
+        @JsonProperty("position")
+        public final Long position;
+
+        /**
+         * The number of indexed documents
+         */
+        @JsonProperty("count")
+        public final Integer count;
+
+        /**
+         * The number of bytes read from the stream for this batch
+         */
+        @JsonProperty("bytes")
+        public final Long bytes;
+
+        /**
+         * The duration of the indexation and the commit, in milliseconds
+         */
+        @JsonProperty("time")
+        public final Long time;
+
+        @JsonProperty("error")
+        public final String error;
+
+        @JsonCreator
+        public Batch(final @JsonProperty("position") Long position,
+                     final @JsonProperty("count") Integer count,
+                     final @JsonProperty("bytes") Long bytes,
+                     final @JsonProperty("time") Long time,
+                     final @JsonProperty("error") String error) {
+            super(Batch.class);
+            this.position = position;
+            this.count = count;
+            this.bytes = bytes;
+            this.time = time;
+            this.error = error;
+        }
+
+        @Override
+        protected int computeHashCode() {
+            return Objects.hash(position, count, bytes, time, error);
+        }
+
+        @Override
+        protected boolean isEqual(final Batch o) {
+            return Objects.equals(position, o.position)
+                && Objects.equals(count, o.count)
+                && Objects.equals(bytes, o.bytes)
+                && Objects.equals(time, o.time)
+                && Objects.equals(error, o.error);
+        }
+    }
+
+}
@@ -29,8 +29,11 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.SortedMap;
@@ -246,7 +249,9 @@ public class IndexManager extends ConstructorParametersImpl implements IndexInst
             final SortedMap<String, BackupStatus> results = Collections.synchronizedSortedMap(new TreeMap<>());
             indexIterator(indexName, (idxName, indexInstance) -> {
                 try {
-                    results.put(idxName, indexInstance.backup(backupDirectory.resolve(idxName)));
+                    final Path backupIndexDirectory = backupDirectory.resolve(idxName);
+                    results.put(idxName,
+                        indexInstance.backup(backupIndexDirectory, getPreviousBackups(idxName, backupIndexDirectory)));
                 } catch (IOException e) {
                     throw ServerException.of(e);
                 }
@@ -255,6 +260,23 @@ public class IndexManager extends ConstructorParametersImpl implements IndexInst
         });
     }
 
+    /**
+     * The backups of an index which may share their unchanged files with a new backup:
+     * the backup itself if it is done again, then the other backups, the most recent first.
+     */
+    private List<Path> getPreviousBackups(final String indexName, final Path backupIndexDirectory)
+        throws IOException {
+        final List<Path> previousBackups = new ArrayList<>();
+        previousBackups.add(backupIndexDirectory);
+        try (final Stream<Path> stream = Files.list(backupRootDirectory)) {
+            stream.map(path -> path.resolve(indexName))
+                .filter(path -> !path.equals(backupIndexDirectory) && Files.isDirectory(path))
+                .sorted(Comparator.comparingLong((Path path) -> path.toFile().lastModified()).reversed())
+                .forEach(previousBackups::add);
+        }
+        return previousBackups;
+    }
+
     private void backupIterator(final String backupName, final Consumer<Path> consumer) {
         try {
             if ("*".equals(backupName)) {
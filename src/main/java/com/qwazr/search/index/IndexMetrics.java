@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * The query metrics of an index, collected since the index has been opened.
+ * The latencies are given in microseconds for each phase of the queries.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+    getterVisibility = JsonAutoDetect.Visibility.NONE,
+    isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+    creatorVisibility = JsonAutoDetect.Visibility.NONE,
+    fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+public class IndexMetrics {
+
+    final public Long queries;
+
+    /**
+     * The queries answered by the search result cache, also counted in the queries and in the total latency
+     */
+    @JsonProperty("cache_hits")
+    final public Long cacheHits;
+
+    @JsonProperty("hits_collected")
+    final public Long hitsCollected;
+
+    @JsonProperty("documents_loaded")
+    final public Long documentsLoaded;
+
+    @JsonProperty("stored_fields_bytes")
+    final public Long storedFieldsBytes;
+
+    final public LinkedHashMap<String, LatencyStats> phases;
+
+    @JsonCreator
+    IndexMetrics(@JsonProperty("queries") Long queries,
+                 @JsonProperty("cache_hits") Long cacheHits,
+                 @JsonProperty("hits_collected") Long hitsCollected,
+                 @JsonProperty("documents_loaded") Long documentsLoaded,
+                 @JsonProperty("stored_fields_bytes") Long storedFieldsBytes,
+                 @JsonProperty("phases") LinkedHashMap<String, LatencyStats> phases) {
+        this.queries = queries;
+        this.cacheHits = cacheHits;
+        this.hitsCollected = hitsCollected;
+        this.documentsLoaded = documentsLoaded;
+        this.storedFieldsBytes = storedFieldsBytes;
+        this.phases = phases;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(queries, cacheHits, hitsCollected, documentsLoaded, storedFieldsBytes);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof IndexMetrics))
+            return false;
+        if (o == this)
+            return true;
+        final IndexMetrics m = (IndexMetrics) o;
+        return Objects.equals(queries, m.queries)
+            && Objects.equals(cacheHits, m.cacheHits)
+            && Objects.equals(hitsCollected, m.hitsCollected)
+            && Objects.equals(documentsLoaded, m.documentsLoaded)
+            && Objects.equals(storedFieldsBytes, m.storedFieldsBytes)
+            && Objects.equals(phases, m.phases);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class LatencyStats {
+
+        final public Long count;
+
+        @JsonProperty("mean_us")
+        final public Long meanUs;
+
+        @JsonProperty("p50_us")
+        final public Long p50Us;
+
+        @JsonProperty("p90_us")
+        final public Long p90Us;
+
+        @JsonProperty("p99_us")
+        final public Long p99Us;
+
+        @JsonProperty("p999_us")
+        final public Long p999Us;
+
+        @JsonProperty("max_us")
+        final public Long maxUs;
+
+        @JsonCreator
+        LatencyStats(@JsonProperty("count") Long count,
+                     @JsonProperty("mean_us") Long meanUs,
+                     @JsonProperty("p50_us") Long p50Us,
+                     @JsonProperty("p90_us") Long p90Us,
+                     @JsonProperty("p99_us") Long p99Us,
+                     @JsonProperty("p999_us") Long p999Us,
+                     @JsonProperty("max_us") Long maxUs) {
+            this.count = count;
+            this.meanUs = meanUs;
+            this.p50Us = p50Us;
+            this.p90Us = p90Us;
+            this.p99Us = p99Us;
+            this.p999Us = p999Us;
+            this.maxUs = maxUs;
+        }
+
+        public Long getCount() {
+            return count;
+        }
+
+        public Long getMeanUs() {
+            return meanUs;
+        }
+
+        public Long getP50Us() {
+            return p50Us;
+        }
+
+        public Long getP90Us() {
+            return p90Us;
+        }
+
+        public Long getP99Us() {
+            return p99Us;
+        }
+
+        public Long getP999Us() {
+            return p999Us;
+        }
+
+        public Long getMaxUs() {
+            return maxUs;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, p50Us, p99Us, maxUs);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof LatencyStats))
+                return false;
+            if (o == this)
+                return true;
+            final LatencyStats s = (LatencyStats) o;
+            return Objects.equals(count, s.count)
+                && Objects.equals(meanUs, s.meanUs)
+                && Objects.equals(p50Us, s.p50Us)
+                && Objects.equals(p90Us, s.p90Us)
+                && Objects.equals(p99Us, s.p99Us)
+                && Objects.equals(p999Us, s.p999Us)
+                && Objects.equals(maxUs, s.maxUs);
+        }
+    }
+}
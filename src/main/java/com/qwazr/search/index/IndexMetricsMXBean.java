@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import java.util.Map;
+
+/**
+ * The query metrics of an index exposed through JMX, under the name
+ * com.qwazr.search:type=IndexMetrics,name={index_name},uuid={index_uuid}
+ */
+public interface IndexMetricsMXBean {
+
+    long getQueries();
+
+    long getCacheHits();
+
+    long getHitsCollected();
+
+    long getDocumentsLoaded();
+
+    long getStoredFieldsBytes();
+
+    Map<String, IndexMetrics.LatencyStats> getPhases();
+}
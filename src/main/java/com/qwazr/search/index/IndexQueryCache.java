@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+
+import java.util.function.Predicate;
+
+/**
+ * The query cache and the caching policy of an index, applied to each new searcher.
+ * The cache and the policy (which tracks the usage of the filters) survive the reopening of the searcher.
+ */
+final class IndexQueryCache {
+
+    private final static float SKIP_CACHE_FACTOR = 10f;
+
+    private final QueryCache queryCache;
+    private final QueryCachingPolicy cachingPolicy;
+
+    private IndexQueryCache(final QueryCache queryCache, final QueryCachingPolicy cachingPolicy) {
+        this.queryCache = queryCache;
+        this.cachingPolicy = cachingPolicy;
+    }
+
+    private final static IndexQueryCache DISABLED = new IndexQueryCache(null, null);
+
+    private final static QueryCachingPolicy ALWAYS_CACHE = new QueryCachingPolicy() {
+
+        @Override
+        public void onUse(final Query query) {
+        }
+
+        @Override
+        public boolean shouldCache(final Query query) {
+            return true;
+        }
+    };
+
+    /**
+     * @param settings the settings of the index
+     * @return the query cache of the index, or null if the index uses the global query cache
+     */
+    static IndexQueryCache of(final IndexSettingsDefinition settings) {
+        if (settings == null || settings.queryCachePolicy == null)
+            return null;
+        final QueryCachingPolicy cachingPolicy;
+        switch (settings.queryCachePolicy) {
+            default:
+            case GLOBAL:
+                return null;
+            case DISABLED:
+                return DISABLED;
+            case USAGE_TRACKING:
+                cachingPolicy = new UsageTrackingQueryCachingPolicy();
+                break;
+            case ALWAYS_CACHE_FILTERS:
+                cachingPolicy = ALWAYS_CACHE;
+                break;
+        }
+        final int maxEntries = settings.queryCacheMaxEntries == null || settings.queryCacheMaxEntries <= 0 ?
+            IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MAX_ENTRIES : settings.queryCacheMaxEntries;
+        final long maxRamBytes = settings.queryCacheMaxRamMB == null || settings.queryCacheMaxRamMB <= 0 ?
+            Math.min(1 << 25, Runtime.getRuntime().maxMemory() / 20) :
+            (long) (settings.queryCacheMaxRamMB * 1024 * 1024);
+        final int minSegmentDocs = settings.queryCacheMinSegmentDocs == null || settings.queryCacheMinSegmentDocs < 0 ?
+            IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MIN_SEGMENT_DOCS : settings.queryCacheMinSegmentDocs;
+        final float minSegmentRatio =
+            settings.queryCacheMinSegmentRatio == null || settings.queryCacheMinSegmentRatio < 0 ?
+                IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MIN_SEGMENT_RATIO : settings.queryCacheMinSegmentRatio;
+        return new IndexQueryCache(new LRUQueryCache(maxEntries, maxRamBytes,
+            new MinSegmentSize(minSegmentDocs, minSegmentRatio), SKIP_CACHE_FACTOR), cachingPolicy);
+    }
+
+    void apply(final IndexSearcher indexSearcher) {
+        indexSearcher.setQueryCache(queryCache);
+        if (cachingPolicy != null)
+            indexSearcher.setQueryCachingPolicy(cachingPolicy);
+    }
+
+    /**
+     * Same rule than the default one of Lucene, with configurable thresholds.
+     */
+    private static final class MinSegmentSize implements Predicate<LeafReaderContext> {
+
+        private final int minDocs;
+        private final float minRatio;
+
+        private MinSegmentSize(final int minDocs, final float minRatio) {
+            this.minDocs = minDocs;
+            this.minRatio = minRatio;
+        }
+
+        @Override
+        public boolean test(final LeafReaderContext context) {
+            final int maxDoc = context.reader().maxDoc();
+            if (maxDoc < minDocs)
+                return false;
+            final int topMaxDoc = ReaderUtil.getTopLevelContext(context).reader().maxDoc();
+            return topMaxDoc == 0 || (float) maxDoc / topMaxDoc >= minRatio;
+        }
+    }
+}
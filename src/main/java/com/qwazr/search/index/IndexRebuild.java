@@ -0,0 +1,388 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.qwazr.search.analysis.AnalyzerContext;
+import com.qwazr.utils.FileUtils;
+import com.qwazr.utils.IOUtils;
+import com.qwazr.utils.LoggerUtils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.LiveIndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Rebuild of an index with a new field map, in a sibling directory.
+ * <p>
+ * The records are read from a snapshot of the live index and indexed concurrently in the shadow index.
+ * The writes made on the live index in the meantime are caught up by comparing two successive snapshots:
+ * the documents of the new segments are indexed again, the documents removed from the previous segments are deleted.
+ * The last catch up is done while the writes are blocked, just before the live index is switched to the shadow index.
+ * <p>
+ * A merged segment is a new segment which would be read again: the merges of the live index are suspended
+ * during the rebuild, the catch up only reads the segments flushed in the meantime.
+ */
+final class IndexRebuild implements Closeable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(IndexRebuild.class);
+
+    /**
+     * The number of consecutive documents of a segment read by a worker before it picks the next chunk
+     */
+    private final static int CHUNK_DOCS = 10_000;
+
+    /**
+     * The catch up passes made while the writes continue, before the last one made with the writes blocked
+     */
+    final static int MAX_CATCH_UP_PASSES = 5;
+
+    /**
+     * Below this number of changes, the last catch up is short enough to block the writes
+     */
+    final static int CATCH_UP_THRESHOLD = 1000;
+
+    private final static long MERGE_POLL_MS = 100;
+
+    private final WriterAndSearcher writerAndSearcher;
+    private final IndexWriter liveWriter;
+    private final MergePolicy liveMergePolicy;
+    private final FieldMap fieldMap;
+    private final AnalyzerContext analyzerContext;
+    private final ExecutorService executorService;
+    private final int threads;
+    private final String recordField;
+    private final String primaryKey;
+    private final Path shadowPath;
+    private Directory shadowDirectory;
+    private final IndexWriter shadowWriter;
+    private final TaxonomyWriter taxonomyWriter;
+    private IndexReader snapshot;
+
+    IndexRebuild(final IndexSettingsDefinition settings,
+                 final Path shadowPath,
+                 final WriterAndSearcher writerAndSearcher,
+                 final FieldMap fieldMap,
+                 final AnalyzerContext analyzerContext,
+                 final Analyzer indexAnalyzer,
+                 final ExecutorService executorService) throws IOException {
+        this.writerAndSearcher = writerAndSearcher;
+        this.fieldMap = fieldMap;
+        this.analyzerContext = analyzerContext;
+        this.executorService = executorService;
+        this.threads = executorService == null ? 1 : Runtime.getRuntime().availableProcessors();
+        this.recordField = fieldMap.fieldsContext.recordField;
+        this.primaryKey = fieldMap.fieldsContext.primaryKey;
+        this.shadowPath = shadowPath;
+        // A previous rebuild may have been interrupted
+        if (Files.exists(shadowPath))
+            FileUtils.deleteDirectory(shadowPath);
+        Files.createDirectory(shadowPath);
+        this.shadowDirectory = IndexInstanceBuilder.getDirectory(settings, shadowPath);
+        this.liveWriter = writerAndSearcher.getIndexWriter();
+        this.liveMergePolicy = liveWriter.getConfig().getMergePolicy();
+        this.shadowWriter = openShadowWriter(shadowDirectory, newIndexWriterConfig(liveWriter.getConfig(),
+            liveMergePolicy, indexAnalyzer));
+        liveWriter.getConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        this.taxonomyWriter = writerAndSearcher.write((indexWriter, taxonomyWriter) -> taxonomyWriter);
+    }
+
+    private static IndexWriter openShadowWriter(final Directory directory,
+                                                final IndexWriterConfig config) throws IOException {
+        try {
+            return new IndexWriter(directory, config);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(directory);
+            throw e;
+        }
+    }
+
+    /**
+     * The shadow index uses the same settings than the live index. The index sort must match to copy the segments.
+     * The taxonomy is not rebuilt: the taxonomy of the live index only grows, its ordinals stay valid.
+     */
+    private static IndexWriterConfig newIndexWriterConfig(final LiveIndexWriterConfig liveConfig,
+                                                          final MergePolicy mergePolicy,
+                                                          final Analyzer indexAnalyzer) {
+        final IndexWriterConfig config = new IndexWriterConfig(indexAnalyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        config.setSimilarity(liveConfig.getSimilarity());
+        config.setCodec(liveConfig.getCodec());
+        config.setUseCompoundFile(liveConfig.getUseCompoundFile());
+        config.setRAMBufferSizeMB(liveConfig.getRAMBufferSizeMB());
+        config.setMergePolicy(mergePolicy);
+        if (liveConfig.getIndexSort() != null)
+            config.setIndexSort(liveConfig.getIndexSort());
+        return config;
+    }
+
+    /**
+     * @param indexReader the content of the index
+     * @param recordField the name of the record field
+     * @return true if the first record is a JSON object. Records of serialized Java objects cannot be reindexed.
+     * @throws IOException if any I/O error occurs
+     */
+    static boolean hasJsonRecords(final IndexReader indexReader, final String recordField) throws IOException {
+        final RecordVisitor visitor = new RecordVisitor(recordField);
+        for (final LeafReaderContext leaf : indexReader.leaves()) {
+            final LeafReader reader = leaf.reader();
+            final Bits liveDocs = reader.getLiveDocs();
+            for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc))
+                    continue;
+                try {
+                    return visitor.readObject(reader, doc) != null;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private IndexReader acquireSnapshot() throws IOException {
+        writerAndSearcher.refresh();
+        return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+            final IndexReader indexReader = indexSearcher.getIndexReader();
+            indexReader.incRef();
+            return indexReader;
+        });
+    }
+
+    /**
+     * Index the records of the current content of the live index.
+     *
+     * @return the number of indexed documents
+     * @throws IOException if any I/O error occurs
+     */
+    long build() throws IOException {
+        awaitLiveMerges();
+        snapshot = acquireSnapshot();
+        final List<Chunk> chunks = new ArrayList<>();
+        for (final LeafReaderContext leaf : snapshot.leaves())
+            addChunks(leaf.reader(), chunks);
+        return index(chunks);
+    }
+
+    /**
+     * Apply the changes made on the live index since the previous snapshot. The segments are identified by their
+     * core: a segment which was not in the previous snapshot (flushed or merged since) is indexed again,
+     * a document deleted from a previous segment, or belonging to a segment merged away, is deleted.
+     * The deletions are applied before the new documents, an updated document is then deleted and indexed again.
+     *
+     * @return the number of deleted or indexed documents
+     * @throws IOException if any I/O error occurs
+     */
+    long catchUp() throws IOException {
+        final IndexReader previous = snapshot;
+        snapshot = acquireSnapshot();
+        try {
+            final Map<Object, LeafReader> previousLeaves = new HashMap<>();
+            for (final LeafReaderContext leaf : previous.leaves())
+                previousLeaves.put(leaf.reader().getCoreCacheHelper().getKey(), leaf.reader());
+            final List<Term> deletions = new ArrayList<>();
+            final List<Chunk> chunks = new ArrayList<>();
+            final RecordVisitor visitor = new RecordVisitor(recordField);
+            for (final LeafReaderContext leaf : snapshot.leaves()) {
+                final LeafReader reader = leaf.reader();
+                final LeafReader previousReader = previousLeaves.remove(reader.getCoreCacheHelper().getKey());
+                if (previousReader == null)
+                    addChunks(reader, chunks);
+                else if (reader.numDeletedDocs() != previousReader.numDeletedDocs())
+                    collectDeletions(previousReader, reader.getLiveDocs(), visitor, deletions);
+            }
+            for (final LeafReader previousReader : previousLeaves.values())
+                collectDeletions(previousReader, new Bits.MatchNoBits(previousReader.maxDoc()), visitor, deletions);
+            if (!deletions.isEmpty())
+                shadowWriter.deleteDocuments(deletions.toArray(new Term[0]));
+            return deletions.size() + index(chunks);
+        } finally {
+            previous.decRef();
+        }
+    }
+
+    /**
+     * Commit and close the shadow index. The caller takes the ownership of its directory.
+     *
+     * @return the directory of the shadow index
+     * @throws IOException if any I/O error occurs
+     */
+    Directory commit() throws IOException {
+        shadowWriter.commit();
+        shadowWriter.close();
+        final Directory directory = shadowDirectory;
+        shadowDirectory = null;
+        return directory;
+    }
+
+    private void collectDeletions(final LeafReader previousReader,
+                                  final Bits currentLiveDocs,
+                                  final RecordVisitor visitor,
+                                  final List<Term> deletions) throws IOException {
+        final Bits previousLiveDocs = previousReader.getLiveDocs();
+        for (int doc = 0; doc < previousReader.maxDoc(); doc++) {
+            if (previousLiveDocs != null && !previousLiveDocs.get(doc))
+                continue;
+            if (currentLiveDocs == null || currentLiveDocs.get(doc))
+                continue;
+            final ObjectNode record = visitor.readObject(previousReader, doc);
+            final Term term = record == null ? null : getPrimaryTerm(record);
+            if (term != null)
+                deletions.add(fieldMap.hasNestedFields() ? NestedDocuments.rootTerm(term) : term);
+        }
+    }
+
+    private Term getPrimaryTerm(final ObjectNode record) {
+        final JsonNode id = record.get(primaryKey);
+        if (id == null || !id.isValueNode())
+            return null;
+        final Object value = id.isNumber() ? id.numberValue() : id.isBoolean() ? id.booleanValue() : id.asText();
+        return fieldMap.getFieldType(null, primaryKey, value, analyzerContext).newPrimaryTerm(primaryKey, value);
+    }
+
+    private static void addChunks(final LeafReader reader, final List<Chunk> chunks) {
+        final Bits liveDocs = reader.getLiveDocs();
+        for (int from = 0; from < reader.maxDoc(); from += CHUNK_DOCS)
+            chunks.add(new Chunk(reader, liveDocs, from, Math.min(reader.maxDoc(), from + CHUNK_DOCS)));
+    }
+
+    private long index(final List<Chunk> chunks) throws IOException {
+        final Queue<Chunk> queue = new ConcurrentLinkedQueue<>(chunks);
+        final int workers = Math.min(threads, chunks.size());
+        final List<ConcurrentTasks.Task<Long>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++)
+            tasks.add(() -> index(queue));
+        // Every worker is awaited, even on failure, the shadow writer may be closed just after
+        long count = 0;
+        for (final Long workerCount : ConcurrentTasks.run(tasks, executorService))
+            count += workerCount;
+        return count;
+    }
+
+    private long index(final Queue<Chunk> chunks) throws IOException {
+        final RecordsPoster.JsonNodeDocument poster =
+            RecordsPoster.JsonNodeDocument.of(fieldMap, analyzerContext, null, shadowWriter, taxonomyWriter);
+        final RecordVisitor visitor = new RecordVisitor(recordField);
+        try {
+            Chunk chunk;
+            while ((chunk = chunks.poll()) != null) {
+                for (int doc = chunk.from; doc < chunk.to; doc++) {
+                    if (chunk.liveDocs != null && !chunk.liveDocs.get(doc))
+                        continue;
+                    final ObjectNode record = visitor.readObject(chunk.reader, doc);
+                    if (record != null)
+                        poster.accept(record);
+                }
+            }
+            return poster.getCount();
+        } catch (IOException | RuntimeException e) {
+            // Stop the other workers
+            chunks.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * The merges started before the suspension are awaited, the snapshot then only changes by the flushes.
+     */
+    private void awaitLiveMerges() throws IOException {
+        try {
+            while (!liveWriter.getMergingSegments().isEmpty())
+                Thread.sleep(MERGE_POLL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the merges of the live index");
+        }
+    }
+
+    @Override
+    public void close() {
+        // Once swapped, the live writer is closed: the new writer has its own merge policy
+        liveWriter.getConfig().setMergePolicy(liveMergePolicy);
+        if (liveWriter.isOpen()) {
+            try {
+                liveWriter.maybeMerge();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Cannot resume the merges of the live index");
+            }
+        }
+        if (snapshot != null) {
+            try {
+                snapshot.decRef();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Cannot release the snapshot of the rebuild");
+            }
+            snapshot = null;
+        }
+        if (shadowWriter.isOpen()) {
+            try {
+                shadowWriter.rollback();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Cannot rollback the rebuild index: " + shadowPath);
+            }
+        }
+        if (shadowDirectory != null) {
+            IOUtils.closeQuietly(shadowDirectory);
+            shadowDirectory = null;
+        }
+        // Once swapped, the shadow index is the live index: the path is then gone
+        try {
+            if (Files.exists(shadowPath))
+                FileUtils.deleteDirectory(shadowPath);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Cannot delete the rebuild directory: " + shadowPath);
+        }
+    }
+
+    private final static class Chunk {
+
+        private final LeafReader reader;
+        private final Bits liveDocs;
+        private final int from;
+        private final int to;
+
+        private Chunk(final LeafReader reader, final Bits liveDocs, final int from, final int to) {
+            this.reader = reader;
+            this.liveDocs = liveDocs;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -16,11 +16,13 @@
 package com.qwazr.search.index;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import com.qwazr.binder.FieldMapWrapper;
 import com.qwazr.search.analysis.AnalyzerDefinition;
 import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.query.QueryInterface;
 import com.qwazr.search.query.QuerySampler;
+import com.qwazr.search.replication.Compression;
 import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.server.AbstractServiceImpl;
@@ -45,6 +47,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -393,6 +396,26 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
+    @Override
+    public IndexStatus commitIndex(final String indexName) {
+        try {
+            checkRight();
+            return indexManager.get(indexName).commit();
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
+    @Override
+    public IndexMetrics getIndexMetrics(final String indexName) {
+        try {
+            checkRight();
+            return indexManager.get(indexName).getMetrics();
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
     @Override
     final public boolean deleteIndex(final String indexName) {
         try {
@@ -427,6 +450,21 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
+    @Override
+    public IndexJsonStreamResult postJsonStream(final String indexName,
+                                                final Boolean fieldTypes,
+                                                final Integer batchDocs,
+                                                final Long batchBytes,
+                                                final InputStream inputStream) {
+        try {
+            checkRight();
+            return indexManager.get(indexName)
+                .postJsonStream(inputStream, Boolean.TRUE.equals(fieldTypes), batchDocs, batchBytes);
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
     @Override
     public List<Map<String, Object>> getJsonSamples(final String indexName,
                                                     final Integer count) {
@@ -560,10 +598,13 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
 
     @Override
     public ReindexDefinition startReindex(final String indexName,
-                                          final Integer bufferSize) {
+                                          final Integer bufferSize,
+                                          final Integer threads,
+                                          final Integer maxRate) {
         try {
             checkRight();
-            return indexManager.get(indexName).getReindexThread().start(bufferSize == null ? 50 : bufferSize);
+            return indexManager.get(indexName).getReindexThread()
+                .start(bufferSize == null ? 50 : bufferSize, threads, maxRate);
         } catch (Exception e) {
             throw ServerException.getJsonException(LOGGER, e);
         }
@@ -606,12 +647,20 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
     final public InputStream replicationObtain(final String indexName,
                                                final String sessionID,
                                                final String source,
-                                               final String fileName) {
+                                               final String fileName,
+                                               final Long offset,
+                                               final Long length,
+                                               final Compression compression,
+                                               final Integer level) {
         try {
             checkRight();
-            final InputStream input = indexManager
-                .get(indexName)
-                .replicationObtain(sessionID, ReplicationProcess.Source.valueOf(source), fileName);
+            final IndexInstance indexInstance = indexManager.get(indexName);
+            final ReplicationProcess.Source itemSource = ReplicationProcess.Source.valueOf(source);
+            // Without a range, the whole file is returned without checksum
+            final InputStream input = offset == null && length == null ?
+                indexInstance.replicationObtain(sessionID, itemSource, fileName) :
+                indexInstance.replicationObtain(sessionID, itemSource, fileName,
+                    offset == null ? 0 : offset, length == null ? 0 : length, compression, level);
             if (input == null)
                 throw new ServerException(Response.Status.NOT_FOUND,
                     "File not found: " + fileName + " - Index: " + indexName);
@@ -644,6 +693,18 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
+    @Override
+    final public String replicationVersion(final String indexName,
+                                           final String currentVersion,
+                                           final Long timeoutMs) {
+        try {
+            checkRight();
+            return indexManager.get(indexName).replicationVersion(currentVersion, timeoutMs == null ? 0 : timeoutMs);
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
     @Override
     final public ReplicationStatus replicationCheck(final String indexName) {
         try {
@@ -719,22 +780,37 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
-    private QueryDefinition getMatchAllDocQuery(final Integer start,
-                                                final Integer rows) {
-        return QueryDefinition.of(new MatchAllDocsQuery()).start(start).rows(rows).returnedField("*").build();
-    }
-
-    private ResultDefinition.WithMap doSearchMap(final String indexName, final QueryDefinition query)
+    /**
+     * The start position is converted to a cursor by counting the live documents,
+     * the page is then collected after it, instead of collecting start + rows documents.
+     */
+    private static QueryDefinition getMatchAllDocQuery(final QueryContext context,
+                                                       final Integer start,
+                                                       final Integer rows) throws IOException {
+        final String cursor = start == null ? null :
+            SearchCursor.matchAllDocsAt(context.getIndexReader(), context.getFieldMap(), start);
+        return QueryDefinition.of(new MatchAllDocsQuery())
+            .start(cursor == null ? start : null)
+            .cursor(cursor)
+            .rows(rows)
+            .returnedField("*")
+            .build();
+    }
+
+    private ResultDefinition.WithMap doSearchMap(final String indexName, final Integer start, final Integer rows)
         throws IOException {
         checkRight();
-        return indexManager.get(indexName).query(context -> context.searchMap(query));
+        return indexManager.get(indexName)
+            .query(context -> context.searchMap(getMatchAllDocQuery(context, start, rows)));
     }
 
     private <T> ResultDefinition.WithObject<T> doSearchObject(final String indexName,
-                                                              final QueryDefinition query,
+                                                              final Integer start,
+                                                              final Integer rows,
                                                               final FieldMapWrapper<T> wrapper) throws IOException {
         checkRight();
-        return indexManager.get(indexName).query(context -> context.searchObject(query, wrapper));
+        return indexManager.get(indexName)
+            .query(context -> context.searchObject(getMatchAllDocQuery(context, start, rows), wrapper));
     }
 
     @Override
@@ -764,7 +840,7 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
                                                         final Integer start,
                                                         final Integer rows) {
         try {
-            final ResultDefinition.WithMap result = doSearchMap(indexName, getMatchAllDocQuery(start, rows));
+            final ResultDefinition.WithMap result = doSearchMap(indexName, start, rows);
             if (result == null)
                 throw new ServerException(Response.Status.NOT_FOUND,
                     "No document found" + " - Index: " + indexName);
@@ -806,7 +882,7 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
                                           final FieldMapWrapper<T> wrapper) {
         try {
             final ResultDefinition.WithObject<T> result =
-                doSearchObject(indexName, getMatchAllDocQuery(start, rows), wrapper);
+                doSearchObject(indexName, start, rows, wrapper);
             if (result == null)
                 throw new ServerException(Response.Status.NOT_FOUND,
                     "No document found" + " - Index: " + indexName);
@@ -830,7 +906,23 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
             if (delete != null && delete)
                 return index.deleteByQuery(query);
             else
-                return index.query(context -> context.searchMap(query));
+                return index.searchMap(query);
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
+    @Override
+    final public StreamingOutput exportQuery(final String indexName,
+                                             final String accept,
+                                             final Boolean parallel,
+                                             final QueryDefinition query) {
+        try {
+            checkRight();
+            final IndexInstance index = indexManager.get(indexName);
+            final boolean smile = accept != null && accept.contains(SmileMediaTypes.APPLICATION_JACKSON_SMILE);
+            final QueryDefinition exportQuery = query == null ? QueryDefinition.of(new MatchAllDocsQuery()).build() : query;
+            return output -> index.export(exportQuery, smile, parallel != null && parallel, output);
         } catch (Exception e) {
             throw ServerException.getJsonException(LOGGER, e);
         }
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import com.qwazr.search.analysis.AnalyzerDefinition;
 import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.query.QueryInterface;
+import com.qwazr.search.replication.Compression;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.server.PATCH;
 import com.qwazr.server.ServiceInterface;
@@ -37,13 +38,16 @@ import javax.annotation.security.RolesAllowed;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.commons.lang3.NotImplementedException;
 import org.glassfish.jersey.server.ManagedAsync;
 
@@ -55,6 +59,7 @@ public interface IndexServiceInterface extends ServiceInterface {
     String PATH = "indexes";
 
     String MEDIATYPE_TEXT_GRAPHVIZ = "text/vnd.graphviz";
+    String MEDIATYPE_APPLICATION_NDJSON = "application/x-ndjson";
 
     @GET
     @Path("/")
@@ -216,6 +221,31 @@ public interface IndexServiceInterface extends ServiceInterface {
     @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     IndexCheckStatus checkIndex(@PathParam("index_name") String indexName);
 
+    /**
+     * Commit the pending changes, whatever the commit policy of the index is.
+     * Returns once the changes are durable.
+     *
+     * @param indexName the name of the index
+     * @return the status of the index after the commit
+     */
+    @POST
+    @Path("/{index_name}/commit")
+    @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    IndexStatus commitIndex(@PathParam("index_name") String indexName);
+
+    /**
+     * The query metrics collected since the index has been opened:
+     * the latency percentiles of each phase of the queries, the collected hits,
+     * the loaded documents and the bytes read from the stored fields.
+     *
+     * @param indexName the name of the index
+     * @return the query metrics of the index
+     */
+    @GET
+    @Path("/{index_name}/metrics")
+    @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    IndexMetrics getIndexMetrics(@PathParam("index_name") String indexName);
+
     @DELETE
     @Path("/{index_name}")
     @Produces({ServiceInterface.APPLICATION_JSON_UTF8, MediaType.TEXT_PLAIN})
@@ -254,6 +284,28 @@ public interface IndexServiceInterface extends ServiceInterface {
                              @QueryParam("fieldTypes") Boolean fieldTypes,
                              JsonNode jsonNode);
 
+    /**
+     * Index a stream of documents: newline delimited JSON, a JSON array, or a sequence of SMILE documents.
+     * The documents are parsed incrementally and committed by batches.
+     *
+     * @param indexName   the name of the index
+     * @param fieldTypes  true to collect the types of the fields
+     * @param batchDocs   the maximum number of documents per batch
+     * @param batchBytes  the maximum number of bytes read per batch
+     * @param inputStream the stream of documents
+     * @return the number of indexed documents and the status of each batch
+     */
+    @POST
+    @Path("/{index_name}/stream")
+    @Consumes({MEDIATYPE_APPLICATION_NDJSON, ServiceInterface.APPLICATION_JSON_UTF8,
+        SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    IndexJsonStreamResult postJsonStream(@PathParam("index_name") String indexName,
+                                         @QueryParam("fieldTypes") Boolean fieldTypes,
+                                         @QueryParam("batchDocs") Integer batchDocs,
+                                         @QueryParam("batchBytes") Long batchBytes,
+                                         InputStream inputStream);
+
     @GET
     @Path("/{index_name}/json/samples")
     @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
@@ -302,7 +354,13 @@ public interface IndexServiceInterface extends ServiceInterface {
     @Path("/{index_name}/reindex")
     @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     ReindexDefinition startReindex(@PathParam("index_name") String indexName,
-                                   @QueryParam("buffer_size") Integer bufferSize);
+                                   @QueryParam("buffer_size") Integer bufferSize,
+                                   @QueryParam("threads") Integer threads,
+                                   @QueryParam("max_rate") Integer maxRate);
+
+    default ReindexDefinition startReindex(final String indexName, final Integer bufferSize) {
+        return startReindex(indexName, bufferSize, null, null);
+    }
 
     @DELETE
     @Path("/{index_name}/reindex")
@@ -329,7 +387,11 @@ public interface IndexServiceInterface extends ServiceInterface {
     InputStream replicationObtain(@PathParam("index_name") String indexName,
                                   @PathParam("session_id") String sessionID,
                                   @PathParam("source") String source,
-                                  @PathParam("filename") String fileName);
+                                  @PathParam("filename") String fileName,
+                                  @QueryParam("offset") Long offset,
+                                  @QueryParam("length") Long length,
+                                  @QueryParam("compression") Compression compression,
+                                  @QueryParam("level") Integer level);
 
     @DELETE
     @Path("/{index_name}/replication/{session_id}")
@@ -350,6 +412,22 @@ public interface IndexServiceInterface extends ServiceInterface {
     @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
     ReplicationStatus replicationCheck(@PathParam("index_name") String indexName);
 
+    /**
+     * Long polling on the replication version of a master index.
+     *
+     * @param indexName      the name of the master index
+     * @param currentVersion the version already known by the caller
+     * @param timeoutMs      the maximum time to wait for a new version, in milliseconds
+     * @return the current version, which is still the known version if the timeout expired
+     */
+    @GET
+    @ManagedAsync
+    @Path("/{index_name}/replication/version")
+    @Produces(MediaType.TEXT_PLAIN)
+    String replicationVersion(@PathParam("index_name") String indexName,
+                              @QueryParam("current") String currentVersion,
+                              @QueryParam("timeout") Long timeoutMs);
+
     @GET
     @Path("/{index_name}/resources")
     @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
@@ -382,6 +460,28 @@ public interface IndexServiceInterface extends ServiceInterface {
                                          QueryDefinition query,
                                          @QueryParam("delete") Boolean delete);
 
+    /**
+     * Stream every document matching the query, in index order and without scoring.
+     * Sorts, facets, highlighters and collectors are ignored. When no returned fields are given, all the stored
+     * fields (or the record) are exported. The documents are written as NDJSON, or as a stream of SMILE documents
+     * if the Accept header requests SMILE.
+     *
+     * @param indexName the name of the index
+     * @param accept    the Accept header of the request
+     * @param parallel  if true the segments are exported concurrently, the order of the documents is then not
+     *                  preserved
+     * @param query     the query definition
+     * @return the document stream
+     */
+    @POST
+    @Path("/{index_name}/export")
+    @Consumes({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MEDIATYPE_APPLICATION_NDJSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    StreamingOutput exportQuery(@PathParam("index_name") String indexName,
+                                @HeaderParam(HttpHeaders.ACCEPT) String accept,
+                                @QueryParam("parallel") Boolean parallel,
+                                QueryDefinition query);
+
     @POST
     @Path("/{index_name}/search/explain/{doc}")
     @Consumes({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.qwazr.search.annotations.Index;
+import com.qwazr.search.replication.Compression;
 import com.qwazr.utils.Equalizer;
 import com.qwazr.utils.ObjectMappers;
 import com.qwazr.utils.StringUtils;
@@ -27,6 +28,9 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.function.Supplier;
 import org.apache.lucene.search.Sort;
@@ -41,19 +45,52 @@ import org.apache.lucene.search.similarities.Similarity;
     fieldVisibility = JsonAutoDetect.Visibility.NONE)
 public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDefinition> {
 
+    /**
+     * FSDirectory: the best file system implementation for the platform.
+     * RAMDirectory: deprecated, now an alias of ByteBuffersDirectory.
+     * ByteBuffersDirectory: in memory, not persisted, on heap or off heap (see byte_buffers_off_heap).
+     * MMapDirectory: memory mapped files, see the mmap_* settings.
+     * NIOFSDirectory: positional reads, keeps cold indexes out of the address space.
+     */
     public enum Type {
-        FSDirectory, RAMDirectory
+        FSDirectory, RAMDirectory, ByteBuffersDirectory, MMapDirectory, NIOFSDirectory
     }
 
     public enum MergeScheduler {
         NO, CONCURRENT, SERIAL
     }
 
+    /**
+     * PER_REQUEST: each write request is committed before returning.
+     * GROUP_COMMIT: the concurrent write requests share the same commit, the requests still wait for it.
+     * NRT_REFRESH: the write requests only refresh the searcher, the commit is done in background.
+     */
+    public enum CommitPolicy {
+        PER_REQUEST, GROUP_COMMIT, NRT_REFRESH
+    }
+
+    /**
+     * GLOBAL: the query cache and the caching policy of Lucene, shared by all the indexes of the JVM.
+     * DISABLED: nothing is cached.
+     * USAGE_TRACKING: a cache dedicated to the index, the filters are cached once they are used often enough.
+     * ALWAYS_CACHE_FILTERS: a cache dedicated to the index, the filters are cached on their first use.
+     */
+    public enum QueryCachePolicy {
+        GLOBAL, DISABLED, USAGE_TRACKING, ALWAYS_CACHE_FILTERS
+    }
+
     public static final int DEFAULT_MAX_MERGE_AT_ONCE = 10;
     public static final int DEFAULT_SEGMENTS_PER_TIER = 10;
     public static final double DEFAULT_MAX_MERGED_SEGMENT_MB = 5 * 1024 * 1024;
     public static final double DEFAULT_NRT_CACHING_DIRECTORY_MERGE_SIZE_MB = 5;
     public static final double DEFAULT_NRT_CACHING_DIRECTORY_MAX_CACHED_MB = 60;
+    public static final int DEFAULT_GROUP_COMMIT_MAX_LATENCY_MS = 50;
+    public static final int DEFAULT_NRT_COMMIT_MAX_LATENCY_MS = 1000;
+    public static final int DEFAULT_REPLICATION_CHUNK_SIZE_MB = 8;
+    public static final int DEFAULT_REPLICATION_THREADS = 2;
+    public static final int DEFAULT_QUERY_CACHE_MAX_ENTRIES = 1000;
+    public static final int DEFAULT_QUERY_CACHE_MIN_SEGMENT_DOCS = 10000;
+    public static final float DEFAULT_QUERY_CACHE_MIN_SEGMENT_RATIO = 0.03f;
 
     @JsonProperty("primary_key")
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -125,6 +162,129 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
     @JsonProperty("max_concurrent_read")
     final public Integer maxConcurrentRead;
 
+    @JsonProperty("indexing_threads")
+    final public Integer indexingThreads;
+
+    /**
+     * The memory used to cache the search results. Disabled if null or zero.
+     */
+    @JsonProperty("search_cache_max_ram_mb")
+    final public Double searchCacheMaxRamMB;
+
+    @JsonProperty("commit_policy")
+    final public CommitPolicy commitPolicy;
+
+    @JsonProperty("commit_max_latency_ms")
+    final public Integer commitMaxLatencyMs;
+
+    @JsonProperty("commit_max_docs")
+    final public Integer commitMaxDocs;
+
+    @JsonProperty("mmap_max_chunk_size_mb")
+    final public Integer mmapMaxChunkSizeMB;
+
+    @JsonProperty("mmap_use_unmap")
+    final public Boolean mmapUseUnmap;
+
+    @JsonProperty("mmap_preload_extensions")
+    final public LinkedHashSet<String> mmapPreloadExtensions;
+
+    @JsonProperty("byte_buffers_off_heap")
+    final public Boolean byteBuffersOffHeap;
+
+    /**
+     * The size of the ranges a slave downloads from its master.
+     */
+    @JsonProperty("replication_chunk_size_mb")
+    final public Integer replicationChunkSizeMB;
+
+    /**
+     * The number of files a slave downloads concurrently.
+     */
+    @JsonProperty("replication_threads")
+    final public Integer replicationThreads;
+
+    /**
+     * The maximum bandwidth used by the replication, in MB per second:
+     * the downloads on a slave, the uploads on a master. No limit if null or zero.
+     */
+    @JsonProperty("replication_max_bandwidth_mb")
+    final public Double replicationMaxBandwidthMB;
+
+    /**
+     * Enables the background replication of a slave: the slave waits for the changes of its master
+     * (long polling, at most this duration per request) and replicates them as soon as they are committed.
+     * Disabled if null or zero.
+     */
+    @JsonProperty("replication_long_poll_ms")
+    final public Integer replicationLongPollMs;
+
+    /**
+     * The compression a slave asks for its transfers. The master does not compress the files which are already
+     * compressed (stored fields, term vectors, archives). No compression if null or NONE.
+     */
+    @JsonProperty("replication_compression")
+    final public Compression replicationCompression;
+
+    /**
+     * The compression level, from 1 (fastest) to 9 (smallest). The default level if null or zero.
+     */
+    @JsonProperty("replication_compression_level")
+    final public Integer replicationCompressionLevel;
+
+    /**
+     * The query cache of the index. GLOBAL if null.
+     * The other query_cache_* settings only apply to a cache dedicated to the index.
+     */
+    @JsonProperty("query_cache_policy")
+    final public QueryCachePolicy queryCachePolicy;
+
+    /**
+     * The maximum number of queries cached by the query cache of the index.
+     */
+    @JsonProperty("query_cache_max_entries")
+    final public Integer queryCacheMaxEntries;
+
+    /**
+     * The maximum memory used by the query cache of the index. By default, 5% of the heap up to 32MB.
+     */
+    @JsonProperty("query_cache_max_ram_mb")
+    final public Double queryCacheMaxRamMB;
+
+    /**
+     * The segments having less documents are not cached.
+     */
+    @JsonProperty("query_cache_min_segment_docs")
+    final public Integer queryCacheMinSegmentDocs;
+
+    /**
+     * The segments having a smaller ratio of the documents of the index are not cached.
+     */
+    @JsonProperty("query_cache_min_segment_ratio")
+    final public Float queryCacheMinSegmentRatio;
+
+    /**
+     * The facets (sorted set, taxonomy and associations) are counted concurrently on the segments,
+     * unless a query says otherwise (concurrent_facets). Single-threaded if null or false.
+     */
+    @JsonProperty("concurrent_facets")
+    final public Boolean concurrentFacets;
+
+    /**
+     * The number of hits counted exactly before the search is allowed to skip the non-competitive documents
+     * (block-max WAND, early termination on the index sort). Above, the total hits is a lower bound.
+     * The queries can override it (total_hits_threshold). Exact count if null or negative.
+     */
+    @JsonProperty("total_hits_threshold")
+    final public Integer totalHitsThreshold;
+
+    /**
+     * The memory used to cache the join queries built from this index (the terms collected by the from query).
+     * Disabled if null or zero.
+     */
+    @JsonProperty("join_cache_max_ram_mb")
+    final public Double joinCacheMaxRamMB;
+
     @JsonCreator
     private IndexSettingsDefinition(
         @JsonProperty("primary_key") final String primaryKey,
@@ -149,7 +309,30 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
         @JsonProperty("nrt_caching_directory_max_merge_size_mb") final Double nrtCachingDirectoryMaxMergeSizeMB,
         @JsonProperty("nrt_caching_directory_max_cached_mb") final Double nrtCachingDirectoryMaxCachedMB,
         @JsonProperty("max_concurrent_write") final Integer maxConcurrentWrite,
-        @JsonProperty("max_concurrent_read") final Integer maxConcurrentRead) {
+        @JsonProperty("max_concurrent_read") final Integer maxConcurrentRead,
+        @JsonProperty("indexing_threads") final Integer indexingThreads,
+        @JsonProperty("search_cache_max_ram_mb") final Double searchCacheMaxRamMB,
+        @JsonProperty("commit_policy") final CommitPolicy commitPolicy,
+        @JsonProperty("commit_max_latency_ms") final Integer commitMaxLatencyMs,
+        @JsonProperty("commit_max_docs") final Integer commitMaxDocs,
+        @JsonProperty("mmap_max_chunk_size_mb") final Integer mmapMaxChunkSizeMB,
+        @JsonProperty("mmap_use_unmap") final Boolean mmapUseUnmap,
+        @JsonProperty("mmap_preload_extensions") final LinkedHashSet<String> mmapPreloadExtensions,
+        @JsonProperty("byte_buffers_off_heap") final Boolean byteBuffersOffHeap,
+        @JsonProperty("replication_chunk_size_mb") final Integer replicationChunkSizeMB,
+        @JsonProperty("replication_threads") final Integer replicationThreads,
+        @JsonProperty("replication_max_bandwidth_mb") final Double replicationMaxBandwidthMB,
+        @JsonProperty("replication_long_poll_ms") final Integer replicationLongPollMs,
+        @JsonProperty("replication_compression") final Compression replicationCompression,
+        @JsonProperty("replication_compression_level") final Integer replicationCompressionLevel,
+        @JsonProperty("query_cache_policy") final QueryCachePolicy queryCachePolicy,
+        @JsonProperty("query_cache_max_entries") final Integer queryCacheMaxEntries,
+        @JsonProperty("query_cache_max_ram_mb") final Double queryCacheMaxRamMB,
+        @JsonProperty("query_cache_min_segment_docs") final Integer queryCacheMinSegmentDocs,
+        @JsonProperty("query_cache_min_segment_ratio") final Float queryCacheMinSegmentRatio,
+        @JsonProperty("concurrent_facets") final Boolean concurrentFacets,
+        @JsonProperty("total_hits_threshold") final Integer totalHitsThreshold,
+        @JsonProperty("join_cache_max_ram_mb") final Double joinCacheMaxRamMB) {
         super(IndexSettingsDefinition.class);
         this.primaryKey = primaryKey;
         this.directoryType = directoryType;
@@ -174,6 +357,30 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
         this.nrtCachingDirectoryMaxCachedMB = nrtCachingDirectoryMaxCachedMB;
         this.maxConcurrentWrite = maxConcurrentWrite;
         this.maxConcurrentRead = maxConcurrentRead;
+        this.indexingThreads = indexingThreads;
+        this.searchCacheMaxRamMB = searchCacheMaxRamMB;
+        this.commitPolicy = commitPolicy;
+        this.commitMaxLatencyMs = commitMaxLatencyMs;
+        this.commitMaxDocs = commitMaxDocs;
+        this.mmapMaxChunkSizeMB = mmapMaxChunkSizeMB;
+        this.mmapUseUnmap = mmapUseUnmap;
+        this.mmapPreloadExtensions =
+            mmapPreloadExtensions == null || mmapPreloadExtensions.isEmpty() ? null : mmapPreloadExtensions;
+        this.byteBuffersOffHeap = byteBuffersOffHeap;
+        this.replicationChunkSizeMB = replicationChunkSizeMB;
+        this.replicationThreads = replicationThreads;
+        this.replicationMaxBandwidthMB = replicationMaxBandwidthMB;
+        this.replicationLongPollMs = replicationLongPollMs;
+        this.replicationCompression = replicationCompression;
+        this.replicationCompressionLevel = replicationCompressionLevel;
+        this.queryCachePolicy = queryCachePolicy;
+        this.queryCacheMaxEntries = queryCacheMaxEntries;
+        this.queryCacheMaxRamMB = queryCacheMaxRamMB;
+        this.queryCacheMinSegmentDocs = queryCacheMinSegmentDocs;
+        this.queryCacheMinSegmentRatio = queryCacheMinSegmentRatio;
+        this.concurrentFacets = concurrentFacets;
+        this.totalHitsThreshold = totalHitsThreshold;
+        this.joinCacheMaxRamMB = joinCacheMaxRamMB;
     }
 
     private IndexSettingsDefinition(final Builder builder) {
@@ -201,6 +408,30 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
         this.nrtCachingDirectoryMaxCachedMB = builder.nrtCachingDirectoryMaxCachedMB;
         this.maxConcurrentWrite = builder.maxConcurrentWrite;
         this.maxConcurrentRead = builder.maxConcurrentRead;
+        this.indexingThreads = builder.indexingThreads;
+        this.searchCacheMaxRamMB = builder.searchCacheMaxRamMB;
+        this.commitPolicy = builder.commitPolicy;
+        this.commitMaxLatencyMs = builder.commitMaxLatencyMs;
+        this.commitMaxDocs = builder.commitMaxDocs;
+        this.mmapMaxChunkSizeMB = builder.mmapMaxChunkSizeMB;
+        this.mmapUseUnmap = builder.mmapUseUnmap;
+        this.mmapPreloadExtensions = builder.mmapPreloadExtensions == null || builder.mmapPreloadExtensions.isEmpty() ?
+            null : new LinkedHashSet<>(builder.mmapPreloadExtensions);
+        this.byteBuffersOffHeap = builder.byteBuffersOffHeap;
+        this.replicationChunkSizeMB = builder.replicationChunkSizeMB;
+        this.replicationThreads = builder.replicationThreads;
+        this.replicationMaxBandwidthMB = builder.replicationMaxBandwidthMB;
+        this.replicationLongPollMs = builder.replicationLongPollMs;
+        this.replicationCompression = builder.replicationCompression;
+        this.replicationCompressionLevel = builder.replicationCompressionLevel;
+        this.queryCachePolicy = builder.queryCachePolicy;
+        this.queryCacheMaxEntries = builder.queryCacheMaxEntries;
+        this.queryCacheMaxRamMB = builder.queryCacheMaxRamMB;
+        this.queryCacheMinSegmentDocs = builder.queryCacheMinSegmentDocs;
+        this.queryCacheMinSegmentRatio = builder.queryCacheMinSegmentRatio;
+        this.concurrentFacets = builder.concurrentFacets;
+        this.totalHitsThreshold = builder.totalHitsThreshold;
+        this.joinCacheMaxRamMB = builder.joinCacheMaxRamMB;
     }
 
     final static IndexSettingsDefinition EMPTY = new IndexSettingsDefinition(new Builder());
@@ -265,6 +496,52 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
             return false;
         if (!Objects.equals(nrtCachingDirectoryMaxCachedMB, s.nrtCachingDirectoryMaxCachedMB))
             return false;
+        if (!Objects.equals(indexingThreads, s.indexingThreads))
+            return false;
+        if (!Objects.equals(searchCacheMaxRamMB, s.searchCacheMaxRamMB))
+            return false;
+        if (!Objects.equals(commitPolicy, s.commitPolicy))
+            return false;
+        if (!Objects.equals(commitMaxLatencyMs, s.commitMaxLatencyMs))
+            return false;
+        if (!Objects.equals(commitMaxDocs, s.commitMaxDocs))
+            return false;
+        if (!Objects.equals(mmapMaxChunkSizeMB, s.mmapMaxChunkSizeMB))
+            return false;
+        if (!Objects.equals(mmapUseUnmap, s.mmapUseUnmap))
+            return false;
+        if (!Objects.equals(mmapPreloadExtensions, s.mmapPreloadExtensions))
+            return false;
+        if (!Objects.equals(byteBuffersOffHeap, s.byteBuffersOffHeap))
+            return false;
+        if (!Objects.equals(replicationChunkSizeMB, s.replicationChunkSizeMB))
+            return false;
+        if (!Objects.equals(replicationThreads, s.replicationThreads))
+            return false;
+        if (!Objects.equals(replicationMaxBandwidthMB, s.replicationMaxBandwidthMB))
+            return false;
+        if (!Objects.equals(replicationLongPollMs, s.replicationLongPollMs))
+            return false;
+        if (!Objects.equals(replicationCompression, s.replicationCompression))
+            return false;
+        if (!Objects.equals(replicationCompressionLevel, s.replicationCompressionLevel))
+            return false;
+        if (!Objects.equals(queryCachePolicy, s.queryCachePolicy))
+            return false;
+        if (!Objects.equals(queryCacheMaxEntries, s.queryCacheMaxEntries))
+            return false;
+        if (!Objects.equals(queryCacheMaxRamMB, s.queryCacheMaxRamMB))
+            return false;
+        if (!Objects.equals(queryCacheMinSegmentDocs, s.queryCacheMinSegmentDocs))
+            return false;
+        if (!Objects.equals(queryCacheMinSegmentRatio, s.queryCacheMinSegmentRatio))
+            return false;
+        if (!Objects.equals(concurrentFacets, s.concurrentFacets))
+            return false;
+        if (!Objects.equals(totalHitsThreshold, s.totalHitsThreshold))
+            return false;
+        if (!Objects.equals(joinCacheMaxRamMB, s.joinCacheMaxRamMB))
+            return false;
         return true;
     }
 
@@ -305,6 +582,29 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
         private Double nrtCachingDirectoryMaxCachedMB;
         private Integer maxConcurrentWrite;
         private Integer maxConcurrentRead;
+        private Integer indexingThreads;
+        private Double searchCacheMaxRamMB;
+        private CommitPolicy commitPolicy;
+        private Integer commitMaxLatencyMs;
+        private Integer commitMaxDocs;
+        private Integer mmapMaxChunkSizeMB;
+        private Boolean mmapUseUnmap;
+        private LinkedHashSet<String> mmapPreloadExtensions;
+        private Boolean byteBuffersOffHeap;
+        private Integer replicationChunkSizeMB;
+        private Integer replicationThreads;
+        private Double replicationMaxBandwidthMB;
+        private Integer replicationLongPollMs;
+        private Compression replicationCompression;
+        private Integer replicationCompressionLevel;
+        private QueryCachePolicy queryCachePolicy;
+        private Integer queryCacheMaxEntries;
+        private Double queryCacheMaxRamMB;
+        private Integer queryCacheMinSegmentDocs;
+        private Float queryCacheMinSegmentRatio;
+        private Boolean concurrentFacets;
+        private Integer totalHitsThreshold;
+        private Double joinCacheMaxRamMB;
 
         private Builder() {
         }
@@ -332,6 +632,30 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
             nrtCachingDirectoryMaxCachedMB(annotatedIndex.nrtCachingDirectoryMaxCachedMB());
             maxConcurrentWrite(annotatedIndex.maxConcurrentWrite());
             maxConcurrentRead(annotatedIndex.maxConcurrentRead());
+            indexingThreads(annotatedIndex.indexingThreads());
+            searchCacheMaxRamMB(annotatedIndex.searchCacheMaxRamMB());
+            commitPolicy(annotatedIndex.commitPolicy());
+            commitMaxLatencyMs(annotatedIndex.commitMaxLatencyMs());
+            commitMaxDocs(annotatedIndex.commitMaxDocs());
+            mmapMaxChunkSizeMB(annotatedIndex.mmapMaxChunkSizeMB());
+            if (!annotatedIndex.mmapUseUnmap())
+                mmapUseUnmap(false);
+            mmapPreloadExtensions(annotatedIndex.mmapPreloadExtensions());
+            byteBuffersOffHeap(annotatedIndex.byteBuffersOffHeap());
+            replicationChunkSizeMB(annotatedIndex.replicationChunkSizeMB());
+            replicationThreads(annotatedIndex.replicationThreads());
+            replicationMaxBandwidthMB(annotatedIndex.replicationMaxBandwidthMB());
+            replicationLongPollMs(annotatedIndex.replicationLongPollMs());
+            replicationCompression(annotatedIndex.replicationCompression());
+            replicationCompressionLevel(annotatedIndex.replicationCompressionLevel());
+            queryCachePolicy(annotatedIndex.queryCachePolicy());
+            queryCacheMaxEntries(annotatedIndex.queryCacheMaxEntries());
+            queryCacheMaxRamMB(annotatedIndex.queryCacheMaxRamMB());
+            queryCacheMinSegmentDocs(annotatedIndex.queryCacheMinSegmentDocs());
+            queryCacheMinSegmentRatio(annotatedIndex.queryCacheMinSegmentRatio());
+            concurrentFacets(annotatedIndex.concurrentFacets());
+            totalHitsThreshold(annotatedIndex.totalHitsThreshold());
+            joinCacheMaxRamMB(annotatedIndex.joinCacheMaxRamMB());
         }
 
         private Builder(final IndexSettingsDefinition settings) {
@@ -358,6 +682,30 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
             this.nrtCachingDirectoryMaxCachedMB = settings.nrtCachingDirectoryMaxCachedMB;
             this.maxConcurrentWrite = settings.maxConcurrentWrite;
             this.maxConcurrentRead = settings.maxConcurrentRead;
+            this.indexingThreads = settings.indexingThreads;
+            this.searchCacheMaxRamMB = settings.searchCacheMaxRamMB;
+            this.commitPolicy = settings.commitPolicy;
+            this.commitMaxLatencyMs = settings.commitMaxLatencyMs;
+            this.commitMaxDocs = settings.commitMaxDocs;
+            this.mmapMaxChunkSizeMB = settings.mmapMaxChunkSizeMB;
+            this.mmapUseUnmap = settings.mmapUseUnmap;
+            this.mmapPreloadExtensions = settings.mmapPreloadExtensions == null ?
+                null : new LinkedHashSet<>(settings.mmapPreloadExtensions);
+            this.byteBuffersOffHeap = settings.byteBuffersOffHeap;
+            this.replicationChunkSizeMB = settings.replicationChunkSizeMB;
+            this.replicationThreads = settings.replicationThreads;
+            this.replicationMaxBandwidthMB = settings.replicationMaxBandwidthMB;
+            this.replicationLongPollMs = settings.replicationLongPollMs;
+            this.replicationCompression = settings.replicationCompression;
+            this.replicationCompressionLevel = settings.replicationCompressionLevel;
+            this.queryCachePolicy = settings.queryCachePolicy;
+            this.queryCacheMaxEntries = settings.queryCacheMaxEntries;
+            this.queryCacheMaxRamMB = settings.queryCacheMaxRamMB;
+            this.queryCacheMinSegmentDocs = settings.queryCacheMinSegmentDocs;
+            this.queryCacheMinSegmentRatio = settings.queryCacheMinSegmentRatio;
+            this.concurrentFacets = settings.concurrentFacets;
+            this.totalHitsThreshold = settings.totalHitsThreshold;
+            this.joinCacheMaxRamMB = settings.joinCacheMaxRamMB;
         }
 
         public Builder primaryKey(final String primaryKey) {
@@ -483,6 +831,134 @@ public class IndexSettingsDefinition extends Equalizer.Immutable<IndexSettingsDe
             return this;
         }
 
+        public Builder indexingThreads(final Integer indexingThreads) {
+            this.indexingThreads = indexingThreads;
+            return this;
+        }
+
+        public Builder searchCacheMaxRamMB(final Double searchCacheMaxRamMB) {
+            this.searchCacheMaxRamMB = searchCacheMaxRamMB;
+            return this;
+        }
+
+        public Builder commitPolicy(final CommitPolicy commitPolicy) {
+            this.commitPolicy = commitPolicy;
+            return this;
+        }
+
+        public Builder commitMaxLatencyMs(final Integer commitMaxLatencyMs) {
+            this.commitMaxLatencyMs = commitMaxLatencyMs;
+            return this;
+        }
+
+        public Builder commitMaxDocs(final Integer commitMaxDocs) {
+            this.commitMaxDocs = commitMaxDocs;
+            return this;
+        }
+
+        public Builder mmapMaxChunkSizeMB(final Integer mmapMaxChunkSizeMB) {
+            this.mmapMaxChunkSizeMB = mmapMaxChunkSizeMB;
+            return this;
+        }
+
+        public Builder mmapUseUnmap(final Boolean mmapUseUnmap) {
+            this.mmapUseUnmap = mmapUseUnmap;
+            return this;
+        }
+
+        public Builder mmapPreloadExtensions(final Collection<String> mmapPreloadExtensions) {
+            if (mmapPreloadExtensions == null || mmapPreloadExtensions.isEmpty())
+                return this;
+            if (this.mmapPreloadExtensions == null)
+                this.mmapPreloadExtensions = new LinkedHashSet<>();
+            this.mmapPreloadExtensions.addAll(mmapPreloadExtensions);
+            return this;
+        }
+
+        public Builder mmapPreloadExtensions(final String... mmapPreloadExtensions) {
+            if (mmapPreloadExtensions == null || mmapPreloadExtensions.length == 0)
+                return this;
+            if (this.mmapPreloadExtensions == null)
+                this.mmapPreloadExtensions = new LinkedHashSet<>();
+            Collections.addAll(this.mmapPreloadExtensions, mmapPreloadExtensions);
+            return this;
+        }
+
+        public Builder byteBuffersOffHeap(final Boolean byteBuffersOffHeap) {
+            this.byteBuffersOffHeap = byteBuffersOffHeap;
+            return this;
+        }
+
+        public Builder replicationChunkSizeMB(final Integer replicationChunkSizeMB) {
+            this.replicationChunkSizeMB = replicationChunkSizeMB;
+            return this;
+        }
+
+        public Builder replicationThreads(final Integer replicationThreads) {
+            this.replicationThreads = replicationThreads;
+            return this;
+        }
+
+        public Builder replicationMaxBandwidthMB(final Double replicationMaxBandwidthMB) {
+            this.replicationMaxBandwidthMB = replicationMaxBandwidthMB;
+            return this;
+        }
+
+        public Builder replicationLongPollMs(final Integer replicationLongPollMs) {
+            this.replicationLongPollMs = replicationLongPollMs;
+            return this;
+        }
+
+        public Builder replicationCompression(final Compression replicationCompression) {
+            this.replicationCompression = replicationCompression;
+            return this;
+        }
+
+        public Builder replicationCompressionLevel(final Integer replicationCompressionLevel) {
+            this.replicationCompressionLevel = replicationCompressionLevel;
+            return this;
+        }
+
+        public Builder queryCachePolicy(final QueryCachePolicy queryCachePolicy) {
+            this.queryCachePolicy = queryCachePolicy;
+            return this;
+        }
+
+        public Builder queryCacheMaxEntries(final Integer queryCacheMaxEntries) {
+            this.queryCacheMaxEntries = queryCacheMaxEntries;
+            return this;
+        }
+
+        public Builder queryCacheMaxRamMB(final Double queryCacheMaxRamMB) {
+            this.queryCacheMaxRamMB = queryCacheMaxRamMB;
+            return this;
+        }
+
+        public Builder queryCacheMinSegmentDocs(final Integer queryCacheMinSegmentDocs) {
+            this.queryCacheMinSegmentDocs = queryCacheMinSegmentDocs;
+            return this;
+        }
+
+        public Builder queryCacheMinSegmentRatio(final Float queryCacheMinSegmentRatio) {
+            this.queryCacheMinSegmentRatio = queryCacheMinSegmentRatio;
+            return this;
+        }
+
+        public Builder concurrentFacets(final Boolean concurrentFacets) {
+            this.concurrentFacets = concurrentFacets;
+            return this;
+        }
+
+        public Builder totalHitsThreshold(final Integer totalHitsThreshold) {
+            this.totalHitsThreshold = totalHitsThreshold;
+            return this;
+        }
+
+        public Builder joinCacheMaxRamMB(final Double joinCacheMaxRamMB) {
+            this.joinCacheMaxRamMB = joinCacheMaxRamMB;
+            return this;
+        }
+
         public IndexSettingsDefinition build() {
             return new IndexSettingsDefinition(this);
         }
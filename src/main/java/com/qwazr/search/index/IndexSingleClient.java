@@ -21,6 +21,7 @@ import com.qwazr.search.analysis.AnalyzerDefinition;
 import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.query.AbstractQuery;
 import com.qwazr.search.query.QueryInterface;
+import com.qwazr.search.replication.Compression;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.server.RemoteService;
 import com.qwazr.server.ServerException;
@@ -37,6 +38,7 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.commons.lang3.StringUtils;
 
@@ -407,6 +409,32 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
         }
     }
 
+    @Override
+    public IndexStatus commitIndex(final String indexName) {
+        try {
+            return indexTarget
+                .path(indexName)
+                .path("commit")
+                .request(preferedSerializedMediaType)
+                .post(Entity.entity(null, preferedSerializedMediaType), IndexStatus.class);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
+    @Override
+    public IndexMetrics getIndexMetrics(final String indexName) {
+        try {
+            return indexTarget
+                .path(indexName)
+                .path("metrics")
+                .request(preferedSerializedMediaType)
+                .get(IndexMetrics.class);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
     @Override
     public boolean deleteIndex(final String indexName) {
         try {
@@ -451,12 +479,16 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
 
     @Override
     public ReindexDefinition startReindex(final String indexName,
-                                          final Integer bufferSize) {
+                                          final Integer bufferSize,
+                                          final Integer threads,
+                                          final Integer maxRate) {
         try {
             return indexTarget
                 .path(indexName)
                 .path("reindex")
                 .queryParam("buffer_size", bufferSize)
+                .queryParam("threads", threads)
+                .queryParam("max_rate", maxRate)
                 .request(preferedSerializedMediaType)
                 .post(null, ReindexDefinition.class);
         } catch (WebApplicationException e) {
@@ -509,7 +541,11 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
     public InputStream replicationObtain(final String indexName,
                                          final String sessionID,
                                          final String source,
-                                         final String fileName) {
+                                         final String fileName,
+                                         final Long offset,
+                                         final Long length,
+                                         final Compression compression,
+                                         final Integer level) {
         try {
             return new AutoCloseInputStream(indexTarget
                 .path(indexName)
@@ -517,6 +553,10 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
                 .path(sessionID)
                 .path(source)
                 .path(fileName)
+                .queryParam("offset", offset)
+                .queryParam("length", length)
+                .queryParam("compression", compression)
+                .queryParam("level", level)
                 .request(MediaType.APPLICATION_OCTET_STREAM)
                 .get(InputStream.class));
         } catch (WebApplicationException e) {
@@ -542,13 +582,36 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
     @Override
     public ReplicationSession replicationUpdate(final String indexName,
                                                 final String currentVersion) {
+        try (final Response response = indexTarget
+            .path(indexName)
+            .path("replication")
+            .queryParam("current_version", currentVersion)
+            .request(preferedSerializedMediaType)
+            .post(Entity.entity(currentVersion, preferedSerializedMediaType))) {
+            // No content: the master has not changed since the current version
+            if (response.getStatus() == Response.Status.NO_CONTENT.getStatusCode())
+                return null;
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL)
+                throw new WebApplicationException(response);
+            return response.readEntity(ReplicationSession.class);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
+    @Override
+    public String replicationVersion(final String indexName,
+                                     final String currentVersion,
+                                     final Long timeoutMs) {
         try {
             return indexTarget
                 .path(indexName)
                 .path("replication")
-                .queryParam("current_version", currentVersion)
-                .request(preferedSerializedMediaType)
-                .post(Entity.entity(currentVersion, preferedSerializedMediaType), ReplicationSession.class);
+                .path("version")
+                .queryParam("current", currentVersion)
+                .queryParam("timeout", timeoutMs)
+                .request(MediaType.TEXT_PLAIN)
+                .get(String.class);
         } catch (WebApplicationException e) {
             throw ServerException.from(e);
         }
@@ -659,6 +722,26 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
         }
     }
 
+    @Override
+    public IndexJsonStreamResult postJsonStream(final String indexName,
+                                                final Boolean fieldTypes,
+                                                final Integer batchDocs,
+                                                final Long batchBytes,
+                                                final InputStream inputStream) {
+        try {
+            return indexTarget
+                .path(indexName)
+                .path("stream")
+                .queryParam("fieldTypes", fieldTypes)
+                .queryParam("batchDocs", batchDocs)
+                .queryParam("batchBytes", batchBytes)
+                .request(preferedSerializedMediaType)
+                .post(Entity.entity(inputStream, MEDIATYPE_APPLICATION_NDJSON), IndexJsonStreamResult.class);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
     @Override
     public List<Map<String, Object>> getJsonSamples(final String indexName,
                                                     final Integer count) {
@@ -790,6 +873,26 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
         }
     }
 
+    @Override
+    public StreamingOutput exportQuery(final String indexName,
+                                       final String accept,
+                                       final Boolean parallel,
+                                       final QueryDefinition query) {
+        final String mediaType = accept == null ? MEDIATYPE_APPLICATION_NDJSON : accept;
+        return output -> {
+            try (final InputStream input = indexTarget
+                .path(indexName)
+                .path("export")
+                .queryParam("parallel", parallel)
+                .request(mediaType)
+                .post(Entity.entity(query, preferedSerializedMediaType), InputStream.class)) {
+                input.transferTo(output);
+            } catch (WebApplicationException e) {
+                throw ServerException.from(e);
+            }
+        };
+    }
+
     @Override
     public ExplainDefinition explainQuery(final String indexName,
                                           final QueryDefinition query,
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.qwazr.search.replication.CompressionStats;
 import com.qwazr.utils.FileUtils;
 import com.qwazr.utils.LoggerUtils;
 import org.apache.lucene.index.DirectoryReader;
@@ -37,6 +38,7 @@ import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.LRUQueryCache;
 import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.NRTCachingDirectory;
 
@@ -51,6 +53,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -64,9 +67,15 @@ public class IndexStatus {
 
     private final static Logger LOGGER = LoggerUtils.getLogger(IndexStatus.class);
 
+    /**
+     * The number of live documents. The children of the nested fields are not counted.
+     */
     @JsonProperty("num_docs")
     final public Long numDocs;
 
+    /**
+     * The number of deleted documents not merged away yet, children included.
+     */
     @JsonProperty("num_deleted_docs")
     final public Long numDeletedDocs;
 
@@ -120,6 +129,18 @@ public class IndexStatus {
     @JsonProperty("query_cache")
     final public QueryCacheStats queryCache;
 
+    @JsonProperty("search_cache")
+    final public SearchCacheStats searchCache;
+
+    @JsonProperty("join_cache")
+    final public CacheStats joinCache;
+
+    @JsonProperty("facets_state")
+    final public FacetsStateStats facetsState;
+
+    @JsonProperty("replication_compression")
+    final public ReplicationCompressionStats replicationCompression;
+
     @JsonProperty("commit_user_data")
     final public Map<String, String> commitUserData;
 
@@ -132,6 +153,15 @@ public class IndexStatus {
     @JsonProperty("directory_cached_ram_used")
     final public String directoryCachedRamUsed;
 
+    @JsonProperty("directory_memory_bytes_size")
+    final public Long directoryMemoryBytesSize;
+
+    @JsonProperty("directory_memory_size")
+    final public String directoryMemorySize;
+
+    @JsonProperty("directory_memory_off_heap")
+    final public Boolean directoryMemoryOffHeap;
+
     @JsonProperty("active_analyzers")
     final public Integer activeAnalyzers;
 
@@ -155,10 +185,17 @@ public class IndexStatus {
                 @JsonProperty("commit_generation") Long commitGeneration,
                 @JsonProperty("merge_policy") MergePolicyStatus mergePolicy,
                 @JsonProperty("query_cache") QueryCacheStats queryCache,
+                @JsonProperty("search_cache") SearchCacheStats searchCache,
+                @JsonProperty("join_cache") CacheStats joinCache,
+                @JsonProperty("facets_state") FacetsStateStats facetsState,
+                @JsonProperty("replication_compression") ReplicationCompressionStats replicationCompression,
                 @JsonProperty("commit_user_data") Map<String, String> commitUserData,
                 @JsonProperty("directory_class") String directoryClass,
                 @JsonProperty("directory_cached_files") String[] directoryCachedFiles,
                 @JsonProperty("directory_cached_ram_used") String directoryCachedRamUsed,
+                @JsonProperty("directory_memory_bytes_size") Long directoryMemoryBytesSize,
+                @JsonProperty("directory_memory_size") String directoryMemorySize,
+                @JsonProperty("directory_memory_off_heap") Boolean directoryMemoryOffHeap,
                 @JsonProperty("active_analyzers") Integer activeAnalyzers,
                 @JsonProperty("index_sort_fields") Set<String> indexSortFields) {
         this.numDocs = numDocs;
@@ -181,20 +218,29 @@ public class IndexStatus {
         this.commitFilenames = commitFilenames;
         this.commitGeneration = commitGeneration;
         this.queryCache = queryCache;
+        this.searchCache = searchCache;
+        this.joinCache = joinCache;
+        this.facetsState = facetsState;
+        this.replicationCompression = replicationCompression;
         this.commitUserData = commitUserData;
         this.directoryClass = directoryClass;
         this.directoryCachedFiles = directoryCachedFiles;
         this.directoryCachedRamUsed = directoryCachedRamUsed;
+        this.directoryMemoryBytesSize = directoryMemoryBytesSize;
+        this.directoryMemorySize = directoryMemorySize;
+        this.directoryMemoryOffHeap = directoryMemoryOffHeap;
         this.activeAnalyzers = activeAnalyzers;
         this.indexSortFields = indexSortFields;
     }
 
     public IndexStatus(final UUID indexUuid, final UUID masterUuid, final Directory directory,
                        final IndexSearcher indexSearcher, final IndexWriter indexWriter, final IndexSettingsDefinition settings,
-                       final Set<String> analyzers, final Set<String> fields,
-                       final int activeAnalyzers) throws IOException {
+                       final Set<String> analyzers, final FieldMap fieldMap,
+                       final int activeAnalyzers, final SearchCacheStats searchCache,
+                       final CacheStats joinCache,
+                       final ReplicationCompressionStats replicationCompression) throws IOException {
         final IndexReader indexReader = indexSearcher.getIndexReader();
-        this.numDocs = (long) indexReader.numDocs();
+        this.numDocs = (long) NestedDocuments.numDocs(fieldMap, indexReader);
         this.numDeletedDocs = (long) indexReader.numDeletedDocs();
         final TreeMap<String, Set<FieldInfoStatus>> m = new TreeMap<>();
         fillFieldInfos(m, indexReader.leaves());
@@ -264,10 +310,15 @@ public class IndexStatus {
         this.settings = settings;
         this.analyzers = analyzers;
         this.activeAnalyzers = activeAnalyzers;
-        this.fields = fields;
+        this.fields = fieldMap.getFields().keySet();
 
         final QueryCache queryCache = indexSearcher.getQueryCache();
         this.queryCache = queryCache instanceof LRUQueryCache ? new QueryCacheStats((LRUQueryCache) queryCache) : null;
+        this.searchCache = searchCache;
+        this.joinCache = joinCache;
+        this.replicationCompression = replicationCompression;
+        this.facetsState = indexSearcher instanceof MultiThreadSearcherFactory.StateIndexSearcher ?
+            ((MultiThreadSearcherFactory.StateIndexSearcher) indexSearcher).getFacetsStateStats() : null;
 
         if (directory != null) {
             if (directory instanceof NRTCachingDirectory) {
@@ -285,6 +336,24 @@ public class IndexStatus {
             this.directoryCachedFiles = null;
             this.directoryCachedRamUsed = null;
         }
+
+        if (directory instanceof ByteBuffersDirectory) {
+            long size = 0;
+            for (String filename : directory.listAll()) {
+                try {
+                    size += directory.fileLength(filename);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, e, e::getMessage);
+                }
+            }
+            this.directoryMemoryBytesSize = size;
+            this.directoryMemorySize = FileUtils.byteCountToDisplaySize(size);
+            this.directoryMemoryOffHeap = settings != null && Boolean.TRUE.equals(settings.byteBuffersOffHeap);
+        } else {
+            this.directoryMemoryBytesSize = null;
+            this.directoryMemorySize = null;
+            this.directoryMemoryOffHeap = null;
+        }
     }
 
     private void fillFieldInfos(final Map<String, Set<FieldInfoStatus>> field_infos,
@@ -540,13 +609,17 @@ public class IndexStatus {
         @JsonProperty("miss_rate")
         public final Float missRate;
 
+        @JsonProperty("ram_bytes_used")
+        public final Long ramBytesUsed;
+
         private final int hashCode;
 
         @JsonCreator
         QueryCacheStats(@JsonProperty("cache_count") Long cacheCount, @JsonProperty("cache_size") Long cacheSize,
                         @JsonProperty("eviction_count") Long evictionCount, @JsonProperty("hit_count") Long hitCount,
                         @JsonProperty("miss_count") Long missCount, @JsonProperty("total_count") Long totalCount,
-                        @JsonProperty("hit_rate") Float hitRate, @JsonProperty("miss_rate") Float missRate) {
+                        @JsonProperty("hit_rate") Float hitRate, @JsonProperty("miss_rate") Float missRate,
+                        @JsonProperty("ram_bytes_used") Long ramBytesUsed) {
             this.cacheCount = cacheCount;
             this.cacheSize = cacheSize;
             this.evictionCount = evictionCount;
@@ -555,15 +628,17 @@ public class IndexStatus {
             this.totalCount = totalCount;
             this.hitRate = hitRate;
             this.missRate = missRate;
+            this.ramBytesUsed = ramBytesUsed;
             this.hashCode = Objects.hash(cacheCount, cacheSize, evictionCount, hitCount, missCount, totalCount, hitRate,
-                missRate);
+                missRate, ramBytesUsed);
         }
 
         private QueryCacheStats(final LRUQueryCache queryCache) {
             this(queryCache.getCacheCount(), queryCache.getCacheSize(), queryCache.getEvictionCount(),
                 queryCache.getHitCount(), queryCache.getMissCount(), queryCache.getTotalCount(),
                 (float) (queryCache.getHitCount() * 100) / queryCache.getTotalCount(),
-                (float) (queryCache.getMissCount() * 100) / queryCache.getTotalCount());
+                (float) (queryCache.getMissCount() * 100) / queryCache.getTotalCount(),
+                queryCache.ramBytesUsed());
         }
 
         @Override
@@ -592,7 +667,233 @@ public class IndexStatus {
                 return false;
             if (!Objects.equals(missRate, cache.missRate))
                 return false;
+            if (!Objects.equals(ramBytesUsed, cache.ramBytesUsed))
+                return false;
             return true;
         }
     }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class CacheStats {
+
+        @JsonProperty("cache_size")
+        public final Integer cacheSize;
+
+        @JsonProperty("ram_bytes_used")
+        public final Long ramBytesUsed;
+
+        @JsonProperty("max_ram_bytes")
+        public final Long maxRamBytes;
+
+        @JsonProperty("hit_count")
+        public final Long hitCount;
+
+        @JsonProperty("miss_count")
+        public final Long missCount;
+
+        @JsonProperty("bypass_count")
+        public final Long bypassCount;
+
+        @JsonProperty("eviction_count")
+        public final Long evictionCount;
+
+        @JsonProperty("invalidation_count")
+        public final Long invalidationCount;
+
+        @JsonProperty("hit_rate")
+        public final Float hitRate;
+
+        @JsonCreator
+        CacheStats(@JsonProperty("cache_size") Integer cacheSize,
+                   @JsonProperty("ram_bytes_used") Long ramBytesUsed,
+                   @JsonProperty("max_ram_bytes") Long maxRamBytes,
+                   @JsonProperty("hit_count") Long hitCount, @JsonProperty("miss_count") Long missCount,
+                   @JsonProperty("bypass_count") Long bypassCount,
+                   @JsonProperty("eviction_count") Long evictionCount,
+                   @JsonProperty("invalidation_count") Long invalidationCount,
+                   @JsonProperty("hit_rate") Float hitRate) {
+            this.cacheSize = cacheSize;
+            this.ramBytesUsed = ramBytesUsed;
+            this.maxRamBytes = maxRamBytes;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.bypassCount = bypassCount;
+            this.evictionCount = evictionCount;
+            this.invalidationCount = invalidationCount;
+            this.hitRate = hitRate;
+        }
+
+        CacheStats(final int cacheSize, final long ramBytesUsed, final long maxRamBytes, final long hitCount,
+                   final long missCount, final long bypassCount, final long evictionCount,
+                   final long invalidationCount) {
+            this(cacheSize, ramBytesUsed, maxRamBytes, hitCount, missCount, bypassCount, evictionCount, invalidationCount,
+                hitCount + missCount == 0 ? null : (float) (hitCount * 100) / (hitCount + missCount));
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(cacheSize, ramBytesUsed, maxRamBytes, hitCount, missCount, bypassCount, evictionCount,
+                invalidationCount, hitRate);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof CacheStats))
+                return false;
+            final CacheStats cache = (CacheStats) o;
+            return Objects.equals(cacheSize, cache.cacheSize)
+                && Objects.equals(ramBytesUsed, cache.ramBytesUsed)
+                && Objects.equals(maxRamBytes, cache.maxRamBytes)
+                && Objects.equals(hitCount, cache.hitCount)
+                && Objects.equals(missCount, cache.missCount)
+                && Objects.equals(bypassCount, cache.bypassCount)
+                && Objects.equals(evictionCount, cache.evictionCount)
+                && Objects.equals(invalidationCount, cache.invalidationCount)
+                && Objects.equals(hitRate, cache.hitRate);
+        }
+    }
+
+    public static class SearchCacheStats extends CacheStats {
+
+        @JsonCreator
+        SearchCacheStats(@JsonProperty("cache_size") Integer cacheSize,
+                         @JsonProperty("ram_bytes_used") Long ramBytesUsed,
+                         @JsonProperty("max_ram_bytes") Long maxRamBytes,
+                         @JsonProperty("hit_count") Long hitCount, @JsonProperty("miss_count") Long missCount,
+                         @JsonProperty("bypass_count") Long bypassCount,
+                         @JsonProperty("eviction_count") Long evictionCount,
+                         @JsonProperty("invalidation_count") Long invalidationCount,
+                         @JsonProperty("hit_rate") Float hitRate) {
+            super(cacheSize, ramBytesUsed, maxRamBytes, hitCount, missCount, bypassCount, evictionCount,
+                invalidationCount, hitRate);
+        }
+
+        SearchCacheStats(final CacheStats stats) {
+            this(stats.cacheSize, stats.ramBytesUsed, stats.maxRamBytes, stats.hitCount, stats.missCount,
+                stats.bypassCount, stats.evictionCount, stats.invalidationCount, stats.hitRate);
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class FacetsStateStats {
+
+        @JsonProperty("build_count")
+        public final Long buildCount;
+
+        @JsonProperty("last_build_time_ms")
+        public final Long lastBuildTimeMs;
+
+        @JsonProperty("total_build_time_ms")
+        public final Long totalBuildTimeMs;
+
+        @JsonCreator
+        FacetsStateStats(@JsonProperty("build_count") Long buildCount,
+                         @JsonProperty("last_build_time_ms") Long lastBuildTimeMs,
+                         @JsonProperty("total_build_time_ms") Long totalBuildTimeMs) {
+            this.buildCount = buildCount;
+            this.lastBuildTimeMs = lastBuildTimeMs;
+            this.totalBuildTimeMs = totalBuildTimeMs;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(buildCount, lastBuildTimeMs, totalBuildTimeMs);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof FacetsStateStats))
+                return false;
+            final FacetsStateStats stats = (FacetsStateStats) o;
+            return Objects.equals(buildCount, stats.buildCount)
+                && Objects.equals(lastBuildTimeMs, stats.lastBuildTimeMs)
+                && Objects.equals(totalBuildTimeMs, stats.totalBuildTimeMs);
+        }
+    }
+
+    /**
+     * The compression of the chunks sent by a master to its slaves
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class ReplicationCompressionStats {
+
+        @JsonProperty("block_count")
+        public final Long blockCount;
+
+        @JsonProperty("raw_bytes")
+        public final Long rawBytes;
+
+        @JsonProperty("compressed_bytes")
+        public final Long compressedBytes;
+
+        @JsonProperty("saved_bytes")
+        public final Long savedBytes;
+
+        /**
+         * The time spent compressing, in milliseconds
+         */
+        @JsonProperty("compression_time")
+        public final Long compressionTime;
+
+        @JsonCreator
+        ReplicationCompressionStats(@JsonProperty("block_count") Long blockCount,
+                                    @JsonProperty("raw_bytes") Long rawBytes,
+                                    @JsonProperty("compressed_bytes") Long compressedBytes,
+                                    @JsonProperty("saved_bytes") Long savedBytes,
+                                    @JsonProperty("compression_time") Long compressionTime) {
+            this.blockCount = blockCount;
+            this.rawBytes = rawBytes;
+            this.compressedBytes = compressedBytes;
+            this.savedBytes = savedBytes;
+            this.compressionTime = compressionTime;
+        }
+
+        /**
+         * @param stats the statistics of a master, may be null
+         * @return the statistics, or null if no block has been compressed
+         */
+        static ReplicationCompressionStats of(final CompressionStats stats) {
+            if (stats == null)
+                return null;
+            final long blockCount = stats.getBlockCount();
+            if (blockCount == 0)
+                return null;
+            final long rawBytes = stats.getRawBytes();
+            final long compressedBytes = stats.getCompressedBytes();
+            return new ReplicationCompressionStats(blockCount, rawBytes, compressedBytes, rawBytes - compressedBytes,
+                TimeUnit.NANOSECONDS.toMillis(stats.getEncodeNanos()));
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(blockCount, rawBytes, compressedBytes, savedBytes, compressionTime);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof ReplicationCompressionStats))
+                return false;
+            final ReplicationCompressionStats stats = (ReplicationCompressionStats) o;
+            return Objects.equals(blockCount, stats.blockCount)
+                && Objects.equals(rawBytes, stats.rawBytes)
+                && Objects.equals(compressedBytes, stats.compressedBytes)
+                && Objects.equals(savedBytes, stats.savedBytes)
+                && Objects.equals(compressionTime, stats.compressionTime);
+        }
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Retrieves the nested documents of each returned parent.
+ * The children of a parent are the documents of its block: they are found without any join.
+ * The child query is weighted once, then only the block of each parent is scored.
+ */
+final class InnerHits {
+
+    private final static ScoreDoc[] EMPTY_HITS = new ScoreDoc[0];
+
+    private final Map<String, PerName> perNameMap;
+
+    private InnerHits(final Map<String, PerName> perNameMap) {
+        this.perNameMap = perNameMap;
+    }
+
+    static InnerHits of(final Map<String, InnerHitsDefinition> definitions, final QueryContextImpl queryContext)
+        throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+        final Map<String, PerName> perNameMap = new LinkedHashMap<>();
+        for (final Map.Entry<String, InnerHitsDefinition> entry : definitions.entrySet()) {
+            final InnerHitsDefinition definition = entry.getValue();
+            final Query children = NestedDocuments.children(definition.path);
+            final Query childQuery = definition.query == null ? children :
+                NestedDocuments.filter(definition.query.getQuery(queryContext), children);
+            perNameMap.put(entry.getKey(), new PerName(childQuery, definition.getRowsValue(),
+                ReturnedFieldStrategy.fields(queryContext, definition.returnedFields)));
+        }
+        return new InnerHits(perNameMap);
+    }
+
+    /**
+     * @param indexSearcher   the searcher used by the query
+     * @param scoreDocs       the returned documents
+     * @param resultDocuments the receiver of the inner hits
+     * @throws IOException if any I/O error occurs
+     */
+    void collect(final IndexSearcher indexSearcher, final ScoreDoc[] scoreDocs,
+                 final ResultDocumentsInterface resultDocuments) throws IOException {
+        for (final Map.Entry<String, PerName> entry : perNameMap.entrySet()) {
+            final PerName perName = entry.getValue();
+            final Weight weight = indexSearcher.createWeight(
+                indexSearcher.rewrite(perName.childQuery), ScoreMode.COMPLETE, 1f);
+            // The fields of the children of the whole page are extracted in a single pass
+            final List<List<ResultDocumentMap.ForFields>> hitsPerParent = new ArrayList<>(scoreDocs.length);
+            final List<ResultDocumentMap.ForFields> allHits = new ArrayList<>();
+            for (final ScoreDoc scoreDoc : scoreDocs) {
+                final ScoreDoc[] childDocs = perName.collect(indexSearcher, weight, scoreDoc.doc);
+                final List<ResultDocumentMap.ForFields> hits = new ArrayList<>(childDocs.length);
+                int pos = 0;
+                for (final ScoreDoc childDoc : childDocs)
+                    hits.add(new ResultDocumentMap.ForFields(pos++, childDoc));
+                hitsPerParent.add(hits);
+                allHits.addAll(hits);
+            }
+            perName.returnedFieldStrategy.extract(indexSearcher, allHits);
+            int pos = 0;
+            for (final List<ResultDocumentMap.ForFields> hits : hitsPerParent) {
+                final List<ResultDocumentAbstract.InnerHit> innerHits = new ArrayList<>(hits.size());
+                for (final ResultDocumentMap.ForFields hit : hits)
+                    innerHits.add(new ResultDocumentAbstract.InnerHit(hit.scoreDoc().score, hit.build().fields));
+                resultDocuments.innerHits(pos++, entry.getKey(), innerHits);
+            }
+        }
+    }
+
+    private static final class PerName {
+
+        private final Query childQuery;
+        private final int rows;
+        private final ReturnedFieldStrategy returnedFieldStrategy;
+
+        private PerName(final Query childQuery, final int rows, final ReturnedFieldStrategy returnedFieldStrategy) {
+            this.childQuery = childQuery;
+            this.rows = rows;
+            this.returnedFieldStrategy = returnedFieldStrategy;
+        }
+
+        /**
+         * The children of a parent are the documents between the previous parent of its segment and itself.
+         *
+         * @param indexSearcher the searcher used by the query
+         * @param weight        the weight of the child query
+         * @param parentDoc     the docId of the parent
+         * @return the best children of the parent
+         * @throws IOException if any I/O error occurs
+         */
+        private ScoreDoc[] collect(final IndexSearcher indexSearcher, final Weight weight, final int parentDoc)
+            throws IOException {
+            final List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+            final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(parentDoc, leaves));
+            final int parent = parentDoc - leaf.docBase;
+            final BitSet parents = NestedDocuments.PARENTS_FILTER.getBitSet(leaf);
+            if (parents == null || parent == 0 || !parents.get(parent))
+                return EMPTY_HITS;
+            final int firstChild = parents.prevSetBit(parent - 1) + 1;
+            if (firstChild == parent)
+                return EMPTY_HITS;
+            final Scorer scorer = weight.scorer(leaf);
+            if (scorer == null)
+                return EMPTY_HITS;
+            final TopScoreDocCollector collector = TopScoreDocCollector.create(rows, Integer.MAX_VALUE);
+            final LeafCollector leafCollector = collector.getLeafCollector(leaf);
+            leafCollector.setScorer(scorer);
+            final Bits liveDocs = leaf.reader().getLiveDocs();
+            final DocIdSetIterator iterator = scorer.iterator();
+            for (int doc = iterator.advance(firstChild); doc < parent; doc = iterator.nextDoc())
+                if (liveDocs == null || liveDocs.get(doc))
+                    leafCollector.collect(doc);
+            return collector.topDocs().scoreDocs;
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.qwazr.search.query.QueryInterface;
+import com.qwazr.server.ServerException;
+import com.qwazr.utils.Equalizer;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import javax.ws.rs.core.Response;
+
+/**
+ * The nested documents returned with each parent document of the result.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonAutoDetect(
+    creatorVisibility = JsonAutoDetect.Visibility.NONE,
+    getterVisibility = JsonAutoDetect.Visibility.NONE,
+    setterVisibility = JsonAutoDetect.Visibility.NONE,
+    isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+    fieldVisibility = JsonAutoDetect.Visibility.NONE)
+public class InnerHitsDefinition extends Equalizer.Immutable<InnerHitsDefinition> {
+
+    public final static int DEFAULT_ROWS = 3;
+
+    /**
+     * The query selecting the children, all the children if null
+     */
+    @JsonProperty("query")
+    final public QueryInterface query;
+
+    /**
+     * The nested field of the children, any nested field if null
+     */
+    @JsonProperty("path")
+    final public String path;
+
+    @JsonProperty("rows")
+    final public Integer rows;
+
+    /**
+     * The stored fields of the children, all of them if null
+     */
+    @JsonProperty("returned_fields")
+    final public LinkedHashSet<String> returnedFields;
+
+    @JsonCreator
+    InnerHitsDefinition(@JsonProperty("query") final QueryInterface query,
+                        @JsonProperty("path") final String path,
+                        @JsonProperty("rows") final Integer rows,
+                        @JsonProperty("returned_fields") final LinkedHashSet<String> returnedFields) {
+        super(InnerHitsDefinition.class);
+        this.query = query;
+        this.path = path;
+        this.rows = rows == null ? null : checkRows(rows);
+        this.returnedFields = returnedFields == null || returnedFields.isEmpty() ? null : returnedFields;
+    }
+
+    private InnerHitsDefinition(final Builder builder) {
+        this(builder.query, builder.path, builder.rows, builder.returnedFields);
+    }
+
+    private static int checkRows(final int rows) {
+        if (rows < 1)
+            throw new ServerException(Response.Status.BAD_REQUEST,
+                "The number of rows of the inner hits must be greater than zero: " + rows);
+        return rows;
+    }
+
+    final public int getRowsValue() {
+        return rows == null ? DEFAULT_ROWS : rows;
+    }
+
+    @Override
+    protected int computeHashCode() {
+        return Objects.hash(query, path, rows, returnedFields);
+    }
+
+    @Override
+    protected boolean isEqual(final InnerHitsDefinition i) {
+        return Objects.equals(query, i.query) && Objects.equals(path, i.path) && Objects.equals(rows, i.rows) &&
+            Objects.equals(returnedFields, i.returnedFields);
+    }
+
+    public static Builder of() {
+        return new Builder();
+    }
+
+    public static Builder of(final String path) {
+        return of().withPath(path);
+    }
+
+    public static class Builder {
+
+        private QueryInterface query;
+
+        private String path;
+
+        private Integer rows;
+
+        private LinkedHashSet<String> returnedFields;
+
+        public InnerHitsDefinition build() {
+            return new InnerHitsDefinition(this);
+        }
+
+        public Builder withQuery(final QueryInterface query) {
+            this.query = query;
+            return this;
+        }
+
+        public Builder withPath(final String path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * @param rows the maximum number of children returned for each parent
+         * @return the current builder
+         */
+        public Builder withRows(final int rows) {
+            this.rows = checkRows(rows);
+            return this;
+        }
+
+        public Builder withReturnedFields(final String... returnedFields) {
+            if (this.returnedFields == null)
+                this.returnedFields = new LinkedHashSet<>();
+            Collections.addAll(this.returnedFields, returnedFields);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.query.Join;
+import java.io.IOException;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * LRU cache of the join queries built from this index, bounded by memory.
+ * The terms collected by the from query only depend on the reader of this (from) index: the entries are keyed by
+ * the join definition and the cache key of the reader.
+ * The target index does not need to be in the key, the cached query being applied to its current searcher.
+ */
+final class JoinQueryCache {
+
+    private final ReaderLruCache<Join, Query> cache;
+
+    private JoinQueryCache(final long maxRamBytes) {
+        this.cache = new ReaderLruCache<>(maxRamBytes);
+    }
+
+    /**
+     * @param settings the settings of the index
+     * @return a new cache, or null if the cache is disabled
+     */
+    static JoinQueryCache of(final IndexSettingsDefinition settings) {
+        final Long maxRamBytes = settings == null ? null : ReaderLruCache.maxRamBytes(settings.joinCacheMaxRamMB);
+        return maxRamBytes == null ? null : new JoinQueryCache(maxRamBytes);
+    }
+
+    @FunctionalInterface
+    interface QuerySupplier {
+        Query get() throws IOException;
+    }
+
+    Query get(final Join join, final IndexReader indexReader, final QuerySupplier querySupplier)
+        throws IOException {
+        final IndexReader.CacheHelper cacheHelper = indexReader.getReaderCacheHelper();
+        if (cacheHelper == null) {
+            cache.bypass();
+            return querySupplier.get();
+        }
+        final Query cachedQuery = cache.get(cacheHelper.getKey(), join);
+        if (cachedQuery != null)
+            return cachedQuery;
+        final Query query = querySupplier.get();
+        if (query != null)
+            cache.put(cacheHelper, join, query, RamUsageEstimator.sizeOf(query));
+        return query;
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    IndexStatus.CacheStats getStats() {
+        return cache.getStats();
+    }
+}
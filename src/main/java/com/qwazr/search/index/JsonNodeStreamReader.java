@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qwazr.utils.ObjectMappers;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental reader of a stream of JSON documents.
+ * The stream can be either newline delimited JSON (or any whitespace separated JSON objects),
+ * a JSON array, or a sequence of SMILE documents (detected by the SMILE header).
+ * Only one batch of documents is kept in memory.
+ */
+final class JsonNodeStreamReader implements Closeable {
+
+    final static int DEFAULT_BATCH_DOCS = 10_000;
+    final static long DEFAULT_BATCH_BYTES = 32L * 1024 * 1024;
+
+    private final MappingIterator<JsonNode> iterator;
+    private final int batchDocs;
+    private final long batchBytes;
+    private long byteOffset;
+
+    JsonNodeStreamReader(final InputStream inputStream,
+                         final Integer batchDocs,
+                         final Long batchBytes) throws IOException {
+        final InputStream input = new BufferedInputStream(inputStream);
+        final ObjectMapper mapper = isSmile(input) ? ObjectMappers.SMILE : ObjectMappers.JSON;
+        this.iterator = mapper.readerFor(JsonNode.class).readValues(input);
+        this.batchDocs = batchDocs == null || batchDocs <= 0 ? DEFAULT_BATCH_DOCS : batchDocs;
+        this.batchBytes = batchBytes == null || batchBytes <= 0 ? DEFAULT_BATCH_BYTES : batchBytes;
+        this.byteOffset = 0;
+    }
+
+    /**
+     * Check the SMILE header (":)\n")
+     */
+    private static boolean isSmile(final InputStream input) throws IOException {
+        input.mark(3);
+        try {
+            return input.read() == ':' && input.read() == ')' && input.read() == '\n';
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * @return the number of bytes consumed so far
+     */
+    long getByteOffset() {
+        return byteOffset;
+    }
+
+    /**
+     * Read the next documents until one of the thresholds (number of documents or number of bytes) is reached.
+     *
+     * @return the next batch, or an empty list if the end of the stream has been reached
+     * @throws IOException if the stream can't be read or parsed
+     */
+    List<JsonNode> nextBatch() throws IOException {
+        final List<JsonNode> batch = new ArrayList<>();
+        final long startOffset = byteOffset;
+        while (batch.size() < batchDocs && byteOffset - startOffset < batchBytes) {
+            final boolean hasNext = iterator.hasNextValue();
+            if (hasNext)
+                batch.add(iterator.nextValue());
+            final long offset = iterator.getParser().getCurrentLocation().getByteOffset();
+            if (offset >= 0)
+                byteOffset = offset;
+            if (!hasNext)
+                break;
+        }
+        return batch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        iterator.close();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets (HDR-style), recording microseconds.
+ * The values below 64 have their own bucket, above each power of two is split in 32 sub-buckets,
+ * the relative error of the percentiles is then below 3.2%.
+ * The values above 2^40 microseconds (about 12 days) are recorded in the last bucket.
+ */
+final class LatencyHistogram {
+
+    private final static int SUB_BUCKET_BITS = 5;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+    private final static int MAX_MAGNITUDE = 40;
+    private final static int BUCKETS = LINEAR_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    LatencyHistogram() {
+        buckets = new AtomicLongArray(BUCKETS);
+        sum = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < LINEAR_BUCKETS)
+            return value < 0 ? 0 : (int) value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude >= MAX_MAGNITUDE)
+            return BUCKETS - 1;
+        final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (magnitude - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value recorded by the bucket
+     */
+    static long bucketUpperBound(final int index) {
+        if (index < LINEAR_BUCKETS)
+            return index;
+        final int magnitude = (index - LINEAR_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        final int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    void record(final long micros) {
+        buckets.incrementAndGet(bucketIndex(micros));
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    void recordNanos(final long nanos) {
+        record(nanos / 1000);
+    }
+
+    IndexMetrics.LatencyStats getStats() {
+        final long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts[i] = buckets.get(i);
+        if (count == 0)
+            return new IndexMetrics.LatencyStats(0L, 0L, 0L, 0L, 0L, 0L, 0L);
+        final long maxValue = max.get();
+        return new IndexMetrics.LatencyStats(count, sum.sum() / count,
+            percentile(counts, count, maxValue, 0.50), percentile(counts, count, maxValue, 0.90),
+            percentile(counts, count, maxValue, 0.99), percentile(counts, count, maxValue, 0.999), maxValue);
+    }
+
+    private static long percentile(final long[] counts, final long count, final long maxValue,
+                                   final double percentile) {
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile));
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank)
+                return Math.min(bucketUpperBound(i), maxValue);
+        }
+        return maxValue;
+    }
+}
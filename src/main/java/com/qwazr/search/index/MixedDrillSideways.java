@@ -20,8 +20,6 @@ import org.apache.lucene.facet.FacetResult;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.MultiFacets;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
-import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -31,12 +29,14 @@ import java.util.Map;
 class MixedDrillSideways extends DrillSideways {
 
     private final String stateIndexField;
+    private final FacetCounts facetCounts;
 
     MixedDrillSideways(QueryExecution<?> queryExecution) {
         super(queryExecution.queryContext.indexSearcher, queryExecution.facetsConfig,
-            queryExecution.queryContext.taxonomyReader, queryExecution.queryContext.docValueReaderState,
+            queryExecution.queryContext.taxonomyReader, queryExecution.getSortedSetState(),
             queryExecution.queryContext.executorService);
         this.stateIndexField = state == null ? null : state.getField();
+        this.facetCounts = queryExecution.facetCounts;
     }
 
     protected Facets buildFacetsResult(final FacetsCollector drillDowns, final FacetsCollector[] drillSideways,
@@ -44,11 +44,10 @@ class MixedDrillSideways extends DrillSideways {
 
         final Map<String, Facets> drillSidewaysFacets = new HashMap<>();
 
-        final FastTaxonomyFacetCounts fastTaxonomyFacets = taxoReader == null ? null : new FastTaxonomyFacetCounts(
-            taxoReader, config, drillDowns);
+        final Facets fastTaxonomyFacets = taxoReader == null ? null : facetCounts.taxonomy(taxoReader, config,
+            drillDowns);
 
-        final SortedSetDocValuesFacetCounts docValuesFacets = state == null ? null : new SortedSetDocValuesFacetCounts(
-            state, drillDowns);
+        final Facets docValuesFacets = state == null ? null : facetCounts.sortedSet(state, drillDowns);
 
         if (drillSideways != null) {
             for (int i = 0; i < drillSideways.length; i++) {
@@ -56,9 +55,9 @@ class MixedDrillSideways extends DrillSideways {
                 final Facets facets;
                 final String indexFieldName = config.getDimConfig(dim).indexFieldName;
                 if (state != null && stateIndexField.equals(indexFieldName)) {
-                    facets = new SortedSetDocValuesFacetCounts(state, drillSideways[i]);
+                    facets = facetCounts.sortedSet(state, drillSideways[i]);
                 } else if (taxoReader != null) {
-                    facets = new FastTaxonomyFacetCounts(taxoReader, config, drillSideways[i]);
+                    facets = facetCounts.taxonomy(taxoReader, config, drillSideways[i]);
                 } else
                     facets = null;
                 if (facets != null)
@@ -73,11 +72,10 @@ class MixedDrillSideways extends DrillSideways {
 
     class MixedFacets extends Facets {
 
-        private final SortedSetDocValuesFacetCounts docValuesFacets;
-        private final FastTaxonomyFacetCounts taxonomyFacets;
+        private final Facets docValuesFacets;
+        private final Facets taxonomyFacets;
 
-        private MixedFacets(final SortedSetDocValuesFacetCounts docValuesFacets,
-                            final FastTaxonomyFacetCounts taxonomyFacets) {
+        private MixedFacets(final Facets docValuesFacets, final Facets taxonomyFacets) {
             this.docValuesFacets = docValuesFacets;
             this.taxonomyFacets = taxonomyFacets;
 
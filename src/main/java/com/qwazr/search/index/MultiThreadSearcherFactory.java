@@ -15,6 +15,7 @@
  */
 package com.qwazr.search.index;
 
+import com.qwazr.server.ServerException;
 import com.qwazr.utils.concurrent.ConsumerEx;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.IndexReader;
@@ -27,6 +28,8 @@ import org.apache.lucene.util.InfoStream;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 class MultiThreadSearcherFactory extends SearcherFactory {
 
@@ -36,21 +39,42 @@ class MultiThreadSearcherFactory extends SearcherFactory {
     private final static ConsumerEx<IndexReader, IOException> WITH_WARM = MultiThreadSearcherFactory::warmReader;
 
     static MultiThreadSearcherFactory of(final ExecutorService executorService, final boolean useWarmer,
-                                         final Similarity similarity, final String stateFacetField) {
+                                         final Similarity similarity, final String stateFacetField,
+                                         final IndexQueryCache queryCache) {
         return similarity == null ?
-                new MultiThreadSearcherFactory(executorService, stateFacetField, useWarmer ? WITH_WARM : WITHOUT_WARM) :
-                new WithSimilarity(executorService, similarity, stateFacetField, useWarmer ? WITH_WARM : WITHOUT_WARM);
+                new MultiThreadSearcherFactory(executorService, stateFacetField, queryCache,
+                        useWarmer ? WITH_WARM : WITHOUT_WARM) :
+                new WithSimilarity(executorService, similarity, stateFacetField, queryCache,
+                        useWarmer ? WITH_WARM : WITHOUT_WARM);
     }
 
     protected final ExecutorService executorService;
     private final String stateFacetField;
+    private final IndexQueryCache queryCache;
     private final ConsumerEx<IndexReader, IOException> readerWarmer;
 
+    private final AtomicLong stateBuildCount;
+    private final AtomicLong stateBuildTotalNanos;
+    private volatile long stateBuildLastNanos;
+
     private MultiThreadSearcherFactory(final ExecutorService executorService, final String stateFacetField,
+                                       final IndexQueryCache queryCache,
                                        final ConsumerEx<IndexReader, IOException> readerWarmer) {
         this.executorService = executorService;
         this.stateFacetField = stateFacetField;
+        this.queryCache = queryCache;
         this.readerWarmer = readerWarmer;
+        this.stateBuildCount = new AtomicLong();
+        this.stateBuildTotalNanos = new AtomicLong();
+    }
+
+    IndexStatus.FacetsStateStats getFacetsStateStats() {
+        final long count = stateBuildCount.get();
+        if (count == 0)
+            return null;
+        return new IndexStatus.FacetsStateStats(count,
+            TimeUnit.NANOSECONDS.toMillis(stateBuildLastNanos),
+            TimeUnit.NANOSECONDS.toMillis(stateBuildTotalNanos.get()));
     }
 
     final protected StateIndexSearcher warm(final IndexReader indexReader, final StateIndexSearcher indexSearcher)
@@ -69,8 +93,9 @@ class MultiThreadSearcherFactory extends SearcherFactory {
         private final Similarity similarity;
 
         private WithSimilarity(final ExecutorService executorService, final Similarity similarity,
-                               final String stateFacetField, final ConsumerEx<IndexReader, IOException> readerWarmer) {
-            super(executorService, stateFacetField, readerWarmer);
+                               final String stateFacetField, final IndexQueryCache queryCache,
+                               final ConsumerEx<IndexReader, IOException> readerWarmer) {
+            super(executorService, stateFacetField, queryCache, readerWarmer);
             this.similarity = similarity;
         }
 
@@ -84,13 +109,44 @@ class MultiThreadSearcherFactory extends SearcherFactory {
 
     class StateIndexSearcher extends IndexSearcher {
 
-        final SortedSetDocValuesReaderState state;
+        private SortedSetDocValuesReaderState state;
+        private volatile boolean stateBuilt;
 
-        StateIndexSearcher(IndexReader reader) throws IOException {
+        StateIndexSearcher(IndexReader reader) {
             super(reader, executorService);
-            state = IndexUtils.getNewFacetsState(reader, stateFacetField);
+            if (queryCache != null)
+                queryCache.apply(this);
         }
 
+        /**
+         * The facets state (the global ordinals of the sorted set facet field) is built on the first faceted query,
+         * not on every reopen of the searcher.
+         *
+         * @return the facets state, or null if there is no sorted set facet field in the index
+         */
+        SortedSetDocValuesReaderState getState() {
+            if (stateBuilt)
+                return state;
+            synchronized (this) {
+                if (stateBuilt)
+                    return state;
+                final long startTime = System.nanoTime();
+                try {
+                    state = IndexUtils.getNewFacetsState(getIndexReader(), stateFacetField);
+                } catch (IOException e) {
+                    throw ServerException.of(e);
+                }
+                stateBuildLastNanos = System.nanoTime() - startTime;
+                stateBuildTotalNanos.addAndGet(stateBuildLastNanos);
+                stateBuildCount.incrementAndGet();
+                stateBuilt = true;
+                return state;
+            }
+        }
+
+        IndexStatus.FacetsStateStats getFacetsStateStats() {
+            return MultiThreadSearcherFactory.this.getFacetsStateStats();
+        }
     }
 
     private static final SimpleMergedSegmentWarmer WARMER = new SimpleMergedSegmentWarmer(InfoStream.getDefault());
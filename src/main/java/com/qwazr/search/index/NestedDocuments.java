@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.analysis.AnalyzerContext;
+import com.qwazr.search.field.FieldDefinition;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.join.BitSetProducer;
+import org.apache.lucene.search.join.QueryBitSetProducer;
+import org.apache.lucene.search.join.ToChildBlockJoinQuery;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import javax.ws.rs.NotAcceptableException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The nested documents are indexed with their parent as a single block: the children first, the parent last.
+ * Each child carries the name of its nested field. Each document of the block carries the primary key of the parent,
+ * the whole block is then replaced on update. Only one level of nesting is supported.
+ * <p>
+ * The parents are the documents without nested field. The bitset of the parents, cached per segment,
+ * is used by the block join queries.
+ */
+public final class NestedDocuments {
+
+    /**
+     * Matches the parent documents (including the documents of an index without nested fields)
+     */
+    public final static Query PARENTS = new BooleanQuery.Builder()
+        .add(new MatchAllDocsQuery(), BooleanClause.Occur.FILTER)
+        .add(new DocValuesFieldExistsQuery(FieldDefinition.NESTED_FIELD), BooleanClause.Occur.MUST_NOT)
+        .build();
+
+    public final static BitSetProducer PARENTS_FILTER = new QueryBitSetProducer(PARENTS);
+
+    private final static Query CHILDREN = new DocValuesFieldExistsQuery(FieldDefinition.NESTED_FIELD);
+
+    /**
+     * @param path the name of the nested field, or null for all the children
+     * @return a query matching the child documents of the nested field
+     */
+    public static Query children(final String path) {
+        return path == null ? CHILDREN : new TermQuery(new Term(FieldDefinition.NESTED_FIELD, path));
+    }
+
+    /**
+     * @param query the query
+     * @param filter the filter applied to the query
+     * @return the query, with a non-scoring filter
+     */
+    public static Query filter(final Query query, final Query filter) {
+        return new BooleanQuery.Builder()
+            .add(query, BooleanClause.Occur.MUST)
+            .add(filter, BooleanClause.Occur.FILTER)
+            .build();
+    }
+
+    /**
+     * The children are not returned by a search, unless the query selects them with a ToChildBlockJoinQuery.
+     *
+     * @param fieldMap the fields of the index
+     * @param query    the search query
+     * @return the search query restricted to the parents if the index has nested fields
+     */
+    public static Query filterParents(final FieldMap fieldMap, final Query query) {
+        if (fieldMap == null || !fieldMap.hasNestedFields() || selectsChildren(query))
+            return query;
+        return filter(query, PARENTS);
+    }
+
+    private static boolean selectsChildren(final Query query) {
+        final boolean[] found = {false};
+        query.visit(new QueryVisitor() {
+            @Override
+            public void visitLeaf(final Query query) {
+                if (query instanceof ToChildBlockJoinQuery)
+                    found[0] = true;
+            }
+
+            @Override
+            public QueryVisitor getSubVisitor(final BooleanClause.Occur occur, final Query parent) {
+                return occur == BooleanClause.Occur.MUST_NOT ? EMPTY_VISITOR : this;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * The children are not returned by the searches, they are not counted as documents of the index.
+     *
+     * @param fieldMap    the fields of the index
+     * @param indexReader the reader of the index
+     * @return the number of live parents, or the number of live documents if the index has no nested fields
+     * @throws IOException if any I/O error occurs
+     */
+    static int numDocs(final FieldMap fieldMap, final IndexReader indexReader) throws IOException {
+        if (fieldMap == null || !fieldMap.hasNestedFields())
+            return indexReader.numDocs();
+        int numDocs = 0;
+        for (final LeafReaderContext leaf : indexReader.leaves())
+            numDocs += numDocs(fieldMap, leaf);
+        return numDocs;
+    }
+
+    /**
+     * @param fieldMap the fields of the index
+     * @param leaf     a segment of the index
+     * @return the number of live parents of the segment, or its number of live documents if the index has no
+     * nested fields
+     * @throws IOException if any I/O error occurs
+     */
+    static int numDocs(final FieldMap fieldMap, final LeafReaderContext leaf) throws IOException {
+        if (fieldMap == null || !fieldMap.hasNestedFields())
+            return leaf.reader().numDocs();
+        final BitSet parents = PARENTS_FILTER.getBitSet(leaf);
+        if (parents == null)
+            return 0;
+        final Bits liveDocs = leaf.reader().getLiveDocs();
+        if (liveDocs == null)
+            return parents.cardinality();
+        final DocIdSetIterator iterator = new BitSetIterator(parents, 0);
+        int numDocs = 0;
+        for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc())
+            if (liveDocs.get(doc))
+                numDocs++;
+        return numDocs;
+    }
+
+    /**
+     * Deleting a parent deletes its whole block.
+     *
+     * @param fieldMap the fields of the index
+     * @param query    the query selecting the documents to delete
+     * @return a query matching the selected parents and all their children if the index has nested fields
+     */
+    static Query withChildren(final FieldMap fieldMap, final Query query) {
+        if (fieldMap == null || !fieldMap.hasNestedFields() || selectsChildren(query))
+            return query;
+        final Query parents = filter(query, PARENTS);
+        return new BooleanQuery.Builder()
+            .add(parents, BooleanClause.Occur.SHOULD)
+            .add(new ToChildBlockJoinQuery(parents, PARENTS_FILTER), BooleanClause.Occur.SHOULD)
+            .build();
+    }
+
+    /**
+     * @param primaryTerm the primary key of the parent
+     * @return the term shared by every document of the block
+     */
+    static Term rootTerm(final Term primaryTerm) {
+        return new Term(FieldDefinition.ROOT_FIELD, primaryTerm.bytes());
+    }
+
+    /**
+     * Builds the block of documents of a parent.
+     */
+    static final class Block {
+
+        private final DocumentBuilder.ForLuceneDocument childBuilder;
+        private final RecordBuilder.ForMap<Document> childRecordBuilder;
+
+        Block(final FieldMap fieldMap, final AnalyzerContext analyzerContext, final TaxonomyWriter taxonomyWriter) {
+            childBuilder = DocumentBuilder.of(fieldMap, taxonomyWriter);
+            childRecordBuilder = new RecordBuilder.ForMap<>(fieldMap, analyzerContext, childBuilder);
+        }
+
+        /**
+         * @param parentBuilder the builder of the parent, filled with its fields and its children
+         * @param primaryTerm   the primary key of the parent, or null if the index has no primary key
+         * @return the children followed by the parent
+         * @throws IOException if any I/O error occurs
+         */
+        List<Document> build(final DocumentBuilder.ForLuceneDocument parentBuilder, final Term primaryTerm)
+            throws IOException {
+            final List<Pair<String, Map<String, ?>>> children = parentBuilder.children();
+            final List<Document> block = new ArrayList<>(children.size() + 1);
+            final Field rootField =
+                primaryTerm == null ? null : new StringField(FieldDefinition.ROOT_FIELD, primaryTerm.bytes(),
+                    Field.Store.NO);
+            for (final Pair<String, Map<String, ?>> child : children) {
+                final String path = child.getLeft();
+                childBuilder.reset();
+                child.getRight().forEach(childRecordBuilder::accept);
+                if (!childBuilder.children().isEmpty())
+                    throw new NotAcceptableException("Only one level of nested documents is supported: " + path);
+                childBuilder.acceptField(new StringField(FieldDefinition.NESTED_FIELD, path, Field.Store.NO));
+                childBuilder.acceptField(new SortedDocValuesField(FieldDefinition.NESTED_FIELD, new BytesRef(path)));
+                if (rootField != null)
+                    childBuilder.acceptField(rootField);
+                block.add(childBuilder.build());
+            }
+            if (rootField != null)
+                parentBuilder.acceptField(rootField);
+            block.add(parentBuilder.build());
+            return block;
+        }
+    }
+}
@@ -28,12 +28,16 @@ public class QueryBuilder {
 
     Integer start;
     Integer rows;
+    String cursor;
     Boolean queryDebug;
+    Boolean concurrentFacets;
+    Integer totalHitsThreshold;
     LinkedHashSet<String> returnedFields;
     LinkedHashMap<String, FacetDefinition> facets;
     LinkedHashMap<String, QueryDefinition.SortEnum> sorts;
     LinkedHashMap<String, QueryDefinition.CollectorDefinition> collectors;
     LinkedHashMap<String, HighlighterDefinition> highlighters;
+    LinkedHashMap<String, InnerHitsDefinition> innerHits;
     QueryInterface query;
     Query luceneQuery;
     LinkedHashMap<String, String> commitUserData;
@@ -68,6 +72,16 @@ public class QueryBuilder {
         return this;
     }
 
+    public QueryBuilder concurrentFacets(final Boolean concurrentFacets) {
+        this.concurrentFacets = concurrentFacets;
+        return this;
+    }
+
+    public QueryBuilder totalHitsThreshold(final Integer totalHitsThreshold) {
+        this.totalHitsThreshold = totalHitsThreshold;
+        return this;
+    }
+
     public QueryBuilder start(final Integer start) {
         this.start = start;
         return this;
@@ -78,6 +92,11 @@ public class QueryBuilder {
         return this;
     }
 
+    public QueryBuilder cursor(final String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
     public QueryBuilder returnedFields(final Collection<String> returnedFields) {
         if (returnedFields == null || returnedFields.isEmpty())
             return this;
@@ -200,6 +219,24 @@ public class QueryBuilder {
         return this;
     }
 
+    public QueryBuilder innerHits(final Map<String, InnerHitsDefinition> innerHits) {
+        if (innerHits == null || innerHits.isEmpty())
+            return this;
+        if (this.innerHits == null)
+            this.innerHits = new LinkedHashMap<>();
+        this.innerHits.putAll(innerHits);
+        return this;
+    }
+
+    public QueryBuilder innerHits(final String name, final InnerHitsDefinition innerHits) {
+        if (name == null || innerHits == null)
+            return this;
+        if (this.innerHits == null)
+            this.innerHits = new LinkedHashMap<>();
+        this.innerHits.put(name, innerHits);
+        return this;
+    }
+
     public QueryBuilder commitUserData(final String name, final String value) {
         if (commitUserData == null)
             commitUserData = new LinkedHashMap<>();
@@ -23,12 +23,17 @@ import org.apache.lucene.facet.DrillSideways;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -42,11 +47,32 @@ class QueryCollectorManager extends QueryCollectors implements CollectorManager<
     private final static Logger LOGGER = LoggerUtils.getLogger(QueryCollectorManager.class);
 
     private final Collection<QueryCollectorsClassic> queryCollectorsList;
+    private final CollectorManager<? extends TopDocsCollector<?>, ?> topDocsCollectorManager;
     private FacetsCollector facetsCollector;
 
     QueryCollectorManager(final QueryExecution<?> queryExecution) {
         super(queryExecution);
         this.queryCollectorsList = new ArrayList<>();
+        this.topDocsCollectorManager = buildTopDocsCollectorManager(queryExecution);
+    }
+
+    /**
+     * With a total hits threshold, the collectors of the slices share the hit count and the minimum competitive
+     * score, so that every slice starts skipping once the threshold is reached globally.
+     * The exact count does not need it: each slice keeps its own collector.
+     */
+    private static CollectorManager<? extends TopDocsCollector<?>, ?> buildTopDocsCollectorManager(
+        final QueryExecution<?> queryExecution) {
+        if (queryExecution.end == 0 || queryExecution.totalHitsThreshold == Integer.MAX_VALUE)
+            return null;
+        final ScoreDoc after = queryExecution.after;
+        final FieldDoc fieldDocAfter = after == null || after instanceof FieldDoc ?
+            (FieldDoc) after : new FieldDoc(after.doc, after.score);
+        if (queryExecution.sort != null)
+            return TopFieldCollector.createSharedManager(queryExecution.sort, queryExecution.end, fieldDocAfter,
+                queryExecution.totalHitsThreshold);
+        return TopScoreDocCollector.createSharedManager(queryExecution.end, fieldDocAfter,
+            queryExecution.totalHitsThreshold);
     }
 
     @Override
@@ -59,8 +85,9 @@ class QueryCollectorManager extends QueryCollectors implements CollectorManager<
             final DrillSideways.ConcurrentDrillSidewaysResult<QueryCollectors> drillSidewaysResult =
                 new MixedDrillSideways(queryExecution).search(
                     (org.apache.lucene.facet.DrillDownQuery) queryExecution.query, this);
+            queryExecution.timer.next(QueryMetrics.SEARCH_QUERY);
             facetsBuilder = new FacetsBuilder.WithSideways(queryExecution.queryContext, queryExecution.facetsConfig,
-                queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timeTracker,
+                queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timer,
                 drillSidewaysResult).build();
 
         } else {
@@ -73,21 +100,23 @@ class QueryCollectorManager extends QueryCollectors implements CollectorManager<
                 else
                     throw e;
             }
+            queryExecution.timer.next(QueryMetrics.SEARCH_QUERY);
 
             facetsCollector = getFacetsCollector();
             facetsBuilder = facetsCollector == null ?
                 null :
                 new FacetsBuilder.WithCollectors(queryExecution.queryContext, queryExecution.facetsConfig,
-                    queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timeTracker,
-                    facetsCollector).build();
+                    queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timer,
+                    facetsCollector, queryExecution.facetCounts).build();
         }
 
         return facetsBuilder;
     }
 
     @Override
-    final public Collector newCollector() {
-        final QueryCollectorsClassic queryCollectors = new QueryCollectorsClassic(queryExecution);
+    final public Collector newCollector() throws IOException {
+        final QueryCollectorsClassic queryCollectors =
+            new QueryCollectorsClassic(queryExecution, topDocsCollectorManager);
         queryCollectorsList.add(queryCollectors);
         return queryCollectors.finalCollector;
     }
@@ -18,12 +18,15 @@ package com.qwazr.search.index;
 
 import com.qwazr.search.collector.ClassicCollector;
 import com.qwazr.search.collector.ParallelCollector;
-import com.qwazr.search.query.QueryInterface;
 import com.qwazr.utils.LoggerUtils;
 import org.apache.lucene.facet.DrillSideways;
 import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
@@ -32,6 +35,7 @@ import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -57,12 +61,25 @@ class QueryCollectorsClassic extends QueryCollectors {
 
     final Collector finalCollector;
 
-    QueryCollectorsClassic(final QueryExecution<?> queryExecution) {
+    QueryCollectorsClassic(final QueryExecution<?> queryExecution) throws IOException {
+        this(queryExecution, null);
+    }
+
+    /**
+     * @param topDocsCollectorManager if not null, creates the top docs collector. Used by the concurrent searches
+     *                                to share the total hits threshold and the minimum competitive score.
+     */
+    QueryCollectorsClassic(final QueryExecution<?> queryExecution,
+                           final CollectorManager<? extends TopDocsCollector<?>, ?> topDocsCollectorManager)
+        throws IOException {
         super(queryExecution);
         collectors = new ArrayList<>();
         facetsCollector = queryExecution.useDrillSideways ? null : buildFacetsCollector(queryExecution.queryDef.getFacets());
         totalHitCountCollector = buildTotalHitsCollector(queryExecution.end);
-        topDocsCollector = buildTopDocCollector(queryExecution.sort, queryExecution.end);
+        topDocsCollector = topDocsCollectorManager == null ?
+            buildTopDocCollector(queryExecution.sort, queryExecution.end, queryExecution.after,
+                queryExecution.totalHitsThreshold) :
+            add(topDocsCollectorManager.newCollector());
         if (queryExecution.collectorConstructors != null) {
             userCollectors = new LinkedHashMap<>();
             for (final Map.Entry<String, QueryExecution.CollectorConstructor> entry : queryExecution.collectorConstructors.entrySet()) {
@@ -92,22 +109,19 @@ class QueryCollectorsClassic extends QueryCollectors {
     private FacetsCollector buildFacetsCollector(final LinkedHashMap<String, FacetDefinition> facets) {
         if (facets == null || facets.isEmpty())
             return null;
-        for (final FacetDefinition facet : facets.values()) {
-            final Map<String, QueryInterface> queries = facet.getQueries();
-            if (queries.isEmpty())
-                return add(new FacetsCollector());
-        }
-        return null;
+        // The facet queries are also counted from the matching documents
+        return add(new FacetsCollector());
     }
 
-    private TopDocsCollector<?> buildTopDocCollector(final Sort sort, final int numHits) {
+    private TopDocsCollector<?> buildTopDocCollector(final Sort sort, final int numHits, final ScoreDoc after,
+                                                     final int totalHitsThreshold) {
         if (numHits == 0)
             return null;
         final TopDocsCollector<?> topDocsCollector;
         if (sort != null)
-            topDocsCollector = TopFieldCollector.create(sort, numHits, Integer.MAX_VALUE);
+            topDocsCollector = TopFieldCollector.create(sort, numHits, (FieldDoc) after, totalHitsThreshold);
         else
-            topDocsCollector = TopScoreDocCollector.create(numHits, Integer.MAX_VALUE);
+            topDocsCollector = TopScoreDocCollector.create(numHits, after, totalHitsThreshold);
         return add(topDocsCollector);
     }
 
@@ -117,6 +131,15 @@ class QueryCollectorsClassic extends QueryCollectors {
         return add(new TotalHitCountCollector());
     }
 
+    /**
+     * Without a taxonomy, the classic DrillSideways counts every dimension with the sorted set facets state.
+     * With a taxonomy, the state is ignored: it is only built if a facet of the query needs it.
+     */
+    private SortedSetDocValuesReaderState getDrillSidewaysState() {
+        return queryExecution.queryContext.taxonomyReader == null ?
+            queryExecution.queryContext.getDocValueReaderState() : queryExecution.getSortedSetState();
+    }
+
     @Override
     public final FacetsBuilder execute() throws Exception {
 
@@ -126,10 +149,11 @@ class QueryCollectorsClassic extends QueryCollectors {
 
             final DrillSideways.DrillSidewaysResult drillSidewaysResult =
                 new DrillSideways(queryExecution.queryContext.indexSearcher, queryExecution.facetsConfig,
-                    queryExecution.queryContext.taxonomyReader, queryExecution.queryContext.docValueReaderState)
+                    queryExecution.queryContext.taxonomyReader, getDrillSidewaysState())
                     .search((org.apache.lucene.facet.DrillDownQuery) queryExecution.query, finalCollector);
+            queryExecution.timer.next(QueryMetrics.SEARCH_QUERY);
             facetsBuilder = new FacetsBuilder.WithSideways(queryExecution.queryContext, queryExecution.facetsConfig,
-                queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timeTracker,
+                queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timer,
                 drillSidewaysResult).build();
 
         } else {
@@ -139,12 +163,13 @@ class QueryCollectorsClassic extends QueryCollectors {
             } catch (TimeLimitingCollector.TimeExceededException e) {
                 LOGGER.log(Level.WARNING, e, e::getMessage);
             }
+            queryExecution.timer.next(QueryMetrics.SEARCH_QUERY);
 
             facetsBuilder = facetsCollector == null ?
                 null :
                 new FacetsBuilder.WithCollectors(queryExecution.queryContext, queryExecution.facetsConfig,
-                    queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timeTracker,
-                    facetsCollector).build();
+                    queryExecution.queryDef.getFacets(), queryExecution.query, queryExecution.timer,
+                    facetsCollector, queryExecution.facetCounts).build();
 
         }
 
@@ -33,8 +33,11 @@ final class QueryContextImpl extends IndexContextImpl implements QueryContext, C
     final IndexReader indexReader;
     final TaxonomyReader taxonomyReader;
     final AnalyzerContext analyzerContext;
-    final SortedSetDocValuesReaderState docValueReaderState;
+    private final MultiThreadSearcherFactory.StateIndexSearcher stateIndexSearcher;
     final FieldMap fieldMap;
+    final QueryMetrics queryMetrics;
+    final boolean concurrentFacets;
+    final Integer totalHitsThreshold;
 
     QueryContextImpl(final IndexInstance.Provider indexProvider,
                      final ResourceLoader resourceLoader,
@@ -42,14 +45,20 @@ final class QueryContextImpl extends IndexContextImpl implements QueryContext, C
                      final AnalyzerContext analyzerContext,
                      final FieldMap fieldMap,
                      final IndexSearcher indexSearcher,
-                     final TaxonomyReader taxonomyReader) {
+                     final TaxonomyReader taxonomyReader,
+                     final QueryMetrics queryMetrics,
+                     final boolean concurrentFacets,
+                     final Integer totalHitsThreshold) {
         super(indexProvider, resourceLoader, executorService, analyzerContext, fieldMap);
-        this.docValueReaderState = ((MultiThreadSearcherFactory.StateIndexSearcher) indexSearcher).state;
+        this.stateIndexSearcher = (MultiThreadSearcherFactory.StateIndexSearcher) indexSearcher;
         this.fieldMap = fieldMap;
         this.indexSearcher = indexSearcher;
         this.indexReader = indexSearcher.getIndexReader();
         this.taxonomyReader = taxonomyReader;
         this.analyzerContext = analyzerContext;
+        this.queryMetrics = queryMetrics;
+        this.concurrentFacets = concurrentFacets;
+        this.totalHitsThreshold = totalHitsThreshold;
     }
 
     @Override
@@ -67,6 +76,10 @@ final class QueryContextImpl extends IndexContextImpl implements QueryContext, C
         return fieldMap;
     }
 
+    SortedSetDocValuesReaderState getDocValueReaderState() {
+        return stateIndexSearcher.getState();
+    }
+
     private <T extends ResultDocumentAbstract> ResultDefinition<T> search(final QueryDefinition queryDefinition,
                                                                           final ResultDocuments<T> resultDocuments) {
         try {
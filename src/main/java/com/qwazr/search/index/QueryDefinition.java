@@ -62,6 +62,15 @@ public interface QueryDefinition {
     @JsonIgnore
     int getEndValue();
 
+    /**
+     * The cursor returned by the previous page (next_cursor).
+     * When set, the documents are collected after the last document of the previous page, and start is ignored.
+     * When the documents are sorted by docId, a cursor expires (410 Gone) as soon as the index has changed.
+     *
+     * @return the cursor of the page, or null
+     */
+    @JsonProperty("cursor")
+    String getCursor();
 
     @JsonProperty("returned_fields")
     LinkedHashSet<String> getReturnedFields();
@@ -69,6 +78,23 @@ public interface QueryDefinition {
     @JsonProperty("query_debug")
     Boolean getQueryDebug();
 
+    /**
+     * Count the facets concurrently on the segments. Overrides the concurrent_facets setting of the index.
+     *
+     * @return true or false, or null to use the setting of the index
+     */
+    @JsonProperty("concurrent_facets")
+    Boolean getConcurrentFacets();
+
+    /**
+     * The number of hits counted exactly. Above, the non-competitive documents may be skipped and the total hits
+     * is a lower bound. Overrides the total_hits_threshold setting of the index.
+     *
+     * @return the threshold, a negative value for an exact count, or null to use the setting of the index
+     */
+    @JsonProperty("total_hits_threshold")
+    Integer getTotalHitsThreshold();
+
     enum SortEnum {
 
         ascending,
@@ -107,6 +133,14 @@ public interface QueryDefinition {
     @JsonProperty("highlighters")
     LinkedHashMap<String, HighlighterDefinition> getHighlighters();
 
+    /**
+     * The nested documents returned with each document of the result, by name.
+     *
+     * @return the definitions of the inner hits, or null
+     */
+    @JsonProperty("inner_hits")
+    LinkedHashMap<String, InnerHitsDefinition> getInnerHits();
+
     @JsonProperty("commit_user_data")
     Map<String, String> getCommitUserData();
 
@@ -16,12 +16,20 @@
 package com.qwazr.search.index;
 
 import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.server.ServerException;
 
 import javax.validation.constraints.NotNull;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+/**
+ * Iterates over all the documents matching a query. The pages are requested with the cursor
+ * returned by the previous page, the cost of each page does not depend on its depth.
+ * When no cursor is available, or when it has expired, the page is requested by its position.
+ */
 public class QueryDocumentsIterator<T> implements Iterator<T> {
 
     private final AnnotatedIndexService<?> service;
@@ -31,6 +39,7 @@ public class QueryDocumentsIterator<T> implements Iterator<T> {
 
     private long count;
     private long pos;
+    private boolean lastPage;
 
     private List<ResultDocumentObject<T>> currentDocuments;
     private int currentPos;
@@ -43,24 +52,55 @@ public class QueryDocumentsIterator<T> implements Iterator<T> {
         this.queryBuilder = queryDefinition.of();
         this.count = 0;
         this.pos = 0;
+        this.lastPage = false;
         queryBuilder.start(0);
+        queryBuilder.cursor(null);
         if (queryBuilder.rows == null || queryBuilder.rows < 1)
             queryBuilder.rows = 100;
         nextExecution();
     }
 
+    private static boolean isGone(final RuntimeException e) {
+        if (e instanceof ServerException)
+            return ((ServerException) e).getStatusCode() == Response.Status.GONE.getStatusCode();
+        if (e instanceof WebApplicationException)
+            return ((WebApplicationException) e).getResponse().getStatus() == Response.Status.GONE.getStatusCode();
+        return false;
+    }
+
+    private ResultDefinition.WithObject<T> search() {
+        try {
+            return service.searchQuery(queryBuilder.build(), recordClass);
+        } catch (ServerException | WebApplicationException e) {
+            if (queryBuilder.cursor == null || !isGone(e))
+                throw e;
+        }
+        // The cursor has expired (the index has changed), the page is requested by its position
+        queryBuilder.cursor(null);
+        queryBuilder.start((int) pos);
+        return service.searchQuery(queryBuilder.build(), recordClass);
+    }
+
     private synchronized boolean nextExecution() {
-        final ResultDefinition.WithObject<T> result = service.searchQuery(queryBuilder.build(), recordClass);
+        if (lastPage)
+            return false;
+        final ResultDefinition.WithObject<T> result = search();
         count = result.totalHits;
         currentPos = 0;
         currentDocuments = result.documents;
-        queryBuilder.start(queryBuilder.start + queryBuilder.rows);
-        return currentDocuments != null && !currentDocuments.isEmpty();
+        final int size = currentDocuments == null ? 0 : currentDocuments.size();
+        lastPage = size < queryBuilder.rows;
+        // Without cursor (the sort values cannot be written in a cursor), the next page is requested by its position
+        queryBuilder.cursor(result.nextCursor);
+        queryBuilder.start(result.nextCursor == null ? (int) (pos + size) : 0);
+        return size > 0;
     }
 
     @Override
     final public synchronized boolean hasNext() {
-        return pos < count;
+        if (currentDocuments != null && currentPos < currentDocuments.size())
+            return true;
+        return !lastPage && pos < count;
     }
 
     @Override
@@ -21,19 +21,21 @@ import com.qwazr.search.field.SortUtils;
 import com.qwazr.search.query.DrillDown;
 import com.qwazr.search.query.QueryInterface;
 import com.qwazr.utils.ClassLoaderUtils;
-import com.qwazr.utils.TimeTracker;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.ws.rs.InternalServerErrorException;
+import org.apache.lucene.facet.DrillDownQuery;
 import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 
@@ -41,32 +43,37 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
 
     final QueryContextImpl queryContext;
     final QueryDefinition queryDef;
-    final TimeTracker timeTracker;
+    final QueryTimer timer;
     final Map<String, String> dimensions;
     final FacetsConfig facetsConfig;
     final int start;
     final int rows;
     final int end;
     final Sort sort;
+    final ScoreDoc after;
     final boolean useDrillSideways;
     final Query query;
     final Map<String, CollectorConstructor> collectorConstructors;
+    final FacetCounts facetCounts;
+    final int totalHitsThreshold;
 
     private final boolean isConcurrent;
 
     QueryExecution(final QueryContextImpl queryContext, final QueryDefinition queryDefinition)
         throws QueryNodeException, ReflectiveOperationException, ParseException, IOException {
 
-        this.timeTracker = Boolean.TRUE.equals(queryDefinition.getQueryDebug())
-            ? TimeTracker.withDurations() : TimeTracker.noDurations();
+        this.timer = queryContext.queryMetrics.newTimer(Boolean.TRUE.equals(queryDefinition.getQueryDebug()));
 
         this.queryContext = queryContext;
         this.queryDef = queryDefinition;
 
         final Query luceneQuery = queryDef.getLuceneQuery();
         final QueryInterface query = queryDef.getQuery();
-        this.query = luceneQuery != null ? luceneQuery :
+        final Query searchQuery = luceneQuery != null ? luceneQuery :
             query == null ? new MatchAllDocsQuery() : query.getQuery(queryContext);
+        // The DrillDownQuery filters its own base query
+        this.query = searchQuery instanceof DrillDownQuery ? searchQuery :
+            NestedDocuments.filterParents(queryContext.fieldMap, searchQuery);
 
         final LinkedHashMap<String, QueryDefinition.SortEnum> sorts = queryDef.getSorts();
         this.sort = sorts == null ? null : SortUtils.buildSort(queryContext.fieldMap, sorts);
@@ -75,11 +82,22 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
         this.dimensions = facets == null ? null : FacetsBuilder.getFields(facets);
         this.facetsConfig = dimensions == null ? null : queryContext.fieldMap.getFacetsConfig(dimensions);
 
-        this.start = queryDef.getStartValue();
+        final String cursor = queryDef.getCursor();
+        this.after = cursor == null || cursor.isEmpty() ? null :
+            SearchCursor.decode(cursor, sort, queryContext.indexReader);
+
+        this.start = after == null ? queryDef.getStartValue() : 0;
         this.rows = queryDef.getRowsValue();
         this.end = Math.min(start + rows, queryContext.indexReader.numDocs());
 
         this.useDrillSideways = query instanceof DrillDown && ((DrillDown) query).useDrillSideways && facets != null;
+        final Boolean concurrentFacets = queryDef.getConcurrentFacets();
+        this.facetCounts = FacetCounts.of(concurrentFacets == null ? queryContext.concurrentFacets : concurrentFacets,
+            queryContext.executorService);
+        final Integer totalHitsThreshold = queryDef.getTotalHitsThreshold() == null ?
+            queryContext.totalHitsThreshold : queryDef.getTotalHitsThreshold();
+        this.totalHitsThreshold = totalHitsThreshold == null || totalHitsThreshold < 0 ?
+            Integer.MAX_VALUE : totalHitsThreshold;
         final LinkedHashMap<String, QueryDefinition.CollectorDefinition> collectors = queryDef.getCollectors();
         if (collectors != null && !collectors.isEmpty()) {
             collectorConstructors = new LinkedHashMap<>();
@@ -90,6 +108,17 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
         }
     }
 
+    /**
+     * Building the facets state merges the ordinals of every segment: it is only requested
+     * when one of the facets of the query is a sorted set facet.
+     *
+     * @return the sorted set facets state, or null if no facet of the query needs it
+     */
+    final SortedSetDocValuesReaderState getSortedSetState() {
+        return FacetsBuilder.hasSortedSetDimension(queryContext.fieldMap, facetsConfig, dimensions) ?
+            queryContext.getDocValueReaderState() : null;
+    }
+
     enum CollectorType {
         LUCENE, CLASSIC, PARALLEL
 
@@ -183,14 +212,33 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
         } else
             highlighters = null;
 
-        timeTracker.next("search_query");
+        final LinkedHashMap<String, InnerHitsDefinition> queryInnerHits = queryDef.getInnerHits();
+        final InnerHits innerHits = queryInnerHits != null && !queryInnerHits.isEmpty() && topDocs != null ?
+            InnerHits.of(queryInnerHits, queryContext) : null;
 
         final ResultDocumentsBuilder resultBuilder =
-            new ResultDocumentsBuilder(queryDef, topDocs, queryContext.indexSearcher, query, highlighters,
-                queryCollectors.getExternalResults(), timeTracker, facetsBuilder,
-                totalHits == null ? 0 : totalHits, resultDocumentsInterface);
+            new ResultDocumentsBuilder(queryDef, topDocs, queryContext.indexSearcher, query, highlighters, innerHits,
+                queryCollectors.getExternalResults(), timer, facetsBuilder,
+                totalHits == null ? 0 : totalHits, getNextCursor(topDocs), resultDocumentsInterface);
+
+        final ResultDefinition<T> result = resultDocuments.apply(resultBuilder);
+        timer.done(resultBuilder.totalHits, topDocs == null || topDocs.scoreDocs == null ? 0 : topDocs.scoreDocs.length,
+            resultDocuments.getStoredFieldsBytes());
+        return result;
+    }
 
-        return resultDocuments.apply(resultBuilder);
+    /**
+     * A cursor is returned only if the page is full: a shorter page is the last one.
+     * A page requested by position gets no cursor if its sort values cannot be written in a cursor,
+     * a page requested with a cursor always gets the next one.
+     */
+    private String getNextCursor(final TopDocs topDocs) throws IOException {
+        if (topDocs == null || topDocs.scoreDocs == null || rows == 0 || topDocs.scoreDocs.length < rows)
+            return null;
+        final ScoreDoc last = topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+        if (after == null && !SearchCursor.isEncodable(last))
+            return null;
+        return SearchCursor.encode(last, queryContext.indexReader);
     }
 
     final Explanation explain(final int docId) throws IOException {
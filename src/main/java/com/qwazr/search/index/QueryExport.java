@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qwazr.search.query.QueryInterface;
+import com.qwazr.server.ServerException;
+import com.qwazr.utils.ObjectMappers;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.lucene.facet.DrillDownQuery;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Export every document matching a query, without scoring nor sorting.
+ * The segments are visited one after the other in docId order, the documents are written as soon as a batch
+ * of them has been read, so the memory footprint does not depend on the number of matching documents.
+ */
+final class QueryExport {
+
+    private final static int BATCH_SIZE = 256;
+
+    private final QueryContextImpl queryContext;
+    private final QueryDefinition queryDefinition;
+    private final Weight weight;
+
+    QueryExport(final QueryContextImpl queryContext, final QueryDefinition queryDefinition)
+        throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+        this.queryContext = queryContext;
+        this.queryDefinition = queryDefinition.getReturnedFields() == null ?
+            queryDefinition.of().returnedField("*").build() : queryDefinition;
+        final Query luceneQuery = queryDefinition.getLuceneQuery();
+        final QueryInterface query = queryDefinition.getQuery();
+        final Query searchQuery = luceneQuery != null ? luceneQuery :
+            query == null ? new MatchAllDocsQuery() : query.getQuery(queryContext);
+        // The DrillDownQuery filters its own base query
+        final Query exportQuery = searchQuery instanceof DrillDownQuery ? searchQuery :
+            NestedDocuments.filterParents(queryContext.fieldMap, searchQuery);
+        weight = queryContext.indexSearcher.createWeight(queryContext.indexSearcher.rewrite(exportQuery),
+            ScoreMode.COMPLETE_NO_SCORES, 1.0F);
+    }
+
+    /**
+     * Write the documents to the output stream.
+     *
+     * @param output   the destination of the documents
+     * @param smile    true to write a stream of SMILE documents, false to write NDJSON
+     * @param parallel true to export the segments concurrently. The order of the documents is then not preserved.
+     * @return the number of exported documents
+     * @throws IOException if any I/O error occurs
+     */
+    long export(final OutputStream output, final boolean smile, final boolean parallel) throws IOException {
+        final ObjectMapper mapper = smile ? ObjectMappers.SMILE : ObjectMappers.JSON;
+        try (final JsonGenerator generator = mapper.createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (!smile)
+                generator.setRootValueSeparator(null);
+            final List<LeafReaderContext> leaves = queryContext.indexReader.leaves();
+            final ExecutorService executorService = queryContext.executorService;
+            if (!parallel || executorService == null || leaves.size() < 2) {
+                final LeafExporter exporter = new LeafExporter(generator, smile);
+                for (final LeafReaderContext leaf : leaves)
+                    exporter.export(leaf);
+                return exporter.count;
+            }
+            return export(executorService, leaves, generator, smile);
+        }
+    }
+
+    private long export(final ExecutorService executorService,
+                        final List<LeafReaderContext> leaves,
+                        final JsonGenerator generator,
+                        final boolean smile) throws IOException {
+        final List<Future<Long>> futures = new ArrayList<>(leaves.size());
+        for (final LeafReaderContext leaf : leaves)
+            futures.add(executorService.submit(() -> {
+                final LeafExporter exporter = new LeafExporter(generator, smile);
+                exporter.export(leaf);
+                return exporter.count;
+            }));
+        long count = 0;
+        try {
+            for (final Future<Long> future : futures)
+                count += future.get();
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ServerException.of(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw ServerException.of(cause);
+        } finally {
+            for (final Future<Long> future : futures)
+                future.cancel(true);
+        }
+    }
+
+    private final class LeafExporter {
+
+        private final JsonGenerator generator;
+        private final boolean smile;
+        private final ReturnedFieldStrategy returnedFieldStrategy;
+        private final List<ResultDocumentBuilder<ResultDocumentMap>> batch;
+        private long count;
+
+        private LeafExporter(final JsonGenerator generator, final boolean smile) {
+            this.generator = generator;
+            this.smile = smile;
+            this.returnedFieldStrategy =
+                ReturnedFieldStrategy.of(queryContext, queryDefinition, queryContext.fieldMap::getStaticFieldSet);
+            this.batch = new ArrayList<>(BATCH_SIZE);
+        }
+
+        private void export(final LeafReaderContext leaf) throws IOException {
+            final Scorer scorer = weight.scorer(leaf);
+            if (scorer == null)
+                return;
+            final Bits liveDocs = leaf.reader().getLiveDocs();
+            final DocIdSetIterator iterator = scorer.iterator();
+            int doc;
+            while ((doc = iterator.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (liveDocs != null && !liveDocs.get(doc))
+                    continue;
+                batch.add(newBuilder(new ScoreDoc(leaf.docBase + doc, Float.NaN)));
+                if (batch.size() == BATCH_SIZE)
+                    flush();
+            }
+            flush();
+        }
+
+        private ResultDocumentBuilder<ResultDocumentMap> newBuilder(final ScoreDoc scoreDoc) {
+            final int pos = (int) count + batch.size();
+            switch (returnedFieldStrategy.type()) {
+                case RECORD:
+                    return new ResultDocumentMap.ForRecord(pos, scoreDoc);
+                case FIELDS:
+                    return new ResultDocumentMap.ForFields(pos, scoreDoc);
+                default:
+                    return new ResultDocumentMap.ForNone(pos, scoreDoc);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (batch.isEmpty())
+                return;
+            returnedFieldStrategy.extract(queryContext.indexSearcher, batch);
+            synchronized (generator) {
+                for (final ResultDocumentBuilder<ResultDocumentMap> builder : batch) {
+                    final Map<String, Object> fields = builder.build().fields;
+                    generator.writeObject(fields == null ? Map.of() : fields);
+                    if (!smile)
+                        generator.writeRaw('\n');
+                }
+                generator.flush();
+            }
+            count += batch.size();
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.utils.LoggerUtils;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The always-on query metrics of an index: a latency histogram for each phase of the queries,
+ * and the counters of the hits, of the loaded documents and of the stored fields bytes.
+ */
+final class QueryMetrics implements IndexMetricsMXBean {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(QueryMetrics.class);
+
+    final static String TOTAL = "total";
+    final static String SEARCH_QUERY = "search_query";
+    final static String FACET_COUNT = "facet_count";
+    final static String DOCUMENTS = "documents";
+    final static String HIGHLIGHTING = "highlighting";
+    final static String INNER_HITS = "inner_hits";
+
+    private final static String[] PHASES = {TOTAL, SEARCH_QUERY, FACET_COUNT, DOCUMENTS, HIGHLIGHTING, INNER_HITS};
+
+    private final Map<String, LatencyHistogram> histograms;
+    private final LongAdder queries;
+    private final LongAdder cacheHits;
+    private final LongAdder hitsCollected;
+    private final LongAdder documentsLoaded;
+    private final LongAdder storedFieldsBytes;
+
+    private volatile ObjectName objectName;
+
+    QueryMetrics() {
+        histograms = new LinkedHashMap<>();
+        for (final String phase : PHASES)
+            histograms.put(phase, new LatencyHistogram());
+        queries = new LongAdder();
+        cacheHits = new LongAdder();
+        hitsCollected = new LongAdder();
+        documentsLoaded = new LongAdder();
+        storedFieldsBytes = new LongAdder();
+    }
+
+    /**
+     * @param withDurations true if the durations are also returned with the result (query_debug)
+     * @return a new timer for one query
+     */
+    QueryTimer newTimer(final boolean withDurations) {
+        return new QueryTimer(this, withDurations);
+    }
+
+    void recordPhase(final String phase, final long nanos) {
+        final LatencyHistogram histogram = histograms.get(phase);
+        if (histogram != null)
+            histogram.recordNanos(nanos);
+    }
+
+    void recordQuery(final long totalNanos, final long hits, final int documents, final long bytes) {
+        histograms.get(TOTAL).recordNanos(totalNanos);
+        queries.increment();
+        hitsCollected.add(hits);
+        documentsLoaded.add(documents);
+        storedFieldsBytes.add(bytes);
+    }
+
+    /**
+     * A query answered by the search result cache: only the total latency is recorded.
+     */
+    void recordCacheHit(final long totalNanos) {
+        histograms.get(TOTAL).recordNanos(totalNanos);
+        queries.increment();
+        cacheHits.increment();
+    }
+
+    IndexMetrics getMetrics() {
+        return new IndexMetrics(getQueries(), getCacheHits(), getHitsCollected(), getDocumentsLoaded(), getStoredFieldsBytes(),
+            getPhases());
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getHitsCollected() {
+        return hitsCollected.sum();
+    }
+
+    @Override
+    public long getDocumentsLoaded() {
+        return documentsLoaded.sum();
+    }
+
+    @Override
+    public long getStoredFieldsBytes() {
+        return storedFieldsBytes.sum();
+    }
+
+    @Override
+    public LinkedHashMap<String, IndexMetrics.LatencyStats> getPhases() {
+        final LinkedHashMap<String, IndexMetrics.LatencyStats> phases = new LinkedHashMap<>();
+        histograms.forEach((phase, histogram) -> phases.put(phase, histogram.getStats()));
+        return phases;
+    }
+
+    /**
+     * Register the metrics in the platform MBeanServer. A failure is logged, not thrown.
+     */
+    void registerMBean(final String indexName, final String indexUuid) {
+        try {
+            final ObjectName name = new ObjectName("com.qwazr.search:type=IndexMetrics,name=" +
+                ObjectName.quote(indexName) + ",uuid=" + ObjectName.quote(indexUuid));
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(name))
+                mBeanServer.unregisterMBean(name);
+            mBeanServer.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Cannot register the metrics MBean of the index " + indexName);
+        }
+    }
+
+    void unregisterMBean() {
+        final ObjectName name = objectName;
+        if (name == null)
+            return;
+        objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Cannot unregister the MBean " + name);
+        }
+    }
+}
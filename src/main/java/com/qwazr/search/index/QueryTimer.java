@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.utils.TimeTracker;
+
+/**
+ * Times the phases of one query. Each phase is recorded in the metrics of the index,
+ * and in the TimeTracker returned with the result.
+ */
+final class QueryTimer {
+
+    private final QueryMetrics metrics;
+    private final TimeTracker timeTracker;
+    private final long startTime;
+    private long lastTime;
+
+    QueryTimer(final QueryMetrics metrics, final boolean withDurations) {
+        this.metrics = metrics;
+        this.timeTracker = withDurations ? TimeTracker.withDurations() : TimeTracker.noDurations();
+        this.startTime = System.nanoTime();
+        this.lastTime = startTime;
+    }
+
+    /**
+     * Close the current phase
+     *
+     * @param phase the name of the phase
+     */
+    void next(final String phase) {
+        final long now = System.nanoTime();
+        metrics.recordPhase(phase, now - lastTime);
+        lastTime = now;
+        timeTracker.next(phase);
+    }
+
+    void done(final long hits, final int documents, final long storedFieldsBytes) {
+        metrics.recordQuery(System.nanoTime() - startTime, hits, documents, storedFieldsBytes);
+    }
+
+    TimeTracker.Status getStatus() {
+        return timeTracker.getStatus();
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * LRU cache bounded by memory, the entries are keyed by a key and the cache key of an index reader.
+ * When the searcher is refreshed the new reader has a new key, and the entries of the old reader
+ * are purged as soon as it is closed.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+final class ReaderLruCache<K, V> {
+
+    private final long maxRamBytes;
+    private final LinkedHashMap<Key<K>, Entry<V>> entries;
+    private final Set<IndexReader.CacheKey> readerKeys;
+    private long ramBytesUsed;
+
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong bypassCount;
+    private final AtomicLong evictionCount;
+    private final AtomicLong invalidationCount;
+
+    ReaderLruCache(final long maxRamBytes) {
+        this.maxRamBytes = maxRamBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.readerKeys = new HashSet<>();
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.bypassCount = new AtomicLong();
+        this.evictionCount = new AtomicLong();
+        this.invalidationCount = new AtomicLong();
+    }
+
+    /**
+     * @param maxRamMB the size of the cache in megabytes
+     * @return the size of the cache in bytes, or null if the cache is disabled
+     */
+    static Long maxRamBytes(final Double maxRamMB) {
+        return maxRamMB == null || maxRamMB <= 0 ? null : (long) (maxRamMB * 1024 * 1024);
+    }
+
+    /**
+     * @param readerKey the cache key of the reader
+     * @param key       the key of the entry
+     * @return the cached value (counted as a hit), or null
+     */
+    V get(final IndexReader.CacheKey readerKey, final K key) {
+        final Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(new Key<>(readerKey, key));
+        }
+        if (entry == null)
+            return null;
+        hitCount.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * A value which was not in the cache has been computed, it is cached unless it is bigger than the cache.
+     *
+     * @param cacheHelper the cache helper of the reader
+     * @param key         the key of the entry
+     * @param value       the computed value
+     * @param ramBytes    the memory used by the value
+     */
+    void put(final IndexReader.CacheHelper cacheHelper, final K key, final V value, final long ramBytes) {
+        missCount.incrementAndGet();
+        if (ramBytes > maxRamBytes)
+            return;
+        final IndexReader.CacheKey readerKey = cacheHelper.getKey();
+        final boolean newReader;
+        synchronized (entries) {
+            newReader = readerKeys.add(readerKey);
+            final Entry<V> previous = entries.put(new Key<>(readerKey, key), new Entry<>(value, ramBytes));
+            if (previous != null)
+                ramBytesUsed -= previous.ramBytes;
+            ramBytesUsed += ramBytes;
+            evict();
+        }
+        if (newReader)
+            cacheHelper.addClosedListener(this::purge);
+    }
+
+    /**
+     * A value has been computed without the cache
+     */
+    void bypass() {
+        bypassCount.incrementAndGet();
+    }
+
+    private void evict() {
+        final Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (ramBytesUsed > maxRamBytes && iterator.hasNext()) {
+            ramBytesUsed -= iterator.next().ramBytes;
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void purge(final IndexReader.CacheKey readerKey) {
+        synchronized (entries) {
+            readerKeys.remove(readerKey);
+            entries.entrySet().removeIf(entry -> {
+                if (entry.getKey().readerKey != readerKey)
+                    return false;
+                ramBytesUsed -= entry.getValue().ramBytes;
+                return true;
+            });
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+            ramBytesUsed = 0;
+        }
+        invalidationCount.incrementAndGet();
+    }
+
+    IndexStatus.CacheStats getStats() {
+        final int size;
+        final long ramBytes;
+        synchronized (entries) {
+            size = entries.size();
+            ramBytes = ramBytesUsed;
+        }
+        return new IndexStatus.CacheStats(size, ramBytes, maxRamBytes, hitCount.get(), missCount.get(),
+            bypassCount.get(), evictionCount.get(), invalidationCount.get());
+    }
+
+    private final static class Entry<V> {
+
+        private final V value;
+        private final long ramBytes;
+
+        private Entry(final V value, final long ramBytes) {
+            this.value = value;
+            this.ramBytes = ramBytes;
+        }
+    }
+
+    private final static class Key<K> {
+
+        private final IndexReader.CacheKey readerKey;
+        private final K key;
+        private final int hashCode;
+
+        private Key(final IndexReader.CacheKey readerKey, final K key) {
+            this.readerKey = readerKey;
+            this.key = key;
+            this.hashCode = Objects.hash(readerKey, key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key))
+                return false;
+            final Key<?> k = (Key<?>) o;
+            return readerKey == k.readerKey && Objects.equals(key, k.key);
+        }
+    }
+}
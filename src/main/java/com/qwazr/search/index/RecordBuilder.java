@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
 import com.qwazr.search.analysis.AnalyzerContext;
 import com.qwazr.search.field.FieldTypeInterface;
+import com.qwazr.utils.ObjectMappers;
 import java.lang.reflect.Field;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -65,6 +66,10 @@ abstract class RecordBuilder<DOC> {
             termId = fieldType.newPrimaryTerm(fieldName, fieldValue);
     }
 
+    final boolean isNestedField(final String fieldName) {
+        return fieldMap.isNestedField(fieldName);
+    }
+
     final static class ForMap<DOC> extends RecordBuilder<DOC> {
 
         ForMap(final FieldMap fieldMap,
@@ -108,6 +113,11 @@ abstract class RecordBuilder<DOC> {
         }
 
         boolean accept(final String fieldName, final JsonNode jsonValue) {
+            if (jsonValue.isContainerNode() && isNestedField(fieldName)) {
+                // The children are given as maps to the nested field
+                addFieldValue(fieldName, ObjectMappers.JSON.convertValue(jsonValue, Object.class));
+                return false;
+            }
             switch (jsonValue.getNodeType()) {
                 case STRING:
                     addFieldValue(fieldName, jsonValue.textValue());
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.qwazr.utils.ObjectMappers;
+import java.io.IOException;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.StoredFieldVisitor;
+
+/**
+ * Read the record (the SMILE serialized document) of a document: the other stored fields are skipped,
+ * and the visit stops as soon as the record has been read.
+ * A visitor is not thread safe, it can be reused by one thread for several documents.
+ */
+final class RecordVisitor extends StoredFieldVisitor {
+
+    private final String recordField;
+    private byte[] record;
+
+    RecordVisitor(final String recordField) {
+        this.recordField = recordField;
+    }
+
+    /**
+     * @param reader the reader of the document, a leaf or a top level reader
+     * @param doc    the docId in this reader
+     * @return the bytes of the record, or null if the document has no record
+     * @throws IOException if any I/O error occurs
+     */
+    byte[] read(final IndexReader reader, final int doc) throws IOException {
+        record = null;
+        reader.document(doc, this);
+        return record;
+    }
+
+    /**
+     * @param reader the reader of the document, a leaf or a top level reader
+     * @param doc    the docId in this reader
+     * @return the deserialized record, or null if the document has no record
+     * @throws IOException if any I/O error occurs, or if the record is not a JSON object
+     */
+    ObjectNode readObject(final IndexReader reader, final int doc) throws IOException {
+        final byte[] bytes = read(reader, doc);
+        if (bytes == null)
+            return null;
+        final JsonNode jsonNode = ObjectMappers.SMILE.readTree(bytes);
+        if (!jsonNode.isObject())
+            throw new IOException("The record is not a JSON object: " + jsonNode.getNodeType());
+        return (ObjectNode) jsonNode;
+    }
+
+    @Override
+    public Status needsField(final FieldInfo fieldInfo) {
+        if (record != null)
+            return Status.STOP;
+        return recordField.equals(fieldInfo.name) ? Status.YES : Status.NO;
+    }
+
+    @Override
+    public void binaryField(final FieldInfo fieldInfo, final byte[] value) {
+        record = value;
+    }
+}
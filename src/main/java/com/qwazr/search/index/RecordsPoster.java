@@ -31,6 +31,7 @@ import java.util.SortedSet;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 
 interface RecordsPoster {
 
@@ -70,17 +71,23 @@ interface RecordsPoster {
         extends CommonPoster<Document, RECORDBUILDER, DocumentBuilder.ForLuceneDocument> {
 
         protected final RunnableEx<IOException> index;
+        private final NestedDocuments.Block block;
 
         private Documents(final DocumentBuilder.ForLuceneDocument documentBuilder,
                           final RECORDBUILDER recordBuilder,
                           final FieldMap fieldMap,
+                          final AnalyzerContext analyzerContext,
                           final IndexWriter indexWriter,
                           final TaxonomyWriter taxonomyWriter) {
             super(documentBuilder, recordBuilder, fieldMap, indexWriter, taxonomyWriter);
-            if (StringUtils.isBlank(fieldMap.fieldsContext.primaryKey))
-                index = this::addDocument;
-            else
-                index = this::updateDocument;
+            final boolean hasPrimaryKey = !StringUtils.isBlank(fieldMap.fieldsContext.primaryKey);
+            if (fieldMap.hasNestedFields()) {
+                block = new NestedDocuments.Block(fieldMap, analyzerContext, taxonomyWriter);
+                index = hasPrimaryKey ? this::updateBlock : this::addBlock;
+            } else {
+                block = null;
+                index = hasPrimaryKey ? this::updateDocument : this::addDocument;
+            }
         }
 
         final void addDocument() throws IOException {
@@ -95,6 +102,24 @@ interface RecordsPoster {
             documentBuilder.reset();
         }
 
+        final void addBlock() throws IOException {
+            indexWriter.addDocuments(block.build(documentBuilder, null));
+            count++;
+            documentBuilder.reset();
+        }
+
+        /**
+         * The previous block is deleted using the root term shared by the parent and its children.
+         * A document indexed before the definition of the nested fields has no root term: the index must be
+         * rebuilt (or the document deleted) when the first nested field is added.
+         */
+        final void updateBlock() throws IOException {
+            final Term termId = recordBuilder.getTermId();
+            indexWriter.updateDocuments(NestedDocuments.rootTerm(termId), block.build(documentBuilder, termId));
+            count++;
+            documentBuilder.reset();
+        }
+
     }
 
     abstract class DocValues<RECORDBUILDER extends RecordBuilder<org.apache.lucene.document.Field[]>>
@@ -146,7 +171,7 @@ interface RecordsPoster {
                                  final AnalyzerContext analyzerContext,
                                  final IndexWriter indexWriter,
                                  final TaxonomyWriter taxonomyWriter) {
-            super(documentBuilder, new RecordBuilder.ForMap<>(fieldMap, analyzerContext, documentBuilder), fieldMap, indexWriter, taxonomyWriter);
+            super(documentBuilder, new RecordBuilder.ForMap<>(fieldMap, analyzerContext, documentBuilder), fieldMap, analyzerContext, indexWriter, taxonomyWriter);
         }
 
         @Override
@@ -211,7 +236,7 @@ interface RecordsPoster {
                                     final IndexWriter indexWriter,
                                     final TaxonomyWriter taxonomyWriter,
                                     final Map<String, Field> fields) {
-            super(documentBuilder, new RecordBuilder.ForObject<>(fieldMap, analyzerContext, documentBuilder), fieldMap, indexWriter, taxonomyWriter);
+            super(documentBuilder, new RecordBuilder.ForObject<>(fieldMap, analyzerContext, documentBuilder), fieldMap, analyzerContext, indexWriter, taxonomyWriter);
             this.fields = fields;
         }
 
@@ -272,7 +297,7 @@ interface RecordsPoster {
                                     final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes,
                                     final IndexWriter indexWriter,
                                     final TaxonomyWriter taxonomyWriter) {
-            super(documentBuilder, RecordBuilder.forJsonOf(fieldMap, analyzerContext, documentBuilder, fieldTypes), fieldMap, indexWriter, taxonomyWriter);
+            super(documentBuilder, RecordBuilder.forJsonOf(fieldMap, analyzerContext, documentBuilder, fieldTypes), fieldMap, analyzerContext, indexWriter, taxonomyWriter);
         }
 
         @Override
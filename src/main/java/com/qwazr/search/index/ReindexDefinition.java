@@ -21,6 +21,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.qwazr.utils.Equalizer;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
@@ -40,29 +41,72 @@ public class ReindexDefinition extends Equalizer.Immutable<ReindexDefinition> {
 
     public final Date end;
 
+    /**
+     * The percentage of the records already indexed
+     */
     public final Float completion;
 
     public final Status status;
 
     public final String error;
 
+    /**
+     * The number of records to reindex
+     */
+    public final Long total;
+
+    /**
+     * The number of records already indexed
+     */
+    public final Long completed;
+
+    /**
+     * The number of records indexed per second since the start
+     */
+    public final Float rate;
+
+    /**
+     * The estimated end time, based on the current rate
+     */
+    public final Date eta;
+
+    /**
+     * The progress of each segment of the snapshot being reindexed
+     */
+    public final List<Segment> segments;
+
     @JsonCreator
     public ReindexDefinition(@JsonProperty("start") final Date start,
                              @JsonProperty("end") final Date end,
                              @JsonProperty("completion") final Float completion,
                              @JsonProperty("status") final Status status,
-                             @JsonProperty("error") final String error) {
+                             @JsonProperty("error") final String error,
+                             @JsonProperty("total") final Long total,
+                             @JsonProperty("completed") final Long completed,
+                             @JsonProperty("rate") final Float rate,
+                             @JsonProperty("eta") final Date eta,
+                             @JsonProperty("segments") final List<Segment> segments) {
         super(ReindexDefinition.class);
         this.start = start;
         this.end = end;
         this.completion = completion;
         this.status = status;
         this.error = error;
+        this.total = total;
+        this.completed = completed;
+        this.rate = rate;
+        this.eta = eta;
+        this.segments = segments;
+    }
+
+    public ReindexDefinition(final Date start, final Date end, final Float completion, final Status status,
+                             final String error) {
+        this(start, end, completion, status, error, null, null, null, null, null);
     }
 
     @Override
     protected int computeHashCode() {
-        return Objects.hash(start, end, completion, status, error);
+        return Objects.hash(start, end, completion, status, error, total, completed);
     }
 
     @Override
@@ -71,8 +115,65 @@ public class ReindexDefinition extends Equalizer.Immutable<ReindexDefinition> {
             && Objects.equals(end, other.end)
             && Objects.equals(completion, other.completion)
             && Objects.equals(status, other.status)
-            && Objects.equals(error, other.error);
+            && Objects.equals(error, other.error)
+            && Objects.equals(total, other.total)
+            && Objects.equals(completed, other.completed)
+            && Objects.equals(rate, other.rate)
+            && Objects.equals(eta, other.eta)
+            && Objects.equals(segments, other.segments);
     }
 
     public static final ReindexDefinition EMPTY = new ReindexDefinition(null, null, null, null, null);
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonAutoDetect(
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        setterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class Segment extends Equalizer.Immutable<Segment> {
+
+        public final String name;
+
+        /**
+         * The number of live records of the segment
+         */
+        public final Long docs;
+
+        /**
+         * The number of records read and decoded
+         */
+        public final Long read;
+
+        /**
+         * The number of records indexed
+         */
+        public final Long indexed;
+
+        @JsonCreator
+        public Segment(@JsonProperty("name") final String name,
+                       @JsonProperty("docs") final Long docs,
+                       @JsonProperty("read") final Long read,
+                       @JsonProperty("indexed") final Long indexed) {
+            super(Segment.class);
+            this.name = name;
+            this.docs = docs;
+            this.read = read;
+            this.indexed = indexed;
+        }
+
+        @Override
+        protected int computeHashCode() {
+            return Objects.hash(name, docs, read, indexed);
+        }
+
+        @Override
+        protected boolean isEqual(final Segment other) {
+            return Objects.equals(name, other.name)
+                && Objects.equals(docs, other.docs)
+                && Objects.equals(read, other.read)
+                && Objects.equals(indexed, other.indexed);
+        }
+    }
 }
@@ -16,20 +16,24 @@
 package com.qwazr.search.index;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.qwazr.search.collector.BaseCollector;
-import com.qwazr.search.field.FieldDefinition;
-import com.qwazr.search.query.MatchAllDocs;
 import com.qwazr.utils.LoggerUtils;
 import com.qwazr.utils.ObjectMappers;
 import com.qwazr.utils.StringUtils;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -38,14 +42,18 @@ import java.util.logging.Logger;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotAcceptableException;
 import javax.ws.rs.NotFoundException;
-import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.index.StoredFieldVisitor;
-import org.apache.lucene.search.LeafCollector;
-import org.apache.lucene.search.Scorable;
-import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.Bits;
 
+/**
+ * Reindex every record of the index. The records are read from a snapshot of the index:
+ * the segments are read and decoded concurrently, the decoded batches go through a bounded queue
+ * (the readers wait when the indexing workers are late), and several workers index them.
+ * An optional maximum rate keeps some resources for the queries.
+ */
 class ReindexThread {
 
     private final static Logger LOGGER = LoggerUtils.getLogger(ReindexThread.class);
@@ -72,12 +80,22 @@ class ReindexThread {
         }
     }
 
-    ReindexDefinition start(int bufferSize) {
+    /**
+     * Start a new reindexing process
+     *
+     * @param bufferSize the number of records indexed per batch
+     * @param threads    the number of indexing workers, null for the half of the available processors
+     * @param maxRate    the maximum number of records indexed per second, null for no limit
+     * @return the status of the new process
+     */
+    ReindexDefinition start(final int bufferSize, final Integer threads, final Integer maxRate) {
         return compute(current -> {
             if (current != null)
                 if (!current.future.isDone())
                     throw new NotAcceptableException("A reindexing process is currently running.");
-            return new ReindexProcess(executorService, indexInstance, bufferSize);
+            return new ReindexProcess(executorService, indexInstance, bufferSize,
+                threads == null ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : threads,
+                maxRate == null ? 0 : maxRate);
         });
     }
 
@@ -98,6 +116,7 @@ class ReindexThread {
 
     private static class ReindexProcess implements Runnable {
 
+        private final ExecutorService executorService;
         private final AtomicBoolean abort;
         private final CompletableFuture<Void> future;
         private final Date startTime;
@@ -106,20 +125,39 @@ class ReindexThread {
         private volatile ReindexDefinition.Status status;
         private volatile Date endTime;
         private final AtomicLong completedRecords;
-        private final AtomicLong numDocs;
-        private volatile String error;
-        private final List<JsonNode> buffer;
+        private volatile long numDocs;
+        private volatile List<Segment> segments;
+        private final AtomicReference<String> error;
         private final int maxBufferSize;
+        private final int threads;
+        private final long nanosPerRecord;
+        private final AtomicLong nextSlot;
+        private final BlockingQueue<Batch> queue;
+        private final AtomicInteger runningReaders;
 
         private ReindexProcess(final ExecutorService executorService,
                                final IndexInstance indexInstance,
-                               final int maxBufferSize) {
+                               final int maxBufferSize,
+                               final int threads,
+                               final int maxRate) {
+            if (maxBufferSize <= 0)
+                throw new NotAcceptableException("The buffer size should be greater than zero.");
+            if (threads <= 0)
+                throw new NotAcceptableException("The number of threads should be greater than zero.");
+            if (maxRate < 0)
+                throw new NotAcceptableException("The maximum rate should not be negative.");
+            this.executorService = executorService;
             this.maxBufferSize = maxBufferSize;
+            this.threads = threads;
+            this.nanosPerRecord = maxRate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / maxRate;
+            this.nextSlot = new AtomicLong(System.nanoTime());
             this.status = ReindexDefinition.Status.initialized;
             this.startTime = Date.from(Instant.now());
             this.indexInstance = indexInstance;
             this.abort = new AtomicBoolean(false);
             this.completedRecords = new AtomicLong(0);
+            this.error = new AtomicReference<>();
+            this.segments = List.of();
             final IndexStatus indexStatus;
             try {
                 indexStatus = indexInstance.getStatus();
@@ -131,120 +169,213 @@ class ReindexThread {
             if (StringUtils.isBlank(indexStatus.settings.recordField))
                 throw new NotAcceptableException("Reindex requires a record field. Check that your index configuration defines a record field.");
             this.recordField = indexStatus.settings.recordField;
-            this.numDocs = new AtomicLong(indexStatus.numDocs == null ? 0 : indexStatus.numDocs);
-            this.buffer = new ArrayList<>();
+            this.numDocs = indexStatus.numDocs == null ? 0 : indexStatus.numDocs;
+            // Two batches per worker: enough to keep the workers busy, small enough to bound the memory
+            this.queue = new ArrayBlockingQueue<>(threads * 2);
+            this.runningReaders = new AtomicInteger();
             this.future = CompletableFuture.runAsync(this, executorService);
         }
 
-
         private void abort() {
             abort.set(true);
+            if (status == ReindexDefinition.Status.running)
+                status = ReindexDefinition.Status.aborting;
         }
 
-        private void indexBuffer() {
-            if (buffer.isEmpty())
-                return;
-            try {
-                completedRecords.addAndGet(indexInstance.postJsonNodes(buffer).count);
-                buffer.clear();
-            } catch (IOException e) {
-                throw new InternalServerErrorException("Error while reindexing: " + e.getMessage(), e);
-            }
-        }
-
-        private void newRecord(final byte[] recordBytes) {
-            try {
-                final JsonNode jsonNode = ObjectMappers.SMILE.readTree(recordBytes);
-                synchronized (buffer) {
-                    buffer.add(jsonNode);
-                    if (buffer.size() >= maxBufferSize)
-                        indexBuffer();
-                }
-            } catch (IOException e) {
-                throw new InternalServerErrorException("Error while reading a record: " + e.getMessage(), e);
-            }
+        private void fail(final Exception e) {
+            final String message = e.getMessage() == null ? e.toString() : e.getMessage();
+            if (error.compareAndSet(null, message))
+                LOGGER.log(Level.SEVERE, e, () -> "Error while reindexing: " + message);
+            abort.set(true);
         }
 
         @Override
         public void run() {
             try {
-                final QueryDefinition recordsQuery =
-                    QueryDefinition.of(MatchAllDocs.INSTANCE)
-                        .rows(0)
-                        .sort(FieldDefinition.DOC_FIELD, QueryDefinition.SortEnum.ascending)
-                        .collector("records", ReindexCollector.class, recordField, this)
-                        .build();
-                status = ReindexDefinition.Status.running;
-                indexInstance.query(queryContext -> {
-                    queryContext.searchInterface(recordsQuery, ResultDocumentsInterface.NOPE);
-                    return null;
+                final List<Segment> snapshotSegments = new ArrayList<>();
+                final IndexReader snapshot = indexInstance.query(queryContext -> {
+                    final IndexReader indexReader = queryContext.getIndexSearcher().getIndexReader();
+                    final FieldMap fieldMap = queryContext.getFieldMap();
+                    // The children of the nested fields have no record, they are not counted
+                    for (final LeafReaderContext leaf : indexReader.leaves())
+                        snapshotSegments.add(new Segment(leaf, NestedDocuments.numDocs(fieldMap, leaf)));
+                    indexReader.incRef();
+                    return indexReader;
                 });
-                indexBuffer();
-                status = abort.get() ? ReindexDefinition.Status.aborted : ReindexDefinition.Status.done;
+                try {
+                    // The largest segments first, the small ones fill the gaps at the end
+                    snapshotSegments.sort(Comparator.comparingLong((Segment segment) -> segment.docs).reversed());
+                    segments = snapshotSegments;
+                    numDocs = snapshotSegments.stream().mapToLong(segment -> segment.docs).sum();
+                    status = ReindexDefinition.Status.running;
+                    reindex(new ConcurrentLinkedQueue<>(snapshotSegments));
+                } finally {
+                    snapshot.decRef();
+                }
             } catch (Exception e) {
-                error = e.getMessage();
-                LOGGER.log(Level.SEVERE, e, () -> "Error while reindexing: " + error);
+                fail(e);
             } finally {
+                status = error.get() != null ? ReindexDefinition.Status.error :
+                    abort.get() ? ReindexDefinition.Status.aborted : ReindexDefinition.Status.done;
                 endTime = Date.from(Instant.now());
             }
         }
 
-        private ReindexDefinition getStatus() {
-            final float completed = completedRecords.get();
-            final float total = numDocs.get();
-            final float completion = total == 0 ? 1 : completed == 0 ? 0 : total / completed;
-            return new ReindexDefinition(startTime, endTime, completion * 100, status, error);
+        private void reindex(final Queue<Segment> pendingSegments) {
+            // Reading and decoding is cheaper than indexing: one reader for two workers
+            final int readers = Math.min(pendingSegments.size(), Math.max(1, threads / 2));
+            runningReaders.set(readers);
+            final List<CompletableFuture<Void>> futures = new ArrayList<>(readers + threads);
+            for (int i = 0; i < readers; i++)
+                futures.add(CompletableFuture.runAsync(() -> read(pendingSegments), executorService));
+            for (int i = 0; i < threads; i++)
+                futures.add(CompletableFuture.runAsync(this::index, executorService));
+            for (final CompletableFuture<Void> future : futures)
+                future.join();
         }
 
-    }
-
-    public final static class ReindexCollector extends BaseCollector {
+        private void read(final Queue<Segment> pendingSegments) {
+            try {
+                final RecordVisitor visitor = new RecordVisitor(recordField);
+                Segment segment;
+                while (!abort.get() && (segment = pendingSegments.poll()) != null) {
+                    final LeafReader reader = segment.reader;
+                    final Bits liveDocs = reader.getLiveDocs();
+                    List<JsonNode> records = new ArrayList<>(maxBufferSize);
+                    for (int doc = 0; doc < reader.maxDoc() && !abort.get(); doc++) {
+                        if (liveDocs != null && !liveDocs.get(doc))
+                            continue;
+                        final byte[] record = visitor.read(reader, doc);
+                        if (record == null)
+                            continue;
+                        records.add(ObjectMappers.SMILE.readTree(record));
+                        segment.read.incrementAndGet();
+                        if (records.size() >= maxBufferSize) {
+                            if (!enqueue(new Batch(segment, records)))
+                                return;
+                            records = new ArrayList<>(maxBufferSize);
+                        }
+                    }
+                    if (!records.isEmpty() && !enqueue(new Batch(segment, records)))
+                        return;
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            } finally {
+                runningReaders.decrementAndGet();
+            }
+        }
 
-        private final String recordField;
-        private final ReindexProcess reindexProcess;
+        /**
+         * Put the batch in the queue, waiting while the queue is full.
+         *
+         * @return false if the process has been aborted
+         */
+        private boolean enqueue(final Batch batch) {
+            try {
+                while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS))
+                    if (abort.get())
+                        return false;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort.set(true);
+                return false;
+            }
+        }
 
-        public ReindexCollector(final String recordField, final ReindexProcess reindexProcess) {
-            super(ScoreMode.COMPLETE_NO_SCORES);
-            this.recordField = recordField;
-            this.reindexProcess = reindexProcess;
+        private void index() {
+            try {
+                while (!abort.get()) {
+                    final Batch batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        // The readers decrement their counter after their last batch has been queued
+                        if (runningReaders.get() == 0 && queue.isEmpty())
+                            return;
+                        continue;
+                    }
+                    throttle(batch.records.size());
+                    if (abort.get())
+                        return;
+                    final int count = indexInstance.postJsonNodes(batch.records).count;
+                    batch.segment.indexed.addAndGet(count);
+                    completedRecords.addAndGet(count);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort.set(true);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            } finally {
+                if (abort.get())
+                    queue.clear();
+            }
         }
 
-        @Override
-        protected LeafCollector newLeafCollector(final LeafReaderContext context) {
-            return new Leaf(context.reader(), recordField, reindexProcess);
+        /**
+         * Reserve a time slot for the given number of records, shared by all the workers,
+         * and wait until its beginning.
+         */
+        private void throttle(final int records) throws InterruptedException {
+            if (nanosPerRecord == 0)
+                return;
+            final long now = System.nanoTime();
+            final long slot = Math.max(now,
+                nextSlot.getAndAccumulate(records * nanosPerRecord, (next, cost) -> Math.max(next, now) + cost));
+            if (slot > now)
+                TimeUnit.NANOSECONDS.sleep(slot - now);
         }
 
-        private final static class Leaf extends StoredFieldVisitor implements LeafCollector {
+        private ReindexDefinition getStatus() {
+            final long completed = completedRecords.get();
+            final long total = numDocs;
+            final float completion = total == 0 ? 1 : Math.min(1F, (float) completed / total);
+            final long end = endTime == null ? System.currentTimeMillis() : endTime.getTime();
+            final long elapsed = end - startTime.getTime();
+            final Float rate = elapsed <= 0 ? null : completed * 1000F / elapsed;
+            final Date eta;
+            if (endTime != null)
+                eta = endTime;
+            else if (rate == null || completed == 0)
+                eta = null;
+            else
+                eta = new Date(end + (long) (Math.max(0, total - completed) * 1000 / rate));
+            final List<ReindexDefinition.Segment> segmentsStatus = new ArrayList<>(segments.size());
+            for (final Segment segment : segments)
+                segmentsStatus.add(new ReindexDefinition.Segment(
+                    segment.name, segment.docs, segment.read.get(), segment.indexed.get()));
+            return new ReindexDefinition(startTime, endTime, completion * 100, status, error.get(),
+                total, completed, rate, eta, segmentsStatus);
+        }
 
-            private final String recordField;
-            private final LeafReader leafReader;
-            private final ReindexProcess reindexProcess;
+    }
 
-            private Leaf(final LeafReader leafReader, final String recordField, final ReindexProcess reindexProcess) {
-                this.leafReader = leafReader;
-                this.recordField = recordField;
-                this.reindexProcess = reindexProcess;
-            }
+    private static class Segment {
 
-            @Override
-            final public void setScorer(final Scorable scorer) {
+        private final String name;
+        private final LeafReader reader;
+        private final long docs;
+        private final AtomicLong read;
+        private final AtomicLong indexed;
 
-            }
+        private Segment(final LeafReaderContext leaf, final long docs) {
+            this.reader = leaf.reader();
+            this.name = reader instanceof SegmentReader ?
+                ((SegmentReader) reader).getSegmentName() : Integer.toString(leaf.ord);
+            this.docs = docs;
+            this.read = new AtomicLong();
+            this.indexed = new AtomicLong();
+        }
+    }
 
-            @Override
-            final public void collect(int doc) throws IOException {
-                leafReader.document(doc, this);
-            }
+    private static class Batch {
 
-            @Override
-            public void binaryField(FieldInfo fieldInfo, byte[] value) {
-                reindexProcess.newRecord(value);
-            }
+        private final Segment segment;
+        private final List<JsonNode> records;
 
-            @Override
-            public Status needsField(final FieldInfo fieldInfo) {
-                return fieldInfo != null && recordField.equals(fieldInfo.name) ? Status.YES : Status.NO;
-            }
+        private Batch(final Segment segment, final List<JsonNode> records) {
+            this.segment = segment;
+            this.records = records;
         }
     }
 }
@@ -16,31 +16,34 @@
 
 package com.qwazr.search.index;
 
+import com.qwazr.search.replication.Compression;
+import com.qwazr.search.replication.PreviousCopies;
 import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.search.replication.SlaveNode;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.List;
 
 class ReplicationBackup extends ReplicationClient {
 
 	private final IndexInstance indexInstance;
 	private final Path backupIndexDirectory;
 
-	ReplicationBackup(final IndexInstance indexInstance, final Path backupIndexDirectory, final boolean withTaxonomy)
-			throws IOException {
-		super(getSlaveNode(backupIndexDirectory, withTaxonomy));
+	ReplicationBackup(final IndexInstance indexInstance, final Path backupIndexDirectory, final boolean withTaxonomy,
+			final List<Path> previousBackups) throws IOException {
+		super(getSlaveNode(backupIndexDirectory, withTaxonomy, previousBackups));
 		this.indexInstance = indexInstance;
 		this.backupIndexDirectory = backupIndexDirectory;
 	}
 
 	@Override
-	InputStream getItem(final String sessionUuid, final ReplicationProcess.Source source, final String itemName)
-			throws FileNotFoundException {
-		return indexInstance.replicationObtain(sessionUuid, source, itemName);
+	InputStream getItem(final String sessionUuid, final ReplicationProcess.Source source, final String itemName,
+			final long offset, final long length, final Compression compression, final Integer level)
+			throws IOException {
+		return indexInstance.backupObtain(sessionUuid, source, itemName, offset, length, compression, level);
 	}
 
 	/**
@@ -52,28 +55,33 @@ class ReplicationBackup extends ReplicationClient {
 	BackupStatus backup() throws IOException {
 		final ReplicationSession session = indexInstance.replicationUpdate(null);
 		try {
-			replicate(session, null, (strategy, remoteMasterUuid) -> {
+			final ReplicationStatus status = replicate(session, null, (strategy, remoteMasterUuid) -> {
 			});
-			return BackupStatus.newBackupStatus(backupIndexDirectory, false);
+			return BackupStatus.newBackupStatus(backupIndexDirectory, false, status);
 		} finally {
 			indexInstance.replicationRelease(session.sessionUuid);
 		}
 	}
 
-	static SlaveNode getSlaveNode(final Path backupIndexDirectory, final boolean withTaxonomy) throws IOException {
+	static SlaveNode getSlaveNode(final Path backupIndexDirectory, final boolean withTaxonomy,
+			final List<Path> previousBackups) throws IOException {
+		final ReplicationProcess.Transfer transfer = previousBackups == null || previousBackups.isEmpty() ?
+				ReplicationProcess.Transfer.DEFAULT :
+				ReplicationProcess.Transfer.DEFAULT.withPreviousCopies(
+						new PreviousCopies(backupIndexDirectory, previousBackups));
 		final Path resourcesPath = backupIndexDirectory.resolve(IndexFileSet.RESOURCES_DIR);
 		final Path dataIndexPath = backupIndexDirectory.resolve(IndexFileSet.INDEX_DATA);
 		final Path replWorkDirectory = backupIndexDirectory.resolve(IndexFileSet.REPL_WORK);
 
 		if (!withTaxonomy)
-			return new SlaveNode.WithIndex(resourcesPath, null, dataIndexPath, replWorkDirectory, backupIndexDirectory,
-					IndexFileSet.FIELDS_FILE, IndexFileSet.ANALYZERS_FILE, IndexFileSet.SETTINGS_FILE,
+			return new SlaveNode.WithIndex(resourcesPath, null, dataIndexPath, replWorkDirectory,
+					transfer, backupIndexDirectory, IndexFileSet.FIELDS_FILE, IndexFileSet.ANALYZERS_FILE, IndexFileSet.SETTINGS_FILE,
 					IndexFileSet.UUID_FILE, IndexFileSet.UUID_MASTER_FILE);
 
 		final Path taxoIndexPath = backupIndexDirectory.resolve(IndexFileSet.INDEX_TAXONOMY);
 
 		return new SlaveNode.WithIndexAndTaxo(resourcesPath, null, dataIndexPath, null, taxoIndexPath,
-				replWorkDirectory, backupIndexDirectory, IndexFileSet.FIELDS_FILE, IndexFileSet.ANALYZERS_FILE,
+				replWorkDirectory, transfer, backupIndexDirectory, IndexFileSet.FIELDS_FILE, IndexFileSet.ANALYZERS_FILE,
 				IndexFileSet.SETTINGS_FILE, IndexFileSet.UUID_FILE, IndexFileSet.UUID_MASTER_FILE);
 	}
 
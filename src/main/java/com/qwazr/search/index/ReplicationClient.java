@@ -16,11 +16,11 @@
 
 package com.qwazr.search.index;
 
+import com.qwazr.search.replication.Compression;
 import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.search.replication.SlaveNode;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.UUID;
@@ -42,7 +42,8 @@ abstract class ReplicationClient {
 	}
 
 	abstract InputStream getItem(final String sessionUuid, final ReplicationProcess.Source source,
-			final String itemName) throws FileNotFoundException;
+			final String itemName, final long offset, final long length, final Compression compression,
+			final Integer level) throws IOException;
 
 	final ReplicationStatus replicate(final ReplicationSession session, final UUID clientMasterUuid,
 			final Switcher switcher) throws IOException {
@@ -56,10 +57,26 @@ abstract class ReplicationClient {
 		final ReplicationStatus.Builder currentStatus = ReplicationStatus.of(strategy).session(session);
 
 		try (final ReplicationProcess replicationProcess = slaveNode.newReplicationProcess(strategy, session,
-				(source, file) -> {
-					currentStatus.countSize(source, file);
-					lastStatus = currentStatus.build();
-					return getItem(session.sessionUuid, source, file);
+				new ReplicationProcess.SourceFileProvider() {
+
+					@Override
+					public InputStream obtain(final ReplicationProcess.Source source, final String file,
+							final long offset, final long length, final Compression compression, final Integer level)
+							throws IOException {
+						currentStatus.countBytes(length);
+						lastStatus = currentStatus.build();
+						return getItem(session.sessionUuid, source, file, offset, length, compression, level);
+					}
+
+					@Override
+					public void decoded(final long length, final long wireBytes, final long decodeNanos) {
+						currentStatus.countDecoded(length, wireBytes, decodeNanos);
+					}
+
+					@Override
+					public void linked(final long length) {
+						currentStatus.countLinked(length);
+					}
 				})) {
 			replicationProcess.obtainNewFiles();
 			replicationProcess.moveInPlaceNewFiles();
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.utils.LoggerUtils;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background replication of a slave index.
+ * The listener waits for a new version of the master (long polling) and replicates it as soon as it is available.
+ */
+class ReplicationListener implements Closeable, Runnable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(ReplicationListener.class);
+
+    private final static long MIN_BACKOFF_MS = 500;
+    private final static long MAX_BACKOFF_MS = 30_000;
+
+    private final String indexName;
+    private final IndexInstance indexInstance;
+    private final ReplicationSlave replicationSlave;
+    private final long pollMs;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    ReplicationListener(final String indexName, final IndexInstance indexInstance,
+                        final ReplicationSlave replicationSlave, final long pollMs) {
+        this.indexName = indexName;
+        this.indexInstance = indexInstance;
+        this.replicationSlave = replicationSlave;
+        this.pollMs = pollMs;
+        this.closed = false;
+        this.thread = new Thread(this, "Replication listener - Index: " + indexName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void run() {
+        long backoffMs = MIN_BACKOFF_MS;
+        while (!closed) {
+            try {
+                final String version = replicationSlave.awaitVersion(pollMs);
+                if (closed)
+                    break;
+                if (!Objects.equals(version, replicationSlave.getClientVersion()))
+                    indexInstance.replicationCheck();
+                backoffMs = MIN_BACKOFF_MS;
+            } catch (Exception e) {
+                if (closed)
+                    break;
+                final long waitMs = backoffMs;
+                LOGGER.log(Level.WARNING, e,
+                    () -> "Replication failed, next try in " + waitMs + " ms - Index: " + indexName);
+                try {
+                    Thread.sleep(waitMs);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+}
@@ -16,9 +16,13 @@
 
 package com.qwazr.search.index;
 
+import com.qwazr.search.replication.BandwidthLimiter;
+import com.qwazr.search.replication.Compression;
+import com.qwazr.search.replication.CompressionStats;
 import com.qwazr.search.replication.MasterNode;
 import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
+import com.qwazr.utils.HashUtils;
 import com.qwazr.utils.LoggerUtils;
 import org.apache.lucene.index.IndexWriter;
 
@@ -30,6 +34,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,31 +45,109 @@ interface ReplicationMaster extends Closeable {
     InputStream getItem(final String sessionId, final ReplicationProcess.Source source, final String itemName)
         throws FileNotFoundException;
 
+    /**
+     * Open a range of an item, followed by its CRC32.
+     *
+     * @param compression the compression asked by the slave, null for the raw format
+     * @param level       the compression level, null for the default one
+     * @param throttled   true if the bandwidth limit of the master applies
+     */
+    InputStream getItem(final String sessionId, final ReplicationProcess.Source source, final String itemName,
+                        final long offset, final long length, final Compression compression, final Integer level,
+                        final boolean throttled) throws IOException;
+
     void releaseSession(String sessionId) throws IOException;
 
     void expireInactiveSessions(TimeUnit unit, long time);
 
+    /**
+     * @return the compression of the chunks sent to the slaves since the master was opened
+     */
+    CompressionStats getCompressionStats();
+
+    /**
+     * The replication version changes each time the content of the master changes (commit, fields, analyzers,
+     * resources). It is made of a random prefix, renewed at each start of the master, and of a counter:
+     * the versions are only compared for equality.
+     *
+     * @return the current replication version
+     */
+    String getVersion();
+
+    /**
+     * Notify the master that its content has changed. The waiting slaves are released.
+     */
+    void advanceVersion();
+
+    /**
+     * Wait until the replication version differs from the given one.
+     *
+     * @param knownVersion the version known by the caller, may be null
+     * @param timeout      the maximum time to wait
+     * @param unit         the unit of the timeout
+     * @return the current version, which is the known version if the timeout expired
+     * @throws InterruptedException if the thread has been interrupted while waiting
+     */
+    String awaitVersion(String knownVersion, long timeout, TimeUnit unit) throws InterruptedException;
+
     abstract class Base implements ReplicationMaster {
 
         private final static Logger LOGGER = LoggerUtils.getLogger(Base.class);
 
         private final MasterNode masterNode;
+        private final BandwidthLimiter bandwidthLimiter;
 
         private final ConcurrentHashMap<String, ReplicationSession> sessions;
         private final ConcurrentHashMap<String, Long> sessionsLastActive;
 
         private final ThreadLocal<List<String>> expiredSessions;
 
-        private Base(final MasterNode masterNode) {
+        private final String versionPrefix;
+        private final AtomicLong versionCounter;
+
+        private Base(final MasterNode masterNode, final BandwidthLimiter bandwidthLimiter) {
             this.masterNode = masterNode;
+            this.bandwidthLimiter = bandwidthLimiter;
             sessions = new ConcurrentHashMap<>();
             sessionsLastActive = new ConcurrentHashMap<>();
             expiredSessions = ThreadLocal.withInitial(ArrayList::new);
+            versionPrefix = HashUtils.newTimeBasedUUID().toString();
+            versionCounter = new AtomicLong();
+        }
+
+        @Override
+        final public String getVersion() {
+            return versionPrefix + '.' + versionCounter.get();
+        }
+
+        @Override
+        final public void advanceVersion() {
+            synchronized (versionCounter) {
+                versionCounter.incrementAndGet();
+                versionCounter.notifyAll();
+            }
+        }
+
+        @Override
+        final public String awaitVersion(final String knownVersion, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (versionCounter) {
+                String version;
+                while ((version = getVersion()).equals(knownVersion)) {
+                    final long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMs <= 0)
+                        break;
+                    versionCounter.wait(remainingMs);
+                }
+                return version;
+            }
         }
 
         @Override
         final public ReplicationSession newReplicationSession() throws IOException {
-            final ReplicationSession newSession = masterNode.newSession();
+            // The version is read before the snapshot: the session contains at least this version
+            final ReplicationSession newSession = masterNode.newSession(getVersion());
             sessions.put(newSession.sessionUuid, newSession);
             sessionsLastActive.put(newSession.sessionUuid, newSession.startTime);
             return newSession;
@@ -77,6 +160,21 @@ interface ReplicationMaster extends Closeable {
             return masterNode.getItem(sessionId, source, fileName);
         }
 
+        @Override
+        final public InputStream getItem(final String sessionId, final ReplicationProcess.Source source,
+                                         final String fileName, final long offset, final long length,
+                                         final Compression compression, final Integer level,
+                                         final boolean throttled) throws IOException {
+            sessionsLastActive.put(sessionId, System.currentTimeMillis());
+            return masterNode.getItem(sessionId, source, fileName, offset, length, compression, level,
+                throttled ? bandwidthLimiter : BandwidthLimiter.UNLIMITED);
+        }
+
+        @Override
+        final public CompressionStats getCompressionStats() {
+            return masterNode.getCompressionStats();
+        }
+
         @Override
         final public void expireInactiveSessions(final TimeUnit unit, final long duration) {
             final long expirationTime = System.currentTimeMillis() - unit.toMillis(duration);
@@ -116,25 +214,31 @@ interface ReplicationMaster extends Closeable {
                 masterNode.close();
                 expiredSessions.remove();
             }
+            // Release the waiting slaves
+            advanceVersion();
         }
 
     }
 
     final class WithIndex extends Base {
 
-        WithIndex(final String masterUuid, final IndexFileSet indexFileSet, final IndexWriter indexWriter) {
+        WithIndex(final String masterUuid, final IndexFileSet indexFileSet, final IndexWriter indexWriter,
+                  final BandwidthLimiter bandwidthLimiter) {
             super(new MasterNode.WithIndex(masterUuid, indexFileSet.resourcesDirectoryPath, indexFileSet.dataDirectory,
-                indexWriter, indexFileSet.mainDirectory, IndexFileSet.ANALYZERS_FILE, IndexFileSet.FIELDS_FILE));
+                indexWriter, indexFileSet.mainDirectory, IndexFileSet.ANALYZERS_FILE, IndexFileSet.FIELDS_FILE),
+                bandwidthLimiter);
         }
     }
 
     final class WithIndexAndTaxo extends Base {
 
         WithIndexAndTaxo(final String masterUuid, final IndexFileSet indexFileSet, final IndexWriter indexWriter,
-                         final SnapshotDirectoryTaxonomyWriter taxonomyWriter) {
+                         final SnapshotDirectoryTaxonomyWriter taxonomyWriter,
+                         final BandwidthLimiter bandwidthLimiter) {
             super(new MasterNode.WithIndexAndTaxo(masterUuid, indexFileSet.resourcesDirectoryPath,
                 indexFileSet.dataDirectory, indexWriter, indexFileSet.taxonomyDirectory, taxonomyWriter,
-                indexFileSet.mainDirectory, IndexFileSet.ANALYZERS_FILE, IndexFileSet.FIELDS_FILE));
+                indexFileSet.mainDirectory, IndexFileSet.ANALYZERS_FILE, IndexFileSet.FIELDS_FILE),
+                bandwidthLimiter);
         }
     }
 
@@ -16,6 +16,8 @@
 
 package com.qwazr.search.index;
 
+import com.qwazr.search.replication.BandwidthLimiter;
+import com.qwazr.search.replication.Compression;
 import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.search.replication.SlaveNode;
@@ -33,6 +35,7 @@ class ReplicationSlave extends ReplicationClient {
 
     private final File masterUuidFile;
     private volatile UUID clientMasterUuid;
+    private volatile String clientVersion;
     private final IndexServiceInterface indexService;
     private final RemoteIndex master;
 
@@ -67,32 +70,64 @@ class ReplicationSlave extends ReplicationClient {
     }
 
     @Override
-    public InputStream getItem(final String sessionId, final ReplicationProcess.Source source, final String file) {
-        return checkService().replicationObtain(master.index, sessionId, source.name(), file);
+    public InputStream getItem(final String sessionId, final ReplicationProcess.Source source, final String file,
+                               final long offset, final long length, final Compression compression,
+                               final Integer level) {
+        return checkService().replicationObtain(master.index, sessionId, source.name(), file, offset, length,
+            compression, level);
+    }
+
+    /**
+     * @return the version of the master at the time of the last successful replication, or null
+     */
+    String getClientVersion() {
+        return clientVersion;
     }
 
     ReplicationStatus replicate(final Switcher switcher) throws IOException {
-        final ReplicationSession session = checkService().replicationUpdate(master.index, null);
+        final ReplicationSession session = checkService().replicationUpdate(master.index, clientVersion);
+        if (session == null) // The master did not change since the last replication
+            return ReplicationStatus.of(ReplicationStatus.Strategy.incremental).build();
         try {
-            return replicate(session, getClientMasterUuid(), switcher);
+            final ReplicationStatus status = replicate(session, getClientMasterUuid(), switcher);
+            clientVersion = session.version;
+            return status;
         } finally {
             checkService().replicationRelease(master.index, session.sessionUuid);
         }
     }
 
+    /**
+     * Wait for a new version of the master.
+     *
+     * @param timeoutMs the maximum time to wait
+     * @return the version of the master
+     */
+    String awaitVersion(final long timeoutMs) {
+        return checkService().replicationVersion(master.index, clientVersion, timeoutMs);
+    }
+
+    private static ReplicationProcess.Transfer getTransfer(final IndexSettingsDefinition settings) {
+        return new ReplicationProcess.Transfer(settings.replicationChunkSizeMB, settings.replicationThreads,
+            BandwidthLimiter.of(settings.replicationMaxBandwidthMB), settings.replicationCompression,
+            settings.replicationCompressionLevel);
+    }
+
     static ReplicationSlave withIndexAndTaxo(final IndexFileSet fileSet, final IndexServiceInterface localService,
-                                             final RemoteIndex master, final Directory dataDirectory, final Directory taxonomyDirectory)
-        throws IOException {
-        return new ReplicationSlave(fileSet.uuidMasterFile, localService, master,
+                                             final IndexSettingsDefinition settings, final Directory dataDirectory,
+                                             final Directory taxonomyDirectory) throws IOException {
+        return new ReplicationSlave(fileSet.uuidMasterFile, localService, settings.master,
             new SlaveNode.WithIndexAndTaxo(fileSet.resourcesDirectoryPath, dataDirectory, fileSet.dataDirectory,
-                taxonomyDirectory, fileSet.taxonomyDirectory, fileSet.replWorkPath, fileSet.mainDirectory));
+                taxonomyDirectory, fileSet.taxonomyDirectory, fileSet.replWorkPath, getTransfer(settings),
+                fileSet.mainDirectory));
     }
 
     static ReplicationSlave withIndex(final IndexFileSet fileSet, final IndexServiceInterface localService,
-                                      final RemoteIndex master, final Directory dataDirectory) throws IOException {
-        return new ReplicationSlave(fileSet.uuidMasterFile, localService, master,
+                                      final IndexSettingsDefinition settings, final Directory dataDirectory)
+        throws IOException {
+        return new ReplicationSlave(fileSet.uuidMasterFile, localService, settings.master,
             new SlaveNode.WithIndex(fileSet.resourcesDirectoryPath, dataDirectory, fileSet.dataDirectory,
-                fileSet.replWorkPath, fileSet.mainDirectory));
+                fileSet.replWorkPath, getTransfer(settings), fileSet.mainDirectory));
     }
 
 }
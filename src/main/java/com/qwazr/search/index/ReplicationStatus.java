@@ -20,11 +20,11 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
 import org.apache.commons.io.FileUtils;
 
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
@@ -46,11 +46,32 @@ public class ReplicationStatus {
     public final int ratio;
     public final Strategy strategy;
 
+    /**
+     * The number of bytes the compression saved on the wire
+     */
+    @JsonProperty("saved_bytes")
+    public final long savedBytes;
+
+    /**
+     * The time spent decompressing, in milliseconds
+     */
+    @JsonProperty("decompression_time")
+    public final long decompressionTime;
+
+    /**
+     * The size of the files hard-linked from a previous copy instead of being transferred
+     */
+    @JsonProperty("linked_bytes")
+    public final long linkedBytes;
+
     @JsonCreator
     ReplicationStatus(@JsonProperty("start") final Date start, @JsonProperty("end") final Date end,
             @JsonProperty("time") final long time, @JsonProperty("bytes") final long bytes,
             @JsonProperty("size") final String size, @JsonProperty("ratio") final int ratio,
-            @JsonProperty("strategy") final Strategy strategy) {
+            @JsonProperty("strategy") final Strategy strategy,
+            @JsonProperty("saved_bytes") final long savedBytes,
+            @JsonProperty("decompression_time") final long decompressionTime,
+            @JsonProperty("linked_bytes") final long linkedBytes) {
         this.start = start;
         this.end = end;
         this.time = time;
@@ -58,6 +79,9 @@ public class ReplicationStatus {
         this.size = size;
         this.ratio = ratio;
         this.strategy = strategy;
+        this.savedBytes = savedBytes;
+        this.decompressionTime = decompressionTime;
+        this.linkedBytes = linkedBytes;
     }
 
     static ReplicationStatus.Builder of(final Strategy strategy) {
@@ -69,6 +93,9 @@ public class ReplicationStatus {
         final Strategy strategy;
         final Date start;
         long bytes;
+        long savedBytes;
+        long decodeNanos;
+        long linkedBytes;
         ReplicationSession session;
 
         Builder(Strategy strategy) {
@@ -81,17 +108,26 @@ public class ReplicationStatus {
             return this;
         }
 
-        void countSize(ReplicationProcess.Source source, String fileName) {
-            final ReplicationSession.Item item = session.getItem(source, fileName);
-            if (item != null && item.size != null)
-                bytes += item.size;
+        synchronized void countBytes(final long length) {
+            bytes += length;
+        }
+
+        synchronized void countDecoded(final long length, final long wireBytes, final long decodeNanos) {
+            savedBytes += length - wireBytes;
+            this.decodeNanos += decodeNanos;
+        }
+
+        synchronized void countLinked(final long length) {
+            linkedBytes += length;
         }
 
-        ReplicationStatus build() {
+        synchronized ReplicationStatus build() {
             final Date end = new Date();
-            final int ratio = bytes == 0 || session.size == 0 ? 0 : (int) ((bytes * 100) / session.size);
+            final int ratio = bytes == 0 || session == null || session.size == 0 ?
+                    0 : (int) ((bytes * 100) / session.size);
             return new ReplicationStatus(start, end, end.getTime() - start.getTime(), bytes,
-                    FileUtils.byteCountToDisplaySize(bytes), ratio, strategy);
+                    FileUtils.byteCountToDisplaySize(bytes), ratio, strategy, savedBytes,
+                    TimeUnit.NANOSECONDS.toMillis(decodeNanos), linkedBytes);
         }
 
     }
@@ -33,53 +33,84 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
     final public TimeTracker.Status timer;
     @JsonProperty("total_hits")
     final public long totalHits;
+    /**
+     * False if total_hits is a lower bound: the counting stopped at the total hits threshold.
+     */
+    @JsonProperty("total_hits_exact")
+    final public boolean totalHitsExact;
     final public List<T> documents;
     final public Map<String, Map<String, Number>> facets;
     final public String query;
     final public Map<String, Object> collectors;
+    @JsonProperty("next_cursor")
+    final public String nextCursor;
 
     public ResultDefinition() {
         this.timer = null;
         this.totalHits = 0L;
+        this.totalHitsExact = true;
         this.documents = null;
         this.facets = null;
         this.collectors = null;
         this.query = null;
+        this.nextCursor = null;
     }
 
     protected ResultDefinition(final ResultDocumentsBuilder builder, @NotNull final List<T> documents) {
         this.query = builder.queryDebug;
         this.timer = builder.timeTrackerStatus;
         this.totalHits = builder.totalHits;
+        this.totalHitsExact = builder.totalHitsExact;
         this.documents = documents;
         this.facets = builder.facets;
         this.collectors = builder.collectors;
+        this.nextCursor = builder.nextCursor;
     }
 
     protected ResultDefinition(final ResultDefinition<?> src, @NotNull final List<T> documents) {
         this.query = src.query;
         this.timer = src.timer;
         this.totalHits = src.totalHits;
+        this.totalHitsExact = src.totalHitsExact;
         this.documents = documents;
         this.facets = src.facets;
         this.collectors = src.collectors;
+        this.nextCursor = src.nextCursor;
+    }
+
+    /**
+     * A copy of the result without the timer of its execution
+     */
+    private ResultDefinition(final ResultDefinition<T> src) {
+        this.query = src.query;
+        this.timer = null;
+        this.totalHits = src.totalHits;
+        this.totalHitsExact = src.totalHitsExact;
+        this.documents = src.documents;
+        this.facets = src.facets;
+        this.collectors = src.collectors;
+        this.nextCursor = src.nextCursor;
     }
 
     ResultDefinition(final TimeTracker timeTracker) {
         query = null;
         totalHits = 0L;
+        totalHitsExact = true;
         documents = Collections.emptyList();
         facets = null;
         collectors = null;
+        nextCursor = null;
         this.timer = timeTracker != null ? timeTracker.getStatus() : null;
     }
 
     protected ResultDefinition(final long totalHits) {
         query = null;
         this.totalHits = totalHits;
+        this.totalHitsExact = true;
         documents = Collections.emptyList();
         facets = null;
         collectors = null;
+        nextCursor = null;
         this.timer = null;
     }
 
@@ -88,6 +119,14 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
         return totalHits;
     }
 
+    /**
+     * @return true if the total hits is the exact count, false if it is a lower bound
+     */
+    @JsonIgnore
+    public boolean isTotalHitsExact() {
+        return totalHitsExact;
+    }
+
     public List<T> getDocuments() {
         return documents == null ? Collections.emptyList() : documents;
     }
@@ -119,6 +158,14 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
         return query;
     }
 
+    /**
+     * @return the cursor of the next page, or null if this page is the last one
+     */
+    @JsonIgnore
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
     public Object getCollector(final String name) {
         return getCollector(name, Object.class);
     }
@@ -147,6 +194,17 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
         public WithMap(int docs) {
             super(docs);
         }
+
+        private WithMap(final WithMap src) {
+            super(src);
+        }
+
+        /**
+         * @return the same result without the timer of its execution
+         */
+        WithMap withoutTimer() {
+            return timer == null ? this : new WithMap(this);
+        }
     }
 
     public static class WithObject<T> extends ResultDefinition<ResultDocumentObject<T>> {
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.lucene.search.ScoreDoc;
 
+import java.util.List;
 import java.util.Map;
 
 public abstract class ResultDocumentAbstract {
@@ -27,14 +28,18 @@ public abstract class ResultDocumentAbstract {
     final public float score;
     final public int pos;
     final public Map<String, String> highlights;
+    @JsonProperty("inner_hits")
+    final public Map<String, List<InnerHit>> innerHits;
 
     @JsonCreator
     ResultDocumentAbstract(@JsonProperty("score") Float score,
                            @JsonProperty("pos") Integer pos,
-                           @JsonProperty("highlights") Map<String, String> highlights) {
+                           @JsonProperty("highlights") Map<String, String> highlights,
+                           @JsonProperty("inner_hits") Map<String, List<InnerHit>> innerHits) {
         this.score = score == null ? 1.0F : score;
         this.pos = pos == null ? -1 : pos;
         this.highlights = highlights;
+        this.innerHits = innerHits;
     }
 
     protected ResultDocumentAbstract(final ResultDocumentBuilder<?> builder) {
@@ -42,10 +47,11 @@ public abstract class ResultDocumentAbstract {
         this.score = scoreDoc.score;
         this.pos = builder.pos();
         this.highlights = builder.highlights();
+        this.innerHits = builder.innerHits();
     }
 
     protected ResultDocumentAbstract(final ResultDocumentAbstract src) {
-        this(src.score, src.pos, src.highlights);
+        this(src.score, src.pos, src.highlights, src.innerHits);
     }
 
     final public float getScore() {
@@ -65,4 +71,32 @@ public abstract class ResultDocumentAbstract {
         return highlights;
     }
 
+    final public Map<String, List<InnerHit>> getInnerHits() {
+        return innerHits;
+    }
+
+    /**
+     * A nested document returned with its parent.
+     */
+    public static class InnerHit {
+
+        final public float score;
+        final public Map<String, Object> fields;
+
+        @JsonCreator
+        public InnerHit(@JsonProperty("score") final Float score,
+                        @JsonProperty("fields") final Map<String, Object> fields) {
+            this.score = score == null ? 1.0F : score;
+            this.fields = fields;
+        }
+
+        final public float getScore() {
+            return score;
+        }
+
+        final public Map<String, Object> getFields() {
+            return fields;
+        }
+    }
+
 }
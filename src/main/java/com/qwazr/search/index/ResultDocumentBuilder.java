@@ -30,6 +30,8 @@ interface ResultDocumentBuilder<T extends ResultDocumentAbstract> {
 
     Map<String, String> highlights();
 
+    Map<String, List<ResultDocumentAbstract.InnerHit>> innerHits();
+
     default void setDocValuesField(final String fieldName, final ValueConverter<?> converter) {
     }
 
@@ -71,6 +73,8 @@ interface ResultDocumentBuilder<T extends ResultDocumentAbstract> {
 
     void setHighlight(final String name, final String snippet);
 
+    void setInnerHits(final String name, final List<ResultDocumentAbstract.InnerHit> innerHits);
+
     T build();
 
     abstract class Base<T extends ResultDocumentAbstract> implements ResultDocumentBuilder<T> {
@@ -78,6 +82,7 @@ interface ResultDocumentBuilder<T extends ResultDocumentAbstract> {
         protected final int pos;
         protected final ScoreDoc scoreDoc;
         protected Map<String, String> highlights;
+        protected Map<String, List<ResultDocumentAbstract.InnerHit>> innerHits;
 
         Base(final int pos, final ScoreDoc scoreDoc) {
             this.pos = pos;
@@ -107,6 +112,20 @@ interface ResultDocumentBuilder<T extends ResultDocumentAbstract> {
                 highlights = new LinkedHashMap<>();
             highlights.put(name, snippet);
         }
+
+        @Override
+        public final Map<String, List<ResultDocumentAbstract.InnerHit>> innerHits() {
+            return innerHits;
+        }
+
+        @Override
+        public final void setInnerHits(final String name, final List<ResultDocumentAbstract.InnerHit> hits) {
+            if (name == null || hits == null)
+                return;
+            if (innerHits == null)
+                innerHits = new LinkedHashMap<>();
+            innerHits.put(name, hits);
+        }
     }
 
 }
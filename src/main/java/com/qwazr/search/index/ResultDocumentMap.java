@@ -39,8 +39,9 @@ public class ResultDocumentMap extends ResultDocumentAbstract {
     public ResultDocumentMap(@JsonProperty("score") Float score,
                              @JsonProperty("pos") Integer pos,
                              @JsonProperty("highlights") Map<String, String> highlights,
+                             @JsonProperty("inner_hits") Map<String, List<InnerHit>> innerHits,
                              @JsonProperty("fields") Map<String, Object> fields) {
-        super(score, pos, highlights);
+        super(score, pos, highlights, innerHits);
         this.fields = fields;
     }
 
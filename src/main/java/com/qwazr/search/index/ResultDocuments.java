@@ -17,4 +17,10 @@ package com.qwazr.search.index;
 
 interface ResultDocuments<T extends ResultDocumentAbstract> extends ResultDefinition.Builder<T> {
 
+    /**
+     * @return the number of bytes read from the stored fields
+     */
+    default long getStoredFieldsBytes() {
+        return 0;
+    }
 }
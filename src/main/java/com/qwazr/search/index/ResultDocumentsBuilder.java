@@ -27,6 +27,7 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
 
 class ResultDocumentsBuilder {
 
@@ -35,31 +36,32 @@ class ResultDocumentsBuilder {
     final String queryDebug;
     final TimeTracker.Status timeTrackerStatus;
     final long totalHits;
+    final boolean totalHitsExact;
+    final String nextCursor;
 
     ResultDocumentsBuilder(final QueryDefinition queryDefinition,
                            final TopDocs topDocs,
                            final IndexSearcher indexSearcher,
                            final Query luceneQuery,
                            final Highlighters highlighters,
+                           final InnerHits innerHits,
                            final Map<String, Object> externalCollectorsResults,
-                           final TimeTracker timeTracker,
+                           final QueryTimer timer,
                            final FacetsBuilder facetsBuilder,
                            final long totalHits,
+                           final String nextCursor,
                            @NotNull final ResultDocumentsInterface resultDocuments) throws IOException {
 
         this.collectors = externalCollectorsResults;
 
         if (topDocs != null && topDocs.scoreDocs != null) {
 
-            int pos = 0;
-
             checkSortField(queryDefinition.getSorts(), topDocs.scoreDocs);
 
-            for (final ScoreDoc scoreDoc : topDocs.scoreDocs)
-                resultDocuments.doc(indexSearcher, pos++, scoreDoc);
+            resultDocuments.docs(indexSearcher, topDocs.scoreDocs);
 
-            if (timeTracker != null)
-                timeTracker.next("documents");
+            if (timer != null)
+                timer.next(QueryMetrics.DOCUMENTS);
 
             if (highlighters != null && topDocs.scoreDocs.length > 0) {
                 final LinkedHashMap<String, String[]> snippetsMap = highlighters.highlights(luceneQuery, topDocs);
@@ -68,19 +70,28 @@ class ResultDocumentsBuilder {
                     for (String snippet : snippetsByDoc)
                         resultDocuments.highlight(pos2++, name, snippet);
                 });
-                if (timeTracker != null)
-                    timeTracker.next("highlighting");
+                if (timer != null)
+                    timer.next(QueryMetrics.HIGHLIGHTING);
+            }
+
+            if (innerHits != null && topDocs.scoreDocs.length > 0) {
+                innerHits.collect(indexSearcher, topDocs.scoreDocs, resultDocuments);
+                if (timer != null)
+                    timer.next(QueryMetrics.INNER_HITS);
             }
         }
 
         this.totalHits = totalHits;
+        this.totalHitsExact = topDocs == null || topDocs.totalHits == null ||
+            topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO;
+        this.nextCursor = nextCursor;
 
         this.facets = facetsBuilder == null ? null : facetsBuilder.results;
         this.queryDebug = Boolean.TRUE.equals(queryDefinition.getQueryDebug()) && luceneQuery != null ?
             luceneQuery.toString(StringUtils.EMPTY) :
             null;
 
-        this.timeTrackerStatus = timeTracker == null ? null : timeTracker.getStatus();
+        this.timeTrackerStatus = timer == null ? null : timer.getStatus();
     }
 
     private void checkSortField(LinkedHashMap<String, QueryDefinition.SortEnum> sortFields, final ScoreDoc[] scoreDocs) {
@@ -32,6 +32,20 @@ public interface ResultDocumentsInterface {
     default void doc(IndexSearcher searcher, int pos, ScoreDoc scoreDoc) throws IOException {
     }
 
+    /**
+     * Called once with the full page of results.
+     * The default implementation calls {@link #doc(IndexSearcher, int, ScoreDoc)} for each document.
+     *
+     * @param searcher  the IndexSearcher used for the query
+     * @param scoreDocs the ScoreDocs defining the documents, in the result order
+     * @throws IOException if any I/O error occurs
+     */
+    default void docs(IndexSearcher searcher, ScoreDoc[] scoreDocs) throws IOException {
+        int pos = 0;
+        for (final ScoreDoc scoreDoc : scoreDocs)
+            doc(searcher, pos++, scoreDoc);
+    }
+
     /**
      * @param pos     the position of the document
      * @param name    the name of the snippet
@@ -40,6 +54,14 @@ public interface ResultDocumentsInterface {
     default void highlight(int pos, String name, String snippet) {
     }
 
+    /**
+     * @param pos       the position of the document
+     * @param name      the name of the inner hits
+     * @param innerHits the nested documents of the document
+     */
+    default void innerHits(int pos, String name, List<ResultDocumentAbstract.InnerHit> innerHits) {
+    }
+
     ResultDocumentsInterface NOPE = new ResultDocumentsInterface() {
     };
 
@@ -50,11 +50,28 @@ abstract class ResultDocumentsList<T extends ResultDocumentAbstract>
         documentsBuilder.add(builder);
     }
 
+    @Override
+    final public void docs(final IndexSearcher searcher, final ScoreDoc[] scoreDocs) throws IOException {
+        final int first = documentsBuilder.size();
+        int pos = 0;
+        for (final ScoreDoc scoreDoc : scoreDocs) {
+            final ResultDocumentBuilder<T> builder = newResultDocumentBuilder(start + pos++, scoreDoc);
+            if (builder != null)
+                documentsBuilder.add(builder);
+        }
+        returnedFieldStrategy.extract(searcher, documentsBuilder.subList(first, documentsBuilder.size()));
+    }
+
     @Override
     final public void highlight(int pos, String name, String snippet) {
         documentsBuilder.get(pos).setHighlight(name, snippet);
     }
 
+    @Override
+    final public void innerHits(int pos, String name, List<ResultDocumentAbstract.InnerHit> innerHits) {
+        documentsBuilder.get(pos).setInnerHits(name, innerHits);
+    }
+
     @Override
     final public ResultDefinition<T> apply(ResultDocumentsBuilder resultDocumentsBuilder) {
         final List<T> documents = new ArrayList<>(documentsBuilder.size());
@@ -67,4 +84,9 @@ abstract class ResultDocumentsList<T extends ResultDocumentAbstract>
         return this;
     }
 
+    @Override
+    final public long getStoredFieldsBytes() {
+        return returnedFieldStrategy.getStoredFieldsBytes();
+    }
+
 }
@@ -35,6 +35,8 @@ import org.apache.lucene.search.IndexSearcher;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -68,16 +70,54 @@ public interface ReturnedFieldStrategy {
         return NONE;
     }
 
+    /**
+     * @param context        the context of the query
+     * @param returnedFields the fields to return, every field of the index if null or "*"
+     * @return a strategy reading the stored fields and the doc values of the fields
+     */
+    static ReturnedFieldStrategy fields(final QueryContextImpl context, final Set<String> returnedFields) {
+        return new Fields(context, returnedFields == null || returnedFields.contains("*") ?
+            context.fieldMap.getStaticFieldSet() : returnedFields);
+    }
+
     void extract(final IndexSearcher searcher, final ResultDocumentBuilder<?> builder) throws IOException;
 
+    /**
+     * Extract the fields of a page of documents. The documents are visited in increasing docId order,
+     * which lets the readers move forward through each segment only once.
+     *
+     * @param searcher the IndexSearcher used for the query
+     * @param builders the builders of the documents, in any order
+     * @throws IOException if any I/O error occurs
+     */
+    default void extract(final IndexSearcher searcher,
+                         final List<? extends ResultDocumentBuilder<?>> builders) throws IOException {
+        for (final ResultDocumentBuilder<?> builder : sortByDocId(builders))
+            extract(searcher, builder);
+    }
+
+    static ResultDocumentBuilder<?>[] sortByDocId(final List<? extends ResultDocumentBuilder<?>> builders) {
+        final ResultDocumentBuilder<?>[] sortedBuilders = builders.toArray(new ResultDocumentBuilder<?>[0]);
+        Arrays.sort(sortedBuilders, Comparator.comparingInt(builder -> builder.scoreDoc().doc));
+        return sortedBuilders;
+    }
+
     Type type();
 
+    /**
+     * @return the number of bytes read from the stored fields by this strategy
+     */
+    default long getStoredFieldsBytes() {
+        return 0;
+    }
+
     /**
      * Strategy used when we use the byte records
      */
     final class Record implements ReturnedFieldStrategy {
 
         private final String recordField;
+        private long storedFieldsBytes;
 
         private Record(final String recordField) {
             this.recordField = recordField;
@@ -86,7 +126,12 @@ public interface ReturnedFieldStrategy {
 
         @Override
         public void extract(final IndexSearcher searcher, final ResultDocumentBuilder<?> builder) throws IOException {
-            searcher.doc(builder.scoreDoc().doc, new RecordVisitor(recordField, builder));
+            final byte[] record =
+                new RecordVisitor(recordField).read(searcher.getIndexReader(), builder.scoreDoc().doc);
+            if (record == null)
+                return;
+            storedFieldsBytes += record.length;
+            builder.setStoredFieldBytes(recordField, record);
         }
 
         @Override
@@ -94,25 +139,9 @@ public interface ReturnedFieldStrategy {
             return Type.RECORD;
         }
 
-        private static class RecordVisitor extends StoredFieldVisitor {
-
-            private final String recordField;
-            private final ResultDocumentBuilder<?> builder;
-
-            private RecordVisitor(final String recordField, final ResultDocumentBuilder<?> builder) {
-                this.recordField = recordField;
-                this.builder = builder;
-            }
-
-            @Override
-            public Status needsField(final FieldInfo fieldInfo) {
-                return recordField.equals(fieldInfo.name) ? Status.YES : Status.NO;
-            }
-
-            @Override
-            public void binaryField(final FieldInfo fieldInfo, final byte[] value) {
-                builder.setStoredFieldBytes(recordField, value);
-            }
+        @Override
+        public long getStoredFieldsBytes() {
+            return storedFieldsBytes;
         }
     }
 
@@ -125,6 +154,10 @@ public interface ReturnedFieldStrategy {
         public void extract(final IndexSearcher searcher, final ResultDocumentBuilder<?> builder) {
         }
 
+        @Override
+        public void extract(final IndexSearcher searcher, final List<? extends ResultDocumentBuilder<?>> builders) {
+        }
+
         @Override
         public Type type() {
             return Type.NONE;
@@ -138,11 +171,13 @@ public interface ReturnedFieldStrategy {
 
         private final Map<String, String> storedFields;
         private final Map<String, ValueConverter<?>> returnedFieldsConverter;
+        private final MultiReader multiReader;
+        private long storedFieldsBytes;
 
         private Fields(final QueryContextImpl context, final Set<String> returnedFields) {
             this.storedFields = new HashMap<>();
             this.returnedFieldsConverter = new LinkedHashMap<>();
-            final MultiReader multiReader = new MultiReader(context.indexReader);
+            this.multiReader = new MultiReader(context.indexReader);
             for (final String fieldName : returnedFields) {
                 final FieldTypeInterface fieldType = context.fieldMap.getFieldType(null, fieldName);
                 final String storedFieldName = fieldType.resolveFieldName(fieldName, FieldTypeInterface.FieldType.storedField, null);
@@ -159,17 +194,44 @@ public interface ReturnedFieldStrategy {
             return Type.FIELDS;
         }
 
+        @Override
+        public long getStoredFieldsBytes() {
+            return storedFieldsBytes;
+        }
+
         @Override
         public void extract(final IndexSearcher searcher, final ResultDocumentBuilder<?> builder) throws IOException {
-            if (!storedFields.isEmpty()) {
-                final FieldVisitor fieldVisitor = new FieldVisitor(storedFields);
-                searcher.doc(builder.scoreDoc().doc, fieldVisitor);
-                fieldVisitor.apply(builder);
-            }
+            extractStoredFields(searcher, builder);
             if (!returnedFieldsConverter.isEmpty())
                 ConcurrentUtils.forEachEx(returnedFieldsConverter, builder::setDocValuesField);
         }
 
+        /**
+         * Batched extraction: the doc values iterators are opened once per segment
+         * and read in a single forward-only pass.
+         */
+        @Override
+        public void extract(final IndexSearcher searcher,
+                            final List<? extends ResultDocumentBuilder<?>> builders) throws IOException {
+            final ResultDocumentBuilder<?>[] sortedBuilders = sortByDocId(builders);
+            try (final MultiReader.ForwardOnly ignored = multiReader.forwardOnly()) {
+                for (final ResultDocumentBuilder<?> builder : sortedBuilders) {
+                    extractStoredFields(searcher, builder);
+                    returnedFieldsConverter.forEach(builder::setDocValuesField);
+                }
+            }
+        }
+
+        private void extractStoredFields(final IndexSearcher searcher,
+                                         final ResultDocumentBuilder<?> builder) throws IOException {
+            if (storedFields.isEmpty())
+                return;
+            final FieldVisitor fieldVisitor = new FieldVisitor(storedFields);
+            searcher.doc(builder.scoreDoc().doc, fieldVisitor);
+            storedFieldsBytes += fieldVisitor.bytes;
+            fieldVisitor.apply(builder);
+        }
+
         private static class FieldVisitor extends StoredFieldVisitor {
 
             private final Map<String, String> storedFields;
@@ -180,6 +242,7 @@ public interface ReturnedFieldStrategy {
             private Map<String, LongHolder> longHolderMap;
             private Map<String, FloatHolder> floatHolderMap;
             private Map<String, DoubleHolder> doubleHolderMap;
+            private long bytes;
 
             private FieldVisitor(final Map<String, String> storedFields) {
                 this.storedFields = storedFields;
@@ -196,6 +259,7 @@ public interface ReturnedFieldStrategy {
 
             @Override
             public void binaryField(final FieldInfo fieldInfo, final byte[] value) {
+                bytes += value.length;
                 if (bytesHolderMap == null)
                     bytesHolderMap = new HashMap<>();
                 bytesHolderMap.computeIfAbsent(fieldInfo.name, f -> new BytesHolder()).add(value);
@@ -203,6 +267,7 @@ public interface ReturnedFieldStrategy {
 
             @Override
             public void stringField(final FieldInfo fieldInfo, final byte[] value) {
+                bytes += value.length;
                 if (stringHolderMap == null)
                     stringHolderMap = new HashMap<>();
                 stringHolderMap.computeIfAbsent(fieldInfo.name, f -> new StringHolder())
@@ -211,6 +276,7 @@ public interface ReturnedFieldStrategy {
 
             @Override
             public void intField(final FieldInfo fieldInfo, final int value) {
+                bytes += Integer.BYTES;
                 if (intHolderMap == null)
                     intHolderMap = new HashMap<>();
                 intHolderMap.computeIfAbsent(fieldInfo.name, f -> new IntHolder()).add(value);
@@ -218,6 +284,7 @@ public interface ReturnedFieldStrategy {
 
             @Override
             public void longField(final FieldInfo fieldInfo, final long value) {
+                bytes += Long.BYTES;
                 if (longHolderMap == null)
                     longHolderMap = new HashMap<>();
                 longHolderMap.computeIfAbsent(fieldInfo.name, f -> new LongHolder()).add(value);
@@ -225,6 +292,7 @@ public interface ReturnedFieldStrategy {
 
             @Override
             public void floatField(final FieldInfo fieldInfo, final float value) {
+                bytes += Float.BYTES;
                 if (floatHolderMap == null)
                     floatHolderMap = new HashMap<>();
                 floatHolderMap.computeIfAbsent(fieldInfo.name, f -> new FloatHolder()).add(value);
@@ -232,6 +300,7 @@ public interface ReturnedFieldStrategy {
 
             @Override
             public void doubleField(final FieldInfo fieldInfo, final double value) {
+                bytes += Double.BYTES;
                 if (doubleHolderMap == null)
                     doubleHolderMap = new HashMap<>();
                 doubleHolderMap.computeIfAbsent(fieldInfo.name, f -> new DoubleHolder()).add(value);
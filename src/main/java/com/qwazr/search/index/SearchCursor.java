@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.server.ServerException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.ws.rs.core.Response;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * The opaque cursor used for deep pagination (search after).
+ * It carries the reader version, the docId and the score or the sort values of the last document of a page.
+ * The next page only collects the documents sorted after it, whatever the depth is.
+ * <p>
+ * On a newer version of the index, the cursor is still a plain search after: the docId only breaks the ties,
+ * a document sharing the sort values of the last document may then be skipped or returned twice.
+ * When the documents are sorted by docId, the docIds of another version are meaningless: once the index has changed
+ * the cursor is rejected (410 Gone), and the search must be restarted from the first page.
+ */
+final class SearchCursor {
+
+    private final static byte FORMAT = 2;
+
+    private final static byte NULL = 0;
+    private final static byte INT = 1;
+    private final static byte LONG = 2;
+    private final static byte FLOAT = 3;
+    private final static byte DOUBLE = 4;
+    private final static byte BYTES = 5;
+    private final static byte STRING = 6;
+
+    static long getVersion(final IndexReader indexReader) {
+        return indexReader instanceof DirectoryReader ? ((DirectoryReader) indexReader).getVersion() : 0;
+    }
+
+    /**
+     * @param scoreDoc    the last document of the page
+     * @param indexReader the reader used by the query
+     * @return the cursor of the next page
+     * @throws IOException if any I/O error occurs
+     */
+    static String encode(final ScoreDoc scoreDoc, final IndexReader indexReader) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(FORMAT);
+            output.writeLong(getVersion(indexReader));
+            output.writeInt(scoreDoc.doc);
+            if (scoreDoc instanceof FieldDoc) {
+                final Object[] fields = ((FieldDoc) scoreDoc).fields;
+                output.writeInt(fields.length);
+                for (final Object field : fields)
+                    writeValue(output, field);
+            } else {
+                output.writeInt(-1);
+                output.writeFloat(scoreDoc.score);
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    private static void writeValue(final DataOutputStream output, final Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            output.writeByte(INT);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            output.writeByte(FLOAT);
+            output.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof BytesRef) {
+            final BytesRef bytesRef = (BytesRef) value;
+            output.writeByte(BYTES);
+            output.writeInt(bytesRef.length);
+            output.write(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+        } else if (value instanceof String) {
+            // Not writeUTF, which is limited to 64KB
+            final byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            output.writeByte(STRING);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        } else
+            throw new ServerException(Response.Status.NOT_ACCEPTABLE,
+                "This sort value cannot be used in a cursor: " + value.getClass().getName());
+    }
+
+    /**
+     * @param cursor      the cursor returned with the previous page
+     * @param sort        the sort of the query, or null if the documents are sorted by relevance
+     * @param indexReader the reader used by the query
+     * @return the last document of the previous page
+     */
+    static ScoreDoc decode(final String cursor, final Sort sort, final IndexReader indexReader) {
+        final long version;
+        final ScoreDoc scoreDoc;
+        try (final DataInputStream input = new DataInputStream(
+            new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (input.readByte() != FORMAT)
+                throw invalidCursor(cursor);
+            version = input.readLong();
+            scoreDoc = readScoreDoc(input, sort, cursor);
+        } catch (IOException | RuntimeException e) {
+            throw invalidCursor(cursor);
+        }
+        if (version != getVersion(indexReader) && isSortedByDocId(sort))
+            throw new ServerException(Response.Status.GONE,
+                "The cursor has expired: the index has changed since the previous page. " +
+                    "Restart the search from the first page.");
+        return scoreDoc;
+    }
+
+    private static boolean isSortedByDocId(final Sort sort) {
+        return sort != null && sort.getSort()[0].getType() == SortField.Type.DOC;
+    }
+
+    /**
+     * @param scoreDoc the last document of a page
+     * @return true if every sort value of the document can be written in a cursor
+     */
+    static boolean isEncodable(final ScoreDoc scoreDoc) {
+        if (!(scoreDoc instanceof FieldDoc))
+            return true;
+        for (final Object value : ((FieldDoc) scoreDoc).fields)
+            if (value != null && !(value instanceof Integer || value instanceof Long || value instanceof Float ||
+                value instanceof Double || value instanceof BytesRef || value instanceof String))
+                return false;
+        return true;
+    }
+
+    private static ScoreDoc readScoreDoc(final DataInputStream input, final Sort sort, final String cursor)
+        throws IOException {
+        final int doc = input.readInt();
+        final int fieldCount = input.readInt();
+        if (fieldCount < 0) {
+            if (sort != null)
+                throw invalidCursor(cursor);
+            return new ScoreDoc(doc, input.readFloat());
+        }
+        if (sort == null || sort.getSort().length != fieldCount)
+            throw invalidCursor(cursor);
+        final Object[] fields = new Object[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+            fields[i] = readValue(input, cursor);
+        return new FieldDoc(doc, Float.NaN, fields);
+    }
+
+    private static Object readValue(final DataInputStream input, final String cursor) throws IOException {
+        switch (input.readByte()) {
+            case NULL:
+                return null;
+            case INT:
+                return input.readInt();
+            case LONG:
+                return input.readLong();
+            case FLOAT:
+                return input.readFloat();
+            case DOUBLE:
+                return input.readDouble();
+            case BYTES:
+                return new BytesRef(readBytes(input));
+            case STRING:
+                return new String(readBytes(input), StandardCharsets.UTF_8);
+            default:
+                throw invalidCursor(cursor);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream input) throws IOException {
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static ServerException invalidCursor(final String cursor) {
+        return new ServerException(Response.Status.NOT_ACCEPTABLE, "Invalid cursor: " + cursor);
+    }
+
+    /**
+     * Build the cursor which starts a match all docs query (sorted by relevance, then by docId) at the given position.
+     * The docId is found by counting the live documents of each segment: nothing is collected.
+     * When the index has nested fields, only the parents are counted, as the children are not returned.
+     *
+     * @param indexReader the reader used by the query
+     * @param fieldMap    the fields of the index
+     * @param position    the number of documents to skip
+     * @return the cursor, or null if the position is not after the first document
+     * @throws IOException if any I/O error occurs
+     */
+    static String matchAllDocsAt(final IndexReader indexReader, final FieldMap fieldMap, final int position)
+        throws IOException {
+        if (position <= 0)
+            return null;
+        final boolean nested = fieldMap != null && fieldMap.hasNestedFields();
+        int remaining = position;
+        for (final LeafReaderContext leaf : indexReader.leaves()) {
+            final int numDocs = NestedDocuments.numDocs(fieldMap, leaf);
+            if (remaining > numDocs) {
+                remaining -= numDocs;
+                continue;
+            }
+            final BitSet parents = nested ? NestedDocuments.PARENTS_FILTER.getBitSet(leaf) : null;
+            final Bits liveDocs = leaf.reader().getLiveDocs();
+            final int maxDoc = leaf.reader().maxDoc();
+            for (int doc = 0; doc < maxDoc; doc++) {
+                if (parents != null && (doc = parents.nextSetBit(doc)) == DocIdSetIterator.NO_MORE_DOCS)
+                    break;
+                if (liveDocs != null && !liveDocs.get(doc))
+                    continue;
+                if (--remaining == 0)
+                    return encode(new ScoreDoc(leaf.docBase + doc, 1.0F), indexReader);
+            }
+        }
+        return encode(new ScoreDoc(Integer.MAX_VALUE, 1.0F), indexReader);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * LRU cache of the search results, bounded by memory.
+ * The entries are keyed by the query definition and the cache key of the index reader.
+ * The results of the queries using other indexes (joins) are not cached: the changes of the other indexes would not
+ * invalidate them. Neither are the results of the debug queries. Both are counted as bypasses, not as misses.
+ * The cached results are returned without the timer of the execution which produced them.
+ */
+final class SearchResultCache {
+
+    private final ReaderLruCache<QueryDefinition, ResultDefinition.WithMap> cache;
+
+    private SearchResultCache(final long maxRamBytes) {
+        this.cache = new ReaderLruCache<>(maxRamBytes);
+    }
+
+    /**
+     * @param settings the settings of the index
+     * @return a new cache, or null if the cache is disabled
+     */
+    static SearchResultCache of(final IndexSettingsDefinition settings) {
+        final Long maxRamBytes = settings == null ? null : ReaderLruCache.maxRamBytes(settings.searchCacheMaxRamMB);
+        return maxRamBytes == null ? null : new SearchResultCache(maxRamBytes);
+    }
+
+    @FunctionalInterface
+    interface ContextSupplier {
+        QueryContextImpl get() throws IOException;
+    }
+
+    ResultDefinition.WithMap get(final QueryDefinition queryDefinition,
+                                 final IndexReader indexReader,
+                                 final QueryMetrics queryMetrics,
+                                 final ContextSupplier contextSupplier) throws IOException {
+        final long startTime = System.nanoTime();
+        final IndexReader.CacheHelper cacheHelper = indexReader.getReaderCacheHelper();
+        if (queryDefinition == null || cacheHelper == null || Boolean.TRUE.equals(queryDefinition.getQueryDebug())) {
+            cache.bypass();
+            try (final QueryContextImpl context = contextSupplier.get()) {
+                return context.searchMap(queryDefinition);
+            }
+        }
+        final ResultDefinition.WithMap cachedResult = cache.get(cacheHelper.getKey(), queryDefinition);
+        if (cachedResult != null) {
+            queryMetrics.recordCacheHit(System.nanoTime() - startTime);
+            return cachedResult.withoutTimer();
+        }
+        final ResultDefinition.WithMap result;
+        try (final QueryContextImpl context = contextSupplier.get()) {
+            result = context.searchMap(queryDefinition);
+            if (result == null || context.isOtherIndexesUsed()) {
+                cache.bypass();
+                return result;
+            }
+        }
+        cache.put(cacheHelper, queryDefinition, result, ramBytes(result));
+        return result;
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    IndexStatus.SearchCacheStats getStats() {
+        return new IndexStatus.SearchCacheStats(cache.getStats());
+    }
+
+    /**
+     * Estimate the memory used by a result. RamUsageEstimator.sizeOfObject stops at the first levels of the
+     * collections: the documents, their fields and their inner hits are walked here.
+     */
+    static long ramBytes(final ResultDefinition.WithMap result) {
+        long bytes = RamUsageEstimator.shallowSizeOf(result);
+        bytes += ramBytesOf(result.facets);
+        bytes += ramBytesOf(result.collectors);
+        bytes += ramBytesOf(result.query);
+        bytes += ramBytesOf(result.nextCursor);
+        bytes += ramBytesOf(result.documents);
+        return bytes;
+    }
+
+    private static long ramBytesOf(final Object object) {
+        if (object == null)
+            return 0;
+        if (object instanceof String)
+            return RamUsageEstimator.sizeOf((String) object);
+        if (object instanceof Map) {
+            long bytes = RamUsageEstimator.shallowSizeOf(object);
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet())
+                bytes += RamUsageEstimator.LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + ramBytesOf(entry.getKey()) + ramBytesOf(entry.getValue());
+            return bytes;
+        }
+        if (object instanceof Collection) {
+            long bytes = RamUsageEstimator.shallowSizeOf(object);
+            for (final Object element : (Collection<?>) object)
+                bytes += RamUsageEstimator.NUM_BYTES_OBJECT_REF + ramBytesOf(element);
+            return bytes;
+        }
+        if (object instanceof Object[]) {
+            long bytes = RamUsageEstimator.shallowSizeOf(object);
+            for (final Object element : (Object[]) object)
+                bytes += ramBytesOf(element);
+            return bytes;
+        }
+        if (object instanceof ResultDocumentMap) {
+            final ResultDocumentMap document = (ResultDocumentMap) object;
+            return RamUsageEstimator.shallowSizeOf(document) + ramBytesOf(document.fields)
+                + ramBytesOf(document.highlights) + ramBytesOf(document.innerHits);
+        }
+        if (object instanceof ResultDocumentAbstract.InnerHit) {
+            final ResultDocumentAbstract.InnerHit innerHit = (ResultDocumentAbstract.InnerHit) object;
+            return RamUsageEstimator.shallowSizeOf(innerHit) + ramBytesOf(innerHit.fields);
+        }
+        return RamUsageEstimator.sizeOfObject(object, 0);
+    }
+}
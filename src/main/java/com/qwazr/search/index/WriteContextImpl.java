@@ -24,12 +24,17 @@ import com.qwazr.utils.HashUtils;
 import com.qwazr.utils.StringUtils;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import javax.ws.rs.NotAcceptableException;
 import org.apache.lucene.analysis.util.ResourceLoader;
@@ -38,10 +43,16 @@ import org.apache.lucene.index.IndexWriter;
 
 final class WriteContextImpl extends IndexContextImpl implements WriteContext {
 
+    /**
+     * Below this number of documents per thread, a batch is indexed by the calling thread only.
+     */
+    final static int PARALLEL_MIN_DOCS_PER_THREAD = 100;
+
     private final IndexWriter indexWriter;
     private final TaxonomyWriter taxonomyWriter;
     private final String primaryKey;
     private final Supplier<String> autoIdProvider;
+    private final int indexingThreads;
 
     WriteContextImpl(final IndexInstance.Provider indexProvider,
                      final ResourceLoader resourceLoader,
@@ -49,10 +60,12 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
                      final AnalyzerContext analyzerContext,
                      final FieldMap fieldMap,
                      final IndexWriter indexWriter,
-                     final TaxonomyWriter taxonomyWriter) {
+                     final TaxonomyWriter taxonomyWriter,
+                     final int indexingThreads) {
         super(indexProvider, resourceLoader, executorService, analyzerContext, fieldMap);
         this.indexWriter = indexWriter;
         this.taxonomyWriter = taxonomyWriter;
+        this.indexingThreads = indexingThreads;
         this.primaryKey = fieldMap.fieldsContext.primaryKey;
         if (StringUtils.isBlank(primaryKey))
             autoIdProvider = null;
@@ -111,9 +124,25 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
                                        final Map<String, String> commitUserData) throws IOException {
         if (documents == null || documents.isEmpty())
             return 0;
-        final RecordsPoster.ObjectDocument poster =
-            RecordsPoster.ObjectDocument.of(fields, fieldMap, analyzerContext, indexWriter, taxonomyWriter);
-        return postObjectDocs(poster, documents, commitUserData);
+        final int threads = getThreadCount(documents.size());
+        if (threads <= 1) {
+            final RecordsPoster.ObjectDocument poster =
+                RecordsPoster.ObjectDocument.of(fields, fieldMap, analyzerContext, indexWriter, taxonomyWriter);
+            return postObjectDocs(poster, documents, commitUserData);
+        }
+        final Field primaryKeyField = StringUtils.isBlank(primaryKey) ? null : fields.get(primaryKey);
+        final int count = postParallel(threads, documents, primaryKeyField == null ? null : document -> {
+            try {
+                return primaryKeyField.get(document);
+            } catch (IllegalAccessException e) {
+                throw ServerException.of(e);
+            }
+        }, partition -> postObjectDocs(
+            RecordsPoster.ObjectDocument.of(fields, fieldMap, analyzerContext, indexWriter, taxonomyWriter),
+            partition, null));
+        if (commitUserData != null)
+            setLiveCommitData(commitUserData, true);
+        return count;
     }
 
     @Override
@@ -148,13 +177,27 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
     public final int postMappedDocuments(final PostDefinition.Documents post) throws IOException {
         if (post == null || post.documents == null || post.documents.isEmpty())
             return 0;
-        final RecordsPoster.MapDocument poster =
-            RecordsPoster.MapDocument.of(fieldMap, analyzerContext, indexWriter, taxonomyWriter);
-        return postMappedDocs(poster, post);
+        final int threads = getThreadCount(post.documents.size());
+        if (threads <= 1) {
+            final RecordsPoster.MapDocument poster =
+                RecordsPoster.MapDocument.of(fieldMap, analyzerContext, indexWriter, taxonomyWriter);
+            return postMappedDocs(poster, post);
+        }
+        final int count = postParallel(threads, post.documents,
+            StringUtils.isBlank(primaryKey) ? null : document -> document.get(primaryKey),
+            partition -> {
+                final RecordsPoster.MapDocument poster =
+                    RecordsPoster.MapDocument.of(fieldMap, analyzerContext, indexWriter, taxonomyWriter);
+                for (final Map<String, ?> doc : partition)
+                    poster.accept(doc);
+                return poster.getCount();
+            });
+        if (post.commitUserData != null)
+            setLiveCommitData(post.commitUserData, true);
+        return count;
     }
 
-    private void postJsonNode(final RecordsPoster.JsonNodeDocument poster,
-                              final JsonNode jsonNode) throws IOException {
+    private ObjectNode checkJsonNode(final JsonNode jsonNode) {
         if (!jsonNode.isObject())
             throw new NotAcceptableException("This json type can't be indexed as a document: " + jsonNode.getNodeType());
         final ObjectNode objectNode = (ObjectNode) jsonNode;
@@ -162,7 +205,43 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
             if (!objectNode.has(primaryKey))
                 objectNode.put(primaryKey, autoIdProvider.get());
         }
-        poster.accept((ObjectNode) jsonNode);
+        return objectNode;
+    }
+
+    private void postJsonNode(final RecordsPoster.JsonNodeDocument poster,
+                              final JsonNode jsonNode) throws IOException {
+        poster.accept(checkJsonNode(jsonNode));
+    }
+
+    private int postJsonNodesParallel(final int threads,
+                                      final Iterable<JsonNode> jsonNodes,
+                                      final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes) throws IOException {
+        final List<ObjectNode> objectNodes = new ArrayList<>();
+        for (final JsonNode jsonNode : jsonNodes)
+            objectNodes.add(checkJsonNode(jsonNode));
+        final List<SortedMap<String, SortedSet<JsonNodeType>>> partitionFieldTypes = new ArrayList<>(threads);
+        final int count = postParallel(threads, objectNodes,
+            StringUtils.isBlank(primaryKey) ? null : objectNode -> objectNode.path(primaryKey).asText(),
+            partition -> {
+                final SortedMap<String, SortedSet<JsonNodeType>> localFieldTypes;
+                if (fieldTypes == null)
+                    localFieldTypes = null;
+                else {
+                    localFieldTypes = new TreeMap<>();
+                    synchronized (partitionFieldTypes) {
+                        partitionFieldTypes.add(localFieldTypes);
+                    }
+                }
+                final RecordsPoster.JsonNodeDocument poster = RecordsPoster.JsonNodeDocument.of(
+                    fieldMap, analyzerContext, localFieldTypes, indexWriter, taxonomyWriter);
+                for (final ObjectNode objectNode : partition)
+                    poster.accept(objectNode);
+                return poster.getCount();
+            });
+        if (fieldTypes != null)
+            partitionFieldTypes.forEach(localFieldTypes -> localFieldTypes.forEach(
+                (field, types) -> fieldTypes.computeIfAbsent(field, f -> new TreeSet<>()).addAll(types)));
+        return count;
     }
 
     @Override
@@ -170,6 +249,11 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
                             final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes) throws IOException {
         if (jsonNode == null)
             return 0;
+        if (jsonNode.isArray()) {
+            final int threads = getThreadCount(jsonNode.size());
+            if (threads > 1)
+                return postJsonNodesParallel(threads, jsonNode, fieldTypes);
+        }
         final RecordsPoster.JsonNodeDocument poster =
             RecordsPoster.JsonNodeDocument.of(fieldMap, analyzerContext, fieldTypes, indexWriter, taxonomyWriter);
         if (jsonNode.isArray()) {
@@ -188,6 +272,9 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
                              final SortedMap<String, SortedSet<JsonNodeType>> fieldTypes) throws IOException {
         if (jsonNodes == null)
             return 0;
+        final int threads = getThreadCount(jsonNodes.size());
+        if (threads > 1)
+            return postJsonNodesParallel(threads, jsonNodes, fieldTypes);
         final RecordsPoster.JsonNodeDocument poster =
             RecordsPoster.JsonNodeDocument.of(fieldMap, analyzerContext, fieldTypes, indexWriter, taxonomyWriter);
         for (final JsonNode jsonNode : jsonNodes)
@@ -235,6 +322,80 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
         return postMappedDocs(poster, post);
     }
 
+    /**
+     * @param documentCount the number of documents of the batch
+     * @return the number of threads used to index the batch, 1 means serial indexing
+     */
+    private int getThreadCount(final int documentCount) {
+        if (executorService == null || indexingThreads <= 1)
+            return 1;
+        return Math.max(1, Math.min(indexingThreads, documentCount / PARALLEL_MIN_DOCS_PER_THREAD));
+    }
+
+    @FunctionalInterface
+    private interface PartitionPoster<D> {
+        int post(List<D> partition) throws IOException;
+    }
+
+    /**
+     * Index the documents using several threads. Each partition is indexed by its own RecordsPoster,
+     * the first one on the calling thread, the others using the executor service.
+     *
+     * @param threads         the number of partitions
+     * @param documents       the documents to index
+     * @param primaryKeyValue returns the primary key value of a document, or null if there is no primary key
+     * @param partitionPoster index the documents of one partition and returns the number of indexed documents
+     * @param <D>             the type of the documents
+     * @return the total number of indexed documents
+     * @throws IOException if any partition failed
+     */
+    private <D> int postParallel(final int threads,
+                                 final Collection<? extends D> documents,
+                                 final Function<D, Object> primaryKeyValue,
+                                 final PartitionPoster<D> partitionPoster) throws IOException {
+        final List<ConcurrentTasks.Task<Integer>> tasks = new ArrayList<>(threads);
+        for (final List<D> partition : partition(threads, documents, primaryKeyValue))
+            tasks.add(() -> partitionPoster.post(partition));
+        // Every partition is awaited, even on failure, the writer must not be used after the context is closed
+        int count = 0;
+        for (final Integer partitionCount : ConcurrentTasks.run(tasks, executorService))
+            count += partitionCount;
+        return count;
+    }
+
+    /**
+     * When a primary key is defined, the documents sharing the same key are routed to the same partition,
+     * therefore their relative order (the last one wins) is preserved. The documents without key value
+     * have no order to preserve, they are spread round-robin across the partitions.
+     *
+     * @param threads         the number of partitions
+     * @param documents       the documents to index
+     * @param primaryKeyValue returns the primary key value of a document, or null if there is no primary key
+     * @param <D>             the type of the documents
+     * @return the documents of each partition
+     */
+    static <D> List<List<D>> partition(final int threads,
+                                       final Collection<? extends D> documents,
+                                       final Function<D, Object> primaryKeyValue) {
+        final List<List<D>> partitions = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++)
+            partitions.add(new ArrayList<>(documents.size() / threads + 1));
+        int pos = 0;
+        int keyless = 0;
+        for (final D document : documents) {
+            final int partition;
+            if (primaryKeyValue == null)
+                partition = (int) ((long) pos * threads / documents.size());
+            else {
+                final Object key = primaryKeyValue.apply(document);
+                partition = key == null ? keyless++ % threads : Math.floorMod(key.toString().hashCode(), threads);
+            }
+            partitions.get(partition).add(document);
+            pos++;
+        }
+        return partitions;
+    }
+
     static Supplier<String> getAutoIdProvider() {
         final byte[] buffer = HashUtils.getBase58buffer(1);
         return () -> HashUtils.base58encode(HashUtils.newTimeBasedUUID(), buffer);
@@ -21,10 +21,10 @@ import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.AlreadyClosedException;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.Objects;
 
 interface WriterAndSearcher extends Closeable {
 
@@ -40,6 +40,19 @@ interface WriterAndSearcher extends Closeable {
 
 	IndexWriter getIndexWriter();
 
+	/**
+	 * Close the index writer only, when the index is replaced by another one. The searchers keep serving
+	 * the last refreshed content, and the taxonomy writer stays open: it is shared with the new index.
+	 *
+	 * @throws IOException if any I/O error occurs
+	 */
+	void closeIndexWriter() throws IOException;
+
+	/**
+	 * Close the searchers only, once the searches have been switched to the index replacing this one.
+	 */
+	void closeSearchers();
+
 	abstract class Common implements WriterAndSearcher {
 
 		final IndexWriter indexWriter;
@@ -53,6 +66,12 @@ interface WriterAndSearcher extends Closeable {
 			return indexWriter;
 		}
 
+		@Override
+		final public void closeIndexWriter() throws IOException {
+			if (indexWriter != null && indexWriter.isOpen())
+				indexWriter.close();
+		}
+
 	}
 
 	@FunctionalInterface
@@ -75,7 +94,7 @@ interface WriterAndSearcher extends Closeable {
 
 		@Override
 		final public void refresh() throws IOException {
-			searcherManager.maybeRefresh();
+			searcherManager.maybeRefreshBlocking();
 		}
 
 		@Override
@@ -87,8 +106,9 @@ interface WriterAndSearcher extends Closeable {
 
 		@Override
 		final public <T> T search(final SearchAction<T> action) throws IOException {
-			final ReferenceManager<IndexSearcher> sm =
-					Objects.requireNonNull(searcherManager, "No SearchManager available");
+			final ReferenceManager<IndexSearcher> sm = searcherManager;
+			if (sm == null)
+				throw new AlreadyClosedException("No SearchManager available");
 			final IndexSearcher searcher = sm.acquire();
 			try {
 				return action.apply(searcher, null);
@@ -110,11 +130,16 @@ interface WriterAndSearcher extends Closeable {
 		}
 
 		@Override
-		public synchronized void close() {
+		public synchronized void closeSearchers() {
 			if (searcherManager != null) {
 				IOUtils.closeQuietly(searcherManager);
 				searcherManager = null;
 			}
+		}
+
+		@Override
+		public synchronized void close() {
+			closeSearchers();
 			if (indexWriter != null && indexWriter.isOpen())
 				IOUtils.closeQuietly(indexWriter);
 		}
@@ -143,7 +168,7 @@ interface WriterAndSearcher extends Closeable {
 
 		@Override
 		final public void refresh() throws IOException {
-			searcherTaxonomyManager.maybeRefresh();
+			searcherTaxonomyManager.maybeRefreshBlocking();
 		}
 
 		@Override
@@ -155,8 +180,9 @@ interface WriterAndSearcher extends Closeable {
 
 		@Override
 		final public <T> T search(final SearchAction<T> action) throws IOException {
-			final SearcherTaxonomyManager sm =
-					Objects.requireNonNull(searcherTaxonomyManager, "No SearcherTaxonomyManager available");
+			final SearcherTaxonomyManager sm = searcherTaxonomyManager;
+			if (sm == null)
+				throw new AlreadyClosedException("No SearcherTaxonomyManager available");
 			final SearcherTaxonomyManager.SearcherAndTaxonomy reference = sm.acquire();
 			try {
 				return action.apply(reference.searcher, reference.taxonomyReader);
@@ -180,11 +206,16 @@ interface WriterAndSearcher extends Closeable {
 		}
 
 		@Override
-		public synchronized void close() {
+		public synchronized void closeSearchers() {
 			if (searcherTaxonomyManager != null) {
 				IOUtils.closeQuietly(searcherTaxonomyManager);
 				searcherTaxonomyManager = null;
 			}
+		}
+
+		@Override
+		public synchronized void close() {
+			closeSearchers();
 
 			if (taxonomyWriter != null)
 				IOUtils.closeQuietly(taxonomyWriter);
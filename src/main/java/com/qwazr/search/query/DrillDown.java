@@ -22,6 +22,7 @@ import com.qwazr.search.annotations.QuerySampleCreator;
 import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.index.FieldMap;
 import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.NestedDocuments;
 import com.qwazr.search.index.QueryContext;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -36,6 +37,7 @@ import java.util.Objects;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.MatchAllDocsQuery;
 
 public class DrillDown extends AbstractQuery<DrillDown> {
 
@@ -95,10 +97,12 @@ public class DrillDown extends AbstractQuery<DrillDown> {
         final FacetsConfig facetsConfig = queryContext.getFacetsConfig(resolvedDimensions);
         Objects.requireNonNull(facetsConfig, "FacetsConfig is null");
         final org.apache.lucene.facet.DrillDownQuery drillDownQuery;
-        if (baseQuery == null)
+        if (baseQuery == null && (fieldMap == null || !fieldMap.hasNestedFields()))
             drillDownQuery = new org.apache.lucene.facet.DrillDownQuery(facetsConfig);
         else
-            drillDownQuery = new org.apache.lucene.facet.DrillDownQuery(facetsConfig, baseQuery.getQuery(queryContext));
+            drillDownQuery = new org.apache.lucene.facet.DrillDownQuery(facetsConfig,
+                NestedDocuments.filterParents(fieldMap,
+                    baseQuery == null ? new MatchAllDocsQuery() : baseQuery.getQuery(queryContext)));
 
         dimPath.forEach(dimPath -> dimPath.forEach(
             (dim, path) -> drillDownQuery.add(resolvedDimensions.getOrDefault(dim, dim), path)));
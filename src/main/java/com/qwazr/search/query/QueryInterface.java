@@ -111,6 +111,8 @@ import org.apache.lucene.search.Query;
     @JsonSubTypes.Type(value = TermQuery.class),
     @JsonSubTypes.Type(value = TermRange.class),
     @JsonSubTypes.Type(value = TermsQuery.class),
+    @JsonSubTypes.Type(value = ToChildBlockJoin.class),
+    @JsonSubTypes.Type(value = ToParentBlockJoin.class),
     @JsonSubTypes.Type(value = Wildcard.class)})
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 @JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE,
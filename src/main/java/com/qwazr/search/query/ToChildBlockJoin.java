@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.query;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.qwazr.search.index.NestedDocuments;
+import com.qwazr.search.index.QueryContext;
+import java.io.IOException;
+import java.util.Objects;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.join.ToChildBlockJoinQuery;
+
+/**
+ * Matches the nested documents of the parents matched by the parent query.
+ * Used as the main query, the nested documents are returned instead of the parents.
+ */
+public class ToChildBlockJoin extends AbstractQuery<ToChildBlockJoin> {
+
+    @JsonProperty("parent_query")
+    final public AbstractQuery<?> parentQuery;
+    @JsonProperty("path")
+    final public String path;
+
+    @JsonCreator
+    public ToChildBlockJoin(@JsonProperty("parent_query") final AbstractQuery<?> parentQuery,
+                            @JsonProperty("path") final String path) {
+        super(ToChildBlockJoin.class);
+        this.parentQuery = Objects.requireNonNull(parentQuery, "The parent_query property is missing");
+        this.path = path;
+    }
+
+    @Override
+    final public Query getQuery(final QueryContext queryContext)
+        throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+        // The parent query must not match any child
+        final Query parents = NestedDocuments.filter(parentQuery.getQuery(queryContext), NestedDocuments.PARENTS);
+        final Query children = new ToChildBlockJoinQuery(parents, NestedDocuments.PARENTS_FILTER);
+        return path == null ? children : NestedDocuments.filter(children, NestedDocuments.children(path));
+    }
+
+    @Override
+    protected boolean isEqual(final ToChildBlockJoin q) {
+        return Objects.equals(parentQuery, q.parentQuery) && Objects.equals(path, q.path);
+    }
+
+    @Override
+    protected int computeHashCode() {
+        return Objects.hash(parentQuery, path);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.query;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.qwazr.search.index.NestedDocuments;
+import com.qwazr.search.index.QueryContext;
+import java.io.IOException;
+import java.util.Objects;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.join.ScoreMode;
+import org.apache.lucene.search.join.ToParentBlockJoinQuery;
+
+/**
+ * Matches the parents of the nested documents matched by the child query.
+ */
+public class ToParentBlockJoin extends AbstractQuery<ToParentBlockJoin> {
+
+    @JsonProperty("child_query")
+    final public AbstractQuery<?> childQuery;
+    @JsonProperty("path")
+    final public String path;
+    @JsonProperty("score_mode")
+    final public ScoreMode scoreMode;
+
+    @JsonCreator
+    public ToParentBlockJoin(@JsonProperty("child_query") final AbstractQuery<?> childQuery,
+                             @JsonProperty("path") final String path,
+                             @JsonProperty("score_mode") final ScoreMode scoreMode) {
+        super(ToParentBlockJoin.class);
+        this.childQuery = Objects.requireNonNull(childQuery, "The child_query property is missing");
+        this.path = path;
+        this.scoreMode = scoreMode;
+    }
+
+    public ToParentBlockJoin(final AbstractQuery<?> childQuery, final String path) {
+        this(childQuery, path, null);
+    }
+
+    @Override
+    final public Query getQuery(final QueryContext queryContext)
+        throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+        // The child query must not match any parent
+        final Query children = NestedDocuments.filter(childQuery.getQuery(queryContext),
+            NestedDocuments.children(path));
+        return new ToParentBlockJoinQuery(children, NestedDocuments.PARENTS_FILTER,
+            scoreMode == null ? ScoreMode.Avg : scoreMode);
+    }
+
+    @Override
+    protected boolean isEqual(final ToParentBlockJoin q) {
+        return Objects.equals(childQuery, q.childQuery)
+            && Objects.equals(path, q.path)
+            && Objects.equals(scoreMode, q.scoreMode);
+    }
+
+    @Override
+    protected int computeHashCode() {
+        return Objects.hash(childQuery, path, scoreMode);
+    }
+}
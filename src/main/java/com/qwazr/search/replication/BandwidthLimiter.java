@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of bytes transferred per second. The limiter is shared by all the concurrent transfers:
+ * each transfer reserves a time slot for the bytes it is going to send or receive, and waits until its beginning.
+ */
+public final class BandwidthLimiter {
+
+    /**
+     * A bandwidth limiter which never waits
+     */
+    public final static BandwidthLimiter UNLIMITED = new BandwidthLimiter(0);
+
+    private final double nanosPerByte;
+    private final AtomicLong nextSlot;
+
+    private BandwidthLimiter(final double bytesPerSecond) {
+        this.nanosPerByte = bytesPerSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        this.nextSlot = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @param maxBandwidthMB the maximum bandwidth in MB per second, null or zero for no limit
+     * @return a new limiter, or UNLIMITED
+     */
+    public static BandwidthLimiter of(final Double maxBandwidthMB) {
+        return maxBandwidthMB == null || maxBandwidthMB <= 0 ?
+            UNLIMITED : new BandwidthLimiter(maxBandwidthMB * 1024 * 1024);
+    }
+
+    /**
+     * Wait until the given number of bytes can be transferred.
+     *
+     * @param bytes the number of bytes
+     * @throws InterruptedIOException if the thread has been interrupted while waiting
+     */
+    public void acquire(final long bytes) throws InterruptedIOException {
+        if (nanosPerByte == 0 || bytes <= 0)
+            return;
+        final long cost = (long) (bytes * nanosPerByte);
+        final long now = System.nanoTime();
+        final long slot = Math.max(now, nextSlot.getAndAccumulate(cost, (next, c) -> Math.max(next, now) + c));
+        if (slot <= now)
+            return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(slot - now);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the bandwidth limit");
+        }
+    }
+}
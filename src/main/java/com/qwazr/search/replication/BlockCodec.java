@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.compress.LZ4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses independent blocks. An instance is not thread safe.
+ */
+interface BlockCodec extends Closeable {
+
+    /**
+     * @param length the length of a block
+     * @return the minimal size of the buffer receiving its compressed form
+     */
+    static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @param src       the block
+     * @param length    the length of the block
+     * @param dst       the buffer receiving the compressed block, see {@link #maxCompressedLength(int)}
+     * @param dstOffset the position of the compressed block in the buffer
+     * @return the length of the compressed block, or -1 if the block does not compress
+     * @throws IOException if the compression failed
+     */
+    int compress(byte[] src, int length, byte[] dst, int dstOffset) throws IOException;
+
+    /**
+     * @param src       the compressed block
+     * @param srcLength the length of the compressed block
+     * @param dst       the buffer receiving the block
+     * @param dstOffset the position of the block in the buffer
+     * @param length    the expected length of the block
+     * @throws IOException if the compressed block is corrupted
+     */
+    void decompress(byte[] src, int srcLength, byte[] dst, int dstOffset, int length) throws IOException;
+
+    @Override
+    default void close() {
+    }
+
+    final class Lz4 implements BlockCodec {
+
+        private final LZ4.FastCompressionHashTable fastHashTable;
+        private final LZ4.HighCompressionHashTable highHashTable;
+        private final ByteArrayDataOutput output;
+        private final ByteArrayDataInput input;
+
+        Lz4(final boolean high) {
+            this.fastHashTable = high ? null : new LZ4.FastCompressionHashTable();
+            this.highHashTable = high ? new LZ4.HighCompressionHashTable() : null;
+            this.output = new ByteArrayDataOutput();
+            this.input = new ByteArrayDataInput();
+        }
+
+        @Override
+        public int compress(final byte[] src, final int length, final byte[] dst, final int dstOffset)
+                throws IOException {
+            output.reset(dst, dstOffset, dst.length - dstOffset);
+            if (highHashTable != null)
+                LZ4.compress(src, 0, length, output, highHashTable);
+            else
+                LZ4.compress(src, 0, length, output, fastHashTable);
+            final int compressedLength = output.getPosition() - dstOffset;
+            return compressedLength < length ? compressedLength : -1;
+        }
+
+        @Override
+        public void decompress(final byte[] src, final int srcLength, final byte[] dst, final int dstOffset,
+                               final int length) throws IOException {
+            input.reset(src, 0, srcLength);
+            final int end;
+            try {
+                end = LZ4.decompress(input, length, dst, dstOffset);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupted LZ4 block", e);
+            }
+            if (end != dstOffset + length || !input.eof())
+                throw new IOException("Corrupted LZ4 block: " + (end - dstOffset) + " bytes, " + length + " expected");
+        }
+    }
+
+    final class Deflate implements BlockCodec {
+
+        private final Deflater deflater;
+        private final Inflater inflater;
+
+        Deflate(final int level) {
+            this.deflater = new Deflater(level);
+            this.inflater = new Inflater();
+        }
+
+        @Override
+        public int compress(final byte[] src, final int length, final byte[] dst, final int dstOffset) {
+            deflater.reset();
+            deflater.setInput(src, 0, length);
+            deflater.finish();
+            // Not worth it if the compressed block is not smaller
+            final int compressedLength = deflater.deflate(dst, dstOffset, length);
+            return deflater.finished() && compressedLength < length ? compressedLength : -1;
+        }
+
+        @Override
+        public void decompress(final byte[] src, final int srcLength, final byte[] dst, final int dstOffset,
+                               final int length) throws IOException {
+            inflater.reset();
+            inflater.setInput(src, 0, srcLength);
+            try {
+                final int read = inflater.inflate(dst, dstOffset, length);
+                if (read != length || !inflater.finished())
+                    throw new IOException("Corrupted deflate block: " + read + " bytes, " + length + " expected");
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted deflate block", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Streams a range of a file, followed by the CRC32 of the range (8 bytes, big endian).
+ * The receiver checks the range before writing it, see {@link #readChunk(InputStream, byte[], int, BandwidthLimiter)}.
+ */
+final class ChunkInputStream extends InputStream {
+
+    final static int CHECKSUM_BYTES = Long.BYTES;
+
+    private final FileChannel fileChannel;
+    private final BandwidthLimiter limiter;
+    private final CRC32 crc;
+    private final long end;
+    private long position;
+    private ByteBuffer checksum;
+
+    ChunkInputStream(final Path path, final long offset, final long length, final BandwidthLimiter limiter)
+        throws IOException {
+        this.fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final long size = fileChannel.size();
+            if (offset < 0 || length < 0 || offset + length > size)
+                throw new IOException("Wrong range " + offset + '+' + length + " for " + path + " (" + size + " bytes)");
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+        this.limiter = limiter;
+        this.crc = new CRC32();
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (position < end) {
+            final int toRead = (int) Math.min(len, end - position);
+            limiter.acquire(toRead);
+            final int read = fileChannel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read == -1)
+                throw new EOFException("Unexpected end of file at " + position);
+            crc.update(b, off, read);
+            position += read;
+            return read;
+        }
+        if (checksum == null) {
+            checksum = ByteBuffer.allocate(CHECKSUM_BYTES).putLong(crc.getValue());
+            checksum.flip();
+        }
+        if (!checksum.hasRemaining())
+            return -1;
+        final int toRead = Math.min(len, checksum.remaining());
+        checksum.get(b, off, toRead);
+        return toRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /**
+     * Read a chunk sent by a ChunkInputStream and check its CRC32.
+     *
+     * @param input   the stream of the chunk
+     * @param buffer  the buffer receiving the data
+     * @param length  the expected length of the data
+     * @param limiter the limiter applied while reading
+     * @throws IOException if the stream is truncated or if the checksum does not match
+     */
+    static void readChunk(final InputStream input, final byte[] buffer, final int length,
+                          final BandwidthLimiter limiter) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            final int toRead = Math.min(length - offset, 64 * 1024);
+            limiter.acquire(toRead);
+            final int read = input.read(buffer, offset, toRead);
+            if (read == -1)
+                throw new EOFException("Truncated chunk: " + offset + " bytes received, " + length + " expected");
+            offset += read;
+        }
+        final byte[] trailer = input.readNBytes(CHECKSUM_BYTES);
+        if (trailer.length != CHECKSUM_BYTES)
+            throw new EOFException("Truncated chunk: the checksum is missing");
+        final CRC32 crc = new CRC32();
+        crc.update(buffer, 0, length);
+        final long expected = ByteBuffer.wrap(trailer).getLong();
+        if (crc.getValue() != expected)
+            throw new IOException("Chunk checksum mismatch. Expected: " + expected + " - Got: " + crc.getValue());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Streams a compressed chunk. The format is:
+ * <ul>
+ * <li>one byte: the ordinal of the {@link Compression} applied by the master,</li>
+ * <li>with NONE, the raw range. Otherwise the range is cut in blocks of {@link #BLOCK_SIZE} bytes,
+ * each block is an int (big endian) followed by the compressed block, or by the raw block if the int is -1,</li>
+ * <li>the CRC32 of the raw range (8 bytes, big endian), as with {@link ChunkInputStream}.</li>
+ * </ul>
+ * The bandwidth limit applies to the compressed bytes. The compression of the blocks is counted
+ * in the {@link CompressionStats} of the master.
+ */
+final class CompressedChunkInputStream extends InputStream {
+
+    final static int BLOCK_SIZE = 64 * 1024;
+
+    private final ChunkInputStream chunk;
+    private final BlockCodec codec;
+    private final BandwidthLimiter limiter;
+    private final CompressionStats stats;
+    private final byte[] block;
+    private final byte[] output;
+    private long remaining;
+    private int outputPos;
+    private int outputEnd;
+
+    /**
+     * @param chunk       the raw range followed by its checksum, read without bandwidth limit
+     * @param length      the length of the range
+     * @param compression the compression applied to the range
+     * @param level       the compression level, null for the default one
+     * @param limiter     the bandwidth limiter applied to the compressed stream
+     * @param stats       the statistics receiving the compressed blocks
+     */
+    CompressedChunkInputStream(final ChunkInputStream chunk, final long length, final Compression compression,
+                               final Integer level, final BandwidthLimiter limiter, final CompressionStats stats) {
+        this.chunk = chunk;
+        this.codec = compression.newCodec(level);
+        this.limiter = limiter;
+        this.stats = stats;
+        this.block = codec == null ? null : new byte[BLOCK_SIZE];
+        this.output = new byte[Integer.BYTES + BlockCodec.maxCompressedLength(BLOCK_SIZE)];
+        this.remaining = length;
+        this.output[0] = (byte) compression.ordinal();
+        this.outputPos = 0;
+        this.outputEnd = 1;
+    }
+
+    /**
+     * Fill the output buffer with the next block, or with the checksum.
+     *
+     * @return false if the end of the stream is reached
+     */
+    private boolean fill() throws IOException {
+        outputPos = 0;
+        outputEnd = 0;
+        if (codec == null || remaining == 0) {
+            // Raw range or checksum: the bytes are passed through
+            final int read = chunk.read(output, 0, output.length);
+            if (read == -1)
+                return false;
+            outputEnd = read;
+            return true;
+        }
+        final int length = (int) Math.min(BLOCK_SIZE, remaining);
+        if (chunk.readNBytes(block, 0, length) != length)
+            throw new EOFException("Unexpected end of chunk");
+        remaining -= length;
+        final long start = System.nanoTime();
+        final int compressedLength = codec.compress(block, length, output, Integer.BYTES);
+        final long encodeNanos = System.nanoTime() - start;
+        ByteBuffer.wrap(output, 0, Integer.BYTES).putInt(compressedLength);
+        if (compressedLength == -1) {
+            System.arraycopy(block, 0, output, Integer.BYTES, length);
+            outputEnd = Integer.BYTES + length;
+        } else
+            outputEnd = Integer.BYTES + compressedLength;
+        stats.add(length, outputEnd, encodeNanos);
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (outputPos == outputEnd && !fill())
+            return -1;
+        final int toRead = Math.min(len, outputEnd - outputPos);
+        limiter.acquire(toRead);
+        System.arraycopy(output, outputPos, b, off, toRead);
+        outputPos += toRead;
+        return toRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            chunk.close();
+        } finally {
+            if (codec != null)
+                codec.close();
+        }
+    }
+
+    /**
+     * Reads the compressed chunks of a slave. An instance is reused by a download thread, it is not thread safe.
+     */
+    static final class Decoder {
+
+        private final byte[] compressed;
+        private long wireBytes;
+        private long decodeNanos;
+
+        Decoder() {
+            compressed = new byte[BlockCodec.maxCompressedLength(BLOCK_SIZE)];
+        }
+
+        /**
+         * @return the number of bytes received for the last chunk
+         */
+        long getWireBytes() {
+            return wireBytes;
+        }
+
+        /**
+         * @return the time spent decompressing the last chunk, in nanoseconds
+         */
+        long getDecodeNanos() {
+            return decodeNanos;
+        }
+
+        private void readFully(final InputStream input, final byte[] buffer, final int offset, final int length,
+                               final BandwidthLimiter limiter) throws IOException {
+            limiter.acquire(length);
+            if (input.readNBytes(buffer, offset, length) != length)
+                throw new EOFException("Truncated chunk: " + length + " bytes expected");
+            wireBytes += length;
+        }
+
+        /**
+         * Read a chunk sent by a CompressedChunkInputStream and check its CRC32.
+         *
+         * @param input   the stream of the chunk
+         * @param buffer  the buffer receiving the data
+         * @param length  the expected length of the data
+         * @param limiter the limiter applied to the compressed bytes
+         * @throws IOException if the stream is truncated or corrupted, or if the checksum does not match
+         */
+        void readChunk(final InputStream input, final byte[] buffer, final int length, final BandwidthLimiter limiter)
+                throws IOException {
+            wireBytes = 0;
+            decodeNanos = 0;
+            final int header = input.read();
+            if (header == -1)
+                throw new EOFException("Truncated chunk: the header is missing");
+            final Compression[] compressions = Compression.values();
+            if (header >= compressions.length)
+                throw new IOException("Unknown compression: " + header);
+            wireBytes++;
+            final Compression compression = compressions[header];
+            if (compression == Compression.NONE) {
+                ChunkInputStream.readChunk(input, buffer, length, limiter);
+                wireBytes += length + ChunkInputStream.CHECKSUM_BYTES;
+                return;
+            }
+            final byte[] intBytes = new byte[Integer.BYTES];
+            try (final BlockCodec codec = compression.newCodec(null)) {
+                int offset = 0;
+                while (offset < length) {
+                    final int blockLength = Math.min(BLOCK_SIZE, length - offset);
+                    readFully(input, intBytes, 0, Integer.BYTES, limiter);
+                    final int compressedLength = ByteBuffer.wrap(intBytes).getInt();
+                    if (compressedLength == -1)
+                        readFully(input, buffer, offset, blockLength, limiter);
+                    else {
+                        if (compressedLength < 0 || compressedLength > compressed.length)
+                            throw new IOException("Corrupted chunk: wrong block length " + compressedLength);
+                        readFully(input, compressed, 0, compressedLength, limiter);
+                        final long start = System.nanoTime();
+                        codec.decompress(compressed, compressedLength, buffer, offset, blockLength);
+                        decodeNanos += System.nanoTime() - start;
+                    }
+                    offset += blockLength;
+                }
+            }
+            final byte[] trailer = new byte[ChunkInputStream.CHECKSUM_BYTES];
+            readFully(input, trailer, 0, trailer.length, limiter);
+            final CRC32 crc = new CRC32();
+            crc.update(buffer, 0, length);
+            final long expected = ByteBuffer.wrap(trailer).getLong();
+            if (crc.getValue() != expected)
+                throw new IOException("Chunk checksum mismatch. Expected: " + expected + " - Got: " + crc.getValue());
+        }
+    }
+}
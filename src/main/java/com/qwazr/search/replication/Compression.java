@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The compression of the replicated chunks on the wire.
+ * The slave asks for a compression, the master only applies it to the files which are worth it:
+ * NONE is what the master answers for the files which are already compressed.
+ * <p>
+ * The level goes from 1 (fastest) to 9 (smallest). LZ4 switches to its high compression mode from level 6.
+ */
+public enum Compression {
+
+    NONE {
+        @Override
+        BlockCodec newCodec(final Integer level) {
+            return null;
+        }
+    },
+
+    LZ4 {
+        @Override
+        BlockCodec newCodec(final Integer level) {
+            return new BlockCodec.Lz4(level != null && level >= LZ4_HIGH_LEVEL);
+        }
+    },
+
+    DEFLATE {
+        @Override
+        BlockCodec newCodec(final Integer level) {
+            return new BlockCodec.Deflate(level == null ? DEFLATE_DEFAULT_LEVEL : Math.max(1, Math.min(9, level)));
+        }
+    };
+
+    private final static int LZ4_HIGH_LEVEL = 6;
+    private final static int DEFLATE_DEFAULT_LEVEL = 6;
+
+    /**
+     * The extensions of the files which are already compressed:
+     * the stored fields and the term vectors of Lucene, and the usual archive formats.
+     */
+    private final static Set<String> COMPRESSED_EXTENSIONS =
+            Set.of("fdt", "tvd", "gz", "zip", "jar", "bz2", "xz", "zst", "lz4", "7z", "jpg", "jpeg", "png");
+
+    /**
+     * @param level the compression level, null for the default one
+     * @return a new codec (not thread safe), or null if nothing is compressed
+     */
+    abstract BlockCodec newCodec(Integer level);
+
+    /**
+     * @param compression the compression asked by the slave
+     * @param fileName    the name of the transferred file
+     * @return the compression the master applies to the file
+     */
+    static Compression forFile(final Compression compression, final String fileName) {
+        if (compression == null || compression == NONE)
+            return NONE;
+        final int i = fileName.lastIndexOf('.');
+        if (i != -1 && COMPRESSED_EXTENSIONS.contains(fileName.substring(i + 1).toLowerCase(Locale.ROOT)))
+            return NONE;
+        return compression;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The compression of the replicated chunks on the master: the raw and compressed sizes of the blocks,
+ * and the CPU time spent compressing them. The chunks sent raw are not counted.
+ */
+public final class CompressionStats {
+
+    private final LongAdder blockCount = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+
+    /**
+     * @param raw        the size of the block
+     * @param compressed the size of the block on the wire, the raw size if it did not shrink
+     * @param nanos      the time spent compressing the block
+     */
+    void add(final long raw, final long compressed, final long nanos) {
+        blockCount.increment();
+        rawBytes.add(raw);
+        compressedBytes.add(compressed);
+        encodeNanos.add(nanos);
+    }
+
+    public long getBlockCount() {
+        return blockCount.sum();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return the time spent compressing, in nanoseconds
+     */
+    public long getEncodeNanos() {
+        return encodeNanos.sum();
+    }
+}
@@ -31,29 +31,58 @@ import java.util.Map;
 
 public interface MasterNode extends Closeable {
 
-    ReplicationSession newSession() throws IOException;
+    /**
+     * Create a new session: a snapshot of every source
+     *
+     * @param version the replication version of the master, returned with the session
+     * @return the new session
+     * @throws IOException if any I/O error occurs
+     */
+    ReplicationSession newSession(String version) throws IOException;
 
     InputStream getItem(String sessionId, ReplicationProcess.Source source, String itemName)
         throws FileNotFoundException;
 
+    /**
+     * Open a range of an item, followed by its CRC32.
+     * The range is compressed if a compression is given, see {@link CompressedChunkInputStream}.
+     *
+     * @return the stream, or null if the session or the source is unknown
+     */
+    InputStream getItem(String sessionId, ReplicationProcess.Source source, String itemName,
+                        long offset, long length, Compression compression, Integer level,
+                        BandwidthLimiter limiter) throws IOException;
+
     void releaseSession(String sessionId) throws IOException;
 
+    /**
+     * @return the compression of the chunks sent by this master
+     */
+    CompressionStats getCompressionStats();
+
     abstract class Base implements MasterNode {
 
         private final String masterUuid;
+        protected final CompressionStats compressionStats;
 
         protected Base(final String masterUuid) {
             this.masterUuid = masterUuid;
+            this.compressionStats = new CompressionStats();
+        }
+
+        @Override
+        final public CompressionStats getCompressionStats() {
+            return compressionStats;
         }
 
         protected abstract void fillSession(final String sessionUuid,
                                             final Map<String, Map<String, ReplicationSession.Item>> sessionMap) throws IOException;
 
-        final public ReplicationSession newSession() throws IOException {
+        final public ReplicationSession newSession(final String version) throws IOException {
             final Map<String, Map<String, ReplicationSession.Item>> sessionMap = new HashMap<>();
             final String sessionUuid = HashUtils.newTimeBasedUUID().toString();
             fillSession(sessionUuid, sessionMap);
-            return new ReplicationSession(masterUuid, sessionUuid, sessionMap);
+            return new ReplicationSession(masterUuid, sessionUuid, sessionMap, version);
         }
     }
 
@@ -93,6 +122,21 @@ public interface MasterNode extends Closeable {
             return sourceView == null ? null : sourceView.getItem(itemName);
         }
 
+        @Override
+        public InputStream getItem(final String sessionId, final ReplicationProcess.Source source,
+                                   final String itemName, final long offset, final long length,
+                                   final Compression compression, final Integer level,
+                                   final BandwidthLimiter limiter) throws IOException {
+            if (source != null && source != ReplicationProcess.Source.metadata)
+                return null;
+            final SourceView.FromPathFiles sourceView;
+            synchronized (metadataSessions) {
+                sourceView = metadataSessions.get(sessionId);
+            }
+            return sourceView == null ? null : sourceView.getItem(itemName, offset, length, compression, level, limiter,
+                compressionStats);
+        }
+
         @Override
         public void releaseSession(final String sessionId) throws IOException {
             synchronized (metadataSessions) {
@@ -140,6 +184,21 @@ public interface MasterNode extends Closeable {
             return sourceView == null ? null : sourceView.getItem(itemName);
         }
 
+        @Override
+        public InputStream getItem(final String sessionId, final ReplicationProcess.Source source,
+                                   final String itemName, final long offset, final long length,
+                                   final Compression compression, final Integer level,
+                                   final BandwidthLimiter limiter) throws IOException {
+            if (source != null && source != ReplicationProcess.Source.resources)
+                return super.getItem(sessionId, source, itemName, offset, length, compression, level, limiter);
+            final SourceView.FromPathDirectory sourceView;
+            synchronized (resourcesSessions) {
+                sourceView = resourcesSessions.get(sessionId);
+            }
+            return sourceView == null ? null : sourceView.getItem(itemName, offset, length, compression, level, limiter,
+                compressionStats);
+        }
+
         @Override
         public void releaseSession(final String sessionId) throws IOException {
             super.releaseSession(sessionId);
@@ -187,6 +246,21 @@ public interface MasterNode extends Closeable {
             return sourceView == null ? null : sourceView.getItem(itemName);
         }
 
+        @Override
+        public InputStream getItem(final String sessionId, final ReplicationProcess.Source source,
+                                   final String itemName, final long offset, final long length,
+                                   final Compression compression, final Integer level,
+                                   final BandwidthLimiter limiter) throws IOException {
+            if (source != ReplicationProcess.Source.data)
+                return super.getItem(sessionId, source, itemName, offset, length, compression, level, limiter);
+            final SourceView.FromCommit sourceView;
+            synchronized (indexSessions) {
+                sourceView = indexSessions.get(sessionId);
+            }
+            return sourceView == null ? null : sourceView.getItem(itemName, offset, length, compression, level, limiter,
+                compressionStats);
+        }
+
         @Override
         public void releaseSession(final String sessionId) throws IOException {
             super.releaseSession(sessionId);
@@ -246,6 +320,21 @@ public interface MasterNode extends Closeable {
             return sourceView == null ? null : sourceView.getItem(itemName);
         }
 
+        @Override
+        public InputStream getItem(final String sessionId, final ReplicationProcess.Source source,
+                                   final String itemName, final long offset, final long length,
+                                   final Compression compression, final Integer level,
+                                   final BandwidthLimiter limiter) throws IOException {
+            if (source != ReplicationProcess.Source.taxonomy)
+                return super.getItem(sessionId, source, itemName, offset, length, compression, level, limiter);
+            final SourceView.FromCommit sourceView;
+            synchronized (taxoSessions) {
+                sourceView = taxoSessions.get(sessionId);
+            }
+            return sourceView == null ? null : sourceView.getItem(itemName, offset, length, compression, level, limiter,
+                compressionStats);
+        }
+
         @Override
         public void releaseSession(final String sessionId) throws IOException {
             super.releaseSession(sessionId);
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The previous copies of a replication target, typically the backups of the same index.
+ * A file of a previous copy which is identical to the file of the master is hard-linked instead of being
+ * transferred again. As the files are never modified in place, the copies can share them safely.
+ */
+public final class PreviousCopies {
+
+    private final Path root;
+    private final List<Path> copies;
+
+    /**
+     * @param root   the root directory of the replication target
+     * @param copies the root directories of the previous copies, the preferred ones first
+     */
+    public PreviousCopies(final Path root, final List<Path> copies) {
+        this.root = root;
+        this.copies = copies;
+    }
+
+    /**
+     * Find a file having the same name, the same size and the same version (last modified time).
+     *
+     * @param targetDirectory the directory of the target receiving the file
+     * @param name            the name of the file
+     * @param item            the size and the version of the file
+     * @return the path of the previous copy, or null
+     * @throws IOException if any I/O error occurs
+     */
+    Path find(final Path targetDirectory, final String name, final ReplicationSession.Item item)
+            throws IOException {
+        if (item.size == null || item.version == null)
+            return null;
+        final Path relative = root.relativize(targetDirectory);
+        for (final Path copy : copies) {
+            final Path candidate = copy.resolve(relative).resolve(name);
+            if (Files.isRegularFile(candidate) && Files.size(candidate) == item.size &&
+                    Files.getLastModifiedTime(candidate).toMillis() == item.version)
+                return candidate;
+        }
+        return null;
+    }
+}
@@ -16,16 +16,22 @@
 
 package com.qwazr.search.replication;
 
+import com.qwazr.search.index.ConcurrentTasks;
 import com.qwazr.search.index.ReplicationStatus;
 import com.qwazr.utils.FileUtils;
-import com.qwazr.utils.IOUtils;
-import com.qwazr.utils.concurrent.ConcurrentUtils;
+import com.qwazr.utils.LoggerUtils;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.NIOFSDirectory;
 
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,11 +39,23 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.rmi.ServerException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public interface ReplicationProcess extends Closeable {
 
@@ -47,7 +65,86 @@ public interface ReplicationProcess extends Closeable {
 
     @FunctionalInterface
     interface SourceFileProvider {
-        InputStream obtain(Source source, String fileName) throws IOException;
+
+        /**
+         * Obtain a range of a file. The range is followed by its CRC32 (8 bytes, big endian).
+         *
+         * @param source      the source of the file
+         * @param fileName    the name of the file
+         * @param offset      the position of the first byte
+         * @param length      the number of bytes
+         * @param compression the compression asked to the master, null for the raw format
+         * @param level       the compression level, null for the default one
+         * @return the stream of the range
+         * @throws IOException if any I/O error occurs
+         */
+        InputStream obtain(Source source, String fileName, long offset, long length, Compression compression,
+                           Integer level) throws IOException;
+
+        /**
+         * Called once a compressed range has been received and checked.
+         *
+         * @param length      the number of bytes of the range
+         * @param wireBytes   the number of bytes received
+         * @param decodeNanos the time spent decompressing, in nanoseconds
+         */
+        default void decoded(long length, long wireBytes, long decodeNanos) {
+        }
+
+        /**
+         * Called when a file has been hard-linked from a previous copy instead of being transferred.
+         *
+         * @param length the size of the file
+         */
+        default void linked(long length) {
+        }
+    }
+
+    /**
+     * How the files are transferred: the size of the chunks, the number of concurrent downloads,
+     * the bandwidth limit, the compression and the previous copies which can be hard-linked.
+     */
+    final class Transfer {
+
+        public final static Transfer DEFAULT = new Transfer(null, null, null, null, null);
+
+        private final static int MB = 1024 * 1024;
+
+        final int chunkSize;
+        final int threads;
+        final BandwidthLimiter limiter;
+        final Compression compression;
+        final Integer compressionLevel;
+        final PreviousCopies previousCopies;
+
+        private Transfer(final int chunkSize, final int threads, final BandwidthLimiter limiter,
+                         final Compression compression, final Integer compressionLevel,
+                         final PreviousCopies previousCopies) {
+            this.chunkSize = chunkSize;
+            this.threads = threads;
+            this.limiter = limiter;
+            this.compression = compression;
+            this.compressionLevel = compressionLevel;
+            this.previousCopies = previousCopies;
+        }
+
+        public Transfer(final Integer chunkSizeMB, final Integer threads, final BandwidthLimiter limiter,
+                        final Compression compression, final Integer compressionLevel) {
+            this((chunkSizeMB == null || chunkSizeMB <= 0 ? 8 : Math.min(chunkSizeMB, 1024)) * MB,
+                    threads == null || threads <= 0 ? 2 : threads,
+                    limiter == null ? BandwidthLimiter.UNLIMITED : limiter,
+                    compression == Compression.NONE ? null : compression,
+                    compressionLevel == null || compressionLevel <= 0 ? null : compressionLevel,
+                    null);
+        }
+
+        /**
+         * @param previousCopies the previous copies of the target
+         * @return the same transfer, which hard-links the unchanged files of the previous copies
+         */
+        public Transfer withPreviousCopies(final PreviousCopies previousCopies) {
+            return new Transfer(chunkSize, threads, limiter, compression, compressionLevel, previousCopies);
+        }
     }
 
     void obtainNewFiles() throws IOException;
@@ -62,24 +159,28 @@ public interface ReplicationProcess extends Closeable {
         private final SourceFileProvider sourceFileProvider;
         private final ReplicationSession session;
         private final ReplicationStatus.Strategy strategy;
+        private final Transfer transfer;
 
         public Builder(final Path workDirectory, final SourceFileProvider sourceFileProvider,
-                       final ReplicationStatus.Strategy strategy, final ReplicationSession session) {
+                       final ReplicationStatus.Strategy strategy, final ReplicationSession session,
+                       final Transfer transfer) {
             this.workDirectory = workDirectory;
             this.sourceFileProvider = sourceFileProvider;
             this.strategy = strategy;
             this.session = session;
+            this.transfer = transfer == null ? Transfer.DEFAULT : transfer;
         }
 
         private ReplicationProcess full(final Path targetDirectoryPath, final Source source,
                                         final SourceView sourceView) throws IOException {
-            return new Full(workDirectory, targetDirectoryPath, source, sourceFileProvider, sourceView, session);
+            return new Full(workDirectory, targetDirectoryPath, source, sourceFileProvider, transfer, sourceView,
+                    session);
         }
 
         private ReplicationProcess incremental(final Path targetDirectoryPath, final Source source,
                                                final SourceView sourceView) {
-            return new Differential(workDirectory, targetDirectoryPath, source, sourceFileProvider, sourceView,
-                    session);
+            return new Differential(workDirectory, targetDirectoryPath, source, sourceFileProvider, transfer,
+                    sourceView, session);
         }
 
         public ReplicationProcess metadata(final Path metadataDirectoryPath, final String... metadataItems)
@@ -139,40 +240,232 @@ public interface ReplicationProcess extends Closeable {
 
     }
 
+    /**
+     * The files are downloaded by chunks. Each chunk is checked (CRC32) before being appended to a partial file.
+     * The partial files are kept in a dedicated directory until the whole replication succeeds:
+     * a failed replication is resumed by the next one, from the last verified chunk.
+     * The files of the Lucene indexes are also checked against their footer checksum once complete.
+     * If previous copies are given, an unchanged file of the Lucene indexes is hard-linked instead.
+     */
     abstract class Common implements ReplicationProcess {
 
+        private final static Logger LOGGER = LoggerUtils.getLogger(Common.class);
+
+        private final static int MAX_CHUNK_ATTEMPTS = 3;
+
+        /**
+         * The downloads of every replication share this executor, its idle threads expire.
+         */
+        private final static ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "Replication transfer - " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
         protected final Source source;
         protected final SourceFileProvider sourceFileProvider;
+        protected final Transfer transfer;
         protected final Path sourceWorkDirectory;
+        protected final Path sourcePartialDirectory;
         protected final Path targetDirectoryPath;
         protected final Map<String, ReplicationSession.Item> filesToObtain;
         protected final Collection<String> filesToDelete;
 
         protected Common(final Path workDirectory, final Path targetDirectoryPath, final Source source,
-                         final SourceFileProvider sourceFileProvider) {
+                         final SourceFileProvider sourceFileProvider, final Transfer transfer) {
             this.source = source;
             this.sourceFileProvider = sourceFileProvider;
+            this.transfer = transfer;
             this.sourceWorkDirectory = workDirectory.resolve(source.name());
+            this.sourcePartialDirectory = workDirectory.resolve("partial-" + source.name());
             this.targetDirectoryPath = targetDirectoryPath;
             this.filesToObtain = new LinkedHashMap<>();
             this.filesToDelete = new LinkedHashSet<>();
         }
 
+        /**
+         * The name of the partial file identifies the version of the file, a partial file of another version
+         * (same name, other size or other date) is never resumed.
+         */
+        private static String getPartialName(final String name, final ReplicationSession.Item item) {
+            return name + '.' + item.size + '.' + item.version + ".part";
+        }
+
         @Override
         final public void obtainNewFiles() throws IOException {
             if (!Files.exists(sourceWorkDirectory))
                 Files.createDirectory(sourceWorkDirectory);
-            ConcurrentUtils.forEachEx(filesToObtain, (name, item) -> {
-                final Path path = sourceWorkDirectory.resolve(name);
-                try (final InputStream input = sourceFileProvider.obtain(source, name)) {
-                    IOUtils.copy(input, path);
-                    Files.setLastModifiedTime(path, FileTime.fromMillis(item.version));
-                    final long itemSize = Files.size(path);
-                    if (!Objects.equals(itemSize, item.size))
-                        throw new IOException(
-                                "Wrong file size for " + path + ". Expected: " + item.size + " - Got: " + itemSize);
+            if (!Files.exists(sourcePartialDirectory))
+                Files.createDirectory(sourcePartialDirectory);
+            deleteStalePartialFiles();
+            if (filesToObtain.isEmpty())
+                return;
+
+            // The largest files first, the small ones fill the gaps at the end
+            final List<Map.Entry<String, ReplicationSession.Item>> files = new ArrayList<>(filesToObtain.entrySet());
+            files.sort((e1, e2) -> Long.compare(size(e2.getValue()), size(e1.getValue())));
+            final Queue<Map.Entry<String, ReplicationSession.Item>> queue = new ConcurrentLinkedQueue<>(files);
+
+            final int threads = Math.min(transfer.threads, files.size());
+            final List<ConcurrentTasks.Task<Void>> tasks = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++)
+                tasks.add(() -> obtainFiles(queue));
+            ConcurrentTasks.run(tasks, EXECUTOR);
+
+            // Every file has been obtained, they can be moved to the work directory
+            for (final Map.Entry<String, ReplicationSession.Item> entry : files) {
+                final Path path = sourceWorkDirectory.resolve(entry.getKey());
+                Files.move(sourcePartialDirectory.resolve(getPartialName(entry.getKey(), entry.getValue())), path,
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getValue().version));
+            }
+        }
+
+        private static long size(final ReplicationSession.Item item) {
+            return item.size == null ? 0 : item.size;
+        }
+
+        private void deleteStalePartialFiles() throws IOException {
+            final Set<String> expected = new HashSet<>();
+            filesToObtain.forEach((name, item) -> expected.add(getPartialName(name, item)));
+            try (final Stream<Path> stream = Files.list(sourcePartialDirectory)) {
+                for (final Path path : (Iterable<Path>) stream::iterator)
+                    if (!expected.contains(path.getFileName().toString()))
+                        Files.deleteIfExists(path);
+            }
+        }
+
+        private Void obtainFiles(final Queue<Map.Entry<String, ReplicationSession.Item>> queue)
+                throws IOException {
+            final byte[] buffer = new byte[transfer.chunkSize];
+            final CompressedChunkInputStream.Decoder decoder =
+                    transfer.compression == null ? null : new CompressedChunkInputStream.Decoder();
+            Map.Entry<String, ReplicationSession.Item> entry;
+            while ((entry = queue.poll()) != null) {
+                try {
+                    obtainFile(entry.getKey(), entry.getValue(), buffer, decoder);
+                } catch (IOException | RuntimeException e) {
+                    // Stop the other downloads after their current file
+                    queue.clear();
+                    throw e;
+                }
+            }
+            return null;
+        }
+
+        private void obtainFile(final String name, final ReplicationSession.Item item, final byte[] buffer,
+                                final CompressedChunkInputStream.Decoder decoder) throws IOException {
+            final long size = size(item);
+            final Path partialPath = sourcePartialDirectory.resolve(getPartialName(name, item));
+            if (linkPreviousCopy(name, item, partialPath, decoder))
+                return;
+            if (Files.exists(partialPath) && Files.size(partialPath) > size)
+                Files.delete(partialPath);
+            try (final FileChannel output = FileChannel.open(partialPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                final long resumeOffset = output.size();
+                if (resumeOffset > 0)
+                    LOGGER.info(() -> "Resume the replication of " + name + " at " + resumeOffset + '/' + size);
+                long offset = resumeOffset;
+                while (offset < size) {
+                    final int length = (int) Math.min(buffer.length, size - offset);
+                    obtainChunk(name, offset, length, buffer, decoder);
+                    final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+                    while (byteBuffer.hasRemaining())
+                        output.write(byteBuffer);
+                    offset += length;
+                }
+                output.force(false);
+            }
+            if ((source == Source.data || source == Source.taxonomy) && !IndexWriter.WRITE_LOCK_NAME.equals(name))
+                checkFooter(partialPath);
+        }
+
+        /**
+         * Hard-link the file of a previous copy if it is identical: same name, size and version,
+         * and the same footer, which contains the checksum of the whole file.
+         *
+         * @return true if the file has been linked
+         */
+        private boolean linkPreviousCopy(final String name, final ReplicationSession.Item item,
+                                         final Path partialPath, final CompressedChunkInputStream.Decoder decoder)
+                throws IOException {
+            if (transfer.previousCopies == null || (source != Source.data && source != Source.taxonomy) ||
+                    IndexWriter.WRITE_LOCK_NAME.equals(name))
+                return false;
+            final int footerLength = CodecUtil.footerLength();
+            final long size = size(item);
+            if (size < footerLength)
+                return false;
+            final Path copy = transfer.previousCopies.find(targetDirectoryPath, name, item);
+            if (copy == null)
+                return false;
+            final byte[] footer = new byte[footerLength];
+            obtainChunk(name, size - footerLength, footerLength, footer, decoder);
+            final ByteBuffer copyFooter = ByteBuffer.allocate(footerLength);
+            try (final FileChannel channel = FileChannel.open(copy, StandardOpenOption.READ)) {
+                while (copyFooter.hasRemaining())
+                    if (channel.read(copyFooter, size - footerLength + copyFooter.position()) == -1)
+                        return false;
+            }
+            if (!Arrays.equals(footer, copyFooter.array()))
+                return false;
+            try {
+                Files.deleteIfExists(partialPath);
+                Files.createLink(partialPath, copy);
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.warning(() -> "Cannot link " + copy + ", the file is copied: " + e.getMessage());
+                Files.deleteIfExists(partialPath);
+                return false;
+            }
+            sourceFileProvider.linked(size);
+            return true;
+        }
+
+        private void obtainChunk(final String name, final long offset, final int length, final byte[] buffer,
+                                 final CompressedChunkInputStream.Decoder decoder) throws IOException {
+            for (int attempt = 1; ; attempt++) {
+                try (final InputStream input = sourceFileProvider.obtain(source, name, offset, length,
+                        transfer.compression, transfer.compressionLevel)) {
+                    if (input == null)
+                        throw new FileNotFoundException("File not found on the master: " + name);
+                    if (decoder == null)
+                        ChunkInputStream.readChunk(input, buffer, length, transfer.limiter);
+                    else {
+                        decoder.readChunk(input, buffer, length, transfer.limiter);
+                        sourceFileProvider.decoded(length, decoder.getWireBytes(), decoder.getDecodeNanos());
+                    }
+                    return;
+                } catch (FileNotFoundException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (attempt >= MAX_CHUNK_ATTEMPTS)
+                        throw new IOException("Cannot obtain " + name + " at " + offset + ": " + e.getMessage(), e);
+                    final int failedAttempt = attempt;
+                    LOGGER.warning(() -> "Chunk transfer failed (attempt " + failedAttempt + "): " + name + " at " +
+                            offset + " - " + e.getMessage());
                 }
-            });
+            }
+        }
+
+        /**
+         * Check the checksum stored in the footer of a Lucene index file. A corrupted file is deleted.
+         */
+        private void checkFooter(final Path partialPath) throws IOException {
+            try (final Directory directory = new NIOFSDirectory(partialPath.getParent());
+                 final IndexInput input = directory.openInput(partialPath.getFileName().toString(),
+                         IOContext.READONCE)) {
+                CodecUtil.checksumEntireFile(input);
+            } catch (IOException e) {
+                Files.deleteIfExists(partialPath);
+                throw new IOException("Checksum verification failed for " + partialPath + ": " + e.getMessage(), e);
+            }
         }
 
         @Override
@@ -188,9 +481,9 @@ public interface ReplicationProcess extends Closeable {
     final class Differential extends Common {
 
         Differential(final Path workDirectory, final Path targetDirectoryPath, final Source source,
-                     final SourceFileProvider sourceFileProvider, final SourceView sourceView,
-                     final ReplicationSession session) {
-            super(workDirectory, targetDirectoryPath, source, sourceFileProvider);
+                     final SourceFileProvider sourceFileProvider, final Transfer transfer,
+                     final SourceView sourceView, final ReplicationSession session) {
+            super(workDirectory, targetDirectoryPath, source, sourceFileProvider, transfer);
             sourceView.differential(session.getSourceFiles(source), filesToObtain, filesToDelete);
         }
 
@@ -229,9 +522,9 @@ public interface ReplicationProcess extends Closeable {
         private final Path sourceTrashPath;
 
         protected Full(final Path workDirectory, final Path targetDirectoryPath, final Source source,
-                       final SourceFileProvider sourceFileProvider, final SourceView sourceView,
-                       final ReplicationSession session) throws IOException {
-            super(workDirectory, targetDirectoryPath, source, sourceFileProvider);
+                       final SourceFileProvider sourceFileProvider, final Transfer transfer,
+                       final SourceView sourceView, final ReplicationSession session) throws IOException {
+            super(workDirectory, targetDirectoryPath, source, sourceFileProvider, transfer);
             this.sourceTrashPath = workDirectory.resolve("trash-" + source.name());
             if (!Files.exists(sourceTrashPath))
                 Files.createDirectory(sourceTrashPath);
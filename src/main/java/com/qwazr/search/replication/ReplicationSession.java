@@ -49,21 +49,30 @@ public class ReplicationSession {
     @JsonProperty("start_time")
     public final long startTime;
 
+    /**
+     * The replication version of the master when the session was created
+     */
+    @JsonProperty("version")
+    public final String version;
+
     @JsonCreator
     ReplicationSession(@JsonProperty("master_uuid") final String masterUuid,
                        @JsonProperty("session_uuid") final String sessionUuid,
                        @JsonProperty("files") final Map<String, Map<String, Item>> items,
                        @JsonProperty("size") final long size,
-                       @JsonProperty("start_time") final long startTime) {
+                       @JsonProperty("start_time") final long startTime,
+                       @JsonProperty("version") final String version) {
         this.masterUuid = masterUuid;
         this.sessionUuid = sessionUuid;
         this.items = items;
         this.size = size;
         this.startTime = startTime;
+        this.version = version;
     }
 
-    ReplicationSession(final String masterUuid, final String sessionUuid, final Map<String, Map<String, Item>> files) {
-        this(masterUuid, sessionUuid, files, computeTotalSize(files), System.currentTimeMillis());
+    ReplicationSession(final String masterUuid, final String sessionUuid, final Map<String, Map<String, Item>> files,
+                       final String version) {
+        this(masterUuid, sessionUuid, files, computeTotalSize(files), System.currentTimeMillis(), version);
     }
 
     static long computeTotalSize(final Map<String, Map<String, Item>> items) {
@@ -35,16 +35,18 @@ public interface SlaveNode {
 		final Directory indexDirectory;
 		final Path indexDirectoryPath;
 		final Path workDirectory;
+		final ReplicationProcess.Transfer transfer;
 		final Path metadataDirectoryPath;
 		final String[] metadataItems;
 
 		public WithIndex(final Path resourcesPath, final Directory indexDirectory, final Path indexDirectoryPath,
-				final Path workDirectory, final Path metadataDirectoryPath, final String... metadataItems)
-				throws IOException {
+				final Path workDirectory, final ReplicationProcess.Transfer transfer,
+				final Path metadataDirectoryPath, final String... metadataItems) throws IOException {
 			this.resourcesPath = resourcesPath;
 			this.indexDirectory = indexDirectory;
 			this.indexDirectoryPath = indexDirectoryPath;
 			this.workDirectory = workDirectory;
+			this.transfer = transfer;
 			this.metadataDirectoryPath = metadataDirectoryPath;
 			this.metadataItems = metadataItems;
 			if (!Files.exists(workDirectory))
@@ -56,7 +58,7 @@ public interface SlaveNode {
 				final ReplicationSession session, final ReplicationProcess.SourceFileProvider fileProvider)
 				throws IOException {
 			final ReplicationProcess.Builder builder =
-					new ReplicationProcess.Builder(workDirectory, fileProvider, strategy, session);
+					new ReplicationProcess.Builder(workDirectory, fileProvider, strategy, session, transfer);
 			return builder.build(builder.resources(resourcesPath),
 					builder.dataIndex(indexDirectoryPath, indexDirectory),
 					builder.metadata(metadataDirectoryPath, metadataItems));
@@ -70,8 +72,9 @@ public interface SlaveNode {
 
 		public WithIndexAndTaxo(final Path resourcesPath, final Directory indexDirectory, final Path indexDirectoryPath,
 				final Directory taxoDirectory, final Path taxoDirectoryPath, final Path workDirectory,
-				final Path metadataDirectoryPath, final String... metadataItems) throws IOException {
-			super(resourcesPath, indexDirectory, indexDirectoryPath, workDirectory, metadataDirectoryPath,
+				final ReplicationProcess.Transfer transfer, final Path metadataDirectoryPath,
+				final String... metadataItems) throws IOException {
+			super(resourcesPath, indexDirectory, indexDirectoryPath, workDirectory, transfer, metadataDirectoryPath,
 					metadataItems);
 			this.taxoDirectory = taxoDirectory;
 			this.taxoDirectoryPath = taxoDirectoryPath;
@@ -82,7 +85,7 @@ public interface SlaveNode {
 				final ReplicationSession session, final ReplicationProcess.SourceFileProvider fileProvider)
 				throws IOException {
 			final ReplicationProcess.Builder builder =
-					new ReplicationProcess.Builder(workDirectory, fileProvider, strategy, session);
+					new ReplicationProcess.Builder(workDirectory, fileProvider, strategy, session, transfer);
 			return builder.build(builder.resources(resourcesPath),
 					builder.dataIndex(indexDirectoryPath, indexDirectory),
 					builder.taxoIndex(taxoDirectoryPath, taxoDirectory),
@@ -95,6 +95,32 @@ class SourceView {
         return new BufferedInputStream(new FileInputStream(directoryPath.resolve(itemName).toFile()));
     }
 
+    /**
+     * Open a range of an item. The range is followed by its CRC32.
+     *
+     * @param itemName    the name of the item
+     * @param offset      the position of the first byte
+     * @param length      the number of bytes
+     * @param compression the compression asked by the slave, null for the raw format
+     * @param level       the compression level, null for the default one
+     * @param limiter     the bandwidth limiter
+     * @param stats       the statistics of the compression
+     * @return a new stream
+     * @throws IOException if the item is not part of the view or if the range is wrong
+     */
+    final InputStream getItem(final String itemName, final long offset, final long length,
+                              final Compression compression, final Integer level,
+                              final BandwidthLimiter limiter, final CompressionStats stats) throws IOException {
+        if (!items.containsKey(itemName))
+            throw new FileNotFoundException("Unknown item: " + itemName);
+        final Path itemPath = directoryPath.resolve(itemName);
+        if (compression == null)
+            return new ChunkInputStream(itemPath, offset, length, limiter);
+        return new CompressedChunkInputStream(
+                new ChunkInputStream(itemPath, offset, length, BandwidthLimiter.UNLIMITED), length,
+                Compression.forFile(compression, itemName), level, limiter, stats);
+    }
+
     static class FromCommit extends SourceView implements Closeable {
 
         private final SnapshotDeletionPolicy indexSnapshots;
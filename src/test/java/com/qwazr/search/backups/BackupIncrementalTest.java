@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.backups;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.index.BackupStatus;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.test.units.AbstractIndexTest;
+import com.qwazr.search.test.units.IndexRecord;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class BackupIncrementalTest extends AbstractIndexTest {
+
+    private final static String INDEX = "incremental";
+
+    private static Path backupsPath;
+
+    private static IndexServiceInterface service;
+
+    private static AnnotatedIndexService<IndexRecord.NoTaxonomy> index;
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException {
+        backupsPath = Files.createTempDirectory("backups");
+        initIndexManager(true, backupsPath);
+        service = indexManager.getService();
+        index = new AnnotatedIndexService<>(service, IndexRecord.NoTaxonomy.class, INDEX, null);
+        index.createUpdateIndex();
+        index.createUpdateFields();
+        postDocuments(0, 500);
+    }
+
+    private static void postDocuments(final int from, final int count) throws IOException {
+        final List<IndexRecord.NoTaxonomy> records = new ArrayList<>();
+        for (int i = from; i < from + count; i++)
+            records.add(new IndexRecord.NoTaxonomy("id" + i).textField("text " + i));
+        index.postDocuments(records);
+    }
+
+    private static BackupStatus doBackup(final String backupName) {
+        final BackupStatus status = index.doBackup(backupName).get(INDEX);
+        Assert.assertNotNull(status);
+        Assert.assertNotNull(status.copiedBytes);
+        Assert.assertNotNull(status.linkedBytes);
+        return status;
+    }
+
+    private static Path dataFile(final String backupName, final String fileName) {
+        return backupsPath.resolve(backupName).resolve(INDEX).resolve("data").resolve(fileName);
+    }
+
+    @Test
+    public void unchangedFilesAreShared() throws IOException {
+        // The first backup copies everything
+        final BackupStatus status1 = doBackup("backup1");
+        Assert.assertEquals(0L, (long) status1.linkedBytes);
+        Assert.assertTrue(status1.copiedBytes > 0);
+
+        // Nothing changed: the segment files are linked
+        final BackupStatus status2 = doBackup("backup2");
+        Assert.assertTrue(status2.linkedBytes > 0);
+        Assert.assertTrue(status2.copiedBytes < status1.copiedBytes);
+        Assert.assertEquals(status1.bytesSize, status2.bytesSize);
+
+        // New segment: only the new files are copied
+        postDocuments(500, 10);
+        final BackupStatus status3 = doBackup("backup3");
+        Assert.assertTrue(status3.linkedBytes > 0);
+
+        // The backups share the same files
+        final List<String> sharedFiles = new ArrayList<>();
+        try (final Stream<Path> stream = Files.list(backupsPath.resolve("backup1").resolve(INDEX).resolve("data"))) {
+            stream.map(path -> path.getFileName().toString()).filter(name -> !name.startsWith("segments"))
+                .forEach(sharedFiles::add);
+        }
+        Assert.assertFalse(sharedFiles.isEmpty());
+        for (final String fileName : sharedFiles)
+            Assert.assertTrue(Files.isSameFile(dataFile("backup1", fileName), dataFile("backup3", fileName)));
+
+        // Deleting a backup does not alter the backups sharing its files
+        Assert.assertEquals(1, service.deleteBackups(INDEX, "backup1"), 0);
+        final BackupStatus listed2 = index.getBackups("backup2", false).get("backup2").get(INDEX);
+        Assert.assertEquals(status2, listed2);
+        Assert.assertNull(listed2.linkedBytes);
+        for (final String fileName : sharedFiles)
+            Assert.assertTrue(Files.isRegularFile(dataFile("backup3", fileName)));
+        Assert.assertEquals(2, service.deleteBackups(INDEX, "*"), 0);
+    }
+}
@@ -26,10 +26,29 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.queries.function.FunctionScoreQuery;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.DoubleValuesSource;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.BeforeClass;
-import org.junit.Ignore;
 import org.junit.Test;
 
 public class CollapseCollectorTest extends AbstractIndexTest.WithIndexRecord.NoTaxonomy {
@@ -59,8 +78,7 @@ public class CollapseCollectorTest extends AbstractIndexTest.WithIndexRecord.NoT
     }
 
     @Test
-    @Ignore //TODO flapy -> require investigations
-    public void test() {
+    public void test() throws IOException {
         final QueryDefinition queryDef1 = QueryDefinition.of(Bool.of()
             .addClause(Bool.Occur.should, new HasTerm("textField", "text1"))
             .addClause(Bool.Occur.should, new HasTerm("textField", "text2"))
@@ -85,73 +103,183 @@ public class CollapseCollectorTest extends AbstractIndexTest.WithIndexRecord.NoT
         Assert.assertNotNull(secondPassResults);
 
         Assert.assertEquals(collapseQuery.collapsedMap.size(), secondPassResults.totalHits);
-        //TODO Restore test
-        // for (final ResultDocumentAbstract result : secondPassResults.getDocuments())
-        //   Assert.assertNotEquals(-1, collapseQuery.getCollapsed(result.getDoc()));
+        // The results do not expose the docIds: the second pass is done again on the searcher
+        final TopDocs leaders = indexService.query(context -> context.getIndexSearcher()
+            .search(collapseQuery.getQuery(context), collapseQuery.collapsedMap.size()));
+        Assert.assertEquals(collapseQuery.collapsedMap.size(), leaders.scoreDocs.length);
+        for (final ScoreDoc leader : leaders.scoreDocs)
+            Assert.assertNotEquals(-1, collapseQuery.getCollapsed(leader.doc));
     }
 
-    private void checkGroupLeader(final CollapseCollector.GroupQueue queue, String value, int doc, float score,
-                                  int collapsedCount) {
-        final CollapseCollector.GroupLeader leader = queue.getGroupLeaders().get(new BytesRef(value));
+    private final static String GROUP_FIELD = "group";
+    private final static String SCORE_FIELD = "score";
+
+    @FunctionalInterface
+    private interface GroupOf {
+        String group(int segment, int i, int number);
+    }
+
+    /**
+     * Each segment is committed without merge: the docId of a document is its number minus one.
+     * A matching document is scored by its number (exact below 2^24), the expected leaders and counts are computed
+     * from the same numbers.
+     */
+    private static void checkCollapse(final int segments, final int docsPerSegment, final int maxRows,
+                                      final GroupOf groupOf, final IntPredicate matches) throws IOException {
+        final Map<String, Integer> expectedCounts = new HashMap<>();
+        final Map<String, Integer> expectedLeaders = new HashMap<>();
+        final Map<Integer, String> leaderGroups = new HashMap<>();
+
+        try (final Directory directory = new ByteBuffersDirectory()) {
+            try (final IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+                int number = 0;
+                for (int segment = 0; segment < segments; segment++) {
+                    for (int i = 0; i < docsPerSegment; i++) {
+                        number++;
+                        final String group = groupOf.group(segment, i, number);
+                        final Document document = new Document();
+                        document.add(new SortedDocValuesField(GROUP_FIELD, new BytesRef(group)));
+                        if (matches.test(number)) {
+                            document.add(new NumericDocValuesField(SCORE_FIELD, number));
+                            expectedCounts.merge(group, 1, Integer::sum);
+                            // The numbers are increasing: the last matching document is the best of its group
+                            expectedLeaders.put(group, number);
+                        }
+                        writer.addDocument(document);
+                    }
+                    writer.commit();
+                }
+            }
+            expectedLeaders.forEach((group, number) -> leaderGroups.put(number, group));
+
+            try (final DirectoryReader reader = DirectoryReader.open(directory)) {
+                Assert.assertEquals(segments, reader.leaves().size());
+                final IndexSearcher searcher = new IndexSearcher(reader);
+                final CollapseCollector.Query collapseQuery =
+                    searcher.search(new FunctionScoreQuery(new DocValuesFieldExistsQuery(SCORE_FIELD),
+                            DoubleValuesSource.fromIntField(SCORE_FIELD)),
+                        new CollectorManager<CollapseCollector, CollapseCollector.Query>() {
+                            @Override
+                            public CollapseCollector newCollector() {
+                                return new CollapseCollector(GROUP_FIELD, maxRows);
+                            }
+
+                            @Override
+                            public CollapseCollector.Query reduce(final Collection<CollapseCollector> collectors) {
+                                return collectors.iterator().next().reduce(new ArrayList<>(collectors));
+                            }
+                        });
+
+                // The best groups are the groups with the best leaders
+                final List<String> bestGroups = new ArrayList<>(expectedLeaders.keySet());
+                bestGroups.sort((g1, g2) -> Integer.compare(expectedLeaders.get(g2), expectedLeaders.get(g1)));
+                final List<String> expectedGroups = bestGroups.subList(0, maxRows);
+
+                final TopDocs leaders = searcher.search(collapseQuery.getQuery(null), expectedLeaders.size() + 1);
+                Assert.assertEquals(maxRows, leaders.scoreDocs.length);
+                final Map<String, Integer> actualCounts = new HashMap<>();
+                for (final ScoreDoc leader : leaders.scoreDocs) {
+                    final int number = leader.doc + 1;
+                    final String group = leaderGroups.get(number);
+                    Assert.assertNotNull("Not a group leader: " + number, group);
+                    actualCounts.put(group, collapseQuery.getCollapsed(leader.doc));
+                }
+                long expectedCollapsed = 0;
+                for (final String group : expectedGroups) {
+                    Assert.assertEquals(group, Integer.valueOf(expectedCounts.get(group) - 1),
+                        actualCounts.get(group));
+                    expectedCollapsed += expectedCounts.get(group) - 1;
+                }
+                Assert.assertEquals(expectedCollapsed, collapseQuery.getCollapsed());
+            }
+        }
+    }
+
+    /**
+     * Three segments, the groups spread over several segments, every fifth document does not match.
+     * The segments have few values: the groups are collected in dense arrays.
+     */
+    @Test
+    public void multiSegmentCounts() throws IOException {
+        final int groups = 7;
+        final int segments = 3;
+        // The last group only exists in the last segment
+        checkCollapse(segments, 100, 4,
+            (segment, i, number) -> segment == segments - 1 && i % 10 == 0 ? "g" + groups : "g" + (number % groups),
+            number -> number % 5 != 0);
+    }
+
+    /**
+     * More than 4096 values per segment, the non matching documents having their own value.
+     * The 200 groups hit by each segment are collected in sparse arrays, grown beyond their initial size.
+     */
+    @Test
+    public void multiSegmentCountsSparse() throws IOException {
+        checkCollapse(3, 6000, 10,
+            (segment, i, number) -> number % 20 == 0 ? "g" + (number / 20 % 200) : "f" + number,
+            number -> number % 20 == 0);
+    }
+
+    /**
+     * More than 4096 values per segment, and enough groups hit (more than a third of the values of the segment)
+     * to switch from the sparse arrays to the dense ones during the collection.
+     */
+    @Test
+    public void multiSegmentCountsSparseToDense() throws IOException {
+        checkCollapse(3, 6000, 10,
+            (segment, i, number) -> number % 2 == 0 ? "g" + (number / 2 % 2500) : "f" + number,
+            number -> number % 2 == 0);
+    }
+
+    private void checkGroupLeader(final CollapseCollector.GroupQueue queue, long ord, int doc, float score) {
+        final CollapseCollector.GroupLeader leader = queue.getGroupLeaders().get(ord);
         Assert.assertNotNull(leader);
         Assert.assertEquals(doc, leader.doc);
         Assert.assertEquals(score, leader.score, 0);
-        Assert.assertEquals(collapsedCount, leader.collapsedCount);
+    }
+
+    private static void offer(final CollapseCollector.GroupQueue queue, long ord, int doc) {
+        queue.offer(new CollapseCollector.GroupLeader(0, 0, ord, doc, doc));
     }
 
     @Test
     public void groupQueueDifferentValues() {
         final CollapseCollector.GroupQueue queue = new CollapseCollector.GroupQueue(3);
-        for (int i = 1; i < 10; i++) {
-            final int doc = i;
-            queue.offer(new BytesRef("test" + i), i, i * 10,
-                (bytesRef, score, collapsed) -> new CollapseCollector.GroupLeader(0, 0, bytesRef, doc, score,
-                    collapsed));
-        }
+        for (int i = 1; i < 10; i++)
+            offer(queue, i, i);
         Assert.assertEquals(3, queue.getGroupLeaders().size());
-        checkGroupLeader(queue, "test7", 7, 7f, 69);
-        checkGroupLeader(queue, "test8", 8, 8f, 79);
-        checkGroupLeader(queue, "test9", 9, 9f, 89);
+        checkGroupLeader(queue, 7, 7, 7f);
+        checkGroupLeader(queue, 8, 8, 8f);
+        checkGroupLeader(queue, 9, 9, 9f);
     }
 
     @Test
     public void groupQueueSameValues() {
         final CollapseCollector.GroupQueue queue = new CollapseCollector.GroupQueue(3);
-        for (int i = 1; i < 10; i++) {
-            final int doc = i;
-            queue.offer(new BytesRef("test"), i, i * 10,
-                (bytesRef, score, collapsed) -> new CollapseCollector.GroupLeader(0, 0, bytesRef, doc, score,
-                    collapsed));
-        }
+        for (int i = 1; i < 10; i++)
+            offer(queue, 0, i);
         Assert.assertEquals(1, queue.getGroupLeaders().size());
-        checkGroupLeader(queue, "test", 9, 9f, 449);
+        checkGroupLeader(queue, 0, 9, 9f);
     }
 
     @Test
     public void groupQueueMixAscendingValues() {
         final CollapseCollector.GroupQueue queue = new CollapseCollector.GroupQueue(3);
-        for (int i = 1; i < 10; i++) {
-            final int doc = i;
-            queue.offer(new BytesRef("test" + i % 2), i, i * 10,
-                (bytesRef, score, collapsed) -> new CollapseCollector.GroupLeader(0, 0, bytesRef, doc, score,
-                    collapsed));
-        }
+        for (int i = 1; i < 10; i++)
+            offer(queue, i % 2, i);
         Assert.assertEquals(2, queue.getGroupLeaders().size());
-        checkGroupLeader(queue, "test0", 8, 8f, 199);
-        checkGroupLeader(queue, "test1", 9, 9f, 249);
+        checkGroupLeader(queue, 0, 8, 8f);
+        checkGroupLeader(queue, 1, 9, 9f);
     }
 
     @Test
     public void groupQueueMixDescendingValues() {
         final CollapseCollector.GroupQueue queue = new CollapseCollector.GroupQueue(3);
-        for (int i = 9; i > 0; i--) {
-            final int doc = i;
-            queue.offer(new BytesRef("test" + i % 2), i, i * 10,
-                (bytesRef, score, collapsed) -> new CollapseCollector.GroupLeader(0, 0, bytesRef, doc, score,
-                    collapsed));
-        }
+        for (int i = 9; i > 0; i--)
+            offer(queue, i % 2, i);
         Assert.assertEquals(2, queue.getGroupLeaders().size());
-        checkGroupLeader(queue, "test0", 8, 8f, 199);
-        checkGroupLeader(queue, "test1", 9, 9f, 249);
+        checkGroupLeader(queue, 0, 8, 8f);
+        checkGroupLeader(queue, 1, 9, 9f);
     }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * The one-pass counts of the facet queries must be the counts of the previous path,
+ * which counted (search query AND facet query) for each facet query.
+ */
+public class FacetQueriesCounterTest {
+
+    private final static int SEGMENTS = 4;
+    private final static int DOCS_PER_SEGMENT = 250;
+
+    private static Directory directory;
+    private static DirectoryReader reader;
+    private static ExecutorService executorService;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        directory = new ByteBuffersDirectory();
+        try (final IndexWriter writer = new IndexWriter(directory,
+            new IndexWriterConfig(new WhitespaceAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE))) {
+            int id = 0;
+            for (int segment = 0; segment < SEGMENTS; segment++) {
+                for (int i = 0; i < DOCS_PER_SEGMENT; i++) {
+                    final Document document = new Document();
+                    document.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+                    document.add(new StringField("tag", "t" + (id % 4), Field.Store.NO));
+                    document.add(new TextField("body",
+                        (id % 2 == 0 ? "alpha beta" : "beta alpha") + (id % 3 == 0 ? " gamma" : ""), Field.Store.NO));
+                    writer.addDocument(document);
+                    id++;
+                }
+                writer.commit();
+            }
+            // Deleted documents in some segments
+            for (int i = 0; i < SEGMENTS * DOCS_PER_SEGMENT; i += 7)
+                writer.deleteDocuments(new Term("id", Integer.toString(i)));
+            writer.commit();
+        }
+        reader = DirectoryReader.open(directory);
+        executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        executorService.shutdown();
+        reader.close();
+        directory.close();
+    }
+
+    private static Query searchQuery() {
+        return new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("tag", "t0")), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("tag", "t1")), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("tag", "t3")), BooleanClause.Occur.SHOULD)
+            .build();
+    }
+
+    private static List<Query> facetQueries() {
+        // The phrase query is a two-phase query
+        final Query phrase = new PhraseQuery("body", "alpha", "beta");
+        return Arrays.asList(
+            phrase,
+            new TermQuery(new Term("body", "gamma")),
+            new BooleanQuery.Builder()
+                .add(phrase, BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term("body", "gamma")), BooleanClause.Occur.MUST)
+                .build(),
+            new TermQuery(new Term("body", "missing")),
+            new MatchAllDocsQuery());
+    }
+
+    private static int[] previousCounts(final IndexSearcher searcher, final Query searchQuery,
+                                        final List<Query> facetQueries) throws IOException {
+        final int[] counts = new int[facetQueries.size()];
+        int i = 0;
+        for (final Query facetQuery : facetQueries)
+            counts[i++] = searcher.count(new BooleanQuery.Builder()
+                .add(searchQuery, BooleanClause.Occur.FILTER)
+                .add(facetQuery, BooleanClause.Occur.FILTER)
+                .build());
+        return counts;
+    }
+
+    private static void checkCounts(final Query searchQuery) throws IOException {
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        final FacetsCollector facetsCollector = new FacetsCollector();
+        searcher.search(searchQuery, facetsCollector);
+        final List<Query> facetQueries = facetQueries();
+        final int[] expected = previousCounts(searcher, searchQuery, facetQueries);
+        final FacetQueriesCounter counter =
+            new FacetQueriesCounter(searcher, facetsCollector.getMatchingDocs(), facetQueries);
+        Assert.assertArrayEquals(expected, counter.count(null));
+        Assert.assertArrayEquals(expected, counter.count(executorService));
+    }
+
+    @Test
+    public void multiSegment() throws IOException {
+        Assert.assertEquals(SEGMENTS, reader.leaves().size());
+        Assert.assertTrue(reader.hasDeletions());
+        checkCounts(searchQuery());
+    }
+
+    @Test
+    public void twoPhaseSearchQuery() throws IOException {
+        checkCounts(new PhraseQuery("body", "beta", "alpha"));
+    }
+
+    @Test
+    public void noMatch() throws IOException {
+        checkCounts(new TermQuery(new Term("tag", "none")));
+    }
+}
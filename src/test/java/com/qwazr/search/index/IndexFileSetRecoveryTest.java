@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.CustomFieldDefinition;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.query.HasTerm;
+import com.qwazr.utils.FileUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * An index reopened after an interrupted swap of its rebuilt data directory
+ * gets the field map of the data directory kept by the recovery.
+ */
+public class IndexFileSetRecoveryTest {
+
+    private final static String PREVIOUS = "previous";
+    private final static String REBUILT = "rebuilt";
+    private final static String INDEX = "recovered";
+
+    private Path sourceRoot;
+    private Path indexRoot;
+    private Path indexDirectory;
+
+    private static void createIndex(final IndexServiceInterface service, final String indexName,
+                                    final String field, final int docs) {
+        service.createUpdateIndex(indexName, IndexSettingsDefinition.of().primaryKey("id").build());
+        final CustomFieldDefinition stringField =
+            CustomFieldDefinition.of().template(FieldDefinition.Template.StringField).stored(true).build();
+        service.setField(indexName, "id", stringField);
+        service.setField(indexName, field, stringField);
+        for (int i = 0; i < docs; i++) {
+            final Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("id", Integer.toString(i));
+            doc.put(field, "value");
+            service.postMappedDocument(indexName, PostDefinition.of(doc, null));
+        }
+    }
+
+    /**
+     * The data directory and the field map of the "previous" index hold the field "a" and one document,
+     * the ones of the "rebuilt" index hold the field "b" and two documents.
+     */
+    @Before
+    public void setup() throws IOException {
+        sourceRoot = Files.createTempDirectory("qwazr_recovery_source");
+        final IndexManager indexManager = new IndexManager(sourceRoot, null);
+        try {
+            createIndex(indexManager.getService(), PREVIOUS, "a", 1);
+            createIndex(indexManager.getService(), REBUILT, "b", 2);
+        } finally {
+            indexManager.close();
+        }
+        indexRoot = Files.createTempDirectory("qwazr_recovery_index");
+        indexDirectory = indexRoot.resolve(INDEX);
+        FileUtils.copyDirectory(sourceRoot.resolve(PREVIOUS).toFile(), indexDirectory.toFile());
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        FileUtils.deleteDirectory(sourceRoot);
+        FileUtils.deleteDirectory(indexRoot);
+    }
+
+    private void copyRebuilt(final String source, final String target) throws IOException {
+        final Path sourcePath = sourceRoot.resolve(REBUILT).resolve(source);
+        final Path targetPath = indexDirectory.resolve(target);
+        if (Files.isDirectory(sourcePath))
+            FileUtils.copyDirectory(sourcePath.toFile(), targetPath.toFile());
+        else
+            Files.copy(sourcePath, targetPath);
+    }
+
+    private void move(final String source, final String target) throws IOException {
+        Files.move(indexDirectory.resolve(source), indexDirectory.resolve(target));
+    }
+
+    private void checkRecovered(final String field, final long numDocs) {
+        final IndexManager indexManager = new IndexManager(indexRoot, null);
+        try {
+            final IndexServiceInterface service = indexManager.getService();
+            Assert.assertEquals(new HashSet<>(Arrays.asList("id", field)), service.getFields(INDEX).keySet());
+            Assert.assertEquals(Long.valueOf(numDocs), service.getIndex(INDEX).numDocs);
+            Assert.assertEquals(numDocs, service.searchQuery(INDEX,
+                QueryDefinition.of(new HasTerm(field, "value")).build(), false).totalHits);
+        } finally {
+            indexManager.close();
+        }
+        Assert.assertTrue(Files.notExists(indexDirectory.resolve(IndexFileSet.INDEX_DATA_PREVIOUS)));
+        Assert.assertTrue(Files.notExists(indexDirectory.resolve(IndexFileSet.FIELDS_REBUILD_FILE)));
+        Assert.assertTrue(Files.notExists(indexDirectory.resolve(IndexFileSet.FIELDS_PREVIOUS_FILE)));
+    }
+
+    /**
+     * The field map of the rebuilt index is written, the data directory is not moved yet.
+     */
+    @Test
+    public void beforeTheDataDirectoryIsMoved() throws IOException {
+        copyRebuilt(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_REBUILD);
+        copyRebuilt(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_REBUILD_FILE);
+        checkRecovered("a", 1);
+    }
+
+    /**
+     * The data directory is kept aside, the rebuilt index is not moved yet.
+     */
+    @Test
+    public void beforeTheRebuiltDirectoryIsMoved() throws IOException {
+        copyRebuilt(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_REBUILD);
+        copyRebuilt(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_REBUILD_FILE);
+        move(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_DATA_PREVIOUS);
+        checkRecovered("a", 1);
+    }
+
+    /**
+     * The rebuilt index is the data directory, the field map is still the previous one.
+     */
+    @Test
+    public void beforeTheFieldMapIsKeptAside() throws IOException {
+        copyRebuilt(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_REBUILD_FILE);
+        move(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_DATA_PREVIOUS);
+        copyRebuilt(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_DATA);
+        checkRecovered("b", 2);
+    }
+
+    /**
+     * The previous field map is kept aside, the rebuilt one is not moved yet.
+     */
+    @Test
+    public void beforeTheRebuiltFieldMapIsMoved() throws IOException {
+        copyRebuilt(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_REBUILD_FILE);
+        move(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_DATA_PREVIOUS);
+        copyRebuilt(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_DATA);
+        move(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_PREVIOUS_FILE);
+        checkRecovered("b", 2);
+    }
+
+    /**
+     * The swap is done, the previous data directory and field map are not deleted yet.
+     */
+    @Test
+    public void beforeThePreviousDataDirectoryIsDeleted() throws IOException {
+        move(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_DATA_PREVIOUS);
+        copyRebuilt(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_DATA);
+        move(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_PREVIOUS_FILE);
+        copyRebuilt(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_FILE);
+        checkRecovered("b", 2);
+    }
+
+    /**
+     * A failed swap is restored: the previous data directory is back, not its field map.
+     */
+    @Test
+    public void beforeThePreviousFieldMapIsRestored() throws IOException {
+        copyRebuilt(IndexFileSet.INDEX_DATA, IndexFileSet.INDEX_REBUILD);
+        copyRebuilt(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_REBUILD_FILE);
+        move(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_PREVIOUS_FILE);
+        copyRebuilt(IndexFileSet.FIELDS_FILE, IndexFileSet.FIELDS_FILE);
+        checkRecovered("a", 1);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The parallel indexing routes the documents sharing a key to the same partition,
+ * and spreads the documents without key value across all the partitions.
+ */
+public class WriteContextPartitionTest {
+
+    private final static int THREADS = 4;
+    private final static int DOCS = 2000;
+    private final static int KEYS = 500;
+
+    public static class Doc {
+
+        final String id;
+        final String title;
+
+        Doc(final String id, final String title) {
+            this.id = id;
+            this.title = title;
+        }
+    }
+
+    private static <D> void checkSpread(final List<List<D>> partitions) {
+        Assert.assertEquals(THREADS, partitions.size());
+        for (final List<D> partition : partitions)
+            Assert.assertEquals(DOCS / THREADS, partition.size());
+    }
+
+    @Test
+    public void mappedDocumentsWithoutKeys() {
+        final List<Map<String, Object>> docs = new ArrayList<>(DOCS);
+        for (int i = 0; i < DOCS; i++) {
+            final Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("title", "Title " + i);
+            docs.add(doc);
+        }
+        checkSpread(WriteContextImpl.partition(THREADS, docs, doc -> doc.get("id")));
+    }
+
+    @Test
+    public void objectDocumentsWithoutKeys() {
+        final List<Doc> docs = new ArrayList<>(DOCS);
+        for (int i = 0; i < DOCS; i++)
+            docs.add(new Doc(null, "Title " + i));
+        checkSpread(WriteContextImpl.partition(THREADS, docs, doc -> doc.id));
+    }
+
+    @Test
+    public void sameKeySamePartition() {
+        final List<Doc> docs = new ArrayList<>(DOCS);
+        for (int i = 0; i < DOCS; i++)
+            docs.add(new Doc(i % 10 == 0 ? null : Integer.toString(i % KEYS), "Title " + i));
+        final Map<String, Integer> keyPartitions = new HashMap<>();
+        int count = 0;
+        int partitionIndex = 0;
+        for (final List<Doc> partition : WriteContextImpl.partition(THREADS, docs, doc -> doc.id)) {
+            Assert.assertFalse(partition.isEmpty());
+            final int current = partitionIndex;
+            for (final Doc doc : partition)
+                if (doc.id != null)
+                    Assert.assertEquals(current, (int) keyPartitions.computeIfAbsent(doc.id, id -> current));
+            count += partition.size();
+            partitionIndex++;
+        }
+        Assert.assertEquals(DOCS, count);
+    }
+}
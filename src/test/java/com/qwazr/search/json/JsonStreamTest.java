@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.qwazr.search.index.IndexJsonStreamResult;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.test.units.AbstractIndexTest;
+import com.qwazr.utils.ObjectMappers;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JsonStreamTest extends AbstractIndexTest {
+
+    private final static String INDEX = "jsonStreamIndex";
+
+    static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+        service.createUpdateIndex(INDEX,
+            IndexSettingsDefinition.of().recordField("record").primaryKey("id").build());
+    }
+
+    private static ObjectNode newDoc(final int id) {
+        final ObjectNode doc = ObjectMappers.JSON.createObjectNode();
+        doc.put("id", Integer.toString(id));
+        doc.put("title", "Title " + id);
+        return doc;
+    }
+
+    private static byte[] ndJson(final int from, final int to) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++)
+            sb.append(ObjectMappers.JSON.writeValueAsString(newDoc(i))).append('\n');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] smile(final int from, final int to) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (final JsonGenerator generator = ObjectMappers.SMILE.getFactory().createGenerator(output)) {
+            for (int i = from; i < to; i++)
+                ObjectMappers.SMILE.writeTree(generator, newDoc(i));
+        }
+        return output.toByteArray();
+    }
+
+    private static void checkDoc(final int id) {
+        final Map<String, Object> doc = service.getDocument(INDEX, Integer.toString(id));
+        Assert.assertNotNull(doc);
+        Assert.assertEquals("Title " + id, doc.get("title"));
+    }
+
+    @Test
+    public void ndJsonStream() throws IOException {
+        final byte[] bytes = ndJson(0, 25);
+        final IndexJsonStreamResult result =
+            service.postJsonStream(INDEX, true, 10, null, new ByteArrayInputStream(bytes));
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(Long.valueOf(25), result.count);
+        Assert.assertEquals(Long.valueOf(bytes.length), result.bytes);
+        Assert.assertEquals(3, result.batches.size());
+        Assert.assertEquals(Long.valueOf(20), result.batches.get(2).position);
+        Assert.assertEquals(Integer.valueOf(5), result.batches.get(2).count);
+        Assert.assertNotNull(result.fieldTypes);
+        checkDoc(0);
+        checkDoc(24);
+    }
+
+    @Test
+    public void smileStream() throws IOException {
+        final IndexJsonStreamResult result =
+            service.postJsonStream(INDEX, false, 4, null, new ByteArrayInputStream(smile(100, 110)));
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(Long.valueOf(10), result.count);
+        Assert.assertEquals(3, result.batches.size());
+        Assert.assertNull(result.fieldTypes);
+        checkDoc(100);
+        checkDoc(109);
+    }
+
+    @Test
+    public void malformedStream() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(ndJson(200, 205));
+        output.write("{\"id\": \"205\", \"title\": ".getBytes(StandardCharsets.UTF_8));
+        final IndexJsonStreamResult result =
+            service.postJsonStream(INDEX, false, 5, null, new ByteArrayInputStream(output.toByteArray()));
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals(Long.valueOf(5), result.count);
+        Assert.assertEquals(2, result.batches.size());
+        Assert.assertNotNull(result.batches.get(1).error);
+        checkDoc(204);
+    }
+}
@@ -125,7 +125,31 @@ public abstract class AbstractReindexTest extends AbstractIndexTest {
         assertThat(reindexStatus.start, notNullValue());
         assertThat(reindexStatus.end, greaterThanOrEqualTo(date));
         assertThat(reindexStatus.completion, equalTo(100F));
+        assertThat(reindexStatus.total, equalTo(1000L));
+        assertThat(reindexStatus.completed, equalTo(1000L));
+        assertThat(reindexStatus.segments, notNullValue());
+        assertThat(reindexStatus.segments.stream().mapToLong(segment -> segment.docs).sum(), equalTo(1000L));
+        assertThat(reindexStatus.segments.stream().mapToLong(segment -> segment.indexed).sum(), equalTo(1000L));
 
         assertThat(service.getIndex(INDEX).numDocs, equalTo(1000L));
     }
+
+    @Test
+    public void test20ThrottledReindex() throws InterruptedException {
+        final ReindexDefinition startStatus = service.startReindex(INDEX, 50, 2, 2000);
+        assertThat(startStatus.error, nullValue());
+        WaitFor.of()
+            .pauseTime(TimeUnit.MILLISECONDS, 100)
+            .timeOut(TimeUnit.MINUTES, 1)
+            .until(() -> {
+                final ReindexDefinition reindexStatus = service.getReindexStatus(INDEX);
+                assertThat(reindexStatus.error, nullValue());
+                return reindexStatus.status == ReindexDefinition.Status.done;
+            });
+        final ReindexDefinition reindexStatus = service.getReindexStatus(INDEX);
+        assertThat(reindexStatus.completed, equalTo(1000L));
+        // 1000 records at 2000 records per second, the first batch is not delayed
+        assertThat(reindexStatus.end.getTime() - reindexStatus.start.getTime(), greaterThanOrEqualTo(400L));
+        assertThat(service.getIndex(INDEX).numDocs, equalTo(1000L));
+    }
 }
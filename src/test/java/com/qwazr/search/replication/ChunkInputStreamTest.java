@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ChunkInputStreamTest {
+
+    private static Path file;
+    private static byte[] content;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        content = new byte[100_000];
+        new Random(0).nextBytes(content);
+        file = Files.createTempFile("chunk", ".bin");
+        Files.write(file, content);
+    }
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static byte[] readChunk(final long offset, final int length) throws IOException {
+        final byte[] buffer = new byte[length];
+        try (final InputStream input = new ChunkInputStream(file, offset, length, BandwidthLimiter.UNLIMITED)) {
+            ChunkInputStream.readChunk(input, buffer, length, BandwidthLimiter.UNLIMITED);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void readRanges() throws IOException {
+        assertThat(readChunk(0, content.length), equalTo(content));
+        assertThat(readChunk(1000, 5000), equalTo(Arrays.copyOfRange(content, 1000, 6000)));
+        assertThat(readChunk(content.length - 10, 10),
+            equalTo(Arrays.copyOfRange(content, content.length - 10, content.length)));
+    }
+
+    @Test
+    public void wrongRange() {
+        Assert.assertThrows(IOException.class, () -> readChunk(content.length - 10, 20));
+    }
+
+    @Test
+    public void corruptedChunk() throws IOException {
+        final byte[] chunk;
+        try (final InputStream input = new ChunkInputStream(file, 0, 1000, BandwidthLimiter.UNLIMITED)) {
+            chunk = input.readAllBytes();
+        }
+        assertThat(chunk.length, equalTo(1000 + ChunkInputStream.CHECKSUM_BYTES));
+        chunk[500] ^= 1;
+        final IOException e = Assert.assertThrows(IOException.class, () -> ChunkInputStream.readChunk(
+            new ByteArrayInputStream(chunk), new byte[1000], 1000, BandwidthLimiter.UNLIMITED));
+        assertThat(e.getMessage().startsWith("Chunk checksum mismatch"), equalTo(true));
+    }
+
+    @Test
+    public void truncatedChunk() throws IOException {
+        final byte[] chunk;
+        try (final InputStream input = new ChunkInputStream(file, 0, 1000, BandwidthLimiter.UNLIMITED)) {
+            chunk = input.readNBytes(600);
+        }
+        Assert.assertThrows(EOFException.class, () -> ChunkInputStream.readChunk(
+            new ByteArrayInputStream(chunk), new byte[1000], 1000, BandwidthLimiter.UNLIMITED));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.IsEqual.equalTo;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CompressedChunkInputStreamTest {
+
+    private static Path textFile;
+    private static byte[] text;
+    private static Path randomFile;
+    private static byte[] random;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        final Random rnd = new Random(0);
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < 300_000)
+            sb.append("term").append(rnd.nextInt(1000)).append(' ');
+        text = sb.toString().getBytes(StandardCharsets.UTF_8);
+        textFile = Files.createTempFile("chunk", ".tim");
+        Files.write(textFile, text);
+        random = new byte[200_000];
+        rnd.nextBytes(random);
+        randomFile = Files.createTempFile("chunk", ".doc");
+        Files.write(randomFile, random);
+    }
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        Files.deleteIfExists(textFile);
+        Files.deleteIfExists(randomFile);
+    }
+
+    private static byte[] encode(final Path file, final long offset, final int length, final Compression compression,
+                                 final Integer level, final CompressionStats stats) throws IOException {
+        try (final InputStream input = new CompressedChunkInputStream(
+            new ChunkInputStream(file, offset, length, BandwidthLimiter.UNLIMITED), length, compression, level,
+            BandwidthLimiter.UNLIMITED, stats)) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static byte[] encode(final Path file, final long offset, final int length, final Compression compression,
+                                 final Integer level) throws IOException {
+        return encode(file, offset, length, compression, level, new CompressionStats());
+    }
+
+    private static byte[] decode(final byte[] chunk, final int length,
+                                 final CompressedChunkInputStream.Decoder decoder) throws IOException {
+        final byte[] buffer = new byte[length];
+        decoder.readChunk(new ByteArrayInputStream(chunk), buffer, length, BandwidthLimiter.UNLIMITED);
+        return buffer;
+    }
+
+    private static void checkRoundTrip(final Compression compression, final Integer level) throws IOException {
+        final CompressedChunkInputStream.Decoder decoder = new CompressedChunkInputStream.Decoder();
+        final CompressionStats stats = new CompressionStats();
+        final byte[] chunk = encode(textFile, 0, text.length, compression, level, stats);
+        assertThat(decode(chunk, text.length, decoder), equalTo(text));
+        assertThat(decoder.getWireBytes(), equalTo((long) chunk.length));
+        // The compressed blocks are counted on the master, with their length header
+        if (compression == Compression.NONE)
+            assertThat(stats.getBlockCount(), equalTo(0L));
+        else {
+            assertThat(stats.getRawBytes(), equalTo((long) text.length));
+            assertThat(stats.getCompressedBytes(), lessThan(stats.getRawBytes()));
+            assertThat(stats.getEncodeNanos(), greaterThan(0L));
+        }
+        if (compression != Compression.NONE)
+            assertThat(chunk.length, lessThan(text.length / 2));
+        assertThat(decode(encode(textFile, 1000, 5000, compression, level), 5000, decoder),
+            equalTo(Arrays.copyOfRange(text, 1000, 6000)));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        checkRoundTrip(Compression.NONE, null);
+        checkRoundTrip(Compression.LZ4, null);
+        checkRoundTrip(Compression.LZ4, 9);
+        checkRoundTrip(Compression.DEFLATE, 1);
+        checkRoundTrip(Compression.DEFLATE, null);
+    }
+
+    @Test
+    public void incompressibleBlocks() throws IOException {
+        final CompressedChunkInputStream.Decoder decoder = new CompressedChunkInputStream.Decoder();
+        for (final Compression compression : Compression.values()) {
+            final byte[] chunk = encode(randomFile, 0, random.length, compression, null);
+            // The blocks are sent raw, only their headers are added
+            assertThat(chunk.length, lessThan(random.length + 100));
+            assertThat(decode(chunk, random.length, decoder), equalTo(random));
+        }
+    }
+
+    @Test
+    public void compressionPerFileType() {
+        assertThat(Compression.forFile(Compression.LZ4, "_0.tim"), equalTo(Compression.LZ4));
+        assertThat(Compression.forFile(Compression.LZ4, "_0.fdt"), equalTo(Compression.NONE));
+        assertThat(Compression.forFile(Compression.DEFLATE, "synonyms.txt.gz"), equalTo(Compression.NONE));
+        assertThat(Compression.forFile(Compression.DEFLATE, "segments_2"), equalTo(Compression.DEFLATE));
+        assertThat(Compression.forFile(null, "_0.tim"), equalTo(Compression.NONE));
+    }
+
+    @Test
+    public void corruptedChunk() throws IOException {
+        final byte[] chunk = encode(textFile, 0, text.length, Compression.LZ4, null);
+        chunk[chunk.length / 2] ^= 1;
+        final IOException e = Assert.assertThrows(IOException.class,
+            () -> decode(chunk, text.length, new CompressedChunkInputStream.Decoder()));
+        assertThat(e.getMessage().length(), greaterThan(0));
+    }
+
+    @Test
+    public void truncatedChunk() throws IOException {
+        final byte[] chunk = encode(textFile, 0, text.length, Compression.DEFLATE, null);
+        Assert.assertThrows(EOFException.class, () -> decode(Arrays.copyOf(chunk, chunk.length - 20), text.length,
+            new CompressedChunkInputStream.Decoder()));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qwazr.search.replication;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.ReplicationStatus;
+import com.qwazr.search.test.AnnotatedRecord;
+import com.qwazr.utils.WaitFor;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The slave replicates in the background the changes of the master (long polling)
+ */
+public class ReplicationLongPollTest extends ReplicationTestManager {
+
+    private final static String MASTER = "master";
+
+    @Override
+    public AnnotatedIndexService<AnnotatedRecord> getMaster() throws URISyntaxException {
+        return new AnnotatedIndexService<>(service, AnnotatedRecord.class, MASTER, IndexSettingsDefinition.of()
+            .enableTaxonomyIndex(true)
+            .build());
+    }
+
+    @Override
+    public List<AnnotatedIndexService<AnnotatedRecord>> getSlaves() throws URISyntaxException {
+        return Collections.singletonList(new AnnotatedIndexService<>(service, AnnotatedRecord.class, "slave",
+            IndexSettingsDefinition.of()
+                .master(MASTER)
+                .enableTaxonomyIndex(true)
+                .replicationLongPollMs(1000)
+                .build()));
+    }
+
+    private void waitForSlave(final long expectedNumDocs) throws InterruptedException {
+        WaitFor.of()
+            .pauseTime(TimeUnit.MILLISECONDS, 100)
+            .timeOut(TimeUnit.MINUTES, 1)
+            .until(() -> slaves.get(0).getIndexStatus().numDocs == expectedNumDocs);
+    }
+
+    @Test
+    public void test() throws IOException, InterruptedException {
+        final String version = service.replicationVersion(MASTER, null, 0L);
+        Assert.assertNotNull(version);
+        // Nothing changed: the long polling returns the same version once the timeout expired
+        Assert.assertEquals(version, service.replicationVersion(MASTER, version, 200L));
+
+        master.postDocuments(AnnotatedRecord.randomList(1000, count -> count));
+        final String newVersion = service.replicationVersion(MASTER, version, 0L);
+        Assert.assertNotEquals(version, newVersion);
+
+        // The slave replicates without any explicit replication check
+        waitForSlave(1000);
+
+        // The slave is up to date, there is nothing to transfer
+        Assert.assertEquals(0,
+            checkReplicationStatus(slaves.get(0).replicationCheck(), ReplicationStatus.Strategy.incremental,
+                0).bytes);
+
+        master.postDocuments(AnnotatedRecord.randomList(1000, count -> count + 1000));
+        waitForSlave(2000);
+        compareMasterAndSlaveRecords(null);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.PostDefinition;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CommitPolicyTest extends AbstractIndexTest {
+
+    private final static String GROUP_INDEX = "groupCommitIndex";
+    private final static String SINGLE_WRITER_INDEX = "groupCommitSingleWriterIndex";
+    private final static String NRT_INDEX = "nrtRefreshIndex";
+
+    static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+        service.createUpdateIndex(GROUP_INDEX, IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .commitPolicy(IndexSettingsDefinition.CommitPolicy.GROUP_COMMIT)
+            .commitMaxLatencyMs(20)
+            .build());
+        service.createUpdateIndex(SINGLE_WRITER_INDEX, IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .maxConcurrentWrite(1)
+            .commitPolicy(IndexSettingsDefinition.CommitPolicy.GROUP_COMMIT)
+            .commitMaxLatencyMs(200)
+            .build());
+        service.createUpdateIndex(NRT_INDEX, IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .commitPolicy(IndexSettingsDefinition.CommitPolicy.NRT_REFRESH)
+            .commitMaxLatencyMs(60000)
+            .build());
+    }
+
+    private static void postDoc(final String indexName, final String id) {
+        final Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("id", id);
+        Assert.assertEquals(Integer.valueOf(1), service.postMappedDocument(indexName, PostDefinition.of(doc, null)));
+    }
+
+    private static long postConcurrently(final String indexName, final int docs)
+        throws InterruptedException, ExecutionException {
+        final Long initialGeneration = service.getIndex(indexName).commitGeneration;
+        final long generation = initialGeneration == null ? 0 : initialGeneration;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < docs; i++) {
+                final String id = Integer.toString(i);
+                futures.add(executor.submit(() -> postDoc(indexName, id)));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        final IndexStatus status = service.getIndex(indexName);
+        // Every caller has returned after its group was committed
+        Assert.assertEquals(Long.valueOf(docs), status.numDocs);
+        Assert.assertFalse(status.hasUncommittedChanges);
+        return status.commitGeneration - generation;
+    }
+
+    @Test
+    public void groupCommit() throws InterruptedException, ExecutionException {
+        // The commits have been shared
+        Assert.assertTrue(postConcurrently(GROUP_INDEX, 100) < 100);
+    }
+
+    @Test
+    public void groupCommitWithOneConcurrentWrite() throws InterruptedException, ExecutionException {
+        // The write semaphore is released before waiting for the commit, the next writes join the group
+        Assert.assertTrue(postConcurrently(SINGLE_WRITER_INDEX, 16) < 16);
+    }
+
+    @Test
+    public void nrtRefresh() {
+        postDoc(NRT_INDEX, "1");
+        IndexStatus status = service.getIndex(NRT_INDEX);
+        // Visible, but not yet committed
+        Assert.assertEquals(Long.valueOf(1), status.numDocs);
+        Assert.assertTrue(status.hasUncommittedChanges);
+        // Explicit durability
+        status = service.commitIndex(NRT_INDEX);
+        Assert.assertFalse(status.hasUncommittedChanges);
+    }
+}
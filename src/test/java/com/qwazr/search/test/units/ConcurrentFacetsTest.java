@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.index.FacetDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.MatchAllDocs;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ConcurrentFacetsTest extends AbstractIndexTest.WithIndexRecord.WithTaxonomy {
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException {
+        initIndexService();
+        // Several posts to get several segments
+        int id = 0;
+        for (int segment = 0; segment < 4; segment++) {
+            final List<IndexRecord.WithTaxonomy> records = new ArrayList<>();
+            for (int i = 0; i < 50; i++, id++)
+                records.add(new IndexRecord.WithTaxonomy(Integer.toString(id))
+                    .facetField("facet" + (id % 7))
+                    .sortedSetDocValuesFacetField("sorted" + (id % 5))
+                    .intAssociatedFacet(id % 3, "int" + (id % 4))
+                    .floatAssociatedFacet((id % 3) / 2f, "float" + (id % 4)));
+            indexService.postDocuments(records);
+        }
+    }
+
+    private ResultDefinition<?> search(final Boolean concurrentFacets) {
+        return indexService.searchQuery(QueryDefinition.of(MatchAllDocs.INSTANCE)
+            .facet("facetField", FacetDefinition.EMPTY)
+            .facet("sortedSetDocValuesFacetField", FacetDefinition.EMPTY)
+            .facet("intAssociatedFacet", FacetDefinition.EMPTY)
+            .facet("floatAssociatedFacet", FacetDefinition.EMPTY)
+            .concurrentFacets(concurrentFacets)
+            .build());
+    }
+
+    @Test
+    public void sameFacetsAsSingleThreaded() {
+        final ResultDefinition<?> expected = search(false);
+        Assert.assertEquals(200, expected.totalHits);
+        Assert.assertEquals(7, expected.facets.get("facetField").size());
+        Assert.assertEquals(5, expected.facets.get("sortedSetDocValuesFacetField").size());
+        Assert.assertEquals(4, expected.facets.get("intAssociatedFacet").size());
+        Assert.assertEquals(4, expected.facets.get("floatAssociatedFacet").size());
+        final ResultDefinition<?> concurrent = search(true);
+        Assert.assertEquals(expected.totalHits, concurrent.totalHits);
+        Assert.assertEquals(expected.facets, concurrent.facets);
+        Assert.assertEquals(expected.facets, search(null).facets);
+    }
+}
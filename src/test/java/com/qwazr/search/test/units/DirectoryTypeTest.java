@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.PostDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.MatchAllDocs;
+import com.qwazr.utils.ObjectMappers;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DirectoryTypeTest extends AbstractIndexTest {
+
+    static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+    }
+
+    private static IndexStatus checkIndex(final String indexName, final IndexSettingsDefinition settings) {
+        service.createUpdateIndex(indexName, settings);
+        for (int i = 0; i < 10; i++) {
+            final Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("id", Integer.toString(i));
+            service.postMappedDocument(indexName, PostDefinition.of(doc, null));
+        }
+        Assert.assertEquals(10,
+            service.searchQuery(indexName, QueryDefinition.of(MatchAllDocs.INSTANCE).build(), false).totalHits);
+        return service.getIndex(indexName);
+    }
+
+    @Test
+    public void mmapDirectory() {
+        final IndexStatus status = checkIndex("mmapIndex", IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .type(IndexSettingsDefinition.Type.MMapDirectory)
+            .mmapMaxChunkSizeMB(16)
+            .build());
+        Assert.assertEquals(MMapDirectory.class.getName(), status.directoryClass);
+    }
+
+    @Test
+    public void mmapDirectoryWithPreload() {
+        final IndexStatus status = checkIndex("mmapPreloadIndex", IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .type(IndexSettingsDefinition.Type.MMapDirectory)
+            .mmapPreloadExtensions(".tip", "dvd")
+            .build());
+        Assert.assertEquals(FileSwitchDirectory.class.getName(), status.directoryClass);
+    }
+
+    @Test
+    public void niofsDirectory() {
+        final IndexStatus status = checkIndex("niofsIndex", IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .type(IndexSettingsDefinition.Type.NIOFSDirectory)
+            .build());
+        Assert.assertEquals(NIOFSDirectory.class.getName(), status.directoryClass);
+    }
+
+    @Test
+    public void byteBuffersDirectoryOffHeap() {
+        final IndexStatus status = checkIndex("offHeapIndex", IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .type(IndexSettingsDefinition.Type.ByteBuffersDirectory)
+            .byteBuffersOffHeap(true)
+            .build());
+        Assert.assertEquals(ByteBuffersDirectory.class.getName(), status.directoryClass);
+        Assert.assertTrue(status.directoryMemoryOffHeap);
+        Assert.assertTrue(status.directoryMemoryBytesSize > 0);
+        Assert.assertNull(status.directoryCachedFiles);
+    }
+
+    @Test
+    public void ramDirectoryIsByteBuffersDirectory() {
+        final IndexStatus status = checkIndex("ramIndex", IndexSettingsDefinition.of()
+            .recordField("record")
+            .primaryKey("id")
+            .type(IndexSettingsDefinition.Type.RAMDirectory)
+            .build());
+        Assert.assertEquals(ByteBuffersDirectory.class.getName(), status.directoryClass);
+        Assert.assertFalse(status.directoryMemoryOffHeap);
+        Assert.assertTrue(status.directoryMemoryBytesSize > 0);
+    }
+
+    @Test
+    public void settingsSerialization() throws IOException {
+        final IndexSettingsDefinition settings = IndexSettingsDefinition.of()
+            .type(IndexSettingsDefinition.Type.MMapDirectory)
+            .mmapMaxChunkSizeMB(64)
+            .mmapUseUnmap(false)
+            .mmapPreloadExtensions("tip", "dvd")
+            .build();
+        final IndexSettingsDefinition read = ObjectMappers.JSON.readValue(
+            ObjectMappers.JSON.writeValueAsString(settings), IndexSettingsDefinition.class);
+        Assert.assertEquals(settings, read);
+    }
+}
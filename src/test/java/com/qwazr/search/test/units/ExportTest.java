@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.IntegerRange;
+import com.qwazr.utils.ObjectMappers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ExportTest extends AbstractIndexTest.WithIndexRecord.NoTaxonomy {
+
+    private final static int SEGMENTS = 4;
+    private final static int DOCS_PER_SEGMENT = 250;
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException {
+        initIndexService();
+        int id = 0;
+        for (int s = 0; s < SEGMENTS; s++) {
+            final List<IndexRecord.NoTaxonomy> records = new ArrayList<>();
+            for (int i = 0; i < DOCS_PER_SEGMENT; i++, id++)
+                records.add(new IndexRecord.NoTaxonomy(Integer.toString(id)).intPoint(id).storedField("doc" + id));
+            indexService.postDocuments(records);
+        }
+    }
+
+    private static List<String> export(final boolean parallel) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        indexService.exportQuery(QueryDefinition.of(new IntegerRange("intPoint", 100, 899))
+            .returnedField("storedField")
+            .build(), parallel, output);
+        final List<String> values = new ArrayList<>();
+        for (final String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            final JsonNode node = ObjectMappers.JSON.readTree(line);
+            Assert.assertEquals(1, node.size());
+            values.add(node.get("storedField").asText());
+        }
+        return values;
+    }
+
+    @Test
+    public void indexOrder() throws IOException {
+        final List<String> values = export(false);
+        Assert.assertEquals(800, values.size());
+        for (int i = 0; i < values.size(); i++)
+            Assert.assertEquals("doc" + (i + 100), values.get(i));
+    }
+
+    @Test
+    public void parallel() throws IOException {
+        final Set<String> expected = new TreeSet<>(export(false));
+        final List<String> values = export(true);
+        Assert.assertEquals(expected.size(), values.size());
+        Assert.assertEquals(expected, new TreeSet<>(values));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.index.IndexMetrics;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.MatchAllDocs;
+import com.qwazr.utils.ObjectMappers;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.util.Set;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class IndexMetricsTest extends AbstractIndexTest.WithIndexRecord.NoTaxonomy {
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException {
+        initIndexService();
+        indexService.postDocument(new IndexRecord.NoTaxonomy("1").storedField("doc1"));
+        indexService.postDocument(new IndexRecord.NoTaxonomy("2").storedField("doc2"));
+        indexService.postDocument(new IndexRecord.NoTaxonomy("3").storedField("doc3"));
+    }
+
+    private static long count(final IndexMetrics metrics, final String phase) {
+        final IndexMetrics.LatencyStats stats = metrics.phases.get(phase);
+        Assert.assertNotNull(stats);
+        return stats.count;
+    }
+
+    @Test
+    public void countersAndPhases() {
+        final IndexMetrics before = indexService.getIndexMetrics();
+        final ResultDefinition.WithObject<IndexRecord.NoTaxonomy> result = indexService.searchQuery(
+            QueryDefinition.of(MatchAllDocs.INSTANCE).rows(2).returnedField("storedField").build());
+        Assert.assertEquals(3, result.totalHits);
+        final IndexMetrics after = indexService.getIndexMetrics();
+
+        Assert.assertEquals(before.queries + 1, (long) after.queries);
+        Assert.assertEquals(before.hitsCollected + 3, (long) after.hitsCollected);
+        Assert.assertEquals(before.documentsLoaded + 2, (long) after.documentsLoaded);
+        Assert.assertEquals(before.storedFieldsBytes + "doc1".length() + "doc2".length(),
+            (long) after.storedFieldsBytes);
+
+        Assert.assertEquals(count(before, "total") + 1, count(after, "total"));
+        Assert.assertEquals(count(before, "search_query") + 1, count(after, "search_query"));
+        Assert.assertEquals(count(before, "documents") + 1, count(after, "documents"));
+        Assert.assertEquals(count(before, "facet_count"), count(after, "facet_count"));
+        Assert.assertEquals(count(before, "highlighting"), count(after, "highlighting"));
+
+        final IndexMetrics.LatencyStats total = after.phases.get("total");
+        Assert.assertTrue(total.p50Us <= total.p99Us);
+        Assert.assertTrue(total.p99Us <= total.maxUs);
+    }
+
+    @Test
+    public void serialization() throws IOException {
+        indexService.searchQuery(QueryDefinition.of(MatchAllDocs.INSTANCE).build());
+        final IndexMetrics metrics = indexService.getIndexMetrics();
+        final String json = ObjectMappers.JSON.writeValueAsString(metrics);
+        Assert.assertEquals(metrics, ObjectMappers.JSON.readValue(json, IndexMetrics.class));
+    }
+
+    @Test
+    public void jmx() throws JMException {
+        indexService.searchQuery(QueryDefinition.of(MatchAllDocs.INSTANCE).build());
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final Set<ObjectName> names = mBeanServer.queryNames(new ObjectName(
+            "com.qwazr.search:type=IndexMetrics,name=" + ObjectName.quote(indexService.getIndexName()) + ",*"), null);
+        Assert.assertEquals(1, names.size());
+        final long queries = (Long) mBeanServer.getAttribute(names.iterator().next(), "Queries");
+        Assert.assertTrue(queries > 0);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.field.SmartFieldDefinition;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.PostDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.HasTerm;
+import com.qwazr.search.query.MatchAllDocs;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class IndexRebuildTest extends AbstractIndexTest {
+
+    private final static int DOCS = 2000;
+    private final static int EXTRA_DOCS = 200;
+    private final static int CHANGED_DOCS = 50;
+
+    static IndexServiceInterface service;
+
+    private static volatile CountDownLatch rebuildStarted;
+    private static volatile CountDownLatch writesDone;
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+    }
+
+    private static void createIndex(final String index) {
+        service.createUpdateIndex(index,
+            IndexSettingsDefinition.of().recordField("record").primaryKey("id").build());
+        service.setField(index, "id", SmartFieldDefinition.of().index(true).build());
+        service.setField(index, "value", SmartFieldDefinition.of().type(SmartFieldDefinition.Type.INTEGER).build());
+        service.setField(index, "text",
+            SmartFieldDefinition.of().type(SmartFieldDefinition.Type.TEXT).index(true).analyzer("english").build());
+        service.postMappedDocuments(index, PostDefinition.of(getDocs(0, DOCS, 1), null));
+    }
+
+    private static List<Map<String, Object>> getDocs(final int from, final int to, final int sign) {
+        final List<Map<String, Object>> docs = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+            docs.add(Map.of("id", "doc" + i, "value", sign * i, "text", "value " + i));
+        return docs;
+    }
+
+    /**
+     * The index analyzer of the rebuild holds the first rebuilt document until the writes are done:
+     * the writes are always made between the snapshot of the rebuild and its catch up.
+     */
+    public static class BlockingAnalyzer extends Analyzer {
+
+        @Override
+        protected TokenStreamComponents createComponents(final String fieldName) {
+            return new TokenStreamComponents(new StandardTokenizer());
+        }
+
+        @Override
+        protected Reader initReader(final String fieldName, final Reader reader) {
+            rebuildStarted.countDown();
+            try {
+                writesDone.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return reader;
+        }
+    }
+
+    /**
+     * The value field becomes sortable and the text field gets a new analyzer, every document must be rebuilt.
+     */
+    private static void rebuildWhile(final String index, final Runnable writes) {
+        rebuildStarted = new CountDownLatch(1);
+        writesDone = new CountDownLatch(1);
+        final CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                Assert.assertTrue(rebuildStarted.await(1, TimeUnit.MINUTES));
+                writes.run();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                writesDone.countDown();
+            }
+        });
+        final Map<String, FieldDefinition> fields = new LinkedHashMap<>(service.getFields(index));
+        fields.put("value", SmartFieldDefinition.of().type(SmartFieldDefinition.Type.INTEGER).sort(true).build());
+        fields.put("text", SmartFieldDefinition.of()
+            .type(SmartFieldDefinition.Type.TEXT)
+            .index(true)
+            .analyzer(BlockingAnalyzer.class.getName())
+            .build());
+        service.setFields(index, fields);
+        writer.join();
+
+        Assert.assertTrue(service.getField(index, "value") instanceof SmartFieldDefinition);
+        Assert.assertTrue(((SmartFieldDefinition) service.getField(index, "value")).sort);
+    }
+
+    private static ResultDefinition.WithMap searchSortedByValue(final String index,
+                                                               final QueryDefinition.SortEnum sort) {
+        return service.searchQuery(index, QueryDefinition.of(MatchAllDocs.INSTANCE)
+            .sort("value", sort)
+            .returnedField("*")
+            .rows(1)
+            .build(), false);
+    }
+
+    private static ResultDefinition.WithMap searchId(final String index, final String id) {
+        return service.searchQuery(index,
+            QueryDefinition.of(new HasTerm("id", id)).returnedField("*").build(), false);
+    }
+
+    private static int firstValue(final ResultDefinition.WithMap result) {
+        return ((Number) result.getDocuments().get(0).getFields().get("value")).intValue();
+    }
+
+    @Test
+    public void rebuildWhileAdding() {
+        final String index = "rebuildWhileAdding";
+        createIndex(index);
+        rebuildWhile(index, () -> {
+            for (int i = DOCS; i < DOCS + EXTRA_DOCS; i += 10)
+                service.postMappedDocuments(index, PostDefinition.of(getDocs(i, i + 10, 1), null));
+        });
+
+        Assert.assertEquals(DOCS + EXTRA_DOCS, (long) service.getIndex(index).numDocs);
+        final ResultDefinition.WithMap result = searchSortedByValue(index, QueryDefinition.SortEnum.descending);
+        Assert.assertEquals(DOCS + EXTRA_DOCS, result.getTotalHits());
+        Assert.assertEquals(DOCS + EXTRA_DOCS - 1, firstValue(result));
+    }
+
+    @Test
+    public void rebuildWhileDeleting() {
+        final String index = "rebuildWhileDeleting";
+        createIndex(index);
+        rebuildWhile(index, () -> {
+            for (int i = 0; i < CHANGED_DOCS; i++)
+                Assert.assertEquals(1, service.searchQuery(index,
+                    QueryDefinition.of(new HasTerm("id", "doc" + i)).build(), true).getTotalHits());
+        });
+
+        Assert.assertEquals(DOCS - CHANGED_DOCS, (long) service.getIndex(index).numDocs);
+        Assert.assertEquals(0, searchId(index, "doc0").getTotalHits());
+        Assert.assertEquals(0, searchId(index, "doc" + (CHANGED_DOCS - 1)).getTotalHits());
+        final ResultDefinition.WithMap result = searchSortedByValue(index, QueryDefinition.SortEnum.ascending);
+        Assert.assertEquals(DOCS - CHANGED_DOCS, result.getTotalHits());
+        Assert.assertEquals(CHANGED_DOCS, firstValue(result));
+    }
+
+    @Test
+    public void rebuildWhileUpdating() {
+        final String index = "rebuildWhileUpdating";
+        createIndex(index);
+        rebuildWhile(index, () ->
+            service.postMappedDocuments(index, PostDefinition.of(getDocs(1, CHANGED_DOCS + 1, -1), null)));
+
+        Assert.assertEquals(DOCS, (long) service.getIndex(index).numDocs);
+        final ResultDefinition.WithMap updated = searchId(index, "doc1");
+        Assert.assertEquals(1, updated.getTotalHits());
+        Assert.assertEquals(-1, firstValue(updated));
+        final ResultDefinition.WithMap result = searchSortedByValue(index, QueryDefinition.SortEnum.ascending);
+        Assert.assertEquals(DOCS, result.getTotalHits());
+        Assert.assertEquals(-CHANGED_DOCS, firstValue(result));
+    }
+}
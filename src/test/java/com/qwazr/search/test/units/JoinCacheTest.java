@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.Join;
+import com.qwazr.search.query.MatchAllDocs;
+import org.apache.lucene.search.join.ScoreMode;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+public class JoinCacheTest extends AbstractIndexTest {
+
+    static AnnotatedIndexService<IndexRecord.NoTaxonomy> fromIndex;
+    static AnnotatedIndexService<IndexRecord.NoTaxonomy> toIndex;
+
+    private static AnnotatedIndexService<IndexRecord.NoTaxonomy> createIndex(final IndexServiceInterface service,
+                                                                             final String indexName,
+                                                                             final IndexSettingsDefinition settings)
+        throws URISyntaxException {
+        final AnnotatedIndexService<IndexRecord.NoTaxonomy> index =
+            new AnnotatedIndexService<>(service, IndexRecord.NoTaxonomy.class, indexName, settings);
+        index.createUpdateIndex();
+        index.createUpdateFields();
+        return index;
+    }
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException {
+        final IndexServiceInterface service = initIndexManager(true).getService();
+        fromIndex = createIndex(service, "joinFrom",
+            IndexSettingsDefinition.of(IndexRecord.NoTaxonomy.class.getAnnotation(Index.class))
+                .joinCacheMaxRamMB(1d)
+                .build());
+        fromIndex.postDocument(new IndexRecord.NoTaxonomy("a").sortedDocValue("1"));
+        fromIndex.postDocument(new IndexRecord.NoTaxonomy("b").sortedDocValue("2"));
+        fromIndex.postDocument(new IndexRecord.NoTaxonomy("c").sortedDocValue("1"));
+        toIndex = createIndex(service, "joinTo",
+            IndexSettingsDefinition.of(IndexRecord.NoTaxonomy.class.getAnnotation(Index.class))
+                .searchCacheMaxRamMB(1d)
+                .build());
+        toIndex.postDocument(new IndexRecord.NoTaxonomy("1"));
+        toIndex.postDocument(new IndexRecord.NoTaxonomy("2"));
+        toIndex.postDocument(new IndexRecord.NoTaxonomy("3"));
+    }
+
+    private static long join() {
+        return toIndex.searchQuery(QueryDefinition.of(
+            new Join("joinFrom", IndexRecord.SORTED_DOC_VALUE_FIELD_NAME, FieldDefinition.ID_FIELD, false,
+                ScoreMode.None, MatchAllDocs.INSTANCE)).build()).totalHits;
+    }
+
+    @Test
+    public void cachedUntilRefresh() throws IOException {
+        Assert.assertEquals(2, join());
+        Assert.assertEquals(2, join());
+        final IndexStatus.CacheStats stats = fromIndex.getIndexStatus().joinCache;
+        Assert.assertNotNull(stats);
+        Assert.assertEquals(Integer.valueOf(1), stats.cacheSize);
+        Assert.assertEquals(Long.valueOf(1), stats.hitCount);
+        Assert.assertEquals(Long.valueOf(1), stats.missCount);
+        Assert.assertTrue(stats.ramBytesUsed > 0);
+
+        // The new documents of the from index are joined
+        fromIndex.postDocument(new IndexRecord.NoTaxonomy("d").sortedDocValue("3"));
+        Assert.assertEquals(3, join());
+        Assert.assertEquals(Long.valueOf(2), fromIndex.getIndexStatus().joinCache.missCount);
+
+        // No cache on the target index
+        Assert.assertNull(toIndex.getIndexStatus().joinCache);
+    }
+
+    @Test
+    public void joinsAreNotInTheSearchCache() throws IOException {
+        final IndexStatus.CacheStats before = toIndex.getIndexStatus().searchCache;
+        join();
+        join();
+        final IndexStatus.CacheStats stats = toIndex.getIndexStatus().searchCache;
+        Assert.assertEquals(Integer.valueOf(0), stats.cacheSize);
+        Assert.assertEquals(before.missCount, stats.missCount);
+        Assert.assertEquals(before.bypassCount + 2, (long) stats.bypassCount);
+    }
+}
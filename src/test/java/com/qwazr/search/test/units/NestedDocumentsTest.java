@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.field.CustomFieldDefinition;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.InnerHitsDefinition;
+import com.qwazr.search.index.PostDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.index.ResultDocumentAbstract;
+import com.qwazr.search.index.ResultDocumentMap;
+import com.qwazr.search.query.HasTerm;
+import com.qwazr.search.query.MatchAllDocs;
+import com.qwazr.search.query.QueryInterface;
+import com.qwazr.search.query.ToChildBlockJoin;
+import com.qwazr.search.query.ToParentBlockJoin;
+import com.qwazr.server.ServerException;
+import com.qwazr.utils.ObjectMappers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NestedDocumentsTest extends AbstractIndexTest {
+
+    private final static String INDEX = "nestedIndex";
+
+    static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+        service.createUpdateIndex(INDEX, IndexSettingsDefinition.of().primaryKey("id").build());
+        final CustomFieldDefinition stringField =
+            CustomFieldDefinition.of().template(FieldDefinition.Template.StringField).stored(true).build();
+        service.setField(INDEX, "id", stringField);
+        service.setField(INDEX, "name", stringField);
+        service.setField(INDEX, "color", stringField);
+        service.setField(INDEX, "size",
+            CustomFieldDefinition.of().template(FieldDefinition.Template.IntDocValuesField).build());
+        service.setField(INDEX, "items",
+            CustomFieldDefinition.of().template(FieldDefinition.Template.NestedField).build());
+        postDoc("1", "shirt", "red", "blue");
+        postDoc("2", "hat", "green");
+    }
+
+    private static Map<String, Object> item(final String color) {
+        final Map<String, Object> item = new LinkedHashMap<>();
+        item.put("color", color);
+        item.put("size", color.length());
+        return item;
+    }
+
+    private static void postDoc(final String id, final String name, final String... colors) {
+        final Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("id", id);
+        doc.put("name", name);
+        doc.put("items", Arrays.stream(colors).map(NestedDocumentsTest::item).toArray());
+        service.postMappedDocument(INDEX, PostDefinition.of(doc, null));
+    }
+
+    private static ResultDefinition.WithMap search(final QueryInterface query) {
+        return service.searchQuery(INDEX, QueryDefinition.of(query).returnedField("*").build(), false);
+    }
+
+    @Test
+    public void onlyParentsAreReturned() {
+        final ResultDefinition.WithMap result = search(MatchAllDocs.INSTANCE);
+        Assert.assertEquals(result.documents.size(), result.totalHits);
+        for (final ResultDocumentMap document : result.documents)
+            Assert.assertNotNull(document.fields.get("name"));
+    }
+
+    @Test
+    public void toParentBlockJoin() {
+        final ResultDefinition.WithMap result = search(new ToParentBlockJoin(new HasTerm("color", "blue"), "items"));
+        Assert.assertEquals(1, result.totalHits);
+        Assert.assertEquals("shirt", result.documents.get(0).fields.get("name"));
+    }
+
+    @Test
+    public void toChildBlockJoin() {
+        final ResultDefinition.WithMap result =
+            search(new ToChildBlockJoin(new HasTerm("name", "shirt"), "items"));
+        Assert.assertEquals(2, result.totalHits);
+        for (final ResultDocumentMap document : result.documents)
+            Assert.assertNull(document.fields.get("name"));
+    }
+
+    @Test
+    public void innerHits() {
+        final ResultDefinition.WithMap result = service.searchQuery(INDEX,
+            QueryDefinition.of(new HasTerm("name", "shirt"))
+                .innerHits("items", InnerHitsDefinition.of("items").withReturnedFields("color").build())
+                .build(), false);
+        Assert.assertEquals(1, result.totalHits);
+        final List<ResultDocumentAbstract.InnerHit> innerHits =
+            result.documents.get(0).getInnerHits().get("items");
+        Assert.assertNotNull(innerHits);
+        Assert.assertEquals(2, innerHits.size());
+        Assert.assertEquals("red", innerHits.get(0).fields.get("color"));
+        Assert.assertEquals("blue", innerHits.get(1).fields.get("color"));
+    }
+
+    @Test
+    public void innerHitsRowsMustBePositive() {
+        final ServerException builderException =
+            Assert.assertThrows(ServerException.class, () -> InnerHitsDefinition.of("items").withRows(0));
+        Assert.assertEquals(400, builderException.getStatusCode());
+        final IOException jsonException = Assert.assertThrows(IOException.class,
+            () -> ObjectMappers.JSON.readValue("{\"path\":\"items\",\"rows\":0}", InnerHitsDefinition.class));
+        Assert.assertTrue(jsonException.getCause() instanceof ServerException);
+        Assert.assertEquals(400, ((ServerException) jsonException.getCause()).getStatusCode());
+    }
+
+    @Test
+    public void innerHitsDocValues() {
+        final ResultDefinition.WithMap result = service.searchQuery(INDEX,
+            QueryDefinition.of(MatchAllDocs.INSTANCE)
+                .innerHits("items", InnerHitsDefinition.of("items").withReturnedFields("color", "size").build())
+                .build(), false);
+        Assert.assertEquals(result.documents.size(), result.totalHits);
+        for (final ResultDocumentMap document : result.documents)
+            for (final ResultDocumentAbstract.InnerHit innerHit : document.getInnerHits().get("items"))
+                Assert.assertEquals(((String) innerHit.fields.get("color")).length(), innerHit.fields.get("size"));
+    }
+
+    @Test
+    public void updateReplacesTheChildren() {
+        postDoc("3", "scarf", "yellow", "purple");
+        Assert.assertEquals(1, search(new ToParentBlockJoin(new HasTerm("color", "yellow"), "items")).totalHits);
+        postDoc("3", "scarf", "white");
+        Assert.assertEquals(0, search(new ToParentBlockJoin(new HasTerm("color", "yellow"), "items")).totalHits);
+        Assert.assertEquals(1, search(new ToParentBlockJoin(new HasTerm("color", "white"), "items")).totalHits);
+        Assert.assertEquals(1, search(new ToChildBlockJoin(new HasTerm("name", "scarf"), "items")).totalHits);
+    }
+
+    @Test
+    public void onlyParentsAreExported() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.exportQuery(INDEX, null, false, QueryDefinition.of(MatchAllDocs.INSTANCE).returnedField("name").build())
+            .write(output);
+        final String[] lines = output.toString(StandardCharsets.UTF_8).trim().split("\n");
+        Assert.assertEquals(search(MatchAllDocs.INSTANCE).totalHits, lines.length);
+        for (final String line : lines)
+            Assert.assertTrue(line, line.contains("\"name\""));
+    }
+
+    @Test
+    public void getDocumentsPagesOverTheParents() {
+        final List<Map<String, Object>> all = service.getDocuments(INDEX, 0, 100);
+        Assert.assertEquals(search(MatchAllDocs.INSTANCE).totalHits, all.size());
+        for (int start = 0; start < all.size(); start++) {
+            final List<Map<String, Object>> page = service.getDocuments(INDEX, start, 1);
+            Assert.assertEquals(1, page.size());
+            Assert.assertEquals(all.get(start).get("id"), page.get(0).get("id"));
+        }
+    }
+
+    @Test
+    public void childrenAreNotCounted() {
+        Assert.assertEquals(search(MatchAllDocs.INSTANCE).totalHits, (long) service.getIndex(INDEX).numDocs);
+        postDoc("4", "gloves", "black", "grey", "brown");
+        final ResultDefinition.WithMap deleted =
+            service.searchQuery(INDEX, QueryDefinition.of(new HasTerm("id", "4")).build(), true);
+        Assert.assertEquals(1, deleted.totalHits);
+        Assert.assertEquals(0, search(new ToParentBlockJoin(new HasTerm("color", "grey"), "items")).totalHits);
+        Assert.assertEquals(search(MatchAllDocs.INSTANCE).totalHits, (long) service.getIndex(INDEX).numDocs);
+    }
+}
@@ -23,6 +23,7 @@ import com.qwazr.search.index.ResultDefinition;
 import com.qwazr.search.index.ResultDocumentMap;
 import com.qwazr.search.index.ResultDocumentObject;
 import com.qwazr.search.query.MatchAllDocs;
+import com.qwazr.search.test.JsonAbstractTest;
 import com.qwazr.utils.RandomUtils;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -30,7 +31,9 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
@@ -129,4 +132,117 @@ public class PagingTest extends AbstractIndexTest.WithIndexRecord.WithTaxonomy {
     public void pagingFacetWithoutSort() {
         checkPaging(QueryDefinition.of(MatchAllDocs.INSTANCE).returnedField("*"));
     }
+
+    private static List<String> ids(final ResultDefinition.WithObject<IndexRecord.WithTaxonomy> result) {
+        final List<String> ids = new ArrayList<>();
+        result.forEach(doc -> ids.add(doc.record.id));
+        return ids;
+    }
+
+    private void checkCursorPaging(final QueryBuilder builder) {
+        final ResultDefinition.WithObject<IndexRecord.WithTaxonomy> all =
+            indexService.searchQuery(builder.start(0).rows(documents.size()).build());
+        Assert.assertNull(all.nextCursor);
+        final List<String> expectedIds = ids(all);
+        Assert.assertEquals(documents.size(), expectedIds.size());
+
+        final List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            final int rows = RandomUtils.nextInt(8, 20);
+            final ResultDefinition.WithObject<IndexRecord.WithTaxonomy> result =
+                indexService.searchQuery(builder.start(0).rows(rows).cursor(cursor).build());
+            Assert.assertEquals(all.totalHits, result.totalHits);
+            ids.addAll(ids(result));
+            cursor = result.nextCursor;
+            if (cursor == null)
+                Assert.assertTrue(result.getDocuments().size() < rows);
+        } while (cursor != null);
+        Assert.assertEquals(expectedIds, ids);
+    }
+
+    @Test
+    public void cursorWithoutSort() {
+        checkCursorPaging(QueryDefinition.of(MatchAllDocs.INSTANCE).returnedField("*"));
+    }
+
+    @Test
+    public void cursorSort() {
+        checkCursorPaging(QueryDefinition.of(MatchAllDocs.INSTANCE)
+            .returnedField("*")
+            .sort("sortedDocValue", QueryDefinition.SortEnum.descending)
+            .sort(FieldDefinition.DOC_FIELD, QueryDefinition.SortEnum.ascending));
+    }
+
+    @Test
+    public void cursorFacetSort() {
+        checkCursorPaging(QueryDefinition.of(MatchAllDocs.INSTANCE)
+            .returnedField("*")
+            .facet("facetField", FacetDefinition.create(10))
+            .sort("sortedDocValue", QueryDefinition.SortEnum.ascending));
+    }
+
+    @Test
+    public void invalidCursor() {
+        JsonAbstractTest.checkErrorStatusCode(() -> indexService.searchQuery(
+            QueryDefinition.of(MatchAllDocs.INSTANCE).cursor("not-a-cursor").build()), 406);
+    }
+
+    @Test
+    public void cursorAfterWrite() throws IOException {
+        final QueryBuilder builder = QueryDefinition.of(MatchAllDocs.INSTANCE)
+            .returnedField("*")
+            .sort("sortedDocValue", QueryDefinition.SortEnum.ascending)
+            .rows(10);
+        final String cursor = indexService.searchQuery(builder.build()).nextCursor;
+        Assert.assertNotNull(cursor);
+        // Updating an existing document changes the version of the reader, not the documents
+        indexService.postDocument((IndexRecord.WithTaxonomy) documents.values().iterator().next());
+        // The sort values are still valid on the new version
+        Assert.assertEquals(10, indexService.searchQuery(builder.cursor(cursor).build()).getDocuments().size());
+    }
+
+    @Test
+    public void expiredCursor() throws IOException {
+        final QueryBuilder builder = QueryDefinition.of(MatchAllDocs.INSTANCE)
+            .sort(FieldDefinition.DOC_FIELD, QueryDefinition.SortEnum.ascending)
+            .rows(10);
+        final String cursor = indexService.searchQuery(builder.build()).nextCursor;
+        Assert.assertNotNull(cursor);
+        indexService.postDocument((IndexRecord.WithTaxonomy) documents.values().iterator().next());
+        // The docIds may have changed
+        JsonAbstractTest.checkErrorStatusCode(() -> indexService.searchQuery(builder.cursor(cursor).build()), 410);
+    }
+
+    @Test
+    public void iteratorAfterWrite() throws IOException {
+        final Iterator<IndexRecord.WithTaxonomy> iterator = indexService.searchIterator(
+            QueryDefinition.of(MatchAllDocs.INSTANCE)
+                .returnedField("*")
+                .sort(FieldDefinition.DOC_FIELD, QueryDefinition.SortEnum.ascending)
+                .rows(10)
+                .build(), IndexRecord.WithTaxonomy.class);
+        final Set<String> ids = new HashSet<>();
+        while (iterator.hasNext()) {
+            final IndexRecord.WithTaxonomy record = iterator.next();
+            ids.add(record.id);
+            // The expired cursors are replaced by the position of the page
+            if (ids.size() % 25 == 0)
+                indexService.postDocument(record);
+        }
+        Assert.assertEquals(documents.size(), ids.size());
+    }
+
+    @Test
+    public void getDocumentsAtPosition() throws IOException, ReflectiveOperationException {
+        final List<IndexRecord.WithTaxonomy> all = indexService.getDocuments(0, documents.size());
+        Assert.assertEquals(documents.size(), all.size());
+        for (final int start : new int[]{1, 7, documents.size() / 2, documents.size() - 3, documents.size()}) {
+            final List<IndexRecord.WithTaxonomy> page = indexService.getDocuments(start, 10);
+            final List<IndexRecord.WithTaxonomy> expected = all.subList(start, Math.min(start + 10, all.size()));
+            Assert.assertEquals(expected.size(), page.size());
+            for (int i = 0; i < page.size(); i++)
+                Assert.assertEquals(expected.get(i).id, page.get(i).id);
+        }
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.qwazr.search.index.IndexJsonResult;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.PostDefinition;
+import com.qwazr.utils.ObjectMappers;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelIndexingTest extends AbstractIndexTest {
+
+    private final static String INDEX = "parallelIndex";
+    private final static int DOCS = 2000;
+    private final static int KEYS = 500;
+
+    static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+        service.createUpdateIndex(INDEX,
+            IndexSettingsDefinition.of().recordField("record").primaryKey("id").indexingThreads(4).build());
+    }
+
+    @Before
+    public void beforeTest() {
+        service.deleteAll(INDEX);
+    }
+
+    private void checkLastWriteWins() {
+        Assert.assertEquals(Long.valueOf(KEYS), service.getIndex(INDEX).numDocs);
+        for (int key = 0; key < KEYS; key += 50) {
+            final Map<String, Object> doc = service.getDocument(INDEX, Integer.toString(key));
+            Assert.assertNotNull(doc);
+            Assert.assertEquals("Title " + (key + DOCS - KEYS), doc.get("title"));
+        }
+    }
+
+    @Test
+    public void postJsonArray() {
+        final ArrayNode array = ObjectMappers.JSON.createArrayNode();
+        for (int i = 0; i < DOCS; i++) {
+            final ObjectNode doc = array.addObject();
+            doc.put("id", Integer.toString(i % KEYS));
+            doc.put("title", "Title " + i);
+        }
+        final IndexJsonResult result = service.postJson(INDEX, true, array);
+        Assert.assertEquals(Integer.valueOf(DOCS), result.count);
+        Assert.assertNotNull(result.fieldTypes);
+        Assert.assertTrue(result.fieldTypes.containsKey("title"));
+        checkLastWriteWins();
+    }
+
+    @Test
+    public void postJsonArrayWithoutKeys() {
+        final ArrayNode array = ObjectMappers.JSON.createArrayNode();
+        for (int i = 0; i < DOCS; i++)
+            array.addObject().put("title", "Title " + i);
+        final IndexJsonResult result = service.postJson(INDEX, false, array);
+        Assert.assertEquals(Integer.valueOf(DOCS), result.count);
+        // Each document got its own generated key, none has been replaced.
+        // The partitioning of the documents without key value is checked by WriteContextPartitionTest
+        Assert.assertEquals(Long.valueOf(DOCS), service.getIndex(INDEX).numDocs);
+    }
+
+    @Test
+    public void postMappedDocuments() {
+        final List<Map<String, Object>> docs = new ArrayList<>(DOCS);
+        for (int i = 0; i < DOCS; i++) {
+            final Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("id", Integer.toString(i % KEYS));
+            doc.put("title", "Title " + i);
+            docs.add(doc);
+        }
+        Assert.assertEquals(Integer.valueOf(DOCS), service.postMappedDocuments(INDEX, PostDefinition.of(docs, null)));
+        checkLastWriteWins();
+    }
+
+    @Test
+    public void postInvalidJsonArray() {
+        final ArrayNode array = ObjectMappers.JSON.createArrayNode();
+        for (int i = 0; i < DOCS; i++)
+            array.addObject().put("id", Integer.toString(i)).put("title", "Title " + i);
+        array.add("not a document");
+        try {
+            service.postJson(INDEX, false, array);
+            Assert.fail("The invalid document should have been rejected");
+        } catch (RuntimeException e) {
+            // Expected: the batch is checked before being dispatched to the threads
+        }
+        Assert.assertEquals(Long.valueOf(0), service.getIndex(INDEX).numDocs);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.ConstantScore;
+import com.qwazr.search.query.HasTerm;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+public class QueryCacheTest extends AbstractIndexTest {
+
+    static IndexServiceInterface service;
+
+    private static AnnotatedIndexService<IndexRecord.NoTaxonomy> createIndex(final String indexName,
+                                                                             final IndexSettingsDefinition settings)
+        throws URISyntaxException, IOException {
+        final AnnotatedIndexService<IndexRecord.NoTaxonomy> index =
+            new AnnotatedIndexService<>(service, IndexRecord.NoTaxonomy.class, indexName, settings);
+        index.createUpdateIndex();
+        index.createUpdateFields();
+        index.postDocument(new IndexRecord.NoTaxonomy("1").textField("Hello World"));
+        index.postDocument(new IndexRecord.NoTaxonomy("2").textField("How are you ?"));
+        return index;
+    }
+
+    private static IndexSettingsDefinition.Builder settings() throws URISyntaxException {
+        return IndexSettingsDefinition.of(IndexRecord.NoTaxonomy.class.getAnnotation(Index.class));
+    }
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+    }
+
+    private static void search(final AnnotatedIndexService<IndexRecord.NoTaxonomy> index) {
+        Assert.assertEquals(1, index.searchQuery(
+            QueryDefinition.of(new ConstantScore(new HasTerm("textField", "hello"))).build()).totalHits);
+    }
+
+    @Test
+    public void indexCache() throws URISyntaxException, IOException {
+        final AnnotatedIndexService<IndexRecord.NoTaxonomy> index = createIndex("cachedIndex",
+            settings()
+                .queryCachePolicy(IndexSettingsDefinition.QueryCachePolicy.ALWAYS_CACHE_FILTERS)
+                .queryCacheMaxEntries(10)
+                .queryCacheMinSegmentDocs(0)
+                .queryCacheMinSegmentRatio(0f)
+                .build());
+        search(index);
+        search(index);
+        final IndexStatus.QueryCacheStats stats = index.getIndexStatus().queryCache;
+        Assert.assertNotNull(stats);
+        Assert.assertTrue(stats.cacheSize >= 1);
+        Assert.assertTrue(stats.hitCount >= 1);
+        Assert.assertTrue(stats.ramBytesUsed > 0);
+
+        // The cache survives the refresh of the searcher
+        index.postDocument(new IndexRecord.NoTaxonomy("3").textField("Hello again"));
+        final IndexStatus.QueryCacheStats newStats = index.getIndexStatus().queryCache;
+        Assert.assertNotNull(newStats);
+        Assert.assertTrue(newStats.hitCount >= stats.hitCount);
+
+        // The global cache is not used
+        Assert.assertNotEquals(stats, createIndex("globalIndex", null).getIndexStatus().queryCache);
+    }
+
+    @Test
+    public void disabledCache() throws URISyntaxException, IOException {
+        final AnnotatedIndexService<IndexRecord.NoTaxonomy> index = createIndex("noCacheIndex",
+            settings()
+                .queryCachePolicy(IndexSettingsDefinition.QueryCachePolicy.DISABLED)
+                .build());
+        search(index);
+        Assert.assertNull(index.getIndexStatus().queryCache);
+    }
+}
@@ -168,4 +168,22 @@ public class ReturnedFieldsTest extends AbstractIndexTest.WithIndexRecord.NoTaxo
             Assert.assertEquals(DDV_FIELDS[doc.pos], doc.fields.get("doubleDocValue"));
         });
     }
+
+    @Test
+    public void checkDocValuesFieldsInReverseDocOrder() {
+        QueryBuilder builder = builder().sort("sortedDocValue", QueryDefinition.SortEnum.descending)
+            .returnedField("sortedDocValue", "doubleDocValue");
+
+        withRecord(builder).forEach(doc -> {
+            final int i = ID_FIELDS.length - 1 - doc.pos;
+            Assert.assertEquals(SDV_FIELDS[i], doc.record.sortedDocValue);
+            Assert.assertEquals(DDV_FIELDS[i], doc.record.doubleDocValue);
+        });
+
+        withMap(builder).forEach(doc -> {
+            final int i = ID_FIELDS.length - 1 - doc.pos;
+            Assert.assertEquals(SDV_FIELDS[i], doc.fields.get("sortedDocValue"));
+            Assert.assertEquals(DDV_FIELDS[i], doc.fields.get("doubleDocValue"));
+        });
+    }
 }
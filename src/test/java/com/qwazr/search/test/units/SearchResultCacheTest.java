@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.PostDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.MatchAllDocs;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SearchResultCacheTest extends AbstractIndexTest {
+
+    private final static String INDEX = "searchCacheIndex";
+
+    static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() {
+        service = initIndexManager(true).getService();
+        service.createUpdateIndex(INDEX,
+            IndexSettingsDefinition.of().recordField("record").primaryKey("id").searchCacheMaxRamMB(0.005d).build());
+    }
+
+    private static void postDoc(final String id) {
+        final Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("id", id);
+        service.postMappedDocument(INDEX, PostDefinition.of(doc, null));
+    }
+
+    private static ResultDefinition.WithMap search(final int rows) {
+        return service.searchQuery(INDEX, QueryDefinition.of(MatchAllDocs.INSTANCE).rows(rows).build(), false);
+    }
+
+    private static IndexStatus.SearchCacheStats getStats() {
+        final IndexStatus.SearchCacheStats stats = service.getIndex(INDEX).searchCache;
+        Assert.assertNotNull(stats);
+        return stats;
+    }
+
+    @Test
+    public void test() {
+        postDoc("1");
+        Assert.assertEquals(1, search(10).totalHits);
+        final ResultDefinition.WithMap cachedResult = search(10);
+        Assert.assertEquals(1, cachedResult.totalHits);
+        // The timings of the first execution are not reported by the cache hits
+        Assert.assertNull(cachedResult.timer);
+        IndexStatus.SearchCacheStats stats = getStats();
+        Assert.assertEquals(Long.valueOf(1), stats.hitCount);
+        Assert.assertEquals(Long.valueOf(1), stats.missCount);
+
+        // A new document refreshes the searcher: the cached result must not be returned
+        postDoc("2");
+        Assert.assertEquals(2, search(10).totalHits);
+        stats = getStats();
+        Assert.assertEquals(Long.valueOf(1), stats.hitCount);
+        Assert.assertEquals(Long.valueOf(2), stats.missCount);
+
+        Assert.assertTrue(stats.ramBytesUsed > 0);
+
+        // The cache hits are recorded in the query metrics
+        Assert.assertEquals(Long.valueOf(1), service.getIndexMetrics(INDEX).cacheHits);
+
+        // The cache is bounded by memory
+        for (int rows = 1; rows <= 50; rows++)
+            search(rows);
+        stats = getStats();
+        Assert.assertTrue(stats.ramBytesUsed <= stats.maxRamBytes);
+        Assert.assertTrue(stats.evictionCount >= 1);
+    }
+
+    @Test
+    public void debugQueriesAreNotCached() {
+        final IndexStatus.SearchCacheStats before = getStats();
+        final QueryDefinition queryDebug = QueryDefinition.of(MatchAllDocs.INSTANCE).queryDebug(true).build();
+        Assert.assertNotNull(service.searchQuery(INDEX, queryDebug, false).query);
+        Assert.assertNotNull(service.searchQuery(INDEX, queryDebug, false).query);
+        final IndexStatus.SearchCacheStats stats = getStats();
+        Assert.assertEquals(before.hitCount, stats.hitCount);
+        Assert.assertEquals(before.missCount, stats.missCount);
+        Assert.assertEquals(before.bypassCount + 2, (long) stats.bypassCount);
+    }
+}
@@ -17,6 +17,7 @@ package com.qwazr.search.test.units;
 
 import com.qwazr.search.index.FacetDefinition;
 import com.qwazr.search.index.FacetDefinitionBuilder;
+import com.qwazr.search.index.IndexStatus;
 import com.qwazr.search.index.QueryDefinition;
 import com.qwazr.search.index.ResultDefinition;
 import com.qwazr.search.query.Bool;
@@ -84,6 +85,15 @@ public class SortedFacetTest extends AbstractIndexTest.WithIndexRecord.NoTaxonom
         facetTerms.forEach((value, count) -> Assert.assertEquals(count.get(), facet.get(value)));
     }
 
+    @Test
+    public void facetsStateIsBuiltOnce() {
+        allFacets();
+        final IndexStatus.FacetsStateStats stats = indexService.getIndexStatus().facetsState;
+        Assert.assertNotNull(stats);
+        allFacets();
+        Assert.assertEquals(stats.buildCount, indexService.getIndexStatus().facetsState.buildCount);
+    }
+
     private Map<String, Number> checkFacets(final Map<String, Number> facet) {
         Assert.assertFalse("Facets are empty", facet.isEmpty());
         facet.forEach((value, count) -> Assert.assertEquals(count, facetTerms.get(value).intValue()));
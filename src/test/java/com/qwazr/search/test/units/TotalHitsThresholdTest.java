@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.HasTerm;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TotalHitsThresholdTest extends AbstractIndexTest.WithIndexRecord.NoTaxonomy {
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException {
+        initIndexService(true);
+        final List<IndexRecord.NoTaxonomy> records = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            final StringBuilder text = new StringBuilder("hello");
+            for (int j = 0; j < i % 10; j++)
+                text.append(" world");
+            records.add(new IndexRecord.NoTaxonomy(Integer.toString(i)).textField(text.toString()));
+        }
+        indexService.postDocuments(records);
+    }
+
+    private ResultDefinition<?> search(final Integer totalHitsThreshold) {
+        return indexService.searchQuery(QueryDefinition.of(new HasTerm("textField", "hello"))
+            .rows(5)
+            .totalHitsThreshold(totalHitsThreshold)
+            .build());
+    }
+
+    @Test
+    public void exactCount() {
+        final ResultDefinition<?> result = search(null);
+        Assert.assertEquals(500, result.totalHits);
+        Assert.assertTrue(result.isTotalHitsExact());
+        Assert.assertEquals(5, result.getDocuments().size());
+    }
+
+    @Test
+    public void negativeThresholdIsExact() {
+        final ResultDefinition<?> result = search(-1);
+        Assert.assertEquals(500, result.totalHits);
+        Assert.assertTrue(result.isTotalHitsExact());
+    }
+
+    @Test
+    public void lowerBound() {
+        final ResultDefinition<?> exact = search(null);
+        final ResultDefinition<?> result = search(10);
+        Assert.assertFalse(result.isTotalHitsExact());
+        Assert.assertTrue(result.totalHits >= 10);
+        Assert.assertTrue(result.totalHits <= 500);
+        // Same top scores
+        Assert.assertEquals(exact.getDocuments().size(), result.getDocuments().size());
+        for (int i = 0; i < exact.getDocuments().size(); i++)
+            Assert.assertEquals(exact.getDocuments().get(i).getScore(),
+                result.getDocuments().get(i).getScore(), 0f);
+    }
+}